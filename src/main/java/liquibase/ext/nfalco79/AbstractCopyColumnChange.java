@@ -0,0 +1,556 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import liquibase.Scope;
+import liquibase.change.AbstractChange;
+import liquibase.database.Database;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.ValidationErrors;
+import liquibase.exception.Warnings;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+
+/**
+ * Base class of changes that copy columns of a table converting their values
+ * to the target type. It holds the options of how the table is walked
+ * (chunks, parallelism, strategy) and optionally of the source table joined
+ * to it, subclasses provide the copied columns.
+ *
+ * @author Nikolas Falco
+ */
+public abstract class AbstractCopyColumnChange extends AbstractChange {
+
+    public static final String STRATEGY_UPDATE = "update";
+    public static final String STRATEGY_REWRITE = "rewrite";
+    private static final int VERIFY_CHUNK_SIZE = 10000;
+
+    private String catalogName;
+    private String schemaName;
+    private String tableName;
+    private Integer chunkSize;
+    private Integer parallelism;
+    private Boolean resumable;
+    private Integer parallelDegree;
+    private String strategy;
+    private Boolean skipUnchanged;
+    private Boolean lobStreaming;
+    private Integer maxRowsPerSecond;
+    private Integer maxBatchesPerSecond;
+    private Integer maxReplicationLag;
+    private String lagQuery;
+    private Boolean lockBackoff;
+    private Boolean online;
+    private String sourceTableName;
+    private String joinColumns;
+    private String transformer;
+    private Boolean verify;
+    private Boolean byPartition;
+    private LockBackoff backoff;
+
+    public String getCatalogName() {
+        return catalogName;
+    }
+
+    public void setCatalogName(String catalogName) {
+        this.catalogName = catalogName;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public void setSchemaName(String schemaName) {
+        this.schemaName = schemaName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(Integer chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public Integer getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(Integer parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public Boolean getResumable() {
+        return resumable;
+    }
+
+    public void setResumable(Boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    public Integer getParallelDegree() {
+        return parallelDegree;
+    }
+
+    public void setParallelDegree(Integer parallelDegree) {
+        this.parallelDegree = parallelDegree;
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public void setStrategy(String strategy) {
+        this.strategy = strategy;
+    }
+
+    public Boolean getSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    public void setSkipUnchanged(Boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    public Boolean getLobStreaming() {
+        return lobStreaming;
+    }
+
+    public void setLobStreaming(Boolean lobStreaming) {
+        this.lobStreaming = lobStreaming;
+    }
+
+    public Integer getMaxRowsPerSecond() {
+        return maxRowsPerSecond;
+    }
+
+    public void setMaxRowsPerSecond(Integer maxRowsPerSecond) {
+        this.maxRowsPerSecond = maxRowsPerSecond;
+    }
+
+    public Integer getMaxBatchesPerSecond() {
+        return maxBatchesPerSecond;
+    }
+
+    public void setMaxBatchesPerSecond(Integer maxBatchesPerSecond) {
+        this.maxBatchesPerSecond = maxBatchesPerSecond;
+    }
+
+    public Integer getMaxReplicationLag() {
+        return maxReplicationLag;
+    }
+
+    public void setMaxReplicationLag(Integer maxReplicationLag) {
+        this.maxReplicationLag = maxReplicationLag;
+    }
+
+    public String getLagQuery() {
+        return lagQuery;
+    }
+
+    public void setLagQuery(String lagQuery) {
+        this.lagQuery = lagQuery;
+    }
+
+    public Boolean getLockBackoff() {
+        return lockBackoff;
+    }
+
+    public void setLockBackoff(Boolean lockBackoff) {
+        this.lockBackoff = lockBackoff;
+    }
+
+    public Boolean getOnline() {
+        return online;
+    }
+
+    public void setOnline(Boolean online) {
+        this.online = online;
+    }
+
+    public String getSourceTableName() {
+        return sourceTableName;
+    }
+
+    public void setSourceTableName(String sourceTableName) {
+        this.sourceTableName = sourceTableName;
+    }
+
+    public String getJoinColumns() {
+        return joinColumns;
+    }
+
+    public void setJoinColumns(String joinColumns) {
+        this.joinColumns = joinColumns;
+    }
+
+    public String getTransformer() {
+        return transformer;
+    }
+
+    public void setTransformer(String transformer) {
+        this.transformer = transformer;
+    }
+
+    public Boolean getVerify() {
+        return verify;
+    }
+
+    public void setVerify(Boolean verify) {
+        this.verify = verify;
+    }
+
+    public Boolean getByPartition() {
+        return byPartition;
+    }
+
+    public void setByPartition(Boolean byPartition) {
+        this.byPartition = byPartition;
+    }
+
+    @Override
+    public Warnings warn(Database database) {
+        Warnings warnings = super.warn(database);
+        if (Boolean.TRUE.equals(lobStreaming) && !(database instanceof OracleDatabase)) {
+            warnings.addWarning("lobStreaming is supported only on Oracle, it will be ignored on " + database.getShortName());
+        }
+        if (parallelDegree != null && !(database instanceof OracleDatabase)) {
+            warnings.addWarning("parallelDegree is supported only on Oracle, it will be ignored on " + database.getShortName());
+        }
+        return warnings;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+
+        if (chunkSize != null && chunkSize <= 0) {
+            errors.addError("chunkSize must be greater than 0");
+        }
+        if (parallelism != null) {
+            if (parallelism <= 0) {
+                errors.addError("parallelism must be greater than 0");
+            }
+            if (chunkSize == null && !Boolean.TRUE.equals(byPartition)) {
+                errors.addError("parallelism requires chunkSize");
+            }
+        }
+        if (Boolean.TRUE.equals(resumable)) {
+            if (chunkSize == null) {
+                errors.addError("resumable requires chunkSize");
+            }
+            // the checkpoint is identified by the changeSet
+            if (getChangeSet() == null) {
+                errors.addError("resumable requires a changeSet");
+            }
+        }
+        if (parallelDegree != null) {
+            if (parallelDegree <= 0) {
+                errors.addError("parallelDegree must be greater than 0");
+            }
+            if (isServerParallel(database) && (parallelism != null || Boolean.TRUE.equals(resumable))) {
+                errors.addError("parallelDegree can not be combined with parallelism or resumable");
+            }
+        }
+        if (maxRowsPerSecond != null && maxRowsPerSecond <= 0) {
+            errors.addError("maxRowsPerSecond must be greater than 0");
+        }
+        if (maxBatchesPerSecond != null && maxBatchesPerSecond <= 0) {
+            errors.addError("maxBatchesPerSecond must be greater than 0");
+        }
+        if ((maxRowsPerSecond != null || maxBatchesPerSecond != null) && (chunkSize == null || isServerParallel(database))) {
+            errors.addError("maxRowsPerSecond and maxBatchesPerSecond require chunkSize without parallelDegree");
+        }
+        if (maxReplicationLag != null) {
+            if (maxReplicationLag <= 0) {
+                errors.addError("maxReplicationLag must be greater than 0");
+            }
+            if (chunkSize == null || isServerParallel(database)) {
+                errors.addError("maxReplicationLag requires chunkSize without parallelDegree");
+            }
+            if (lagQuery == null && ReplicationLagController.getDefaultLagQuery(database) == null) {
+                errors.addError("maxReplicationLag requires lagQuery on " + database.getShortName());
+            }
+        } else if (lagQuery != null) {
+            errors.addError("lagQuery requires maxReplicationLag");
+        }
+        if (Boolean.TRUE.equals(lockBackoff)) {
+            if (chunkSize == null || isServerParallel(database)) {
+                errors.addError("lockBackoff requires chunkSize without parallelDegree");
+            }
+            if (LockBackoff.getDefaultQuery(database) == null) {
+                errors.addError("lockBackoff is not supported on " + database.getShortName());
+            }
+        }
+        if (Boolean.TRUE.equals(online)) {
+            if (chunkSize == null) {
+                errors.addError("online requires chunkSize");
+            }
+            if (isRewrite() || Boolean.TRUE.equals(lobStreaming)) {
+                errors.addError("online can not be combined with strategy " + STRATEGY_REWRITE + " or lobStreaming");
+            }
+            if (!CopyColumnTriggerGenerator.isSupported(database)) {
+                errors.addError("online is not supported on " + database.getShortName());
+            }
+        }
+        if (sourceTableName != null) {
+            if (joinColumns == null || joinColumns.trim().isEmpty()) {
+                errors.addError("sourceTableName requires joinColumns");
+            }
+            if (isRewrite() || Boolean.TRUE.equals(lobStreaming) || parallelDegree != null || Boolean.TRUE.equals(online)) {
+                errors.addError("sourceTableName can not be combined with strategy " + STRATEGY_REWRITE + ", lobStreaming, parallelDegree or online");
+            }
+            if (!CopyColumnGenerator.isCrossTableSupported(database)) {
+                errors.addError("sourceTableName is not supported on " + database.getShortName());
+            }
+        } else if (joinColumns != null) {
+            errors.addError("joinColumns requires sourceTableName");
+        }
+        if (transformer != null) {
+            validateTransformer(database, errors);
+        }
+        if (Boolean.TRUE.equals(verify)) {
+            if (sourceTableName != null || transformer != null || Boolean.TRUE.equals(lobStreaming)) {
+                errors.addError("verify can not be combined with sourceTableName, transformer or lobStreaming");
+            }
+            if (!CopyColumnVerifyStatement.isSupported(database)) {
+                errors.addError("verify is not supported on " + database.getShortName());
+            }
+        }
+        if (Boolean.TRUE.equals(byPartition)) {
+            if (chunkSize != null || isRewrite() || Boolean.TRUE.equals(lobStreaming) || parallelDegree != null || sourceTableName != null || transformer != null) {
+                errors.addError("byPartition can not be combined with chunkSize, strategy " + STRATEGY_REWRITE + ", lobStreaming, parallelDegree, sourceTableName or transformer");
+            }
+            if (!TablePartition.isSupported(database)) {
+                errors.addError("byPartition is not supported on " + database.getShortName());
+            }
+        }
+        if (strategy != null && !STRATEGY_UPDATE.equals(strategy) && !STRATEGY_REWRITE.equals(strategy)) {
+            errors.addError("strategy must be one of " + STRATEGY_UPDATE + ", " + STRATEGY_REWRITE);
+        }
+        if (isRewrite() && (chunkSize != null || parallelism != null || resumable != null || parallelDegree != null)) {
+            errors.addError("strategy " + STRATEGY_REWRITE + " can not be combined with chunkSize, parallelism, resumable or parallelDegree");
+        }
+        if (isRewrite() && Boolean.TRUE.equals(skipUnchanged)) {
+            errors.addError("skipUnchanged can not be combined with strategy " + STRATEGY_REWRITE);
+        }
+        if (Boolean.TRUE.equals(lobStreaming) && database instanceof OracleDatabase
+                && (chunkSize != null || parallelDegree != null || Boolean.TRUE.equals(skipUnchanged) || isRewrite())) {
+            errors.addError("lobStreaming can not be combined with chunkSize, parallelDegree, skipUnchanged or strategy " + STRATEGY_REWRITE);
+        }
+
+        return errors;
+    }
+
+    private void validateTransformer(Database database, ValidationErrors errors) {
+        if (chunkSize == null) {
+            errors.addError("transformer requires chunkSize");
+        }
+        if (isRewrite() || Boolean.TRUE.equals(lobStreaming) || isServerParallel(database) || Boolean.TRUE.equals(online) || sourceTableName != null
+                || Boolean.TRUE.equals(resumable) || Boolean.TRUE.equals(skipUnchanged)) {
+            errors.addError("transformer can not be combined with strategy " + STRATEGY_REWRITE + ", lobStreaming, parallelDegree, online, sourceTableName, resumable or skipUnchanged");
+        }
+        try {
+            if (!CopyColumnTransformer.class.isAssignableFrom(Class.forName(transformer, false, Scope.getCurrentScope().getClassLoader()))) {
+                errors.addError("transformer " + transformer + " does not implement " + CopyColumnTransformer.class.getName());
+            }
+        } catch (ClassNotFoundException e) {
+            errors.addError("transformer " + transformer + " not found");
+        }
+    }
+
+    /**
+     * Returns the columns to copy.
+     *
+     * @return the list of copied columns
+     */
+    protected abstract List<CopyColumnConfig> getCopyColumns();
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        SqlStatement[] statements = generateCopyStatements(database);
+        if (statements.length > 0 && CostEstimate.isDryRun(database)) {
+            return estimateCost(database).prependTo(statements);
+        }
+        return statements;
+    }
+
+    /**
+     * Estimates the cost of the copy from the catalog statistics without
+     * modify any data.
+     *
+     * @param database
+     *            the connected database
+     * @return the estimated cost
+     */
+    public CostEstimate estimateCost(Database database) {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        CostEstimate estimate = new CostEstimate(getSerializedObjectName(), tableName) //
+                .setRows(TableStatistics.estimateRows(connection, database, catalogName, schemaName, tableName)) //
+                .setBytes(TableStatistics.estimateBytes(connection, database, catalogName, schemaName, tableName));
+        if (isRewrite()) {
+            return estimate.setRewrite(true).setLock("exclusive table lock while the table is recreated");
+        }
+
+        // every updated row is written as a new row version on PostgreSQL
+        estimate.setRewrite(database instanceof PostgresDatabase);
+        if (chunkSize != null) {
+            estimate.setLock("row locks on " + chunkSize + " rows per transaction");
+        } else {
+            estimate.setLock("row locks on all rows until commit");
+        }
+        List<CopyColumnConfig> columns = getCopyColumns();
+        CopyColumnStatement update = new CopyColumnStatement(catalogName, schemaName, tableName, columns.get(0).getFromName(), columns.get(0).getFromType(), columns.get(0).getToName(), columns.get(0).getToType()) //
+                .setSourceTableName(sourceTableName) //
+                .setJoinColumns(joinColumns) //
+                .setSkipUnchanged(Boolean.TRUE.equals(skipUnchanged));
+        columns.stream().skip(1).forEach(update::addColumn);
+        String sql = SqlGeneratorFactory.getInstance().generateSql(update, database)[0].toSql();
+        return estimate.setPlan(TableStatistics.explain(connection, database, sql));
+    }
+
+    private SqlStatement[] generateCopyStatements(Database database) {
+        List<CopyColumnConfig> columns = getCopyColumns();
+        if (columns.isEmpty()) {
+            return new SqlStatement[0];
+        }
+        CopyColumnConfig first = columns.get(0);
+
+        CopyColumnStatement statement;
+        if (transformer != null && chunkSize != null) {
+            CopyColumnTransformStatement pipeline = new CopyColumnTransformStatement(database, catalogName, schemaName, tableName, first.getFromName(), first.getFromType(), first.getToName(), first.getToType(), chunkSize, transformer) //
+                    .setFetchSize(ExtensionConfiguration.FETCH_SIZE.getCurrentValue()) //
+                    .setLobBufferSize(ExtensionConfiguration.LOB_BUFFER_SIZE.getCurrentValue());
+            configureChunks(pipeline, database, columns);
+            statement = pipeline;
+        } else if (Boolean.TRUE.equals(byPartition)) {
+            CopyColumnPartitionedStatement partitioned = new CopyColumnPartitionedStatement(database, catalogName, schemaName, tableName, first.getFromName(), first.getFromType(), first.getToName(), first.getToType());
+            partitioned.setParallelism(parallelism != null ? parallelism : 1) //
+                    .setProgress(new CopyProgress(tableName + " " + columns, ExtensionConfiguration.PROGRESS_INTERVAL.getCurrentValue(), CopyProgress.findListeners())) //
+                    .setSkipUnchanged(Boolean.TRUE.equals(skipUnchanged));
+            statement = partitioned;
+        } else if (isRewrite()) {
+            statement = new CopyColumnRewriteStatement(database, catalogName, schemaName, tableName, first.getFromName(), first.getFromType(), first.getToName(), first.getToType());
+        } else if (chunkSize != null && !isServerParallel(database)) {
+            CopyColumnChunkedStatement chunked = new CopyColumnChunkedStatement(database, catalogName, schemaName, tableName, first.getFromName(), first.getFromType(), first.getToName(), first.getToType(), chunkSize);
+            // without changeSet validation fails
+            if (Boolean.TRUE.equals(resumable) && getChangeSet() != null) {
+                chunked.setCheckpoint(new CopyColumnCheckpoint(database, getChangeSet().getId(), getChangeSet().getAuthor(), tableName, first.getToName()));
+            }
+            configureChunks(chunked, database, columns);
+            statement = chunked.setSkipUnchanged(Boolean.TRUE.equals(skipUnchanged));
+            statement.setSourceTableName(sourceTableName).setJoinColumns(joinColumns);
+        } else {
+            statement = new CopyColumnStatement(catalogName, schemaName, tableName, first.getFromName(), first.getFromType(), first.getToName(), first.getToType()) //
+                    .setSkipUnchanged(Boolean.TRUE.equals(skipUnchanged)) //
+                    .setLobStreaming(Boolean.TRUE.equals(lobStreaming)) //
+                    .setSourceTableName(sourceTableName) //
+                    .setJoinColumns(joinColumns);
+            if (isServerParallel(database)) {
+                statement.setParallelDegree(parallelDegree).setChunkSize(chunkSize);
+            }
+        }
+        columns.stream().skip(1).forEach(statement::addColumn);
+        List<SqlStatement> statements = new ArrayList<>();
+        boolean trigger = Boolean.TRUE.equals(online) && CopyColumnTriggerGenerator.isSupported(database);
+        if (trigger) {
+            // the trigger keeps in sync rows written while the existing ones are backfilled
+            statements.add(new CopyColumnTriggerStatement(catalogName, schemaName, tableName, columns, false));
+        }
+        statements.add(statement);
+        if (trigger) {
+            CopyColumnTriggerStatement dropTrigger = new CopyColumnTriggerStatement(catalogName, schemaName, tableName, columns, true);
+            // a resumable copy needs the trigger to keep in sync the committed ranges until it is resumed
+            if (statement instanceof CopyColumnChunkedStatement && ((CopyColumnChunkedStatement) statement).getCheckpoint() == null) {
+                ((CopyColumnChunkedStatement) statement).setDropTrigger(dropTrigger);
+            }
+            statements.add(dropTrigger);
+        }
+        if (Boolean.TRUE.equals(verify)) {
+            CopyColumnVerifyStatement check = new CopyColumnVerifyStatement(database, catalogName, schemaName, tableName, first.getFromName(), first.getFromType(), first.getToName(), first.getToType(), //
+                    chunkSize != null ? chunkSize : VERIFY_CHUNK_SIZE);
+            check.setParallelism(parallelism != null ? parallelism : 1);
+            columns.stream().skip(1).forEach(check::addColumn);
+            statements.add(check);
+        }
+        return statements.toArray(new SqlStatement[0]);
+    }
+
+    private void configureChunks(CopyColumnChunkedStatement chunked, Database database, List<CopyColumnConfig> columns) {
+        chunked.setParallelism(parallelism != null ? parallelism : 1);
+        if (maxRowsPerSecond != null || maxBatchesPerSecond != null) {
+            chunked.setThrottle(new Throttle(maxRowsPerSecond, maxBatchesPerSecond));
+        }
+        if (maxReplicationLag != null) {
+            String query = lagQuery != null ? lagQuery : ReplicationLagController.getDefaultLagQuery(database);
+            chunked.setLagController(new ReplicationLagController(query, maxReplicationLag, chunkSize));
+        }
+        if (Boolean.TRUE.equals(lockBackoff)) {
+            chunked.setLockBackoff(getBackoff(database));
+        }
+        chunked.setProgress(new CopyProgress(tableName + " " + columns, ExtensionConfiguration.PROGRESS_INTERVAL.getCurrentValue(), CopyProgress.findListeners()));
+    }
+
+    /**
+     * Returns the part of the confirmation message that reports how many
+     * times the copy paused to release blocked sessions.
+     *
+     * @return the message suffix, empty if the copy never paused
+     */
+    protected String getBackoffMessage() {
+        int pauses = backoff != null ? backoff.getPauses() : 0;
+        return pauses > 0 ? ", paused " + pauses + " times to release blocked sessions" : "";
+    }
+
+    /*
+     * Statements are generated more than once (validation, execution) the
+     * same instance collects the pauses of the executed one.
+     */
+    private LockBackoff getBackoff(Database database) {
+        if (backoff == null) {
+            backoff = new LockBackoff(LockBackoff.getDefaultQuery(database), //
+                    ExtensionConfiguration.MAX_BLOCKED_SESSIONS.getCurrentValue(), //
+                    ExtensionConfiguration.LOCK_BACKOFF_PAUSE.getCurrentValue());
+        }
+        return backoff;
+    }
+
+    private boolean isRewrite() {
+        return STRATEGY_REWRITE.equals(strategy);
+    }
+
+    /*
+     * On Oracle the copy could be parallelized server side using parallel DML
+     * or DBMS_PARALLEL_EXECUTE when chunked.
+     */
+    private boolean isServerParallel(Database database) {
+        return parallelDegree != null && database instanceof OracleDatabase;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.ext.nfalco79.util.StringUtils;
+
+/**
+ * Immutable lookup of the SQL expressions that convert a value from a type to
+ * another type, keyed by database short name, source type and target type
+ * (without params).
+ * <p>
+ * The registry is built once with the built-in rules followed by the rules of
+ * all {@link ConversionRuleProvider}s, so a later rule for the same key
+ * replaces a built-in one. For a database the more specific rule wins: exact
+ * types, then any source type, then any target type. Rules for a database are
+ * looked up before the ones for {@value ConversionRule#ANY} database.
+ *
+ * @author Nikolas Falco
+ */
+public final class ConversionRegistry {
+
+    private static final List<String> CHAR_TYPES = Arrays.asList("VARCHAR", "NVARCHAR", "VARCHAR2", "NVARCHAR2", "CHAR");
+    private static final List<String> NUMERIC_TYPES = Arrays.asList("BIGINT", "NUMERIC", "INTEGER", "NVARCHAR2", "DECIMAL");
+    private static final String ORACLE = "oracle";
+    private static final String POSTGRES = "postgresql";
+    private static final String CAST_TO_TYPE = "CAST(" + ConversionRule.SOURCE + " AS " + ConversionRule.TO_TYPE + ")";
+
+    private static final Map<String, String> NORMALIZED_TYPES = new ConcurrentHashMap<>();
+    private static final Map<String, String> UPPER_TYPES = new ConcurrentHashMap<>();
+    private static volatile ConversionRegistry instance; // NOSONAR
+
+    private final Map<String, Map<String, Map<String, Template>>> rules;
+
+    /**
+     * Builds a registry of the given rules.
+     *
+     * @param rules
+     *            the rules, for the same key the last one wins
+     */
+    public ConversionRegistry(List<ConversionRule> rules) {
+        Map<String, Map<String, Map<String, Template>>> byDatabase = new HashMap<>();
+        for (ConversionRule rule : rules) {
+            byDatabase.computeIfAbsent(rule.getDatabase().toLowerCase(Locale.ROOT), k -> new HashMap<>()) //
+                    .computeIfAbsent(normalizeRuleType(rule.getFromType()), k -> new HashMap<>()) //
+                    .put(normalizeRuleType(rule.getToType()), new Template(rule.getTemplate()));
+        }
+        for (Map<String, Map<String, Template>> byFrom : byDatabase.values()) {
+            byFrom.replaceAll((from, byTo) -> Collections.unmodifiableMap(byTo));
+        }
+        byDatabase.replaceAll((db, byFrom) -> Collections.unmodifiableMap(byFrom));
+        this.rules = Collections.unmodifiableMap(byDatabase);
+    }
+
+    /**
+     * Returns the registry of the built-in rules and of the rules of the
+     * registered providers.
+     *
+     * @return the shared registry
+     */
+    public static ConversionRegistry getInstance() {
+        ConversionRegistry registry = instance;
+        if (registry == null) {
+            synchronized (ConversionRegistry.class) {
+                registry = instance;
+                if (registry == null) {
+                    List<ConversionRule> allRules = new ArrayList<>(getBuiltinRules());
+                    for (ConversionRuleProvider provider : Scope.getCurrentScope().getServiceLocator().findInstances(ConversionRuleProvider.class)) {
+                        allRules.addAll(provider.getRules());
+                    }
+                    registry = new ConversionRegistry(allRules);
+                    instance = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Returns the type in upper case without params, values are cached.
+     *
+     * @param type
+     *            the type like {@code varchar(255)}
+     * @return the normalized type like {@code VARCHAR}
+     */
+    public static String normalize(String type) {
+        return NORMALIZED_TYPES.computeIfAbsent(type, t -> StringUtils.removeParam(t).toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the SQL expression that converts the source value to the target
+     * type.
+     *
+     * @param database
+     *            the target database
+     * @param fromType
+     *            the type of the source value
+     * @param toType
+     *            the target type
+     * @param source
+     *            the SQL expression of the source value
+     * @return the converted value, the source value if no conversion is needed
+     *         or known
+     */
+    public String convert(Database database, String fromType, String toType, String source) {
+        String toTypeUpper = UPPER_TYPES.computeIfAbsent(toType, t -> t.toUpperCase(Locale.ROOT));
+        if (toTypeUpper.equalsIgnoreCase(fromType)) {
+            return source;
+        }
+
+        String from = normalize(fromType);
+        String to = normalize(toType);
+        Template template = find(database.getShortName(), from, to);
+        if (template == null) {
+            template = find(ConversionRule.ANY, from, to);
+        }
+        return template != null ? template.apply(source, toTypeUpper, to) : source;
+    }
+
+    private Template find(String database, String from, String to) {
+        Map<String, Map<String, Template>> byFrom = rules.get(database);
+        if (byFrom == null) {
+            return null;
+        }
+        Template template = get(byFrom, from, to);
+        if (template == null) {
+            template = get(byFrom, ConversionRule.ANY, to);
+        }
+        if (template == null) {
+            template = get(byFrom, from, ConversionRule.ANY);
+        }
+        return template;
+    }
+
+    private static Template get(Map<String, Map<String, Template>> byFrom, String from, String to) {
+        Map<String, Template> byTo = byFrom.get(from);
+        return byTo != null ? byTo.get(to) : null;
+    }
+
+    private static String normalizeRuleType(String type) {
+        return ConversionRule.ANY.equals(type) ? type : normalize(type);
+    }
+
+    /**
+     * Returns the conversions supported out of the box.
+     *
+     * @return the list of built-in rules
+     */
+    public static List<ConversionRule> getBuiltinRules() {
+        List<ConversionRule> builtin = new ArrayList<>();
+        for (String from : CHAR_TYPES) {
+            for (String to : NUMERIC_TYPES) {
+                builtin.add(new ConversionRule(ConversionRule.ANY, from, to, CAST_TO_TYPE));
+                builtin.add(new ConversionRule(POSTGRES, from, to, "CAST(" + ConversionRule.SOURCE + " AS " + ("NUMERIC".equals(to) ? "DOUBLE PRECISION" : ConversionRule.TO_BASE_TYPE) + ")"));
+            }
+        }
+
+        builtin.add(new ConversionRule(ORACLE, ConversionRule.ANY, "CLOB", "TO_CLOB(" + ConversionRule.SOURCE + ")"));
+        String[][] oracleRaw = { //
+                { "BINARY_DOUBLE", "CAST_FROM_BINARY_DOUBLE", "CAST_TO_BINARY_DOUBLE" }, //
+                { "BINARY_FLOAT", "CAST_FROM_BINARY_FLOAT", "CAST_TO_BINARY_FLOAT" }, //
+                { "BINARY_INTEGER", "CAST_FROM_BINARY_INTEGER", "CAST_TO_BINARY_INTEGER" }, //
+                { "NUMBER", "CAST_FROM_NUMBER", "CAST_TO_NUMBER" }, //
+                { "VARCHAR2", "CAST_TO_RAW", "CAST_TO_VARCHAR2" }, //
+                { "NVARCHAR2", null, "CAST_TO_NVARCHAR2" } };
+        for (String[] raw : oracleRaw) {
+            if (raw[1] != null) {
+                builtin.add(new ConversionRule(ORACLE, raw[0], "BLOB", "UTL_RAW." + raw[1] + "(" + ConversionRule.SOURCE + ")"));
+            }
+            builtin.add(new ConversionRule(ORACLE, "BLOB", raw[0], "UTL_RAW." + raw[2] + "(" + ConversionRule.SOURCE + ")"));
+        }
+
+        builtin.add(new ConversionRule(POSTGRES, ConversionRule.ANY, "BLOB", "CAST(" + ConversionRule.SOURCE + " AS BYTEA)"));
+        return builtin;
+    }
+
+    /*
+     * A template split at its placeholders, so applying it only appends.
+     */
+    private static final class Template {
+        private final String[] parts;
+
+        Template(String template) {
+            List<String> tokens = new ArrayList<>();
+            int start = 0;
+            int index;
+            while ((index = template.indexOf("${", start)) != -1) {
+                int end = template.indexOf('}', index);
+                if (end == -1) {
+                    break;
+                }
+                tokens.add(template.substring(start, index));
+                tokens.add(template.substring(index, end + 1));
+                start = end + 1;
+            }
+            tokens.add(template.substring(start));
+            this.parts = tokens.toArray(new String[0]);
+        }
+
+        String apply(String source, String toType, String toBaseType) {
+            StringBuilder sb = new StringBuilder(source.length() + 32);
+            for (int i = 0; i < parts.length; i++) {
+                // odd parts are placeholders
+                if (i % 2 == 0) {
+                    sb.append(parts[i]);
+                } else if (ConversionRule.SOURCE.equals(parts[i])) {
+                    sb.append(source);
+                } else if (ConversionRule.TO_TYPE.equals(parts[i])) {
+                    sb.append(toType);
+                } else if (ConversionRule.TO_BASE_TYPE.equals(parts[i])) {
+                    sb.append(toBaseType);
+                } else {
+                    sb.append(parts[i]);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+/**
+ * A rule that converts a value of a type to another type on a database.
+ * <p>
+ * The template is the SQL expression of the converted value where
+ * {@value #SOURCE} is replaced by the source value, {@value #TO_TYPE} by the
+ * target type and {@value #TO_BASE_TYPE} by the target type without params.
+ * Database (short name), source and target types could be {@value #ANY} to
+ * match any value, types are matched without params.
+ *
+ * @author Nikolas Falco
+ */
+public class ConversionRule {
+
+    public static final String ANY = "*";
+    public static final String SOURCE = "${source}";
+    public static final String TO_TYPE = "${toType}";
+    public static final String TO_BASE_TYPE = "${toBaseType}";
+
+    private final String database;
+    private final String fromType;
+    private final String toType;
+    private final String template;
+
+    /**
+     * Default constructor.
+     *
+     * @param database
+     *            the short name of the database or {@value #ANY}
+     * @param fromType
+     *            the source type or {@value #ANY}
+     * @param toType
+     *            the target type or {@value #ANY}
+     * @param template
+     *            the SQL expression of the converted value
+     */
+    public ConversionRule(String database, String fromType, String toType, String template) {
+        this.database = database;
+        this.fromType = fromType;
+        this.toType = toType;
+        this.template = template;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public String getFromType() {
+        return fromType;
+    }
+
+    public String getToType() {
+        return toType;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    @Override
+    public String toString() {
+        return database + ": " + fromType + " to " + toType + " as " + template;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.List;
+
+/**
+ * Provides additional type conversions to the copy column changes.
+ * <p>
+ * Implementations are discovered with the liquibase service locator
+ * (META-INF/services/liquibase.ext.nfalco79.ConversionRuleProvider), their
+ * rules take precedence over the built-in ones.
+ *
+ * @author Nikolas Falco
+ */
+public interface ConversionRuleProvider {
+
+    /**
+     * Returns the conversion rules to register.
+     *
+     * @return a list of rules
+     */
+    List<ConversionRule> getRules();
+}
@@ -15,46 +15,19 @@
  */
 package liquibase.ext.nfalco79;
 
-import liquibase.change.AbstractChange;
+import java.util.Collections;
+import java.util.List;
+
 import liquibase.change.DatabaseChange;
-import liquibase.database.Database;
-import liquibase.statement.SqlStatement;
 
 @DatabaseChange(name = "copyColumn", description = "Custom Copy Column", priority = 1)
-public class CopyColumnChange extends AbstractChange {
+public class CopyColumnChange extends AbstractCopyColumnChange {
 
-    private String catalogName;
-    private String schemaName;
-    private String tableName;
     private String fromName;
     private String fromType;
     private String toName;
     private String toType;
 
-    public String getCatalogName() {
-        return catalogName;
-    }
-
-    public void setCatalogName(String catalogName) {
-        this.catalogName = catalogName;
-    }
-
-    public String getSchemaName() {
-        return schemaName;
-    }
-
-    public void setSchemaName(String schemaName) {
-        this.schemaName = schemaName;
-    }
-
-    public String getTableName() {
-        return tableName;
-    }
-
-    public void setTableName(String tableName) {
-        this.tableName = tableName;
-    }
-
     public String getFromName() {
         return fromName;
     }
@@ -89,13 +62,11 @@ public class CopyColumnChange extends AbstractChange {
 
     @Override
     public String getConfirmationMessage() {
-        return "Column " + fromName + "(" + fromType + ") copied to column " + toName + "(" + toType + ")";
+        return "Column " + fromName + "(" + fromType + ") copied to column " + toName + "(" + toType + ")" + getBackoffMessage();
     }
 
     @Override
-    public SqlStatement[] generateStatements(Database database) {
-        return new SqlStatement[] {
-                new CopyColumnStatement(catalogName, schemaName, tableName, fromName, fromType, toName, toType)
-        };
+    protected List<CopyColumnConfig> getCopyColumns() {
+        return Collections.singletonList(new CopyColumnConfig(fromName, fromType, toName, toType));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.datatype.DataTypeFactory;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.ExecutorService;
+import liquibase.snapshot.InvalidExampleException;
+import liquibase.snapshot.SnapshotGeneratorFactory;
+import liquibase.statement.NotNullConstraint;
+import liquibase.statement.core.CreateTableStatement;
+import liquibase.structure.core.Table;
+
+/**
+ * Keeps track of the key ranges still to copy of a chunked copy, so that a
+ * failed copy could resume from the last committed chunk.
+ * <p>
+ * Each range of a copy is a row of the checkpoint table (created on demand
+ * in the liquibase schema) identified by changeSet id and author, table name,
+ * column name and range number. The last copied key is updated in the same
+ * transaction of the copied chunk and the row is removed when the range
+ * completes. Keys are stored in the textual form of
+ * {@link RowKey#format(Object[])}.
+ *
+ * @author Nikolas Falco
+ */
+public class CopyColumnCheckpoint {
+
+    private static final String WHERE_COPY = " WHERE ID = ? AND AUTHOR = ? AND TABLE_NAME = ? AND COLUMN_NAME = ?";
+
+    private final Database database;
+    private final String id;
+    private final String author;
+    private final String tableName;
+    private final String columnName;
+
+    public CopyColumnCheckpoint(Database database, String id, String author, String tableName, String columnName) {
+        this.database = database;
+        this.id = id;
+        this.author = author;
+        this.tableName = tableName;
+        this.columnName = columnName;
+    }
+
+    /**
+     * Creates the checkpoint table if it does not exists.
+     *
+     * @throws DatabaseException
+     *             in case of failure
+     */
+    public void init() throws DatabaseException {
+        String name = ExtensionConfiguration.CHECKPOINT_TABLE_NAME.getCurrentValue();
+        Table example = new Table(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.correctObjectName(name, Table.class));
+        try {
+            if (SnapshotGeneratorFactory.getInstance().has(example, database)) {
+                return;
+            }
+        } catch (InvalidExampleException e) {
+            throw new DatabaseException(e);
+        }
+
+        DataTypeFactory types = DataTypeFactory.getInstance();
+        CreateTableStatement createTable = new CreateTableStatement(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), name) //
+                .addColumn("ID", types.fromDescription("VARCHAR(255)", database), new NotNullConstraint()) //
+                .addColumn("AUTHOR", types.fromDescription("VARCHAR(255)", database), new NotNullConstraint()) //
+                .addColumn("TABLE_NAME", types.fromDescription("VARCHAR(255)", database), new NotNullConstraint()) //
+                .addColumn("COLUMN_NAME", types.fromDescription("VARCHAR(255)", database), new NotNullConstraint()) //
+                .addColumn("RANGE_NO", types.fromDescription("INT", database), new NotNullConstraint()) //
+                .addColumn("LAST_KEY", types.fromDescription("VARCHAR(1000)", database)) //
+                .addColumn("UPPER_KEY", types.fromDescription("VARCHAR(1000)", database));
+        Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database).execute(createTable);
+        database.commit();
+    }
+
+    /**
+     * Returns the ranges not yet completed by a previous run.
+     *
+     * @param connection
+     *            the connection where run the query
+     * @param key
+     *            the key of the ranges
+     * @return the pending ranges sorted by range number, empty if there is
+     *         nothing to resume
+     * @throws SQLException
+     *             in case of failure
+     */
+    public Map<Integer, KeyRange> load(Connection connection, RowKey key) throws SQLException {
+        Map<Integer, KeyRange> ranges = new TreeMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT RANGE_NO, LAST_KEY, UPPER_KEY FROM " + getTableName() + WHERE_COPY)) {
+            bindCopy(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ranges.put(rs.getInt(1), new KeyRange(key.parse(rs.getString(2)), key.parse(rs.getString(3))));
+                }
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Stores the ranges of a new copy.
+     *
+     * @param connection
+     *            the connection where run the statement
+     * @param key
+     *            the key of the ranges
+     * @param ranges
+     *            the ranges to copy
+     * @throws SQLException
+     *             in case of failure
+     */
+    public void save(Connection connection, RowKey key, Map<Integer, KeyRange> ranges) throws SQLException {
+        String sql = "INSERT INTO " + getTableName() + " (ID, AUTHOR, TABLE_NAME, COLUMN_NAME, RANGE_NO, LAST_KEY, UPPER_KEY) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (Entry<Integer, KeyRange> range : ranges.entrySet()) {
+                bindCopy(stmt);
+                stmt.setInt(5, range.getKey());
+                stmt.setObject(6, key.format(range.getValue().getLower()), Types.VARCHAR);
+                stmt.setObject(7, key.format(range.getValue().getUpper()), Types.VARCHAR);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Records the last copied key of a range. It must be called before commit
+     * the chunk.
+     *
+     * @param connection
+     *            the connection used to copy the chunk
+     * @param key
+     *            the key of the range
+     * @param range
+     *            the range number
+     * @param lastKey
+     *            the upper bound of the copied chunk
+     * @throws SQLException
+     *             in case of failure
+     */
+    public void update(Connection connection, RowKey key, int range, Object[] lastKey) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("UPDATE " + getTableName() + " SET LAST_KEY = ?" + WHERE_COPY + " AND RANGE_NO = ?")) {
+            stmt.setString(1, key.format(lastKey));
+            bindCopy(stmt, 2);
+            stmt.setInt(6, range);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Removes a completed range. It must be called before commit the last
+     * chunk of the range.
+     *
+     * @param connection
+     *            the connection used to copy the chunk
+     * @param range
+     *            the range number
+     * @throws SQLException
+     *             in case of failure
+     */
+    public void complete(Connection connection, int range) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM " + getTableName() + WHERE_COPY + " AND RANGE_NO = ?")) {
+            bindCopy(stmt);
+            stmt.setInt(5, range);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Removes all ranges of this copy.
+     *
+     * @param connection
+     *            the connection where run the statement
+     * @throws SQLException
+     *             in case of failure
+     */
+    public void clear(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM " + getTableName() + WHERE_COPY)) {
+            bindCopy(stmt);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void bindCopy(PreparedStatement stmt) throws SQLException {
+        bindCopy(stmt, 1);
+    }
+
+    private void bindCopy(PreparedStatement stmt, int index) throws SQLException {
+        stmt.setString(index, id);
+        stmt.setString(index + 1, author);
+        stmt.setString(index + 2, tableName);
+        stmt.setString(index + 3, columnName);
+    }
+
+    protected String getTableName() {
+        String name = ExtensionConfiguration.CHECKPOINT_TABLE_NAME.getCurrentValue();
+        return database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), name);
+    }
+}
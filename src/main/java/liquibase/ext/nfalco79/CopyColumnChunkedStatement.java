@@ -0,0 +1,528 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.PreparedStatementFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.ExecutablePreparedStatement;
+
+/**
+ * Copy a column walking the table by key ranges of {@code chunkSize} rows and
+ * committing after each range, so that lock duration and redo per transaction
+ * are bounded regardless of the table size.
+ * <p>
+ * With a {@code parallelism} greater than one the key space is split in as
+ * many disjoint ranges, each one copied by a worker thread on its own
+ * connection. The work done by the changeSet before the copy is committed
+ * first, otherwise the workers would wait for its locks.
+ * <p>
+ * A {@link Throttle} limits the rows and chunks copied per second by all
+ * workers, a {@link ReplicationLagController} adapts the chunk size to keep
+ * the replication lag under a ceiling and a {@link LockBackoff} pauses the
+ * copy when its uncommitted chunk makes other sessions wait.
+ * <p>
+ * With a source table the chunks are ranges of keys of the target table
+ * joined to the source one.
+ * <p>
+ * The progress of the copy is reported by a {@link CopyProgress} that
+ * estimates the total rows from the catalog statistics.
+ * <p>
+ * When a {@link CopyColumnCheckpoint} is given the progress of each range is
+ * recorded with the chunk that is committed, a new execution resumes the
+ * ranges left by a previous failed one.
+ * <p>
+ * The trigger of an online copy is dropped when the copy fails, unless the
+ * copy is resumable because the trigger keeps in sync rows of the committed
+ * ranges until the next execution.
+ *
+ * @author Nikolas Falco
+ */
+public class CopyColumnChunkedStatement extends CopyColumnStatement implements ExecutablePreparedStatement {
+
+    private final Database database;
+    private int parallelism = 1;
+    private CopyColumnCheckpoint checkpoint;
+    private Throttle throttle;
+    private ReplicationLagController lagController;
+    private LockBackoff lockBackoff;
+    private CopyProgress progress;
+    private CopyColumnTriggerStatement dropTrigger;
+
+    public CopyColumnChunkedStatement(Database database, String catalogName, String schemaName, String tableName, String fromName, String fromType, String toName, String toType, int chunkSize) { // NOSONAR
+        super(catalogName, schemaName, tableName, fromName, fromType, toName, toType);
+        this.database = database;
+        setChunkSize(chunkSize);
+    }
+
+    protected CopyColumnChunkedStatement(Database database, String catalogName, String schemaName, String tableName, String fromName, String fromType, String toName, String toType) { // NOSONAR
+        super(catalogName, schemaName, tableName, fromName, fromType, toName, toType);
+        this.database = database;
+    }
+
+    protected Database getDatabase() {
+        return database;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public CopyColumnChunkedStatement setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public CopyColumnCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    public CopyColumnChunkedStatement setCheckpoint(CopyColumnCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        return this;
+    }
+
+    public Throttle getThrottle() {
+        return throttle;
+    }
+
+    public CopyColumnChunkedStatement setThrottle(Throttle throttle) {
+        this.throttle = throttle;
+        return this;
+    }
+
+    public ReplicationLagController getLagController() {
+        return lagController;
+    }
+
+    public CopyColumnChunkedStatement setLagController(ReplicationLagController lagController) {
+        this.lagController = lagController;
+        return this;
+    }
+
+    public LockBackoff getLockBackoff() {
+        return lockBackoff;
+    }
+
+    public CopyColumnChunkedStatement setLockBackoff(LockBackoff lockBackoff) {
+        this.lockBackoff = lockBackoff;
+        return this;
+    }
+
+    public CopyProgress getProgress() {
+        return progress;
+    }
+
+    public CopyColumnChunkedStatement setProgress(CopyProgress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    public CopyColumnTriggerStatement getDropTrigger() {
+        return dropTrigger;
+    }
+
+    /**
+     * Sets the statement that drops the trigger of an online copy if the copy
+     * fails.
+     *
+     * @param dropTrigger
+     *            the drop trigger statement
+     * @return this statement
+     */
+    public CopyColumnChunkedStatement setDropTrigger(CopyColumnTriggerStatement dropTrigger) {
+        this.dropTrigger = dropTrigger;
+        return this;
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        try {
+            RowKey key = RowKey.lookup(database, getCatalogName(), getSchemaName(), getTableName());
+            if (checkpoint != null) {
+                checkpoint.init();
+            }
+            long rows = copy(connection, key);
+            Scope.getCurrentScope().getLog(getClass()).info(rows + " rows copied " + getColumns() + " of table " + getTableName());
+        } catch (SQLException e) {
+            DatabaseException failure = new DatabaseException(e);
+            dropTrigger(connection, failure);
+            throw failure;
+        } catch (DatabaseException e) {
+            dropTrigger(connection, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the trigger of a failed online copy, otherwise it would keep
+     * rewriting the target columns on each write of the application. The
+     * drop is committed because the changeSet transaction is rolled back.
+     *
+     * @param connection
+     *            the changelog connection
+     * @param failure
+     *            the failure of the copy where add a failure of the drop
+     */
+    protected void dropTrigger(Connection connection, DatabaseException failure) {
+        if (dropTrigger == null) {
+            return;
+        }
+        rollbackQuietly(connection);
+        try (Statement stmt = connection.createStatement()) {
+            for (Sql sql : SqlGeneratorFactory.getInstance().generateSql(dropTrigger, database)) {
+                stmt.execute(sql.toSql());
+            }
+            connection.commit();
+            Scope.getCurrentScope().getLog(getClass()).info("Dropped trigger " + dropTrigger.getTriggerName() + " of failed copy of " + getTableName());
+        } catch (SQLException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Copy all rows of the table, resuming the ranges of a previous execution
+     * if any.
+     *
+     * @param connection
+     *            the changelog connection
+     * @param key
+     *            the key used to split the table in ranges
+     * @return the number of copied rows
+     * @throws SQLException
+     *             in case of failure
+     * @throws DatabaseException
+     *             if any range fails
+     */
+    protected long copy(Connection connection, RowKey key) throws SQLException, DatabaseException {
+        Map<Integer, KeyRange> ranges = checkpoint != null ? checkpoint.load(connection, key) : Collections.emptyMap();
+        if (ranges.isEmpty()) {
+            ranges = split(connection, key, parallelism);
+            if (checkpoint != null) {
+                checkpoint.save(connection, key, ranges);
+                connection.commit();
+            }
+        } else {
+            Scope.getCurrentScope().getLog(getClass()).info("Resume copy of " + getTableName() + " for ranges " + ranges.values());
+        }
+
+        if (throttle != null) {
+            throttle.start();
+        }
+        if (progress != null) {
+            progress.setEstimatedRows(TableStatistics.estimateRows(connection, database, getCatalogName(), getSchemaName(), getTableName())).start();
+        }
+        long rows;
+        try {
+            if (parallelism > 1 && ranges.size() > 1) {
+                // workers would wait forever on the locks of the changeSet work
+                // still open here, like the DDL of the target column or the
+                // trigger of an online copy
+                connection.commit();
+                rows = copyParallel(key, ranges);
+            } else {
+                rows = 0;
+                for (Entry<Integer, KeyRange> range : ranges.entrySet()) {
+                    rows += copy(connection, key, range.getKey(), range.getValue());
+                }
+            }
+        } finally {
+            if (progress != null) {
+                progress.stop();
+            }
+        }
+
+        if (checkpoint != null) {
+            checkpoint.clear(connection);
+            connection.commit();
+        }
+        return rows;
+    }
+
+    /**
+     * Copy all rows of the given range one chunk at time.
+     *
+     * @param connection
+     *            the connection where run the copy
+     * @param key
+     *            the key used to split the table in chunks
+     * @param rangeNo
+     *            the range number
+     * @param range
+     *            the range of keys to copy
+     * @return the number of copied rows
+     * @throws SQLException
+     *             in case of failure
+     */
+    protected long copy(Connection connection, RowKey key, int rangeNo, KeyRange range) throws SQLException {
+        long rows = 0;
+        Object[] lower = range.getLower();
+        Object[] upper;
+        do {
+            long size = lagController != null ? lagController.getChunkSize() : getChunkSize();
+            if (lockBackoff != null) {
+                size = lockBackoff.adjust(size);
+            }
+            upper = nextBoundary(connection, key, lower, range.getUpper(), size);
+            int chunkRows = copyRange(connection, key, lower, upper != null ? upper : range.getUpper());
+            rows += chunkRows;
+            // locks are held only until commit, look for waiters before release them
+            boolean blocking = lockBackoff != null && lockBackoff.check(connection);
+            if (checkpoint != null) {
+                if (upper != null) {
+                    checkpoint.update(connection, key, rangeNo, upper);
+                } else {
+                    checkpoint.complete(connection, rangeNo);
+                }
+            }
+            connection.commit();
+            afterChunk(connection, chunkRows, blocking);
+            lower = upper;
+        } while (upper != null);
+        return rows;
+    }
+
+    /**
+     * Accounts a committed chunk and waits as long as required by throttle,
+     * replication lag and lock backoff.
+     *
+     * @param connection
+     *            the connection that committed the chunk
+     * @param chunkRows
+     *            the rows of the chunk
+     * @param blocking
+     *            if the chunk blocked other sessions before commit
+     * @throws SQLException
+     *             in case of failure
+     */
+    protected void afterChunk(Connection connection, long chunkRows, boolean blocking) throws SQLException {
+        if (progress != null) {
+            progress.add(chunkRows);
+        }
+        if (throttle != null) {
+            throttle.acquire(chunkRows);
+        }
+        if (lagController != null) {
+            lagController.afterChunk(connection);
+        }
+        if (blocking) {
+            lockBackoff.pause();
+        }
+    }
+
+    /**
+     * Copy the given ranges concurrently, each worker thread has a dedicated
+     * connection and takes the next range to copy as soon as it completes
+     * the previous one.
+     *
+     * @param key
+     *            the key used to split the table in ranges
+     * @param ranges
+     *            the ranges to copy
+     * @return the number of copied rows
+     * @throws DatabaseException
+     *             if a worker connection could not be opened or any range
+     *             fails, the message reports all failed ranges
+     */
+    protected long copyParallel(RowKey key, Map<Integer, KeyRange> ranges) throws DatabaseException {
+        int workerCount = Math.min(parallelism, ranges.size());
+        Queue<Entry<Integer, KeyRange>> pending = new ConcurrentLinkedQueue<>(ranges.entrySet());
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        AtomicLong rows = new AtomicLong();
+
+        List<Connection> workers = new ArrayList<>(workerCount);
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(openConnection());
+            }
+
+            List<Future<?>> results = new ArrayList<>(workerCount);
+            for (Connection worker : workers) {
+                results.add(executor.submit(() -> {
+                    Entry<Integer, KeyRange> range;
+                    while ((range = pending.poll()) != null) {
+                        try {
+                            rows.addAndGet(copy(worker, key, range.getKey(), range.getValue()));
+                        } catch (SQLException e) {
+                            String failure = "range " + range.getValue() + ": " + e.getMessage();
+                            Scope.getCurrentScope().getLog(getClass()).severe("Copy of " + getTableName() + " failed for " + failure, e);
+                            failures.add(failure);
+                            rollbackQuietly(worker);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+
+            if (!failures.isEmpty()) {
+                throw new DatabaseException("Copy of " + getTableName() + " failed for " + failures.size() + " of " + ranges.size() + " ranges, " + String.join("; ", failures));
+            }
+            return rows.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } catch (ExecutionException e) {
+            throw new DatabaseException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (Connection worker : workers) {
+                closeQuietly(worker);
+            }
+        }
+    }
+
+    /**
+     * Split the key space in at most the given number of disjoint ranges of
+     * about the same number of rows.
+     *
+     * @param connection
+     *            the connection where run the queries
+     * @param key
+     *            the key used to split the table
+     * @param parts
+     *            the number of ranges
+     * @return the ranges by number, the first and last are unbounded
+     * @throws SQLException
+     *             in case of failure
+     */
+    protected Map<Integer, KeyRange> split(Connection connection, RowKey key, int parts) throws SQLException {
+        return getKeySpace().split(connection, key, parts);
+    }
+
+    /**
+     * Opens a new connection to the same database of the changelog.
+     * <p>
+     * The password is taken from the liquibase configuration because the
+     * changelog connection does not expose it.
+     *
+     * @return a new connection with auto commit disabled
+     * @throws DatabaseException
+     *             if the connection could not be opened
+     */
+    protected Connection openConnection() throws DatabaseException {
+        return openConnection(database);
+    }
+
+    /*
+     * Opens a worker connection to the database of the changelog.
+     */
+    static Connection openConnection(Database database) throws DatabaseException {
+        JdbcConnection connection = (JdbcConnection) database.getConnection();
+        String username = ExtensionConfiguration.WORKER_USERNAME.getCurrentValue();
+        if (username == null) {
+            username = connection.getConnectionUserName();
+        }
+        String password = ExtensionConfiguration.WORKER_PASSWORD.getCurrentValue();
+
+        JdbcConnection worker = (JdbcConnection) DatabaseFactory.getInstance().openConnection(connection.getURL(), username, password, null, Scope.getCurrentScope().getResourceAccessor());
+        worker.setAutoCommit(false);
+        return worker.getUnderlyingConnection();
+    }
+
+    protected void rollbackQuietly(Connection connection) {
+        try {
+            // some drivers commit pending work on close
+            connection.rollback();
+        } catch (SQLException e) { // NOSONAR
+            // nothing to do
+        }
+    }
+
+    protected void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) { // NOSONAR
+            // nothing to do
+        }
+    }
+
+    /**
+     * Returns the upper bound (included) of the chunk that starts after the
+     * given lower bound.
+     *
+     * @param connection
+     *            the connection where run the query
+     * @param key
+     *            the key used to split the table in chunks
+     * @param lower
+     *            the lower bound (excluded), {@code null} for the first chunk
+     * @param limit
+     *            the upper bound (included) that chunk can not exceed,
+     *            {@code null} if unbounded
+     * @param size
+     *            the number of rows of the chunk
+     * @return the upper bound of the chunk or {@code null} if less than
+     *         {@code size} rows remain
+     * @throws SQLException
+     *             in case of failure
+     */
+    protected Object[] nextBoundary(Connection connection, RowKey key, Object[] lower, Object[] limit, long size) throws SQLException {
+        return getKeySpace().nextBoundary(connection, key, lower, limit, size);
+    }
+
+    protected int copyRange(Connection connection, RowKey key, Object[] lower, Object[] upper) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(getRangeSql(key, lower != null, upper != null))) {
+            key.bindRange(stmt, 1, lower, upper);
+            return stmt.executeUpdate();
+        }
+    }
+
+    protected String getBoundarySql(RowKey key, boolean lowerBound, boolean upperBound, long size) {
+        return getKeySpace().getBoundarySql(key, lowerBound, upperBound, size);
+    }
+
+    private KeySpace getKeySpace() {
+        return new KeySpace(database, getCatalogName(), getSchemaName(), getTableName());
+    }
+
+    protected String getRangeSql(RowKey key, boolean lowerBound, boolean upperBound) {
+        CopyColumnStatement range = new CopyColumnStatement(getCatalogName(), getSchemaName(), getTableName(), getFromName(), getFromType(), getToName(), getToType()) //
+                .setSourceTableName(getSourceTableName()) //
+                .setJoinColumns(getJoinColumns()) //
+                .setSkipUnchanged(isSkipUnchanged());
+        // the target table is aliased when joined to the source table
+        RowKey rangeKey = getSourceTableName() == null ? key : key.qualify(CopyColumnGenerator.TARGET_ALIAS);
+        range.setWhereClause(rangeKey.getRangePredicate(lowerBound, upperBound));
+        getColumns().stream().skip(1).forEach(range::addColumn);
+        return SqlGeneratorFactory.getInstance().generateSql(range, database)[0].toSql();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import liquibase.change.ColumnConfig;
+import liquibase.parser.core.ParsedNode;
+import liquibase.parser.core.ParsedNodeException;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * A source column copied to a target column, converting it from its type to
+ * the target type.
+ *
+ * @author Nikolas Falco
+ */
+public class CopyColumnConfig extends ColumnConfig {
+
+    private String fromName;
+    private String fromType;
+    private String toName;
+    private String toType;
+
+    public CopyColumnConfig() {
+    }
+
+    public CopyColumnConfig(String fromName, String fromType, String toName, String toType) {
+        this.fromName = fromName;
+        this.fromType = fromType;
+        this.toName = toName;
+        this.toType = toType;
+    }
+
+    public String getFromName() {
+        return fromName;
+    }
+
+    public CopyColumnConfig setFromName(String fromName) {
+        this.fromName = fromName;
+        return this;
+    }
+
+    public String getFromType() {
+        return fromType;
+    }
+
+    public CopyColumnConfig setFromType(String fromType) {
+        this.fromType = fromType;
+        return this;
+    }
+
+    public String getToName() {
+        return toName;
+    }
+
+    public CopyColumnConfig setToName(String toName) {
+        this.toName = toName;
+        return this;
+    }
+
+    public String getToType() {
+        return toType;
+    }
+
+    public CopyColumnConfig setToType(String toType) {
+        this.toType = toType;
+        return this;
+    }
+
+    @Override
+    public void load(ParsedNode parsedNode, ResourceAccessor resourceAccessor) throws ParsedNodeException {
+        fromName = parsedNode.getChildValue(null, "fromName", String.class);
+        fromType = parsedNode.getChildValue(null, "fromType", String.class);
+        toName = parsedNode.getChildValue(null, "toName", String.class);
+        toType = parsedNode.getChildValue(null, "toType", String.class);
+    }
+
+    @Override
+    public String toString() {
+        return fromName + "(" + fromType + ") to " + toName + "(" + toType + ")";
+    }
+}
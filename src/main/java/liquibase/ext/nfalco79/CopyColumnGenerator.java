@@ -15,26 +15,37 @@
  */
 package liquibase.ext.nfalco79;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import liquibase.database.Database;
+import liquibase.database.core.AbstractDb2Database;
+import liquibase.database.core.H2Database;
+import liquibase.database.core.HsqlDatabase;
+import liquibase.database.core.MSSQLDatabase;
+import liquibase.database.core.MySQLDatabase;
 import liquibase.database.core.OracleDatabase;
 import liquibase.database.core.PostgresDatabase;
 import liquibase.exception.ValidationErrors;
-import liquibase.ext.nfalco79.util.StringUtils;
+import liquibase.sql.SingleLineComment;
 import liquibase.sql.Sql;
 import liquibase.sql.UnparsedSql;
 import liquibase.sqlgenerator.SqlGenerator;
 import liquibase.sqlgenerator.SqlGeneratorChain;
 import liquibase.sqlgenerator.core.AbstractSqlGenerator;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
 
 public class CopyColumnGenerator extends AbstractSqlGenerator<CopyColumnStatement> {
 
+    public static final String TARGET_ALIAS = "t";
+    public static final String SOURCE_ALIAS = "s";
     private static final String CLOB_TYPE = "CLOB";
     private static final String BLOB_TYPE = "BLOB";
     private static final List<String> CHAR_TYPES =  Arrays.asList("VARCHAR", "NVARCHAR", "VARCHAR2", "NVARCHAR2", "CHAR");
-    private static final List<String> NUMERIC_TYPES =  Arrays.asList("BIGINT", "NUMERIC", "INTEGER", "NVARCHAR2", "DECIMAL");
+    private static final List<String> LOB_TYPES =  Arrays.asList(CLOB_TYPE, BLOB_TYPE, "NCLOB");
 
     @Override
     public int getPriority() {
@@ -50,10 +61,12 @@ public class CopyColumnGenerator extends AbstractSqlGenerator<CopyColumnStatemen
     public ValidationErrors validate(CopyColumnStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) {
         ValidationErrors validationErrors = new ValidationErrors();
         validationErrors.checkRequiredField("tableName", statement.getTableName());
-        validationErrors.checkRequiredField("fromName", statement.getFromName());
-        validationErrors.checkRequiredField("fromType", statement.getFromType());
-        validationErrors.checkRequiredField("toName", statement.getToName());
-        validationErrors.checkRequiredField("toType", statement.getToType());
+        for (CopyColumnConfig column : statement.getColumns()) {
+            validationErrors.checkRequiredField("fromName", column.getFromName());
+            validationErrors.checkRequiredField("fromType", column.getFromType());
+            validationErrors.checkRequiredField("toName", column.getToName());
+            validationErrors.checkRequiredField("toType", column.getToType());
+        }
 
         return validationErrors;
     }
@@ -61,84 +74,338 @@ public class CopyColumnGenerator extends AbstractSqlGenerator<CopyColumnStatemen
     @Override
     public Sql[] generateSql(CopyColumnStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) { // NOSONAR
         String tableNameEscaped = database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName());
-        String fromNameEscaped = database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), statement.getFromName());
-        String toNameEscaped = database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), statement.getToName());
-
-        String sql = "UPDATE " + tableNameEscaped + " SET " + toNameEscaped + " = ";
-
-        String srcField = fromNameEscaped;
-
-        String fromType = statement.getFromType().toUpperCase();
-        String toType = statement.getToType().toUpperCase();
-
-        if (!fromType.equals(toType)) {
-            if (CLOB_TYPE.equalsIgnoreCase(toType)) {
-                if (database instanceof OracleDatabase) {
-                    srcField = "TO_CLOB(" + fromNameEscaped + ")";
-                }
-            } else if (BLOB_TYPE.equalsIgnoreCase(toType)) {
-                if (database instanceof OracleDatabase) {
-                    String fun = OracleRawUtil.getToBlobFunction(fromType);
-                    if (fun != null) {
-                        srcField = "UTL_RAW." + fun + "(" + fromNameEscaped + ")";
-                    }
-                } else if (database instanceof PostgresDatabase) {
-                    srcField = "CAST(" + fromNameEscaped + " AS BYTEA)";
-                }
-            } else if (BLOB_TYPE.equalsIgnoreCase(fromType)) {
-                if (database instanceof OracleDatabase) {
-                    String fun = OracleRawUtil.getBlobToFunction(toType);
-                    if (fun != null) {
-                        srcField = "UTL_RAW." + fun + "(" + fromNameEscaped + ")";
-                    }
-                }
-            } else if (CHAR_TYPES.contains(StringUtils.removeParam(fromType))
-                    && NUMERIC_TYPES.contains(StringUtils.removeParam(toType))) {
-                if (database instanceof PostgresDatabase) {
-                    toType = StringUtils.removeParam(toType);
-                    if ("NUMERIC".equals(toType)) {
-                        toType = "DOUBLE PRECISION";
-                    }
-                }
-                srcField = "CAST(" + fromNameEscaped + " AS " + toType + ")";
+
+        if (database instanceof OracleDatabase && statement.isLobStreaming()
+                && statement.getColumns().stream().anyMatch(column -> getLobConversion(column) != null)) {
+            return new Sql[] { new UnparsedSql(getLobStreamingBlock(statement, database), "\n/") };
+        }
+
+        if (statement instanceof CopyColumnVerifyStatement) {
+            return new Sql[] { new SingleLineComment("Verify " + statement.getColumns() + " of " + tableNameEscaped, database.getLineComment()) };
+        }
+
+        if (statement instanceof CopyColumnTransformStatement) {
+            // values are converted in Java, there is no SQL to show
+            return new Sql[] { new SingleLineComment("Copy " + statement.getColumns() + " of " + tableNameEscaped + " transformed by "
+                    + ((CopyColumnTransformStatement) statement).getTransformer(), database.getLineComment()) };
+        }
+
+        if (statement.getSourceTableName() != null) {
+            return new Sql[] { new UnparsedSql(getCrossTableSql(statement, database)) };
+        }
+
+        boolean parallel = database instanceof OracleDatabase && statement.getParallelDegree() != null;
+        boolean parallelExecute = parallel && statement.getChunkSize() != null;
+
+        String sql = "UPDATE ";
+        if (parallel && !parallelExecute) {
+            sql += "/*+ PARALLEL(" + statement.getParallelDegree() + ") */ ";
+        }
+        List<String> assignments = new ArrayList<>();
+        List<String> changes = new ArrayList<>();
+        for (CopyColumnConfig column : statement.getColumns()) {
+            String toNameEscaped = database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), column.getToName());
+            String srcField = getSourceExpression(statement, column, database);
+            assignments.add(toNameEscaped + " = " + srcField);
+            if (statement.isSkipUnchanged()) {
+                changes.add(getChangedPredicate(column, database, toNameEscaped, srcField));
             }
         }
+        sql += tableNameEscaped;
+        if (database instanceof OracleDatabase && statement.getPartitionName() != null) {
+            sql += " PARTITION (" + database.escapeObjectName(statement.getPartitionName(), Table.class) + ")";
+        }
+        sql += " SET " + String.join(", ", assignments);
 
-        sql += srcField;
+        String whereClause = statement.getWhereClause();
+        if (!changes.isEmpty()) {
+            String changed = changes.size() == 1 ? changes.get(0) : "(" + String.join(" OR ", changes) + ")";
+            whereClause = whereClause != null ? "(" + whereClause + ") AND " + changed : changed;
+        }
+        if (parallelExecute) {
+            whereClause = (whereClause != null ? "(" + whereClause + ") AND " : "") + "ROWID BETWEEN :start_id AND :end_id";
+        }
+        if (whereClause != null) {
+            sql += " WHERE " + whereClause;
+        }
 
+        if (parallelExecute) {
+            return new Sql[] { new UnparsedSql(getParallelExecuteBlock(statement, database, sql), "\n/") };
+        } else if (parallel) {
+            return new Sql[] { new UnparsedSql(getParallelDmlBlock(sql), "\n/") };
+        }
         return new Sql[] { new UnparsedSql(sql) };
     }
 
-    private static class OracleRawUtil {
-        public static String getToBlobFunction(String type) {
-            if ("BINARY_DOUBLE".equals(type)) {
-                return "CAST_FROM_BINARY_DOUBLE";
-            } else if ("BINARY_FLOAT".equals(type)) {
-                return "CAST_FROM_BINARY_FLOAT";
-            } else if ("BINARY_INTEGER".equals(type)) {
-                return "CAST_FROM_BINARY_INTEGER";
-            } else if ("NUMBER".equals(type)) {
-                return "CAST_FROM_NUMBER";
-            } else if ("VARCHAR2".equals(type)) {
-                return "CAST_TO_RAW";
+    /**
+     * Returns the SQL expression that converts the value of the source column
+     * to the target type.
+     *
+     * @param statement
+     *            the copy column statement
+     * @param column
+     *            the copied column of the statement
+     * @param database
+     *            the target database
+     * @return the source column converted to the target type
+     */
+    public String getSourceExpression(CopyColumnStatement statement, CopyColumnConfig column, Database database) {
+        String fromNameEscaped = database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), column.getFromName());
+        return getSourceExpression(column, fromNameEscaped, database);
+    }
+
+    /**
+     * Returns the SQL expression that converts the given reference to the
+     * source column to the target type.
+     *
+     * @param column
+     *            the copied column
+     * @param fromNameEscaped
+     *            the reference to the source value, like the escaped column
+     *            name or a trigger row variable
+     * @param database
+     *            the target database
+     * @return the source value converted to the target type
+     */
+    public String getSourceExpression(CopyColumnConfig column, String fromNameEscaped, Database database) {
+        return ConversionRegistry.getInstance().convert(database, column.getFromType(), column.getToType(), fromNameEscaped);
+    }
+
+    /*
+     * UTL_RAW functions work on RAW and VARCHAR2 values, limited to 2000 bytes
+     * in SQL. The LOBs are converted row by row writing directly into the
+     * locator of the target column, DBMS_LOB converts the source LOB through a
+     * fixed size buffer so values are never materialized in memory.
+     */
+    private String getLobStreamingBlock(CopyColumnStatement statement, Database database) {
+        String tableNameEscaped = database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName());
+
+        StringBuilder declare = new StringBuilder();
+        StringBuilder convert = new StringBuilder();
+        List<String> sources = new ArrayList<>();
+        List<String> assignments = new ArrayList<>();
+        List<String> returning = new ArrayList<>();
+        List<String> locators = new ArrayList<>();
+        int index = 0;
+        for (CopyColumnConfig column : statement.getColumns()) {
+            String fromNameEscaped = database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), column.getFromName());
+            String toNameEscaped = database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), column.getToName());
+            String conversion = getLobConversion(column);
+            if (conversion == null) {
+                assignments.add(toNameEscaped + " = " + getSourceExpression(statement, column, database));
+                continue;
             }
-            return null;
-        }
-        public static String getBlobToFunction(String type) {
-            if ("BINARY_DOUBLE".equals(type)) {
-                return "CAST_TO_BINARY_DOUBLE";
-            } else if ("BINARY_FLOAT".equals(type)) {
-                return "CAST_TO_BINARY_FLOAT";
-            } else if ("BINARY_INTEGER".equals(type)) {
-                return "CAST_TO_BINARY_INTEGER";
-            } else if ("NUMBER".equals(type)) {
-                return "CAST_TO_NUMBER";
-            } else if ("NVARCHAR2".equals(type)) {
-                return "CAST_TO_NVARCHAR2";
-            } else if ("VARCHAR2".equals(type)) {
-                return "CAST_TO_VARCHAR2";
+
+            index++;
+            boolean toBlob = BLOB_TYPE.equals(ConversionRegistry.normalize(column.getToType()));
+            String fromType = ConversionRegistry.normalize(column.getFromType());
+            declare.append("  l_lob").append(index).append(toBlob ? " BLOB;\n" : " CLOB;\n");
+            sources.add((LOB_TYPES.contains(fromType) ? fromNameEscaped : "TO_CLOB(" + fromNameEscaped + ")") + " AS src" + index);
+            assignments.add(toNameEscaped + " = CASE WHEN " + fromNameEscaped + " IS NULL THEN NULL ELSE " + (toBlob ? "EMPTY_BLOB()" : "EMPTY_CLOB()") + " END");
+            returning.add(toNameEscaped);
+            locators.add("l_lob" + index);
+            convert.append("    IF l_lob").append(index).append(" IS NOT NULL AND DBMS_LOB.GETLENGTH(r.src").append(index).append(") > 0 THEN\n")
+                    .append("      l_dest_offset := 1;\n")
+                    .append("      l_src_offset := 1;\n")
+                    .append("      l_lang_context := DBMS_LOB.DEFAULT_LANG_CTX;\n")
+                    .append("      DBMS_LOB.").append(conversion).append("(l_lob").append(index).append(", r.src").append(index)
+                    .append(", DBMS_LOB.LOBMAXSIZE, l_dest_offset, l_src_offset, DBMS_LOB.DEFAULT_CSID, l_lang_context, l_warning);\n")
+                    .append("    END IF;\n");
+        }
+
+        String query = "SELECT ROWID AS row_id, " + String.join(", ", sources) + " FROM " + tableNameEscaped;
+        if (statement.getWhereClause() != null) {
+            query += " WHERE " + statement.getWhereClause();
+        }
+
+        return "DECLARE\n"
+                + declare
+                + "  l_dest_offset INTEGER;\n"
+                + "  l_src_offset INTEGER;\n"
+                + "  l_lang_context INTEGER;\n"
+                + "  l_warning INTEGER;\n"
+                + "BEGIN\n"
+                + "  FOR r IN (" + query + ") LOOP\n"
+                + "    UPDATE " + tableNameEscaped + " SET " + String.join(", ", assignments) + " WHERE ROWID = r.row_id"
+                + " RETURNING " + String.join(", ", returning) + " INTO " + String.join(", ", locators) + ";\n"
+                + convert
+                + "  END LOOP;\n"
+                + "END;";
+    }
+
+    /*
+     * Returns the DBMS_LOB procedure that streams the conversion of the given
+     * column, null if the column does not need it.
+     */
+    private String getLobConversion(CopyColumnConfig column) {
+        String fromType = ConversionRegistry.normalize(column.getFromType());
+        String toType = ConversionRegistry.normalize(column.getToType());
+        if (BLOB_TYPE.equals(toType) && (CLOB_TYPE.equals(fromType) || "NCLOB".equals(fromType) || CHAR_TYPES.contains(fromType))) {
+            return "CONVERTTOBLOB";
+        } else if (BLOB_TYPE.equals(fromType) && (CLOB_TYPE.equals(toType) || "NCLOB".equals(toType))) {
+            return "CONVERTTOCLOB";
+        }
+        return null;
+    }
+
+    /**
+     * Returns if the database could copy columns from another table with a
+     * set based statement.
+     *
+     * @param database
+     *            the database
+     * @return {@code true} if a source table is supported
+     */
+    public static boolean isCrossTableSupported(Database database) {
+        return database instanceof PostgresDatabase || database instanceof MySQLDatabase || isMergeSupported(database);
+    }
+
+    private static boolean isMergeSupported(Database database) {
+        return database instanceof OracleDatabase || database instanceof AbstractDb2Database || database instanceof MSSQLDatabase || database instanceof H2Database;
+    }
+
+    /*
+     * A join the optimizer could execute as hash join instead of a correlated
+     * subquery per row: UPDATE ... FROM on PostgreSQL, UPDATE ... JOIN on
+     * MySQL and MERGE on the others. The where clause (the chunk range) must
+     * qualify target columns with the target alias.
+     */
+    private String getCrossTableSql(CopyColumnStatement statement, Database database) {
+        String tableNameEscaped = database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName());
+        String sourceNameEscaped = database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), statement.getSourceTableName());
+        String target = TARGET_ALIAS + ".";
+        String source = SOURCE_ALIAS + ".";
+
+        List<String> join = new ArrayList<>();
+        for (Map.Entry<String, String> column : statement.getJoinColumnMap().entrySet()) {
+            join.add(target + database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), column.getKey()) + " = "
+                    + source + database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getSourceTableName(), column.getValue()));
+        }
+
+        List<String> assignments = new ArrayList<>();
+        List<String> changes = new ArrayList<>();
+        for (CopyColumnConfig column : statement.getColumns()) {
+            String toNameEscaped = database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), column.getToName());
+            String fromNameEscaped = database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getSourceTableName(), column.getFromName());
+            String srcField = getSourceExpression(column, source + fromNameEscaped, database);
+            // MySQL requires qualified columns in SET of a multi table update
+            assignments.add((database instanceof MySQLDatabase ? target : "") + toNameEscaped + " = " + srcField);
+            if (statement.isSkipUnchanged()) {
+                changes.add(getChangedPredicate(column, database, target + toNameEscaped, srcField));
+            }
+        }
+        String changed = changes.isEmpty() ? null : changes.size() == 1 ? changes.get(0) : "(" + String.join(" OR ", changes) + ")";
+        String whereClause = statement.getWhereClause();
+        String on = String.join(" AND ", join) + (whereClause != null ? " AND (" + whereClause + ")" : "");
+
+        if (database instanceof PostgresDatabase) {
+            return "UPDATE " + tableNameEscaped + " " + TARGET_ALIAS + " SET " + String.join(", ", assignments) //
+                    + " FROM " + sourceNameEscaped + " " + SOURCE_ALIAS + " WHERE " + on + (changed != null ? " AND " + changed : "");
+        } else if (database instanceof MySQLDatabase) {
+            return "UPDATE " + tableNameEscaped + " " + TARGET_ALIAS + " JOIN " + sourceNameEscaped + " " + SOURCE_ALIAS + " ON " + String.join(" AND ", join) //
+                    + " SET " + String.join(", ", assignments) //
+                    + (whereClause != null || changed != null ? " WHERE " + (whereClause != null ? "(" + whereClause + ")" : "") + (whereClause != null && changed != null ? " AND " : "") + (changed != null ? changed : "") : "");
+        }
+
+        String sql = "MERGE INTO " + tableNameEscaped + " " + TARGET_ALIAS + " USING " + sourceNameEscaped + " " + SOURCE_ALIAS;
+        if (database instanceof OracleDatabase) {
+            // Oracle can not update columns referenced in the ON clause, the change predicate goes in the WHERE of the update
+            return sql + " ON (" + on + ") WHEN MATCHED THEN UPDATE SET " + String.join(", ", assignments) + (changed != null ? " WHERE " + changed : "");
+        }
+        sql += " ON " + on + " WHEN MATCHED" + (changed != null ? " AND " + changed : "") + " THEN UPDATE SET " + String.join(", ", assignments);
+        // SQL Server requires MERGE to be terminated
+        return database instanceof MSSQLDatabase ? sql + ";" : sql;
+    }
+
+    /**
+     * Returns the null safe predicate of the rows where any target column
+     * differs from the converted source column.
+     *
+     * @param statement
+     *            the copy column statement
+     * @param database
+     *            the target database
+     * @return the SQL predicate
+     */
+    public String getChangedPredicate(CopyColumnStatement statement, Database database) {
+        List<String> changes = new ArrayList<>();
+        for (CopyColumnConfig column : statement.getColumns()) {
+            String toNameEscaped = database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), column.getToName());
+            changes.add(getChangedPredicate(column, database, toNameEscaped, getSourceExpression(statement, column, database)));
+        }
+        return changes.size() == 1 ? changes.get(0) : "(" + String.join(" OR ", changes) + ")";
+    }
+
+    /*
+     * Null safe comparison between the target column and the converted
+     * source, true when the row has to be updated.
+     */
+    private String getChangedPredicate(CopyColumnConfig column, Database database, String target, String source) {
+        if (database instanceof OracleDatabase) {
+            if (LOB_TYPES.contains(ConversionRegistry.normalize(column.getToType()))) {
+                // LOBs can not be compared by DECODE and DBMS_LOB.COMPARE returns NULL if any value is NULL
+                return "NVL(DBMS_LOB.COMPARE(" + target + ", " + source + "), CASE WHEN " + target + " IS NULL AND " + source + " IS NULL THEN 0 ELSE 1 END) != 0";
             }
-            return null;
+            // DECODE considers two NULL equals
+            return "DECODE(" + target + ", " + source + ", 0, 1) = 1";
+        } else if (database instanceof MySQLDatabase) {
+            return "NOT (" + target + " <=> " + source + ")";
+        } else if (database instanceof PostgresDatabase || database instanceof AbstractDb2Database
+                || database instanceof H2Database || database instanceof HsqlDatabase) {
+            return target + " IS DISTINCT FROM " + source;
         }
+        return "(" + target + " <> " + source + " OR " + target + " IS NULL AND " + source + " IS NOT NULL OR " + target + " IS NOT NULL AND " + source + " IS NULL)";
+    }
+
+    /*
+     * A table modified by parallel DML can not be accessed again in the same
+     * transaction, so the update is committed immediately. The parallel DML
+     * state of the session can be changed only outside a transaction, on
+     * failure the update is rolled back before disable it, otherwise the
+     * session would stay in parallel DML mode for the next changeSets.
+     */
+    private String getParallelDmlBlock(String sql) {
+        return "BEGIN\n"
+                + "  EXECUTE IMMEDIATE 'ALTER SESSION ENABLE PARALLEL DML';\n"
+                + "  " + sql + ";\n"
+                + "  COMMIT;\n"
+                + "  EXECUTE IMMEDIATE 'ALTER SESSION DISABLE PARALLEL DML';\n"
+                + "EXCEPTION\n"
+                + "  WHEN OTHERS THEN\n"
+                + "    ROLLBACK;\n"
+                + "    EXECUTE IMMEDIATE 'ALTER SESSION DISABLE PARALLEL DML';\n"
+                + "    RAISE;\n"
+                + "END;";
+    }
+
+    /*
+     * DBMS_PARALLEL_EXECUTE splits the table in chunks by ROWID and runs them
+     * with parallel scheduler jobs, committing each chunk. Failed chunks are
+     * retried twice, then the task is left for inspection in
+     * USER_PARALLEL_EXECUTE_CHUNKS.
+     */
+    private String getParallelExecuteBlock(CopyColumnStatement statement, Database database, String sql) {
+        String owner = statement.getSchemaName() != null ? "'" + database.correctObjectName(statement.getSchemaName(), Schema.class) + "'" : "SYS_CONTEXT('USERENV', 'CURRENT_SCHEMA')";
+        String table = database.correctObjectName(statement.getTableName(), Table.class);
+
+        return "DECLARE\n"
+                + "  l_task VARCHAR2(128) := DBMS_PARALLEL_EXECUTE.GENERATE_TASK_NAME('COPYCOLUMN_');\n"
+                + "  l_try NUMBER := 0;\n"
+                + "  l_status NUMBER;\n"
+                + "BEGIN\n"
+                + "  DBMS_PARALLEL_EXECUTE.CREATE_TASK(l_task);\n"
+                + "  DBMS_PARALLEL_EXECUTE.CREATE_CHUNKS_BY_ROWID(l_task, " + owner + ", '" + table + "', TRUE, " + statement.getChunkSize() + ");\n"
+                + "  DBMS_PARALLEL_EXECUTE.RUN_TASK(l_task, '" + sql.replace("'", "''") + "', DBMS_SQL.NATIVE, parallel_level => " + statement.getParallelDegree() + ");\n"
+                + "  l_status := DBMS_PARALLEL_EXECUTE.TASK_STATUS(l_task);\n"
+                + "  WHILE l_try < 2 AND l_status != DBMS_PARALLEL_EXECUTE.FINISHED LOOP\n"
+                + "    l_try := l_try + 1;\n"
+                + "    DBMS_PARALLEL_EXECUTE.RESUME_TASK(l_task);\n"
+                + "    l_status := DBMS_PARALLEL_EXECUTE.TASK_STATUS(l_task);\n"
+                + "  END LOOP;\n"
+                + "  IF l_status != DBMS_PARALLEL_EXECUTE.FINISHED THEN\n"
+                + "    RAISE_APPLICATION_ERROR(-20001, 'Copy of " + table + " failed, see task ' || l_task || ' in USER_PARALLEL_EXECUTE_CHUNKS');\n"
+                + "  END IF;\n"
+                + "  DBMS_PARALLEL_EXECUTE.DROP_TASK(l_task);\n"
+                + "END;";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.PreparedStatementFactory;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+
+/**
+ * Copy columns one partition at time, committing after each partition, so
+ * that a unit of work only locks and logs the rows of one partition.
+ * <p>
+ * Partitions are discovered from the catalog when the statement is executed
+ * (see {@link TablePartition}), a table that is not partitioned is copied
+ * with a single statement. With a {@code parallelism} greater than one as
+ * many partitions are copied concurrently, each one by a worker thread on its
+ * own connection. The rows of each partition are reported when it completes.
+ *
+ * @author Nikolas Falco
+ */
+public class CopyColumnPartitionedStatement extends CopyColumnChunkedStatement {
+
+    public CopyColumnPartitionedStatement(Database database, String catalogName, String schemaName, String tableName, String fromName, String fromType, String toName, String toType) { // NOSONAR
+        super(database, catalogName, schemaName, tableName, fromName, fromType, toName, toType);
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        Connection connection = ((JdbcConnection) getDatabase().getConnection()).getUnderlyingConnection();
+        try {
+            List<TablePartition> partitions = TablePartition.list(connection, getDatabase(), getSchemaName(), getTableName());
+            long rows = copy(connection, partitions);
+            Scope.getCurrentScope().getLog(getClass()).info(rows + " rows copied " + getColumns() + " of table " + getTableName() + " in " + partitions.size() + " partitions");
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Copy all the given partitions.
+     *
+     * @param connection
+     *            the changelog connection
+     * @param partitions
+     *            the partitions of the table, if empty the whole table is
+     *            copied
+     * @return the number of copied rows
+     * @throws SQLException
+     *             in case of failure
+     * @throws DatabaseException
+     *             if any partition fails
+     */
+    protected long copy(Connection connection, List<TablePartition> partitions) throws SQLException, DatabaseException {
+        if (partitions.isEmpty()) {
+            Scope.getCurrentScope().getLog(getClass()).info("Table " + getTableName() + " is not partitioned, it is copied with a single statement");
+            long rows = copyPartition(connection, null);
+            connection.commit();
+            return rows;
+        }
+
+        if (getProgress() != null) {
+            getProgress().setEstimatedRows(TableStatistics.estimateRows(connection, getDatabase(), getCatalogName(), getSchemaName(), getTableName())).start();
+        }
+        try {
+            if (getParallelism() > 1 && partitions.size() > 1) {
+                // the workers must see the changeSet work and not wait for its locks
+                connection.commit();
+                return copyParallel(partitions);
+            }
+            long rows = 0;
+            AtomicInteger done = new AtomicInteger();
+            for (TablePartition partition : partitions) {
+                rows += copyPartition(connection, partition, done, partitions.size());
+            }
+            return rows;
+        } finally {
+            if (getProgress() != null) {
+                getProgress().stop();
+            }
+        }
+    }
+
+    /**
+     * Copy the given partitions concurrently, each worker thread has a
+     * dedicated connection and takes the next partition as soon as it
+     * completes the previous one.
+     *
+     * @param partitions
+     *            the partitions to copy
+     * @return the number of copied rows
+     * @throws DatabaseException
+     *             if a worker connection could not be opened or any
+     *             partition fails, the message reports all failed partitions
+     */
+    protected long copyParallel(List<TablePartition> partitions) throws DatabaseException {
+        int workerCount = Math.min(getParallelism(), partitions.size());
+        Queue<TablePartition> pending = new ConcurrentLinkedQueue<>(partitions);
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        AtomicLong rows = new AtomicLong();
+        AtomicInteger done = new AtomicInteger();
+
+        List<Connection> workers = new ArrayList<>(workerCount);
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(openConnection());
+            }
+
+            List<Future<?>> results = new ArrayList<>(workerCount);
+            for (Connection worker : workers) {
+                results.add(executor.submit(() -> {
+                    TablePartition partition;
+                    while ((partition = pending.poll()) != null) {
+                        try {
+                            rows.addAndGet(copyPartition(worker, partition, done, partitions.size()));
+                        } catch (SQLException e) {
+                            String failure = "partition " + partition + ": " + e.getMessage();
+                            Scope.getCurrentScope().getLog(getClass()).severe("Copy of " + getTableName() + " failed for " + failure, e);
+                            failures.add(failure);
+                            rollbackQuietly(worker);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+
+            if (!failures.isEmpty()) {
+                throw new DatabaseException("Copy of " + getTableName() + " failed for " + failures.size() + " of " + partitions.size() + " partitions, " + String.join("; ", failures));
+            }
+            return rows.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } catch (ExecutionException e) {
+            throw new DatabaseException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (Connection worker : workers) {
+                closeQuietly(worker);
+            }
+        }
+    }
+
+    private long copyPartition(Connection connection, TablePartition partition, AtomicInteger done, int total) throws SQLException {
+        long start = System.nanoTime();
+        long rows = copyPartition(connection, partition);
+        connection.commit();
+        if (getProgress() != null) {
+            getProgress().add(rows);
+        }
+        Scope.getCurrentScope().getLog(getClass()).info("Partition " + partition + " of " + getTableName() + ": " + rows + " rows copied in "
+                + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + "s (" + done.incrementAndGet() + " of " + total + " partitions)");
+        return rows;
+    }
+
+    /**
+     * Copy the rows of a partition without commit.
+     *
+     * @param connection
+     *            the connection where run the copy
+     * @param partition
+     *            the partition, {@code null} for the whole table
+     * @return the number of copied rows
+     * @throws SQLException
+     *             in case of failure
+     */
+    protected long copyPartition(Connection connection, TablePartition partition) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            return stmt.executeUpdate(getPartitionSql(partition));
+        }
+    }
+
+    protected String getPartitionSql(TablePartition partition) {
+        CopyColumnStatement update;
+        if (partition != null && getDatabase() instanceof PostgresDatabase) {
+            // rows are stored in the leaf table, updating it does not lock other partitions
+            update = new CopyColumnStatement(getCatalogName(), partition.getSchemaName(), partition.getTableName(), getFromName(), getFromType(), getToName(), getToType());
+        } else {
+            update = new CopyColumnStatement(getCatalogName(), getSchemaName(), getTableName(), getFromName(), getFromType(), getToName(), getToType());
+        }
+        if (partition != null) {
+            update.setPartitionName(partition.getName()).setWhereClause(partition.getPredicate());
+        }
+        update.setSkipUnchanged(isSkipUnchanged());
+        getColumns().stream().skip(1).forEach(update::addColumn);
+        return SqlGeneratorFactory.getInstance().generateSql(update, getDatabase())[0].toSql();
+    }
+}
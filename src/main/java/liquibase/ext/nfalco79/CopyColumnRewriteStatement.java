@@ -0,0 +1,466 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import liquibase.Scope;
+import liquibase.change.AddColumnConfig;
+import liquibase.change.ColumnConfig;
+import liquibase.database.Database;
+import liquibase.database.PreparedStatementFactory;
+import liquibase.database.core.AbstractDb2Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.datatype.DataTypeFactory;
+import liquibase.datatype.LiquibaseDataType;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.snapshot.InvalidExampleException;
+import liquibase.snapshot.SnapshotGeneratorFactory;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.ColumnConstraint;
+import liquibase.statement.ExecutablePreparedStatement;
+import liquibase.statement.NotNullConstraint;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.AddForeignKeyConstraintStatement;
+import liquibase.statement.core.AddPrimaryKeyStatement;
+import liquibase.statement.core.AddUniqueConstraintStatement;
+import liquibase.statement.core.CreateIndexStatement;
+import liquibase.statement.core.CreateTableStatement;
+import liquibase.statement.core.DropForeignKeyConstraintStatement;
+import liquibase.statement.core.DropIndexStatement;
+import liquibase.statement.core.DropPrimaryKeyStatement;
+import liquibase.statement.core.DropTableStatement;
+import liquibase.statement.core.DropUniqueConstraintStatement;
+import liquibase.statement.core.RawSqlStatement;
+import liquibase.statement.core.RenameTableStatement;
+import liquibase.statement.core.SetColumnRemarksStatement;
+import liquibase.statement.core.SetTableRemarksStatement;
+import liquibase.structure.core.Column;
+import liquibase.structure.core.ForeignKey;
+import liquibase.structure.core.ForeignKeyConstraintType;
+import liquibase.structure.core.Index;
+import liquibase.structure.core.PrimaryKey;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
+import liquibase.structure.core.UniqueConstraint;
+
+/**
+ * Copy a column rewriting the whole table instead of updating it in place.
+ * <p>
+ * A new table is created with the same columns, filled with a single
+ * INSERT ... SELECT where the target column is computed from the source
+ * column, then the original table is renamed aside, the new one takes its
+ * name and primary key, unique constraints, indexes, foreign keys and
+ * comments are moved to it with their original names. The original table is
+ * dropped last, so on databases where each DDL commits (Oracle, MySQL) a
+ * failure never leaves the data without a table: until the swap the
+ * original table is untouched, after it the new table is in place and the
+ * original one is still there with the old name. On Oracle (NOLOGGING with
+ * direct-path insert) and DB2 (NOT LOGGED INITIALLY) the new table is filled
+ * without logging, so the copy costs a sequential write of the table instead
+ * of an update of each row with its undo and redo. PostgreSQL logs the insert
+ * in the WAL unless {@code wal_level} is {@code minimal}, still without the
+ * dead tuples and index updates of an in place update.
+ * <p>
+ * On databases with transactional DDL (PostgreSQL, DB2) the whole rewrite is
+ * part of the changeSet transaction, so the swap is atomic. Grants to other
+ * users, triggers and check constraints are not recreated, for this reason
+ * tables that have any of them, tables referenced by foreign keys of other
+ * tables, partitioned tables and tables with auto increment columns are
+ * refused.
+ *
+ * @author Nikolas Falco
+ */
+public class CopyColumnRewriteStatement extends CopyColumnStatement implements ExecutablePreparedStatement {
+
+    private static final String REWRITE_SUFFIX = "_RW";
+    private static final String OLD_SUFFIX = "_OLD";
+    // keep the name valid also on databases with 30 characters identifiers
+    private static final int MAX_NAME_LENGTH = 30;
+
+    private final Database database;
+
+    public CopyColumnRewriteStatement(Database database, String catalogName, String schemaName, String tableName, String fromName, String fromType, String toName, String toType) { // NOSONAR
+        super(catalogName, schemaName, tableName, fromName, fromType, toName, toType);
+        this.database = database;
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        Table table = snapshot();
+        checkReferences(((JdbcConnection) database.getConnection()).getUnderlyingConnection(), table);
+
+        Executor executor = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database);
+        for (SqlStatement statement : getRewriteStatements(table)) {
+            executor.execute(statement);
+        }
+        Scope.getCurrentScope().getLog(getClass()).info("Table " + getTableName() + " rewritten copying " + getColumns());
+    }
+
+    /**
+     * Returns the statements that rewrite the given table.
+     *
+     * @param table
+     *            the snapshot of the table to rewrite
+     * @return the ordered list of statements to execute
+     * @throws DatabaseException
+     *             if the table can not be rewritten
+     */
+    protected List<SqlStatement> getRewriteStatements(Table table) throws DatabaseException {
+        String newTableName = getRewriteTableName();
+        String newTableNameEscaped = database.escapeTableName(getCatalogName(), getSchemaName(), newTableName);
+
+        List<Column> columns = table.getColumns().stream() //
+                .sorted(Comparator.comparing(Column::getOrder, Comparator.nullsLast(Comparator.naturalOrder()))) //
+                .collect(Collectors.toList());
+
+        List<SqlStatement> statements = new ArrayList<>();
+        statements.add(new RawSqlStatement(getCreateTableSql(table, columns, newTableName)));
+
+        CopyColumnGenerator generator = new CopyColumnGenerator();
+        List<String> insertColumns = new ArrayList<>();
+        List<String> selectColumns = new ArrayList<>();
+        for (Column column : columns) {
+            String columnName = database.escapeColumnName(getCatalogName(), getSchemaName(), getTableName(), column.getName());
+            insertColumns.add(columnName);
+            CopyColumnConfig copy = getColumns().stream() //
+                    .filter(c -> column.getName().equalsIgnoreCase(c.getToName())) //
+                    .findFirst() //
+                    .orElse(null);
+            selectColumns.add(copy != null ? generator.getSourceExpression(this, copy, database) : columnName);
+        }
+        String insert = "INSERT " + (database instanceof OracleDatabase ? "/*+ APPEND */ " : "") + "INTO " + newTableNameEscaped //
+                + " (" + String.join(", ", insertColumns) + ") SELECT " + String.join(", ", selectColumns) //
+                + " FROM " + database.escapeTableName(getCatalogName(), getSchemaName(), getTableName());
+        statements.add(new RawSqlStatement(insert));
+
+        if (database instanceof OracleDatabase) {
+            statements.add(new RawSqlStatement("ALTER TABLE " + newTableNameEscaped + " LOGGING"));
+        }
+
+        String oldTableName = getOldTableName();
+        if (database instanceof MySQLDatabase) {
+            // a single RENAME TABLE swaps both tables atomically
+            statements.add(new RawSqlStatement("RENAME TABLE " + database.escapeTableName(getCatalogName(), getSchemaName(), getTableName()) //
+                    + " TO " + database.escapeTableName(getCatalogName(), getSchemaName(), oldTableName) + ", " + newTableNameEscaped //
+                    + " TO " + database.escapeTableName(getCatalogName(), getSchemaName(), getTableName())));
+        } else {
+            statements.add(new RenameTableStatement(getCatalogName(), getSchemaName(), getTableName(), oldTableName));
+            statements.add(new RenameTableStatement(getCatalogName(), getSchemaName(), newTableName, getTableName()));
+        }
+        statements.addAll(getReleaseNamesStatements(table, oldTableName));
+
+        Set<String> constraintIndexes = new HashSet<>();
+        PrimaryKey primaryKey = table.getPrimaryKey();
+        if (primaryKey != null) {
+            statements.add(new AddPrimaryKeyStatement(getCatalogName(), getSchemaName(), getTableName(), toColumnConfig(primaryKey.getColumns()), primaryKey.getName()) //
+                    .setTablespace(primaryKey.getTablespace()));
+            addBackingIndex(constraintIndexes, primaryKey.getBackingIndex());
+        }
+        for (UniqueConstraint constraint : table.getUniqueConstraints()) {
+            statements.add(new AddUniqueConstraintStatement(getCatalogName(), getSchemaName(), getTableName(), toColumnConfig(constraint.getColumns()), constraint.getName()) //
+                    .setDeferrable(constraint.isDeferrable()) //
+                    .setInitiallyDeferred(constraint.isInitiallyDeferred()));
+            addBackingIndex(constraintIndexes, constraint.getBackingIndex());
+        }
+        for (Index index : table.getIndexes()) {
+            if (index.getName() == null || constraintIndexes.contains(index.getName().toUpperCase()) || isConstraintIndex(index)) {
+                continue;
+            }
+            AddColumnConfig[] indexColumns = index.getColumns().stream().map(AddColumnConfig::new).toArray(AddColumnConfig[]::new);
+            statements.add(new CreateIndexStatement(index.getName(), getCatalogName(), getSchemaName(), getTableName(), index.isUnique(), index.getTablespace(), indexColumns));
+        }
+        for (ForeignKey foreignKey : table.getOutgoingForeignKeys()) {
+            Table referenced = foreignKey.getPrimaryKeyTable();
+            statements.add(new AddForeignKeyConstraintStatement(foreignKey.getName(), //
+                    getCatalogName(), getSchemaName(), getTableName(), toColumnConfig(foreignKey.getForeignKeyColumns()), //
+                    referenced.getSchema() != null ? referenced.getSchema().getCatalogName() : null, //
+                    referenced.getSchema() != null ? referenced.getSchema().getName() : null, //
+                    referenced.getName(), toColumnConfig(foreignKey.getPrimaryKeyColumns())) //
+                    .setDeferrable(foreignKey.isDeferrable()) //
+                    .setInitiallyDeferred(foreignKey.isInitiallyDeferred()) //
+                    .setOnUpdate(toRule(foreignKey.getUpdateRule())) //
+                    .setOnDelete(toRule(foreignKey.getDeleteRule())));
+        }
+        if (table.getRemarks() != null) {
+            statements.add(new SetTableRemarksStatement(getCatalogName(), getSchemaName(), getTableName(), table.getRemarks()));
+        }
+        for (Column column : columns) {
+            if (column.getRemarks() != null) {
+                statements.add(new SetColumnRemarksStatement(getCatalogName(), getSchemaName(), getTableName(), column.getName(), column.getRemarks()));
+            }
+        }
+        statements.add(new DropTableStatement(getCatalogName(), getSchemaName(), oldTableName, false));
+        return statements;
+    }
+
+    /*
+     * Drops the constraints and indexes of the original table, renamed aside,
+     * so that their names, unique in the schema on most databases, could be
+     * given to the ones of the new table. The data is kept until the original
+     * table is dropped.
+     */
+    private List<SqlStatement> getReleaseNamesStatements(Table table, String oldTableName) {
+        List<SqlStatement> statements = new ArrayList<>();
+        for (ForeignKey foreignKey : table.getOutgoingForeignKeys()) {
+            statements.add(new DropForeignKeyConstraintStatement(getCatalogName(), getSchemaName(), oldTableName, foreignKey.getName()));
+        }
+        Set<String> constraintIndexes = new HashSet<>();
+        for (UniqueConstraint constraint : table.getUniqueConstraints()) {
+            statements.add(new DropUniqueConstraintStatement(getCatalogName(), getSchemaName(), oldTableName, constraint.getName()));
+            addBackingIndex(constraintIndexes, constraint.getBackingIndex());
+        }
+        PrimaryKey primaryKey = table.getPrimaryKey();
+        if (primaryKey != null) {
+            statements.add(new DropPrimaryKeyStatement(getCatalogName(), getSchemaName(), oldTableName, primaryKey.getName()));
+            addBackingIndex(constraintIndexes, primaryKey.getBackingIndex());
+        }
+        for (Index index : table.getIndexes()) {
+            if (index.getName() != null && !constraintIndexes.contains(index.getName().toUpperCase()) && !isConstraintIndex(index)) {
+                statements.add(new DropIndexStatement(index.getName(), getCatalogName(), getSchemaName(), oldTableName, null));
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Returns the name of the table that replaces the original one.
+     *
+     * @return the name of the new table
+     */
+    protected String getRewriteTableName() {
+        return getTableName(REWRITE_SUFFIX);
+    }
+
+    /**
+     * Returns the name given to the original table until it is dropped.
+     *
+     * @return the name of the original table after the swap
+     */
+    protected String getOldTableName() {
+        return getTableName(OLD_SUFFIX);
+    }
+
+    private String getTableName(String suffix) {
+        String name = getTableName();
+        if (name.length() + suffix.length() > MAX_NAME_LENGTH) {
+            name = name.substring(0, MAX_NAME_LENGTH - suffix.length());
+        }
+        // keep the case of the table name, so the new name requires quoting only if the table name does
+        return name + (name.equals(name.toLowerCase()) ? suffix.toLowerCase() : suffix);
+    }
+
+    private String getCreateTableSql(Table table, List<Column> columns, String newTableName) throws DatabaseException {
+        DataTypeFactory types = DataTypeFactory.getInstance();
+        CreateTableStatement createTable = new CreateTableStatement(getCatalogName(), getSchemaName(), newTableName) //
+                .setTablespace(table.getTablespace());
+        for (Column column : columns) {
+            if (column.isAutoIncrement()) {
+                throw new DatabaseException("Table " + getTableName() + " can not be rewritten because column " + column.getName() + " is auto increment");
+            }
+            LiquibaseDataType type = types.from(column.getType(), database);
+            ColumnConstraint[] constraints = Boolean.FALSE.equals(column.isNullable()) ? new ColumnConstraint[] { new NotNullConstraint(column.getName()) } : new ColumnConstraint[0];
+            createTable.addColumn(column.getName(), type, column.getDefaultValue(), constraints);
+        }
+
+        Sql[] sqls = SqlGeneratorFactory.getInstance().generateSql(createTable, database);
+        String sql = sqls[0].toSql();
+        if (database instanceof OracleDatabase) {
+            sql += " NOLOGGING";
+        } else if (database instanceof AbstractDb2Database) {
+            // not logged until the end of the unit of work that creates and fills the table
+            sql += " NOT LOGGED INITIALLY";
+        }
+        return sql;
+    }
+
+    private void addBackingIndex(Set<String> names, Index index) {
+        if (index != null && index.getName() != null) {
+            names.add(index.getName().toUpperCase());
+        }
+    }
+
+    private boolean isConstraintIndex(Index index) {
+        Set<String> associations = index.getAssociatedWith();
+        return associations.contains(Index.MARK_PRIMARY_KEY) || associations.contains(Index.MARK_UNIQUE_CONSTRAINT);
+    }
+
+    private ColumnConfig[] toColumnConfig(List<Column> columns) {
+        return columns.stream().map(column -> new ColumnConfig().setName(column.getName())).toArray(ColumnConfig[]::new);
+    }
+
+    private String toRule(ForeignKeyConstraintType rule) {
+        if (rule == null) {
+            return null;
+        }
+        switch (rule) {
+        case importedKeyCascade:
+            return "CASCADE";
+        case importedKeySetNull:
+            return "SET NULL";
+        case importedKeySetDefault:
+            return "SET DEFAULT";
+        case importedKeyRestrict:
+            return "RESTRICT";
+        default:
+            return null;
+        }
+    }
+
+    private Table snapshot() throws DatabaseException {
+        Table example = new Table().setName(database.correctObjectName(getTableName(), Table.class));
+        example.setSchema(new Schema(getCatalogName(), getSchemaName()));
+        try {
+            Table table = SnapshotGeneratorFactory.getInstance().createSnapshot(example, database);
+            if (table == null) {
+                throw new DatabaseException("Table " + example.toString() + " not found");
+            }
+            return table;
+        } catch (InvalidExampleException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Checks that the rewrite does not lose objects that depend on the table
+     * and are not created again: foreign keys of other tables, grants to
+     * other users, triggers, check constraints and partitions.
+     *
+     * @param connection
+     *            the connection where run the queries
+     * @param table
+     *            the snapshot of the table to rewrite
+     * @throws DatabaseException
+     *             if the table has any of these objects
+     */
+    protected void checkReferences(Connection connection, Table table) throws DatabaseException {
+        String schemaName = table.getSchema() != null ? table.getSchema().getName() : null;
+        try {
+            DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet rs = metaData.getExportedKeys(null, schemaName, table.getName())) {
+                while (rs.next()) {
+                    String referencingTable = rs.getString("FKTABLE_NAME");
+                    if (!table.getName().equalsIgnoreCase(referencingTable)) {
+                        throw new DatabaseException("Table " + getTableName() + " can not be rewritten because it is referenced by foreign key "
+                                + rs.getString("FK_NAME") + " of table " + referencingTable);
+                    }
+                }
+            }
+
+            // the new table is owned by the user that rewrites it
+            String user = metaData.getUserName();
+            try (ResultSet rs = metaData.getTablePrivileges(null, schemaName, table.getName())) {
+                while (rs.next()) {
+                    String grantee = rs.getString("GRANTEE");
+                    if (grantee != null && !grantee.equalsIgnoreCase(user) && !grantee.equalsIgnoreCase(rs.getString("GRANTOR"))) {
+                        throw new DatabaseException("Table " + getTableName() + " can not be rewritten because it grants " + rs.getString("PRIVILEGE") + " to " + grantee);
+                    }
+                }
+            }
+
+            String sql = getDependentsSql();
+            if (sql != null) {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, schemaName);
+                    stmt.setString(2, table.getName());
+                    stmt.setString(3, schemaName);
+                    stmt.setString(4, table.getName());
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            throw new DatabaseException("Table " + getTableName() + " can not be rewritten because it has " + rs.getString(1));
+                        }
+                    }
+                }
+            }
+
+            sql = getPartitionedSql();
+            if (sql != null) {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, schemaName);
+                    stmt.setString(2, table.getName());
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            throw new DatabaseException("Table " + getTableName() + " can not be rewritten because it is partitioned");
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Returns the query of triggers and check constraints of a table given
+     * its schema and name, twice. NOT NULL constraints are excluded because
+     * they are declared again by the new table.
+     *
+     * @return the SQL query or {@code null} if the database is not supported
+     */
+    protected String getDependentsSql() {
+        if (database instanceof PostgresDatabase) {
+            return "SELECT 'trigger ' || t.tgname FROM pg_trigger t JOIN pg_class c ON c.oid = t.tgrelid JOIN pg_namespace n ON n.oid = c.relnamespace"
+                    + " WHERE n.nspname = ? AND c.relname = ? AND NOT t.tgisinternal"
+                    + " UNION ALL SELECT 'check constraint ' || k.conname FROM pg_constraint k JOIN pg_class c ON c.oid = k.conrelid JOIN pg_namespace n ON n.oid = c.relnamespace"
+                    + " WHERE n.nspname = ? AND c.relname = ? AND k.contype = 'c'";
+        } else if (database instanceof OracleDatabase) {
+            return "SELECT 'trigger ' || TRIGGER_NAME FROM ALL_TRIGGERS WHERE TABLE_OWNER = ? AND TABLE_NAME = ?"
+                    + " UNION ALL SELECT 'check constraint ' || CONSTRAINT_NAME FROM ALL_CONSTRAINTS WHERE OWNER = ? AND TABLE_NAME = ?"
+                    + " AND CONSTRAINT_TYPE = 'C' AND SEARCH_CONDITION_VC NOT LIKE '% IS NOT NULL'";
+        } else if (database instanceof AbstractDb2Database) {
+            return "SELECT 'trigger ' || TRIGNAME FROM SYSCAT.TRIGGERS WHERE TABSCHEMA = ? AND TABNAME = ?"
+                    + " UNION ALL SELECT 'check constraint ' || CONSTNAME FROM SYSCAT.CHECKS WHERE TABSCHEMA = ? AND TABNAME = ? AND TYPE = 'C'";
+        }
+        return null;
+    }
+
+    /**
+     * Returns the query that has a row when the table, given its schema and
+     * name, is partitioned or is a partition, because the new table would be
+     * created without partitions or detached from its parent.
+     *
+     * @return the SQL query or {@code null} if the database is not supported
+     */
+    protected String getPartitionedSql() {
+        if (database instanceof PostgresDatabase) {
+            return "SELECT 1 FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace WHERE n.nspname = ? AND c.relname = ?"
+                    + " AND (c.relkind = 'p' OR EXISTS (SELECT 1 FROM pg_inherits i WHERE i.inhrelid = c.oid OR i.inhparent = c.oid))";
+        } else if (database instanceof OracleDatabase) {
+            return "SELECT 1 FROM ALL_PART_TABLES WHERE OWNER = ? AND TABLE_NAME = ?";
+        } else if (database instanceof AbstractDb2Database) {
+            return "SELECT 1 FROM SYSCAT.DATAPARTITIONEXPRESSION WHERE TABSCHEMA = ? AND TABNAME = ?";
+        } else if (database instanceof MySQLDatabase) {
+            return "SELECT 1 FROM INFORMATION_SCHEMA.PARTITIONS WHERE TABLE_SCHEMA = COALESCE(?, DATABASE()) AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL";
+        }
+        return null;
+    }
+}
@@ -15,6 +15,12 @@
  */
 package liquibase.ext.nfalco79;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import liquibase.statement.AbstractSqlStatement;
 
 public class CopyColumnStatement extends AbstractSqlStatement {
@@ -26,7 +32,15 @@ public class CopyColumnStatement extends AbstractSqlStatement {
     private String fromType;
     private String toName;
     private String toType;
-
+    private String whereClause;
+    private Integer chunkSize;
+    private Integer parallelDegree;
+    private boolean skipUnchanged;
+    private boolean lobStreaming;
+    private String sourceTableName;
+    private String joinColumns;
+    private String partitionName;
+    private final List<CopyColumnConfig> columns = new ArrayList<>();
 
     public CopyColumnStatement(String catalogName, String schemaName, String tableName, String fromName, String fromType, String toName, String toType) {
         this.catalogName = catalogName;
@@ -36,6 +50,7 @@ public class CopyColumnStatement extends AbstractSqlStatement {
         this.fromType = fromType;
         this.toName = toName;
         this.toType = toType;
+        this.columns.add(new CopyColumnConfig(fromName, fromType, toName, toType));
     }
 
     public String getCatalogName() {
@@ -65,4 +80,135 @@ public class CopyColumnStatement extends AbstractSqlStatement {
     public String getToType() {
         return toType;
     }
-}
\ No newline at end of file
+
+    public String getWhereClause() {
+        return whereClause;
+    }
+
+    public CopyColumnStatement setWhereClause(String whereClause) {
+        this.whereClause = whereClause;
+        return this;
+    }
+
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
+    public CopyColumnStatement setChunkSize(Integer chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public Integer getParallelDegree() {
+        return parallelDegree;
+    }
+
+    public CopyColumnStatement setParallelDegree(Integer parallelDegree) {
+        this.parallelDegree = parallelDegree;
+        return this;
+    }
+
+    public boolean isSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    public CopyColumnStatement setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+        return this;
+    }
+
+    public boolean isLobStreaming() {
+        return lobStreaming;
+    }
+
+    public CopyColumnStatement setLobStreaming(boolean lobStreaming) {
+        this.lobStreaming = lobStreaming;
+        return this;
+    }
+
+    /**
+     * Returns the table where the source columns are read, {@code null} if
+     * they are in the same table of the target columns.
+     *
+     * @return the source table name
+     */
+    public String getSourceTableName() {
+        return sourceTableName;
+    }
+
+    public CopyColumnStatement setSourceTableName(String sourceTableName) {
+        this.sourceTableName = sourceTableName;
+        return this;
+    }
+
+    /**
+     * Returns the columns that join the target table to the source table as
+     * a comma separated list of {@code targetColumn=sourceColumn} or of
+     * {@code column} when the name is the same in both tables.
+     *
+     * @return the join columns
+     */
+    public String getJoinColumns() {
+        return joinColumns;
+    }
+
+    public CopyColumnStatement setJoinColumns(String joinColumns) {
+        this.joinColumns = joinColumns;
+        return this;
+    }
+
+    /**
+     * Returns the partition of the table to update, supported only by
+     * databases that could address a partition in an UPDATE (Oracle).
+     *
+     * @return the partition name or {@code null} to update the whole table
+     */
+    public String getPartitionName() {
+        return partitionName;
+    }
+
+    public CopyColumnStatement setPartitionName(String partitionName) {
+        this.partitionName = partitionName;
+        return this;
+    }
+
+    /**
+     * Returns the join columns by target column.
+     *
+     * @return the map of target column to source column
+     */
+    public Map<String, String> getJoinColumnMap() {
+        Map<String, String> join = new LinkedHashMap<>();
+        if (joinColumns != null) {
+            for (String pair : joinColumns.split(",")) {
+                String[] names = pair.split("=");
+                if (!names[0].trim().isEmpty()) {
+                    join.put(names[0].trim(), (names.length > 1 ? names[1] : names[0]).trim());
+                }
+            }
+        }
+        return join;
+    }
+
+    /**
+     * Returns all columns copied by this statement, the first one is the column
+     * given in the constructor.
+     *
+     * @return the list of copied columns
+     */
+    public List<CopyColumnConfig> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Copies also the given column in the same pass on the table.
+     *
+     * @param column
+     *            the column to copy
+     * @return this statement
+     */
+    public CopyColumnStatement addColumn(CopyColumnConfig column) {
+        columns.add(column);
+        return this;
+    }
+}
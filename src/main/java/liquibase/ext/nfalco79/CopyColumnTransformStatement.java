@@ -0,0 +1,299 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.exception.DatabaseException;
+
+/**
+ * Copy columns converting values with a {@link CopyColumnTransformer} as a
+ * pipeline of three stages connected by bounded queues:
+ * <ul>
+ * <li>a reader that fetches keys and source values with a large fetch
+ * size and groups them in batches of {@code chunkSize} rows;</li>
+ * <li>{@code parallelism} workers that transform the batches;</li>
+ * <li>a writer that updates the target columns, addressed by the whole
+ * primary key, with a batched prepared statement on its own connection and
+ * commits each batch.</li>
+ * </ul>
+ * A stage waits when the next one is slower, so that at most about
+ * {@code 3 * parallelism + 2} batches are in memory whatever the table size.
+ * Throttle, replication lag, lock backoff and progress are applied by the
+ * writer after each commit. The changelog connection is committed before the
+ * writer is opened, so the writer sees the changeSet work done before the copy.
+ * <p>
+ * LOB values read from the source columns are detached by the reader, that
+ * owns the connection of their locators, into streams spooled on temporary
+ * files when larger than the buffer. They and the streams returned by the
+ * transformer are written through a {@link LobPipe}, so a LOB is never
+ * materialized in memory.
+ *
+ * @author Nikolas Falco
+ */
+public class CopyColumnTransformStatement extends CopyColumnChunkedStatement {
+
+    // identity marker of the end of the stream
+    private static final List<Object[]> END = Collections.emptyList();
+
+    private final String transformer;
+    private int fetchSize;
+    private int lobBufferSize = 32768;
+
+    public CopyColumnTransformStatement(Database database, String catalogName, String schemaName, String tableName, String fromName, String fromType, String toName, String toType, int chunkSize, String transformer) { // NOSONAR
+        super(database, catalogName, schemaName, tableName, fromName, fromType, toName, toType, chunkSize);
+        this.transformer = transformer;
+        this.fetchSize = chunkSize;
+    }
+
+    /**
+     * Returns the class name of the {@link CopyColumnTransformer}.
+     *
+     * @return the transformer class name
+     */
+    public String getTransformer() {
+        return transformer;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public CopyColumnTransformStatement setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    public int getLobBufferSize() {
+        return lobBufferSize;
+    }
+
+    public CopyColumnTransformStatement setLobBufferSize(int lobBufferSize) {
+        this.lobBufferSize = lobBufferSize;
+        return this;
+    }
+
+    @Override
+    protected long copy(Connection connection, RowKey key) throws SQLException, DatabaseException {
+        CopyColumnTransformer function = newTransformer();
+        int workers = getParallelism();
+        BlockingQueue<List<Object[]>> read = new ArrayBlockingQueue<>(workers);
+        BlockingQueue<List<Object[]>> transformed = new ArrayBlockingQueue<>(workers);
+
+        if (getThrottle() != null) {
+            getThrottle().start();
+        }
+        if (getProgress() != null) {
+            getProgress().setEstimatedRows(TableStatistics.estimateRows(connection, getDatabase(), getCatalogName(), getSchemaName(), getTableName())).start();
+        }
+        // the writer would wait for the locks of the changeSet work done so far
+        // on the changelog connection, like the DDL of the target column
+        connection.commit();
+        Connection writer = openConnection();
+        ExecutorService executor = Executors.newFixedThreadPool(workers + 2);
+        try {
+            CompletionService<Long> stages = new ExecutorCompletionService<>(executor);
+            stages.submit(() -> read(connection, key, read, workers));
+            for (int i = 0; i < workers; i++) {
+                stages.submit(() -> transform(function, read, transformed));
+            }
+            stages.submit(() -> write(writer, key, transformed, workers));
+
+            long rows = 0;
+            for (int i = 0; i < workers + 2; i++) {
+                // the first failed stage stops the others
+                rows += stages.take().get();
+            }
+            return rows;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } catch (ExecutionException e) {
+            rollbackQuietly(writer);
+            throw new DatabaseException("Copy of " + getTableName() + " with transformer " + transformer + " failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+            discard(read);
+            discard(transformed);
+            closeQuietly(writer);
+            if (getProgress() != null) {
+                getProgress().stop();
+            }
+        }
+    }
+
+    /**
+     * Returns a new instance of the transformer.
+     *
+     * @return the transformer
+     * @throws DatabaseException
+     *             if the class could not be instantiated
+     */
+    protected CopyColumnTransformer newTransformer() throws DatabaseException {
+        try {
+            Class<?> type = Class.forName(transformer, true, Scope.getCurrentScope().getClassLoader());
+            return (CopyColumnTransformer) type.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new DatabaseException("Could not create transformer " + transformer, e);
+        }
+    }
+
+    private long read(Connection connection, RowKey key, BlockingQueue<List<Object[]>> queue, int workers) throws SQLException, InterruptedException {
+        int columns = getColumns().size();
+        int keySize = key.getColumns().size();
+        LobPipe lobs = new LobPipe(lobBufferSize);
+        try (PreparedStatement stmt = connection.prepareStatement(getSelectSql(key))) {
+            // MySQL streams rows only with this magic value
+            stmt.setFetchSize(getDatabase() instanceof MySQLDatabase ? Integer.MIN_VALUE : fetchSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                long size = getBatchSize();
+                List<Object[]> batch = new ArrayList<>();
+                while (rs.next()) {
+                    Object[] row = new Object[columns + 1];
+                    row[0] = key.read(rs, 1);
+                    for (int i = 1; i <= columns; i++) {
+                        row[i] = lobs.detach(rs.getObject(i + keySize));
+                    }
+                    batch.add(row);
+                    if (batch.size() >= size) {
+                        queue.put(batch);
+                        batch = new ArrayList<>();
+                        size = getBatchSize();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    queue.put(batch);
+                }
+            }
+        }
+        for (int i = 0; i < workers; i++) {
+            queue.put(END);
+        }
+        return 0;
+    }
+
+    private long transform(CopyColumnTransformer function, BlockingQueue<List<Object[]>> in, BlockingQueue<List<Object[]>> out) throws InterruptedException {
+        List<CopyColumnConfig> columns = getColumns();
+        List<Object[]> batch;
+        while ((batch = in.take()) != END) { // NOSONAR
+            for (Object[] row : batch) {
+                for (int i = 0; i < columns.size(); i++) {
+                    row[i + 1] = function.transform(columns.get(i), row[i + 1]);
+                }
+            }
+            out.put(batch);
+        }
+        out.put(END);
+        return 0;
+    }
+
+    private long write(Connection connection, RowKey key, BlockingQueue<List<Object[]>> queue, int workers) throws SQLException, InterruptedException {
+        long rows = 0;
+        int running = workers;
+        LobPipe lobs = new LobPipe(lobBufferSize);
+        try (PreparedStatement stmt = connection.prepareStatement(getUpdateSql(key))) {
+            while (running > 0) {
+                List<Object[]> batch = queue.take();
+                if (batch == END) { // NOSONAR
+                    running--;
+                    continue;
+                }
+                for (Object[] row : batch) {
+                    for (int i = 1; i < row.length; i++) {
+                        if (row[i] == null) {
+                            stmt.setNull(i, Types.NULL);
+                        } else if (!lobs.bind(connection, stmt, i, row[i])) {
+                            stmt.setObject(i, row[i]);
+                        }
+                    }
+                    key.bind(stmt, row.length, (Object[]) row[0]);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                lobs.release();
+                boolean blocking = getLockBackoff() != null && getLockBackoff().check(connection);
+                connection.commit();
+                // some drivers do not report the count of each batched statement
+                rows += batch.size();
+                afterChunk(connection, batch.size(), blocking);
+            }
+        }
+        return rows;
+    }
+
+    /*
+     * Closes the detached LOBs of the batches left in a queue by a failed
+     * copy, so their temporary files are deleted.
+     */
+    private static void discard(BlockingQueue<List<Object[]>> queue) {
+        List<Object[]> batch;
+        while ((batch = queue.poll()) != null) {
+            for (Object[] row : batch) {
+                for (Object value : row) {
+                    if (value instanceof Closeable) {
+                        try {
+                            ((Closeable) value).close();
+                        } catch (IOException e) { // NOSONAR
+                            // best effort cleanup of a failed copy
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private long getBatchSize() {
+        long size = getLagController() != null ? getLagController().getChunkSize() : getChunkSize();
+        return getLockBackoff() != null ? getLockBackoff().adjust(size) : size;
+    }
+
+    protected String getSelectSql(RowKey key) {
+        Database database = getDatabase();
+        StringBuilder sql = new StringBuilder("SELECT ").append(key);
+        for (CopyColumnConfig column : getColumns()) {
+            sql.append(", ").append(database.escapeColumnName(getCatalogName(), getSchemaName(), getTableName(), column.getFromName()));
+        }
+        return sql.append(" FROM ").append(database.escapeTableName(getCatalogName(), getSchemaName(), getTableName())).toString();
+    }
+
+    protected String getUpdateSql(RowKey key) {
+        Database database = getDatabase();
+        List<String> assignments = new ArrayList<>();
+        for (CopyColumnConfig column : getColumns()) {
+            assignments.add(database.escapeColumnName(getCatalogName(), getSchemaName(), getTableName(), column.getToName()) + " = ?");
+        }
+        return "UPDATE " + database.escapeTableName(getCatalogName(), getSchemaName(), getTableName()) + " SET " + String.join(", ", assignments) + " WHERE " + key.getEqualsPredicate();
+    }
+}
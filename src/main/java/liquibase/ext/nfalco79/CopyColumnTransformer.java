@@ -0,0 +1,45 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+/**
+ * Converts the values of a copied column in Java, for the conversions that
+ * could not be expressed as SQL.
+ * <p>
+ * Implementations must have a public no-arg constructor and must be thread
+ * safe because the same instance is invoked by all workers of a copy.
+ *
+ * @author Nikolas Falco
+ */
+public interface CopyColumnTransformer {
+
+    /**
+     * Converts a value of the source column to the value of the target column.
+     *
+     * @param column
+     *            the copied column
+     * @param value
+     *            the value read from the source column as returned by
+     *            {@link java.sql.ResultSet#getObject(int)}, could be
+     *            {@code null}, LOBs are given as {@link java.io.InputStream}
+     *            (BLOB) or {@link java.io.Reader} (CLOB) of their content,
+     *            a stream not returned must be closed once read
+     * @return the value to write in the target column, could be {@code null},
+     *         an {@link java.io.InputStream} or {@link java.io.Reader} is
+     *         streamed into the target LOB
+     */
+    Object transform(CopyColumnConfig column, Object value);
+}
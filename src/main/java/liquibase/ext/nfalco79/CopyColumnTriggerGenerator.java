@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import liquibase.database.Database;
+import liquibase.database.core.AbstractDb2Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.ValidationErrors;
+import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
+import liquibase.sqlgenerator.SqlGenerator;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.core.AbstractSqlGenerator;
+import liquibase.structure.core.Table;
+
+/**
+ * Generates the row trigger of an online copy. The trigger converts the
+ * source columns into the target columns before each insert and each update
+ * of a source column.
+ * <p>
+ * PostgreSQL and Oracle use one trigger for both events, DB2 and MySQL a
+ * trigger per event with suffix {@code I} and {@code U}.
+ *
+ * @author Nikolas Falco
+ */
+public class CopyColumnTriggerGenerator extends AbstractSqlGenerator<CopyColumnTriggerStatement> {
+
+    private final CopyColumnGenerator copyGenerator = new CopyColumnGenerator();
+
+    @Override
+    public int getPriority() {
+        return SqlGenerator.PRIORITY_DEFAULT;
+    }
+
+    @Override
+    public boolean supports(CopyColumnTriggerStatement statement, Database database) {
+        return isSupported(database);
+    }
+
+    /**
+     * Returns if row triggers that change the new row are supported by the
+     * given database.
+     *
+     * @param database
+     *            the database
+     * @return {@code true} if an online copy could be done
+     */
+    public static boolean isSupported(Database database) {
+        return database instanceof PostgresDatabase || database instanceof OracleDatabase || database instanceof AbstractDb2Database || database instanceof MySQLDatabase;
+    }
+
+    @Override
+    public ValidationErrors validate(CopyColumnTriggerStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) {
+        ValidationErrors validationErrors = new ValidationErrors();
+        validationErrors.checkRequiredField("tableName", statement.getTableName());
+        for (CopyColumnConfig column : statement.getColumns()) {
+            validationErrors.checkRequiredField("fromName", column.getFromName());
+            validationErrors.checkRequiredField("fromType", column.getFromType());
+            validationErrors.checkRequiredField("toName", column.getToName());
+            validationErrors.checkRequiredField("toType", column.getToType());
+        }
+        return validationErrors;
+    }
+
+    @Override
+    public Sql[] generateSql(CopyColumnTriggerStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) {
+        String tableNameEscaped = database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName());
+        String triggerName = statement.getTriggerName();
+
+        if (database instanceof PostgresDatabase) {
+            String functionNameEscaped = database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), triggerName + "_fn");
+            String triggerNameEscaped = database.escapeObjectName(triggerName, Table.class);
+            if (statement.isDrop()) {
+                return new Sql[] {
+                        new UnparsedSql("DROP TRIGGER IF EXISTS " + triggerNameEscaped + " ON " + tableNameEscaped),
+                        new UnparsedSql("DROP FUNCTION IF EXISTS " + functionNameEscaped + "()")
+                };
+            }
+            return new Sql[] {
+                    new UnparsedSql("CREATE OR REPLACE FUNCTION " + functionNameEscaped + "() RETURNS trigger AS $$ BEGIN "
+                            + getAssignments(statement, database, "NEW.", " := ", "; ") + "; RETURN NEW; END $$ LANGUAGE plpgsql"),
+                    new UnparsedSql("DROP TRIGGER IF EXISTS " + triggerNameEscaped + " ON " + tableNameEscaped),
+                    new UnparsedSql("CREATE TRIGGER " + triggerNameEscaped + " BEFORE INSERT OR UPDATE OF " + getSourceColumns(statement, database) + " ON " + tableNameEscaped
+                            + " FOR EACH ROW EXECUTE PROCEDURE " + functionNameEscaped + "()")
+            };
+        }
+
+        if (database instanceof OracleDatabase) {
+            String triggerNameEscaped = database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), triggerName);
+            if (statement.isDrop()) {
+                return new Sql[] { new UnparsedSql("DROP TRIGGER " + triggerNameEscaped) };
+            }
+            return new Sql[] { new UnparsedSql("CREATE OR REPLACE TRIGGER " + triggerNameEscaped + " BEFORE INSERT OR UPDATE OF " + getSourceColumns(statement, database)
+                    + " ON " + tableNameEscaped + " FOR EACH ROW BEGIN " + getAssignments(statement, database, ":NEW.", " := ", "; ") + "; END;", "\n/") };
+        }
+
+        String insertTrigger = database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), triggerName + suffix(triggerName, "I"));
+        String updateTrigger = database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), triggerName + suffix(triggerName, "U"));
+        List<Sql> sql = new ArrayList<>();
+        if (database instanceof AbstractDb2Database) {
+            if (statement.isDrop()) {
+                sql.add(new UnparsedSql("DROP TRIGGER " + insertTrigger));
+                sql.add(new UnparsedSql("DROP TRIGGER " + updateTrigger));
+            } else {
+                String action = " ON " + tableNameEscaped + " REFERENCING NEW AS N FOR EACH ROW SET " + getAssignments(statement, database, "N.", " = ", ", ");
+                sql.add(new UnparsedSql("CREATE OR REPLACE TRIGGER " + insertTrigger + " NO CASCADE BEFORE INSERT" + action));
+                sql.add(new UnparsedSql("CREATE OR REPLACE TRIGGER " + updateTrigger + " NO CASCADE BEFORE UPDATE OF " + getSourceColumns(statement, database) + action));
+            }
+        } else {
+            sql.add(new UnparsedSql("DROP TRIGGER IF EXISTS " + insertTrigger));
+            sql.add(new UnparsedSql("DROP TRIGGER IF EXISTS " + updateTrigger));
+            if (!statement.isDrop()) {
+                String action = " ON " + tableNameEscaped + " FOR EACH ROW SET " + getAssignments(statement, database, "NEW.", " = ", ", ");
+                sql.add(new UnparsedSql("CREATE TRIGGER " + insertTrigger + " BEFORE INSERT" + action));
+                sql.add(new UnparsedSql("CREATE TRIGGER " + updateTrigger + " BEFORE UPDATE" + action));
+            }
+        }
+        return sql.toArray(new Sql[0]);
+    }
+
+    private String suffix(String triggerName, String suffix) {
+        return triggerName.equals(triggerName.toLowerCase()) ? suffix.toLowerCase() : suffix;
+    }
+
+    private String getSourceColumns(CopyColumnTriggerStatement statement, Database database) {
+        return statement.getColumns().stream() //
+                .map(CopyColumnConfig::getFromName) //
+                .distinct() //
+                .map(name -> escapeColumnName(statement, database, name)) //
+                .collect(Collectors.joining(", "));
+    }
+
+    private String getAssignments(CopyColumnTriggerStatement statement, Database database, String row, String operator, String separator) {
+        return statement.getColumns().stream() //
+                .map(column -> row + escapeColumnName(statement, database, column.getToName()) + operator
+                        + copyGenerator.getSourceExpression(column, row + escapeColumnName(statement, database, column.getFromName()), database)) //
+                .collect(Collectors.joining(separator));
+    }
+
+    private String escapeColumnName(CopyColumnTriggerStatement statement, Database database, String columnName) {
+        return database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), columnName);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import liquibase.statement.AbstractSqlStatement;
+
+/**
+ * Creates or drops the trigger that keeps the target columns of an online
+ * copy in sync with the source columns while existing rows are backfilled.
+ *
+ * @author Nikolas Falco
+ */
+public class CopyColumnTriggerStatement extends AbstractSqlStatement {
+
+    private static final String TRIGGER_SUFFIX = "_CPY";
+    private static final int MAX_NAME_LENGTH = 28;
+
+    private final String catalogName;
+    private final String schemaName;
+    private final String tableName;
+    private final List<CopyColumnConfig> columns;
+    private final boolean drop;
+
+    public CopyColumnTriggerStatement(String catalogName, String schemaName, String tableName, List<CopyColumnConfig> columns, boolean drop) {
+        this.catalogName = catalogName;
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+        this.columns = new ArrayList<>(columns);
+        this.drop = drop;
+    }
+
+    public String getCatalogName() {
+        return catalogName;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public List<CopyColumnConfig> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Returns if the trigger must be dropped instead of created.
+     *
+     * @return {@code true} to drop the trigger
+     */
+    public boolean isDrop() {
+        return drop;
+    }
+
+    /**
+     * Returns the name of the trigger derived from the table name, a
+     * database that requires a trigger per event adds a suffix to it.
+     *
+     * @return the trigger name
+     */
+    public String getTriggerName() {
+        String name = tableName;
+        if (name.length() + TRIGGER_SUFFIX.length() > MAX_NAME_LENGTH) {
+            name = name.substring(0, MAX_NAME_LENGTH - TRIGGER_SUFFIX.length());
+        }
+        // keep the case of the table name, so the trigger name requires quoting only if the table name does
+        return name + (name.equals(name.toLowerCase()) ? TRIGGER_SUFFIX.toLowerCase() : TRIGGER_SUFFIX);
+    }
+}
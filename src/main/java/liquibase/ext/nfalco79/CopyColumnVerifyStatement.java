@@ -0,0 +1,328 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.PreparedStatementFactory;
+import liquibase.database.core.AbstractDb2Database;
+import liquibase.database.core.H2Database;
+import liquibase.database.core.MSSQLDatabase;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.datatype.DataTypeFactory;
+import liquibase.exception.DatabaseException;
+
+/**
+ * Verify that the target columns of a copy match the converted source
+ * columns without reading values on the client.
+ * <p>
+ * For a range of keys the database computes the count and the sum of the
+ * hashes of each converted source and target column, only these aggregates
+ * are compared. A range that does not match is split in smaller ranges until
+ * they have at most {@code chunkSize} rows, then the differing rows of the
+ * range are counted. With a {@code parallelism} greater than one the key
+ * space is split in as many ranges verified concurrently on their own
+ * connections.
+ * <p>
+ * LOBs are hashed on their length and first 2000 characters or bytes (their
+ * length only on DB2).
+ *
+ * @author Nikolas Falco
+ */
+public class CopyColumnVerifyStatement extends CopyColumnChunkedStatement {
+
+    private static final int FANOUT = 8;
+    private static final List<String> LOB_TYPES = Arrays.asList("CLOB", "BLOB", "NCLOB", "TEXT", "BYTEA", "DBCLOB");
+
+    public CopyColumnVerifyStatement(Database database, String catalogName, String schemaName, String tableName, String fromName, String fromType, String toName, String toType, int chunkSize) { // NOSONAR
+        super(database, catalogName, schemaName, tableName, fromName, fromType, toName, toType, chunkSize);
+    }
+
+    /**
+     * Returns if the database could hash values to verify a copy.
+     *
+     * @param database
+     *            the database
+     * @return {@code true} if verify is supported
+     */
+    public static boolean isSupported(Database database) {
+        return database instanceof PostgresDatabase || database instanceof OracleDatabase || database instanceof AbstractDb2Database
+                || database instanceof MSSQLDatabase || database instanceof MySQLDatabase || database instanceof H2Database;
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        RowKey key = RowKey.lookup(getDatabase(), getCatalogName(), getSchemaName(), getTableName());
+        Connection connection = ((JdbcConnection) getDatabase().getConnection()).getUnderlyingConnection();
+        Queue<String> mismatches = new ConcurrentLinkedQueue<>();
+        long rows;
+        try {
+            if (getParallelism() > 1) {
+                Map<Integer, KeyRange> ranges = split(connection, key, getParallelism());
+                // workers read the copy committed by the changeSet, not only by the copy chunks
+                connection.commit();
+                rows = verifyParallel(key, ranges, mismatches);
+            } else {
+                rows = verify(connection, key, KeyRange.ALL, mismatches);
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+
+        if (!mismatches.isEmpty()) {
+            throw new DatabaseException("Verify of " + getColumns() + " of table " + getTableName() + " failed, " + rows + " rows differ: " + String.join("; ", mismatches));
+        }
+        Scope.getCurrentScope().getLog(getClass()).info("Verified " + getColumns() + " of table " + getTableName());
+    }
+
+    /**
+     * Verifies the given ranges concurrently, each worker thread has a
+     * dedicated connection.
+     *
+     * @param key
+     *            the key used to split the table in ranges
+     * @param ranges
+     *            the ranges to verify
+     * @param mismatches
+     *            collects the description of the ranges that differ
+     * @return the number of rows that differ
+     * @throws DatabaseException
+     *             if a worker connection could not be opened or a query
+     *             fails
+     */
+    protected long verifyParallel(RowKey key, Map<Integer, KeyRange> ranges, Queue<String> mismatches) throws DatabaseException {
+        int workerCount = Math.min(getParallelism(), ranges.size());
+        Queue<KeyRange> pending = new ConcurrentLinkedQueue<>(ranges.values());
+        AtomicLong rows = new AtomicLong();
+
+        List<Connection> workers = new ArrayList<>(workerCount);
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(openConnection());
+            }
+
+            List<Future<?>> results = new ArrayList<>(workerCount);
+            for (Connection worker : workers) {
+                results.add(executor.submit(() -> {
+                    KeyRange range;
+                    while ((range = pending.poll()) != null) {
+                        rows.addAndGet(verify(worker, key, range, mismatches));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            return rows.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } catch (ExecutionException e) {
+            throw new DatabaseException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (Connection worker : workers) {
+                rollbackQuietly(worker);
+                closeQuietly(worker);
+            }
+        }
+    }
+
+    /**
+     * Verifies a range drilling into the sub ranges whose aggregates differ.
+     *
+     * @param connection
+     *            the connection where run the queries
+     * @param key
+     *            the key used to split the table in ranges
+     * @param range
+     *            the range to verify
+     * @param mismatches
+     *            collects the description of the ranges that differ
+     * @return the number of rows that differ
+     * @throws SQLException
+     *             in case of failure
+     */
+    protected long verify(Connection connection, RowKey key, KeyRange range, Queue<String> mismatches) throws SQLException {
+        long rows = 0;
+        Deque<KeyRange> pending = new ArrayDeque<>();
+        pending.push(range);
+        while (!pending.isEmpty()) {
+            KeyRange current = pending.pop();
+            List<Object> aggregates = aggregate(connection, key, current);
+            if (matches(aggregates)) {
+                continue;
+            }
+
+            long count = ((Number) aggregates.get(0)).longValue();
+            List<KeyRange> parts = count > getChunkSize() ? drillDown(connection, key, current, count) : null;
+            if (parts != null && parts.size() > 1) {
+                parts.forEach(pending::push);
+                continue;
+            }
+
+            long differ = countDiffering(connection, key, current);
+            if (differ > 0) {
+                rows += differ;
+                mismatches.add("range " + current + ": " + differ + " rows");
+            }
+        }
+        return rows;
+    }
+
+    private List<KeyRange> drillDown(Connection connection, RowKey key, KeyRange range, long count) throws SQLException {
+        List<KeyRange> parts = new ArrayList<>(FANOUT);
+        long step = (count + FANOUT - 1) / FANOUT;
+        Object[] lower = range.getLower();
+        Object[] upper;
+        while ((upper = nextBoundary(connection, key, lower, range.getUpper(), step)) != null && !Arrays.equals(upper, range.getUpper())) {
+            parts.add(new KeyRange(lower, upper));
+            lower = upper;
+        }
+        parts.add(new KeyRange(lower, range.getUpper()));
+        return parts;
+    }
+
+    /*
+     * Values are: rows, then for each column count and hash sum of source
+     * and count and hash sum of target.
+     */
+    private List<Object> aggregate(Connection connection, RowKey key, KeyRange range) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(getAggregateSql(key, range.getLower() != null, range.getUpper() != null))) {
+            key.bindRange(stmt, 1, range.getLower(), range.getUpper());
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                List<Object> values = new ArrayList<>();
+                for (int i = 1; i <= 1 + 4 * getColumns().size(); i++) {
+                    values.add(rs.getObject(i));
+                }
+                return values;
+            }
+        }
+    }
+
+    private boolean matches(List<Object> aggregates) {
+        for (int i = 1; i < aggregates.size(); i += 4) {
+            if (!Objects.equals(aggregates.get(i), aggregates.get(i + 2)) || !Objects.equals(aggregates.get(i + 1), aggregates.get(i + 3))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long countDiffering(Connection connection, RowKey key, KeyRange range) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(getDifferingSql(key, range.getLower() != null, range.getUpper() != null))) {
+            key.bindRange(stmt, 1, range.getLower(), range.getUpper());
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    protected String getAggregateSql(RowKey key, boolean lowerBound, boolean upperBound) {
+        Database database = getDatabase();
+        CopyColumnGenerator generator = new CopyColumnGenerator();
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*)");
+        for (CopyColumnConfig column : getColumns()) {
+            String source = generator.getSourceExpression(this, column, database);
+            String target = database.escapeColumnName(getCatalogName(), getSchemaName(), getTableName(), column.getToName());
+            sql.append(", COUNT(").append(source).append("), SUM(").append(getHash(source, column.getToType())).append(")") //
+                    .append(", COUNT(").append(target).append("), SUM(").append(getHash(target, column.getToType())).append(")");
+        }
+        sql.append(" FROM ").append(database.escapeTableName(getCatalogName(), getSchemaName(), getTableName()));
+        return appendRange(sql, key, lowerBound, upperBound, null);
+    }
+
+    protected String getDifferingSql(RowKey key, boolean lowerBound, boolean upperBound) {
+        Database database = getDatabase();
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM ").append(database.escapeTableName(getCatalogName(), getSchemaName(), getTableName()));
+        return appendRange(sql, key, lowerBound, upperBound, new CopyColumnGenerator().getChangedPredicate(this, database));
+    }
+
+    private String appendRange(StringBuilder sql, RowKey key, boolean lowerBound, boolean upperBound, String predicate) {
+        List<String> where = new ArrayList<>();
+        if (lowerBound || upperBound) {
+            where.add(key.getRangePredicate(lowerBound, upperBound));
+        }
+        if (predicate != null) {
+            where.add(predicate);
+        }
+        if (!where.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", where));
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Returns the SQL expression of the hash of a value, the sum of hashes
+     * must not overflow. On PostgreSQL the value is cast to the given type
+     * before it is hashed as text, so source and target are hashed in the
+     * same form.
+     *
+     * @param value
+     *            the SQL expression of the value
+     * @param type
+     *            the type of the value
+     * @return the hash expression
+     */
+    protected String getHash(String value, String type) {
+        Database database = getDatabase();
+        boolean lob = LOB_TYPES.contains(ConversionRegistry.normalize(type).toUpperCase(Locale.ROOT));
+        if (database instanceof PostgresDatabase) {
+            // the text of the source expression could differ from the one of the stored value (scale, time zone, padding)
+            String dataType = DataTypeFactory.getInstance().fromDescription(type, database).toDatabaseDataType(database).toString();
+            return "('x' || substr(md5(CAST(CAST(" + value + " AS " + dataType + ") AS TEXT)), 1, 8))::bit(32)::int";
+        } else if (database instanceof OracleDatabase) {
+            if (lob) {
+                return "ORA_HASH(DBMS_LOB.SUBSTR(" + value + ", 2000, 1)) + DBMS_LOB.GETLENGTH(" + value + ")";
+            }
+            return "ORA_HASH(" + value + ")";
+        } else if (database instanceof AbstractDb2Database) {
+            return lob ? "BIGINT(LENGTH(" + value + "))" : "BIGINT(HASH4(" + value + "))";
+        } else if (database instanceof MSSQLDatabase) {
+            return "CAST(BINARY_CHECKSUM(" + value + ") AS BIGINT)";
+        } else if (database instanceof MySQLDatabase) {
+            return "CRC32(" + value + ")";
+        }
+        return "ORA_HASH(" + value + ")";
+    }
+}
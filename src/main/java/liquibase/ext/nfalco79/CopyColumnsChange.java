@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import liquibase.change.ChangeWithColumns;
+import liquibase.change.DatabaseChange;
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+
+/**
+ * Copy many columns of the same table in a single pass, so that the table is
+ * scanned and rewritten once instead of once per column.
+ *
+ * @author Nikolas Falco
+ */
+@DatabaseChange(name = "copyColumns", description = "Custom Copy Columns", priority = 1)
+public class CopyColumnsChange extends AbstractCopyColumnChange implements ChangeWithColumns<CopyColumnConfig> {
+
+    private List<CopyColumnConfig> columns = new ArrayList<>();
+
+    @Override
+    public List<CopyColumnConfig> getColumns() {
+        return columns;
+    }
+
+    @Override
+    public void setColumns(List<CopyColumnConfig> columns) {
+        this.columns = columns;
+    }
+
+    @Override
+    public void addColumn(CopyColumnConfig column) {
+        columns.add(column);
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+
+        if (columns == null || columns.isEmpty()) {
+            errors.addError("copyColumns requires at least one column");
+        } else {
+            Set<String> targets = new HashSet<>();
+            for (CopyColumnConfig column : columns) {
+                if (column.getToName() != null && !targets.add(column.getToName().toUpperCase())) {
+                    errors.addError("column " + column.getToName() + " is the target of more than one copy");
+                }
+            }
+        }
+
+        return errors;
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Columns " + columns + " copied" + getBackoffMessage();
+    }
+
+    @Override
+    protected List<CopyColumnConfig> getCopyColumns() {
+        return columns != null ? columns : new ArrayList<>();
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import liquibase.Scope;
+import liquibase.logging.Logger;
+
+/**
+ * Tracks the rows copied by a data migration and reports rows done, rows per
+ * second and the estimated time to complete.
+ * <p>
+ * Workers only increment a counter, the report is emitted at a fixed interval
+ * by a background thread to the log and to all
+ * {@link CopyProgressListener}s.
+ *
+ * @author Nikolas Falco
+ */
+public class CopyProgress {
+
+    private final String name;
+    private final long interval;
+    private final Logger log;
+    private final List<CopyProgressListener> listeners;
+    private final AtomicLong rows = new AtomicLong();
+    private volatile Long estimatedRows;
+    private volatile long start;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Default constructor.
+     *
+     * @param name
+     *            the name of the migration used in the report
+     * @param interval
+     *            the interval in seconds between two reports, 0 to report
+     *            only at the end
+     * @param listeners
+     *            the listeners notified of each report
+     */
+    public CopyProgress(String name, long interval, List<CopyProgressListener> listeners) {
+        this.name = name;
+        this.interval = interval;
+        this.listeners = new ArrayList<>(listeners);
+        // the background thread could not see the scope of the migration
+        this.log = Scope.getCurrentScope().getLog(getClass());
+    }
+
+    /**
+     * Returns the listeners registered in the liquibase service locator.
+     *
+     * @return the list of listeners
+     */
+    public static List<CopyProgressListener> findListeners() {
+        return Scope.getCurrentScope().getServiceLocator().findInstances(CopyProgressListener.class);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    public CopyProgress setEstimatedRows(Long estimatedRows) {
+        this.estimatedRows = estimatedRows;
+        return this;
+    }
+
+    /**
+     * Starts to measure the progress and schedules the reports.
+     */
+    public synchronized void start() {
+        start = now();
+        rows.set(0);
+        if (interval > 0 && reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "copy-progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(this::report, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Accounts the rows of a committed chunk.
+     *
+     * @param chunkRows
+     *            the number of rows
+     */
+    public void add(long chunkRows) {
+        rows.addAndGet(chunkRows);
+    }
+
+    /**
+     * Stops the scheduled reports and emits the final one.
+     */
+    public synchronized void stop() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        report();
+    }
+
+    public long getRows() {
+        return rows.get();
+    }
+
+    /**
+     * Returns the average throughput since the start.
+     *
+     * @return the number of rows per second
+     */
+    public double getRowsPerSecond() {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(now() - start);
+        return elapsed > 0 ? getRows() * 1000d / elapsed : 0;
+    }
+
+    /**
+     * Returns the estimated time to copy the remaining rows at the current
+     * throughput.
+     *
+     * @return the seconds to complete or {@code null} if unknown
+     */
+    public Long getEta() {
+        Long estimated = estimatedRows;
+        double rate = getRowsPerSecond();
+        if (estimated == null || rate <= 0) {
+            return null;
+        }
+        // statistics could be stale, never report a negative time
+        return Math.round(Math.max(0, estimated - getRows()) / rate);
+    }
+
+    /**
+     * Emits a report of the current progress.
+     */
+    protected void report() {
+        log.info(toString());
+        for (CopyProgressListener listener : listeners) {
+            try {
+                listener.progress(this);
+            } catch (RuntimeException e) {
+                log.warning("Progress listener " + listener.getClass().getName() + " failed", e);
+            }
+        }
+    }
+
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name).append(": ").append(getRows());
+        Long estimated = estimatedRows;
+        if (estimated != null && estimated > 0) {
+            sb.append(" of ~").append(estimated).append(" rows (").append(Math.min(100, getRows() * 100 / estimated)).append("%)");
+        } else {
+            sb.append(" rows");
+        }
+        sb.append(", ").append(Math.round(getRowsPerSecond())).append(" rows/s");
+        Long eta = getEta();
+        if (eta != null) {
+            sb.append(", ETA ").append(eta).append("s");
+        }
+        return sb.toString();
+    }
+}
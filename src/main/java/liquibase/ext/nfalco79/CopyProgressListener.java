@@ -0,0 +1,38 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+/**
+ * Receives the progress of long data migrations.
+ * <p>
+ * Implementations are discovered with the liquibase service locator
+ * (META-INF/services/liquibase.ext.nfalco79.CopyProgressListener), a
+ * {@link liquibase.changelog.visitor.ChangeExecListener} could implement this
+ * interface to receive also the progress of the changes it is notified for.
+ * Notifications come from a background thread.
+ *
+ * @author Nikolas Falco
+ */
+public interface CopyProgressListener {
+
+    /**
+     * Notifies the progress of a data migration.
+     *
+     * @param progress
+     *            the current progress
+     */
+    void progress(CopyProgress progress);
+}
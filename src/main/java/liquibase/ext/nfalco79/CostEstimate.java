@@ -0,0 +1,181 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.executor.ExecutorService;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.CommentStatement;
+
+/**
+ * The estimated cost of a change computed from the catalog statistics
+ * without modify any data.
+ * <p>
+ * When liquibase only generates the SQL (updateSql) on a live connection the
+ * estimate is written as comment before the statements of the change.
+ *
+ * @author Nikolas Falco
+ */
+public class CostEstimate {
+
+    private final String changeName;
+    private final String tableName;
+    private Long rows;
+    private Long bytes;
+    private Boolean rewrite;
+    private String lock;
+    private String plan;
+
+    public CostEstimate(String changeName, String tableName) {
+        this.changeName = changeName;
+        this.tableName = tableName;
+    }
+
+    /**
+     * Returns if liquibase is generating the SQL without execute it and the
+     * catalog could be queried.
+     *
+     * @param database
+     *            the target database
+     * @return {@code true} if the cost of the changes should be estimated
+     */
+    public static boolean isDryRun(Database database) {
+        return database.getConnection() instanceof JdbcConnection //
+                && !Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database).updatesDatabase();
+    }
+
+    public String getChangeName() {
+        return changeName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Returns the number of rows read or written by the change.
+     *
+     * @return the estimated rows or {@code null} if unknown
+     */
+    public Long getRows() {
+        return rows;
+    }
+
+    public CostEstimate setRows(Long rows) {
+        this.rows = rows;
+        return this;
+    }
+
+    /**
+     * Returns the number of bytes written by the change.
+     *
+     * @return the estimated bytes or {@code null} if unknown
+     */
+    public Long getBytes() {
+        return bytes;
+    }
+
+    public CostEstimate setBytes(Long bytes) {
+        this.bytes = bytes;
+        return this;
+    }
+
+    /**
+     * Returns if the change rewrites all rows of the table.
+     *
+     * @return {@code true} if the table is rewritten, {@code null} if
+     *         unknown
+     */
+    public Boolean getRewrite() {
+        return rewrite;
+    }
+
+    public CostEstimate setRewrite(Boolean rewrite) {
+        this.rewrite = rewrite;
+        return this;
+    }
+
+    /**
+     * Returns a description of the locks taken by the change.
+     *
+     * @return the locks description
+     */
+    public String getLock() {
+        return lock;
+    }
+
+    public CostEstimate setLock(String lock) {
+        this.lock = lock;
+        return this;
+    }
+
+    /**
+     * Returns the execution plan of the change statement.
+     *
+     * @return the plan or {@code null} if not available
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    public CostEstimate setPlan(String plan) {
+        this.plan = plan;
+        return this;
+    }
+
+    /**
+     * Returns the given statements preceded by the comments that report this
+     * estimate.
+     *
+     * @param statements
+     *            the statements of the change
+     * @return the statements with the report
+     */
+    public SqlStatement[] prependTo(SqlStatement[] statements) {
+        List<SqlStatement> result = new ArrayList<>();
+        result.add(new CommentStatement(toString()));
+        if (plan != null) {
+            for (String line : plan.split("\n")) {
+                result.add(new CommentStatement("  " + line));
+            }
+        }
+        for (SqlStatement statement : statements) {
+            result.add(statement);
+        }
+        return result.toArray(new SqlStatement[0]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Estimated cost of ").append(changeName).append(" on ").append(tableName).append(": ");
+        sb.append(rows != null ? "~" + rows : "unknown").append(" rows touched, ");
+        sb.append(bytes != null ? "~" + bytes : "unknown").append(" bytes rewritten, ");
+        if (rewrite == null) {
+            sb.append("table rewrite unknown");
+        } else {
+            sb.append(rewrite ? "full table rewrite" : "no table rewrite");
+        }
+        if (lock != null) {
+            sb.append(", ").append(lock);
+        }
+        return sb.toString();
+    }
+}
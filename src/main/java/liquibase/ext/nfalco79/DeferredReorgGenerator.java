@@ -0,0 +1,55 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import liquibase.sql.SingleLineComment;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGenerator;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.core.AbstractSqlGenerator;
+
+/**
+ * A deferred REORG only records the table, there is no SQL to apply.
+ *
+ * @author Nikolas Falco
+ */
+public class DeferredReorgGenerator extends AbstractSqlGenerator<DeferredReorgStatement> {
+
+    @Override
+    public int getPriority() {
+        return SqlGenerator.PRIORITY_DEFAULT;
+    }
+
+    @Override
+    public boolean supports(DeferredReorgStatement statement, Database database) {
+        return ReorgTablesStatement.isSupported(database);
+    }
+
+    @Override
+    public ValidationErrors validate(DeferredReorgStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) {
+        ValidationErrors validationErrors = new ValidationErrors();
+        validationErrors.checkRequiredField("tableName", statement.getTableName());
+        return validationErrors;
+    }
+
+    @Override
+    public Sql[] generateSql(DeferredReorgStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) {
+        return new Sql[] { new SingleLineComment("REORG of " + database.escapeTableName(null, statement.getSchemaName(), statement.getTableName()) + " deferred to reorgTables",
+                database.getLineComment()) };
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.PreparedStatementFactory;
+import liquibase.exception.DatabaseException;
+import liquibase.statement.AbstractSqlStatement;
+import liquibase.statement.ExecutablePreparedStatement;
+
+/**
+ * Takes the place of the REORG of an altered table when it is deferred, the
+ * table is recorded for the next {@code reorgTables} change only when the
+ * statements before it, the ALTER, have been executed.
+ *
+ * @author Nikolas Falco
+ */
+public class DeferredReorgStatement extends AbstractSqlStatement implements ExecutablePreparedStatement {
+
+    private final Database database;
+    private final String schemaName;
+    private final String tableName;
+
+    public DeferredReorgStatement(Database database, String schemaName, String tableName) {
+        this.database = database;
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        ReorgPendingTables.add(database, schemaName, tableName);
+        Scope.getCurrentScope().getLog(getClass()).info("REORG of " + tableName + " deferred to reorgTables");
+    }
+}
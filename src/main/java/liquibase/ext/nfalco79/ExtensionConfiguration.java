@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import liquibase.configuration.AutoloadedConfigurations;
+import liquibase.configuration.ConfigurationDefinition;
+import liquibase.configuration.ConfigurationValueObfuscator;
+
+/**
+ * Configuration of this extension, values are resolved as any other liquibase
+ * configuration (system properties, environment variables, defaults file).
+ *
+ * @author Nikolas Falco
+ */
+public class ExtensionConfiguration implements AutoloadedConfigurations {
+
+    public static final ConfigurationDefinition<String> WORKER_USERNAME;
+    public static final ConfigurationDefinition<String> WORKER_PASSWORD;
+    public static final ConfigurationDefinition<String> CHECKPOINT_TABLE_NAME;
+    public static final ConfigurationDefinition<Integer> MAX_BLOCKED_SESSIONS;
+    public static final ConfigurationDefinition<Integer> LOCK_BACKOFF_PAUSE;
+    public static final ConfigurationDefinition<Integer> PROGRESS_INTERVAL;
+    public static final ConfigurationDefinition<Integer> FETCH_SIZE;
+    public static final ConfigurationDefinition<Integer> LOB_BUFFER_SIZE;
+    public static final ConfigurationDefinition<Long> MAX_REWRITE_SIZE;
+    public static final ConfigurationDefinition<String> REWRITE_POLICY;
+    public static final ConfigurationDefinition<Boolean> DEFER_REORG;
+
+    static {
+        ConfigurationDefinition.Builder builder = new ConfigurationDefinition.Builder("liquibase.nfalco79");
+
+        WORKER_USERNAME = builder.define("workerUsername", String.class)
+                .addAliasKey("liquibase.command.username")
+                .setDescription("Username used to open the additional connections of parallel data migrations. Defaults to the user of the changelog connection")
+                .build();
+
+        WORKER_PASSWORD = builder.define("workerPassword", String.class)
+                .addAliasKey("liquibase.command.password")
+                .setDescription("Password used to open the additional connections of parallel data migrations")
+                .setValueObfuscator(ConfigurationValueObfuscator.STANDARD)
+                .build();
+
+        CHECKPOINT_TABLE_NAME = builder.define("checkpointTableName", String.class)
+                .setDescription("Name of table used to track the progress of resumable data migrations")
+                .setDefaultValue("COPYCOLUMNCHECKPOINT")
+                .build();
+
+        MAX_BLOCKED_SESSIONS = builder.define("maxBlockedSessions", Integer.class)
+                .setDescription("Number of application sessions a data migration with lockBackoff can keep waiting on its locks before it pauses")
+                .setDefaultValue(0)
+                .build();
+
+        LOCK_BACKOFF_PAUSE = builder.define("lockBackoffPause", Integer.class)
+                .setDescription("Milliseconds a data migration with lockBackoff pauses when it blocks more than maxBlockedSessions sessions")
+                .setDefaultValue(1000)
+                .build();
+
+        PROGRESS_INTERVAL = builder.define("progressInterval", Integer.class)
+                .setDescription("Seconds between two progress reports of chunked data migrations, 0 to report only when completed")
+                .setDefaultValue(60)
+                .build();
+
+        FETCH_SIZE = builder.define("fetchSize", Integer.class)
+                .setDescription("Number of rows fetched per round trip by data migrations that read rows on the client")
+                .setDefaultValue(10000)
+                .build();
+
+        LOB_BUFFER_SIZE = builder.define("lobBufferSize", Integer.class)
+                .setDescription("Size in bytes or chars of the buffer used to stream LOB values through the client")
+                .setDefaultValue(32768)
+                .build();
+
+        MAX_REWRITE_SIZE = builder.define("maxRewriteSize", Long.class)
+                .setDescription("Bytes of a table above which a resizeDataType that rewrites all rows is refused or reported according to rewritePolicy, not set to never check")
+                .build();
+
+        REWRITE_POLICY = builder.define("rewritePolicy", String.class)
+                .setDescription("What to do when a resizeDataType rewrites a table larger than maxRewriteSize: fail or warn")
+                .setDefaultValue(ResizeDataTypeChange.REWRITE_FAIL)
+                .build();
+        DEFER_REORG = builder.define("deferReorg", Boolean.class)
+                .setDescription("Defer the REORG of DB2 tables altered by resizeDataType and resizeDataTypes to the next reorgTables change, so each table is reorganized once")
+                .setDefaultValue(false)
+                .build();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+/**
+ * A range of {@link RowKey} values, lower bound excluded and upper bound
+ * included. A {@code null} bound means the range is unbounded on that side.
+ *
+ * @author Nikolas Falco
+ */
+public final class KeyRange {
+
+    /**
+     * The range that covers all the table.
+     */
+    public static final KeyRange ALL = new KeyRange(null, null);
+
+    private final Object[] lower;
+    private final Object[] upper;
+
+    public KeyRange(Object[] lower, Object[] upper) { // NOSONAR
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    public Object[] getLower() {
+        return lower; // NOSONAR
+    }
+
+    public Object[] getUpper() {
+        return upper; // NOSONAR
+    }
+
+    @Override
+    public String toString() {
+        return "(" + (lower == null ? "*" : RowKey.toString(lower)) + ", " + (upper == null ? "*" : RowKey.toString(upper)) + "]";
+    }
+}
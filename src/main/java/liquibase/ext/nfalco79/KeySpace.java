@@ -0,0 +1,166 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import liquibase.database.Database;
+import liquibase.database.core.H2Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+
+/**
+ * The ordered values of a {@link RowKey} of a table, split in
+ * {@link KeyRange}s by counting rows.
+ * <p>
+ * Boundaries are looked up with an ordered query that skips the rows of the
+ * range, so each lookup reads the range by the index of the key.
+ *
+ * @author Nikolas Falco
+ */
+public final class KeySpace {
+
+    private final Database database;
+    private final String catalogName;
+    private final String schemaName;
+    private final String tableName;
+
+    public KeySpace(Database database, String catalogName, String schemaName, String tableName) {
+        this.database = database;
+        this.catalogName = catalogName;
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+    }
+
+    /**
+     * Split the key space in at most the given number of disjoint ranges of
+     * about the same number of rows.
+     *
+     * @param connection
+     *            the connection where run the queries
+     * @param key
+     *            the key used to split the table
+     * @param parts
+     *            the number of ranges
+     * @return the ranges by number, the first and last are unbounded
+     * @throws SQLException
+     *             in case of failure
+     */
+    public Map<Integer, KeyRange> split(Connection connection, RowKey key, int parts) throws SQLException {
+        Map<Integer, KeyRange> ranges = new TreeMap<>();
+        if (parts <= 1) {
+            ranges.put(0, KeyRange.ALL);
+            return ranges;
+        }
+
+        long step;
+        String sql = "SELECT COUNT(*) FROM " + database.escapeTableName(catalogName, schemaName, tableName);
+        try (PreparedStatement stmt = connection.prepareStatement(sql); ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            step = (rs.getLong(1) + parts - 1) / parts;
+        }
+
+        Object[] lower = null;
+        for (int i = 1; i < parts && step > 0; i++) {
+            Object[] upper = nextBoundary(connection, key, lower, null, step);
+            if (upper == null) {
+                break;
+            }
+            ranges.put(ranges.size(), new KeyRange(lower, upper));
+            lower = upper;
+        }
+        ranges.put(ranges.size(), new KeyRange(lower, null));
+        return ranges;
+    }
+
+    /**
+     * Returns the upper bound (included) of the range of the given size that
+     * starts after the given lower bound.
+     *
+     * @param connection
+     *            the connection where run the query
+     * @param key
+     *            the key used to split the table
+     * @param lower
+     *            the lower bound (excluded), {@code null} for the first range
+     * @param limit
+     *            the upper bound (included) that range can not exceed,
+     *            {@code null} if unbounded
+     * @param size
+     *            the number of rows of the range
+     * @return the upper bound of the range or {@code null} if less than
+     *         {@code size} rows remain
+     * @throws SQLException
+     *             in case of failure
+     */
+    public Object[] nextBoundary(Connection connection, RowKey key, Object[] lower, Object[] limit, long size) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(getBoundarySql(key, lower != null, limit != null, size))) {
+            key.bindRange(stmt, 1, lower, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? key.read(rs, 1) : null;
+            }
+        }
+    }
+
+    /**
+     * Returns the query that selects the key of the last row of a range.
+     *
+     * @param key
+     *            the key used to split the table
+     * @param lowerBound
+     *            if the range has a lower bound
+     * @param upperBound
+     *            if the range has an upper bound
+     * @param size
+     *            the number of rows of the range
+     * @return the SQL query
+     */
+    public String getBoundarySql(RowKey key, boolean lowerBound, boolean upperBound, long size) {
+        String tableNameEscaped = database.escapeTableName(catalogName, schemaName, tableName);
+        String where = lowerBound || upperBound ? " WHERE " + key.getRangePredicate(lowerBound, upperBound) : "";
+
+        if (database instanceof OracleDatabase) {
+            // ROWNUM works on any version and stops the scan at the chunk size
+            List<String> columns = key.getColumns();
+            List<String> aliases = new ArrayList<>();
+            List<String> select = new ArrayList<>();
+            for (int i = 0; i < columns.size(); i++) {
+                String alias = columns.size() == 1 ? "chunk_key" : "chunk_key" + (i + 1);
+                aliases.add(alias);
+                select.add(columns.get(i) + " AS " + alias);
+            }
+            String chunkKey = String.join(", ", aliases);
+            return "SELECT " + chunkKey + " FROM (SELECT " + chunkKey + ", ROWNUM AS chunk_row FROM (SELECT " + String.join(", ", select) + " FROM " + tableNameEscaped + where
+                    + " ORDER BY " + key + ") WHERE ROWNUM <= " + size + ") WHERE chunk_row = " + size;
+        }
+
+        String sql = "SELECT " + key + " FROM " + tableNameEscaped + where + " ORDER BY " + key;
+        if (database instanceof PostgresDatabase || database instanceof MySQLDatabase || database instanceof H2Database) {
+            sql += " LIMIT 1 OFFSET " + (size - 1);
+        } else {
+            sql += " OFFSET " + (size - 1) + " ROWS FETCH NEXT 1 ROWS ONLY";
+        }
+        return sql;
+    }
+}
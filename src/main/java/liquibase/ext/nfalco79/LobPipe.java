@@ -0,0 +1,282 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binds LOB values to a statement streaming their content, so that the
+ * memory used is the size of a buffer and not the size of the largest LOB.
+ * <p>
+ * The content of a {@link Blob}, {@link Clob}, {@link InputStream} or
+ * {@link Reader} is copied with a reusable buffer into a temporary LOB of the
+ * target connection, when the driver does not support temporary LOBs the
+ * stream is given to the driver with its length, when known, so that the
+ * driver does not read it in memory to compute it. LOBs and streams are kept
+ * until {@link #release()} is called, after the batch that uses them is
+ * executed.
+ * <p>
+ * A LOB is a locator that must be read by the thread that owns its
+ * connection, {@link #detach(Object)} reads it into a stream that could be
+ * used by other threads.
+ * <p>
+ * An instance is not thread safe, it must be used by one thread at time.
+ *
+ * @author Nikolas Falco
+ */
+public class LobPipe {
+
+    private final byte[] bytes;
+    private final char[] chars;
+    private final List<Object> lobs = new ArrayList<>();
+    private boolean temporaryLobs = true;
+
+    /**
+     * Default constructor.
+     *
+     * @param bufferSize
+     *            the size in bytes or chars of the buffer
+     */
+    public LobPipe(int bufferSize) {
+        this.bytes = new byte[bufferSize];
+        this.chars = new char[bufferSize];
+    }
+
+    /**
+     * Binds the given value if it is a LOB or a stream.
+     *
+     * @param connection
+     *            the connection of the statement
+     * @param stmt
+     *            the statement
+     * @param index
+     *            the parameter index
+     * @param value
+     *            the value to bind
+     * @return {@code false} if the value is not a LOB and it was not bound
+     * @throws SQLException
+     *             if the value could not be read or written
+     */
+    public boolean bind(Connection connection, PreparedStatement stmt, int index, Object value) throws SQLException {
+        if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            lobs.add(blob);
+            bind(connection, stmt, index, blob.getBinaryStream(), blob.length());
+        } else if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            lobs.add(clob);
+            bind(connection, stmt, index, clob.getCharacterStream(), clob.length());
+        } else if (value instanceof InputStream) {
+            bind(connection, stmt, index, (InputStream) value, value instanceof DetachedStream ? ((DetachedStream) value).length : -1);
+        } else if (value instanceof Reader) {
+            bind(connection, stmt, index, (Reader) value, value instanceof DetachedReader ? ((DetachedReader) value).length : -1);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the content of a LOB, so that it could be used after the row is
+     * read and by other threads. Contents larger than the buffer are copied
+     * in pieces into a temporary file that is deleted when the returned
+     * stream is closed.
+     *
+     * @param value
+     *            the value read from the source connection
+     * @return an {@link InputStream} for a {@link Blob}, a {@link Reader} for
+     *         a {@link Clob}, the value itself otherwise
+     * @throws SQLException
+     *             if the LOB could not be read
+     */
+    public Object detach(Object value) throws SQLException {
+        if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            try {
+                long length = blob.length();
+                if (length <= bytes.length) {
+                    return new DetachedStream(new ByteArrayInputStream(blob.getBytes(1, (int) length)), length);
+                }
+                Path file = Files.createTempFile("lob", ".tmp");
+                try (InputStream src = blob.getBinaryStream(); OutputStream out = Files.newOutputStream(file)) {
+                    int read;
+                    while ((read = src.read(bytes)) != -1) {
+                        out.write(bytes, 0, read);
+                    }
+                }
+                return new DetachedStream(Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE), length);
+            } catch (IOException e) {
+                throw new SQLException("Could not read LOB value", e);
+            } finally {
+                free(blob);
+            }
+        } else if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            try {
+                long length = clob.length();
+                if (length <= chars.length) {
+                    return new DetachedReader(new StringReader(clob.getSubString(1, (int) length)), length);
+                }
+                Path file = Files.createTempFile("lob", ".tmp");
+                try (Reader src = clob.getCharacterStream(); Writer out = new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8)) {
+                    int read;
+                    while ((read = src.read(chars)) != -1) {
+                        out.write(chars, 0, read);
+                    }
+                }
+                return new DetachedReader(new InputStreamReader(Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE), StandardCharsets.UTF_8), length);
+            } catch (IOException e) {
+                throw new SQLException("Could not read LOB value", e);
+            } finally {
+                free(clob);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Frees the LOBs bound since the last call.
+     */
+    public void release() {
+        for (Object lob : lobs) {
+            free(lob);
+        }
+        lobs.clear();
+    }
+
+    private static void free(Object lob) {
+        try {
+            if (lob instanceof Blob) {
+                ((Blob) lob).free();
+            } else if (lob instanceof Clob) {
+                ((Clob) lob).free();
+            } else {
+                ((Closeable) lob).close();
+            }
+        } catch (SQLException | IOException | UnsupportedOperationException e) { // NOSONAR
+            // the driver releases it with the statement
+        }
+    }
+
+    private void bind(Connection connection, PreparedStatement stmt, int index, InputStream in, long length) throws SQLException {
+        Blob target = temporaryLobs ? createBlob(connection) : null;
+        if (target == null) {
+            // read by the driver when the batch is executed
+            lobs.add(in);
+            if (length >= 0) {
+                stmt.setBinaryStream(index, in, length);
+            } else {
+                stmt.setBinaryStream(index, in);
+            }
+            return;
+        }
+        lobs.add(target);
+        try (InputStream src = in; OutputStream out = target.setBinaryStream(1)) {
+            int read;
+            while ((read = src.read(bytes)) != -1) {
+                out.write(bytes, 0, read);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Could not stream LOB value", e);
+        }
+        stmt.setBlob(index, target);
+    }
+
+    private void bind(Connection connection, PreparedStatement stmt, int index, Reader in, long length) throws SQLException {
+        Clob target = temporaryLobs ? createClob(connection) : null;
+        if (target == null) {
+            lobs.add(in);
+            if (length >= 0) {
+                stmt.setCharacterStream(index, in, length);
+            } else {
+                stmt.setCharacterStream(index, in);
+            }
+            return;
+        }
+        lobs.add(target);
+        try (Reader src = in; Writer out = target.setCharacterStream(1)) {
+            int read;
+            while ((read = src.read(chars)) != -1) {
+                out.write(chars, 0, read);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Could not stream LOB value", e);
+        }
+        stmt.setClob(index, target);
+    }
+
+    private Blob createBlob(Connection connection) throws SQLException {
+        try {
+            return connection.createBlob();
+        } catch (SQLFeatureNotSupportedException e) {
+            temporaryLobs = false;
+            return null;
+        }
+    }
+
+    private Clob createClob(Connection connection) throws SQLException {
+        try {
+            return connection.createClob();
+        } catch (SQLFeatureNotSupportedException e) {
+            temporaryLobs = false;
+            return null;
+        }
+    }
+
+    /*
+     * Streams of a detached LOB, they know the length of their content.
+     */
+    private static final class DetachedStream extends FilterInputStream {
+        private final long length;
+
+        private DetachedStream(InputStream in, long length) {
+            super(in);
+            this.length = length;
+        }
+    }
+
+    private static final class DetachedReader extends FilterReader {
+        private final long length;
+
+        private DetachedReader(Reader in, long length) {
+            super(in);
+            this.length = length;
+        }
+    }
+}
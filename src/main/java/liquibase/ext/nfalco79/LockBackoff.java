@@ -0,0 +1,159 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.core.AbstractDb2Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+
+/**
+ * Backs off a data migration when its row locks make application sessions
+ * wait.
+ * <p>
+ * Before a chunk is committed the sessions waiting on the locks of the
+ * migration session are counted: when they are more than the configured
+ * threshold, after the commit the migration pauses to let them run and the
+ * following chunks are shrunk. Each chunk that blocks nobody doubles back
+ * the chunk size up to the configured one.
+ *
+ * @author Nikolas Falco
+ */
+public class LockBackoff {
+
+    private static final String POSTGRES_QUERY = "SELECT COUNT(*) FROM pg_stat_activity WHERE pg_backend_pid() = ANY(pg_blocking_pids(pid))";
+    private static final String ORACLE_QUERY = "SELECT COUNT(*) FROM V$SESSION WHERE BLOCKING_SESSION = SYS_CONTEXT('USERENV', 'SID')";
+    private static final String DB2_QUERY = "SELECT COUNT(*) FROM SYSIBMADM.MON_LOCKWAITS WHERE HLD_APPLICATION_HANDLE = MON_GET_APPLICATION_HANDLE()";
+    private static final String MYSQL_QUERY = "SELECT COUNT(*) FROM sys.innodb_lock_waits WHERE blocking_pid = CONNECTION_ID()";
+    private static final int MAX_DIVISOR = 64;
+
+    private final String blockedQuery;
+    private final int maxBlockedSessions;
+    private final long pause;
+    private final AtomicInteger pauses = new AtomicInteger();
+    private int divisor = 1;
+
+    /**
+     * Default constructor.
+     *
+     * @param blockedQuery
+     *            the query that counts sessions waiting on locks of the
+     *            current session
+     * @param maxBlockedSessions
+     *            the number of blocked sessions tolerated
+     * @param pause
+     *            the pause in milliseconds when the threshold is exceeded
+     */
+    public LockBackoff(String blockedQuery, int maxBlockedSessions, long pause) {
+        this.blockedQuery = blockedQuery;
+        this.maxBlockedSessions = maxBlockedSessions;
+        this.pause = pause;
+    }
+
+    /**
+     * Returns the query that counts the sessions blocked by the current
+     * session for the given database.
+     *
+     * @param database
+     *            the database
+     * @return the query or {@code null} if the database is not supported
+     */
+    public static String getDefaultQuery(Database database) {
+        if (database instanceof PostgresDatabase) {
+            return POSTGRES_QUERY;
+        } else if (database instanceof OracleDatabase) {
+            return ORACLE_QUERY;
+        } else if (database instanceof AbstractDb2Database) {
+            return DB2_QUERY;
+        } else if (database instanceof MySQLDatabase) {
+            return MYSQL_QUERY;
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the uncommitted chunk of the given connection is blocking
+     * other sessions.
+     *
+     * @param connection
+     *            the connection that holds the locks of the chunk
+     * @return {@code true} if the migration should back off after commit
+     * @throws SQLException
+     *             if the query fails
+     */
+    public boolean check(Connection connection) throws SQLException {
+        int blocked = countBlocked(connection);
+        synchronized (this) {
+            if (blocked > maxBlockedSessions) {
+                divisor = Math.min(MAX_DIVISOR, divisor * 2);
+                Scope.getCurrentScope().getLog(getClass()).info(blocked + " sessions blocked by the copy, chunk size reduced to 1/" + divisor);
+                return true;
+            }
+            divisor = Math.max(1, divisor / 2);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the given chunk size reduced according to the recent blocks.
+     *
+     * @param size
+     *            the configured chunk size
+     * @return the chunk size to use
+     */
+    public synchronized long adjust(long size) {
+        return Math.max(1, size / divisor);
+    }
+
+    /**
+     * Pauses the migration, it must be called after the chunk is committed.
+     */
+    public void pause() {
+        pauses.incrementAndGet();
+        try {
+            sleep(pause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns how many times the migration paused.
+     *
+     * @return the number of pauses
+     */
+    public int getPauses() {
+        return pauses.get();
+    }
+
+    protected int countBlocked(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(blockedQuery)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    protected void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+}
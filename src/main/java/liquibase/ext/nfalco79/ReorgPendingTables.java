@@ -0,0 +1,168 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import liquibase.change.Change;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.database.Database;
+import liquibase.database.DatabaseConnection;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.ReorganizeTableStatement;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
+
+/**
+ * Tables altered whose REORG has been deferred to the next
+ * {@code reorgTables} change.
+ * <p>
+ * A table is recorded by the {@link DeferredReorgStatement} that replaces its
+ * REORG, so only when the ALTER before it has been executed, never while
+ * statements are generated for validation or SQL output. Tables are recorded
+ * by connection, a run never reorganizes the tables of another database and
+ * the tables of a closed connection, like the one of a failed run, are
+ * forgotten.
+ *
+ * @author Nikolas Falco
+ */
+public final class ReorgPendingTables {
+
+    private static final Map<DatabaseConnection, Map<String, Table>> TABLES = new WeakHashMap<>();
+
+    private ReorgPendingTables() {
+    }
+
+    /**
+     * Returns if the REORG after an ALTER should be deferred on the given
+     * database.
+     *
+     * @param database
+     *            the target database
+     * @return {@code true} if the REORG is deferred
+     */
+    public static boolean isDeferred(Database database) {
+        return ReorgTablesStatement.isSupported(database) && Boolean.TRUE.equals(ExtensionConfiguration.DEFER_REORG.getCurrentValue());
+    }
+
+    /**
+     * Replaces the REORG statements when deferred with statements that record
+     * their tables when executed.
+     *
+     * @param database
+     *            the target database
+     * @param statements
+     *            the statements of a change
+     * @return the statements to execute
+     */
+    public static SqlStatement[] defer(Database database, SqlStatement[] statements) {
+        if (!isDeferred(database)) {
+            return statements;
+        }
+        SqlStatement[] result = new SqlStatement[statements.length];
+        for (int i = 0; i < statements.length; i++) {
+            if (statements[i] instanceof ReorganizeTableStatement) {
+                ReorganizeTableStatement reorg = (ReorganizeTableStatement) statements[i];
+                result[i] = new DeferredReorgStatement(database, reorg.getSchemaName(), reorg.getTableName());
+            } else {
+                result[i] = statements[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records a table to reorganize, a table is recorded once.
+     *
+     * @param database
+     *            the database where the table has been altered
+     * @param schemaName
+     *            the schema of the table, {@code null} for the default schema
+     * @param tableName
+     *            the table name
+     */
+    public static void add(Database database, String schemaName, String tableName) {
+        DatabaseConnection connection = database.getConnection();
+        if (connection == null) {
+            return;
+        }
+        String schema = database.correctObjectName(schemaName != null ? schemaName : database.getDefaultSchemaName(), Schema.class);
+        String table = database.correctObjectName(tableName, Table.class);
+        synchronized (TABLES) {
+            TABLES.computeIfAbsent(connection, c -> new LinkedHashMap<>()).putIfAbsent(schema + "." + table, new Table(null, schema, table));
+        }
+    }
+
+    /**
+     * Returns the tables recorded on the connection of the given database in
+     * order of record and forgets them.
+     *
+     * @param database
+     *            the target database
+     * @return the tables to reorganize
+     */
+    public static List<Table> drain(Database database) {
+        DatabaseConnection connection = database.getConnection();
+        if (connection == null) {
+            return Collections.emptyList();
+        }
+        synchronized (TABLES) {
+            Map<String, Table> tables = TABLES.remove(connection);
+            return tables != null ? new ArrayList<>(tables.values()) : Collections.emptyList();
+        }
+    }
+
+    /**
+     * Returns if a {@code reorgTables} change follows the given changeSet in
+     * the changelog, so that the tables it alters do not stay in reorg
+     * pending state at the end of the run.
+     *
+     * @param changeSet
+     *            the changeSet of a change that defers the REORG
+     * @return {@code false} only if it is known that no {@code reorgTables}
+     *         follows
+     */
+    public static boolean isReorgFollowing(ChangeSet changeSet) {
+        if (changeSet == null || changeSet.getChangeLog() == null) {
+            return true;
+        }
+        // included changeSets are listed by the root changelog
+        DatabaseChangeLog changeLog = changeSet.getChangeLog();
+        List<ChangeSet> changeSets = changeLog.getRootChangeLog().getChangeSets();
+        int index = changeSets.indexOf(changeSet);
+        if (index < 0) {
+            changeSets = changeLog.getChangeSets();
+            index = changeSets.indexOf(changeSet);
+        }
+        if (index < 0) {
+            return true;
+        }
+        for (ChangeSet next : changeSets.subList(index + 1, changeSets.size())) {
+            for (Change change : next.getChanges()) {
+                if (change instanceof ReorgTablesChange) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
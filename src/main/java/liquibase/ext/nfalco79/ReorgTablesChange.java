@@ -0,0 +1,108 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import liquibase.change.AbstractChange;
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import liquibase.exception.Warnings;
+import liquibase.statement.SqlStatement;
+
+/**
+ * Reorganize once the DB2 tables whose REORG was deferred by the resize
+ * changes, to place at the end of the changelog or where the tables should
+ * be reorganized, usually with {@code runAlways="true"}.
+ *
+ * @author Nikolas Falco
+ */
+@DatabaseChange(name = "reorgTables", description = "Reorganize tables in reorg pending state", priority = ChangeMetaData.PRIORITY_DEFAULT)
+public class ReorgTablesChange extends AbstractChange {
+
+    private String schemaName;
+    private Boolean inplace;
+    private Integer parallelism;
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public void setSchemaName(String schemaName) {
+        this.schemaName = schemaName;
+    }
+
+    public Boolean getInplace() {
+        return inplace;
+    }
+
+    public void setInplace(Boolean inplace) {
+        this.inplace = inplace;
+    }
+
+    public Integer getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(Integer parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Tables in reorg pending state reorganized";
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+        if (parallelism != null && parallelism < 1) {
+            errors.addError("parallelism must be greater than 0");
+        }
+        return errors;
+    }
+
+    @Override
+    public Warnings warn(Database database) {
+        Warnings warnings = super.warn(database);
+        if (!ReorgTablesStatement.isSupported(database)) {
+            warnings.addWarning("reorgTables is supported only on DB2, it will be ignored on " + database.getShortName());
+        }
+        return warnings;
+    }
+
+    /*
+     * The recorded tables are known only after the previous changeSets are
+     * executed.
+     */
+    @Override
+    public boolean generateStatementsVolatile(Database database) {
+        return true;
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        if (!ReorgTablesStatement.isSupported(database)) {
+            return new SqlStatement[0];
+        }
+        ReorgTablesStatement statement = new ReorgTablesStatement(database, schemaName) //
+                .setInplace(Boolean.TRUE.equals(inplace));
+        if (parallelism != null) {
+            statement.setParallelism(parallelism);
+        }
+        return new SqlStatement[] { statement };
+    }
+}
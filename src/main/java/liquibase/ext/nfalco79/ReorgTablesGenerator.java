@@ -0,0 +1,55 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import liquibase.sql.SingleLineComment;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGenerator;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.core.AbstractSqlGenerator;
+import liquibase.structure.core.Schema;
+
+/**
+ * The tables to reorganize are known only when executed, there is no SQL to
+ * apply.
+ *
+ * @author Nikolas Falco
+ */
+public class ReorgTablesGenerator extends AbstractSqlGenerator<ReorgTablesStatement> {
+
+    @Override
+    public int getPriority() {
+        return SqlGenerator.PRIORITY_DEFAULT;
+    }
+
+    @Override
+    public boolean supports(ReorgTablesStatement statement, Database database) {
+        return ReorgTablesStatement.isSupported(database);
+    }
+
+    @Override
+    public ValidationErrors validate(ReorgTablesStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) {
+        return new ValidationErrors();
+    }
+
+    @Override
+    public Sql[] generateSql(ReorgTablesStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) {
+        String schema = statement.getSchemaName() != null ? database.escapeObjectName(statement.getSchemaName(), Schema.class) : "the default schema";
+        return new Sql[] { new SingleLineComment("Reorganize tables altered by this run and tables in reorg pending state of " + schema, database.getLineComment()) };
+    }
+}
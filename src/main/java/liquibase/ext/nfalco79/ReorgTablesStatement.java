@@ -0,0 +1,275 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.PreparedStatementFactory;
+import liquibase.database.core.DB2Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.statement.AbstractSqlStatement;
+import liquibase.statement.ExecutablePreparedStatement;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
+
+/**
+ * Reorganize once each DB2 table left in reorg pending state, optionally in
+ * parallel on additional connections.
+ * <p>
+ * The tables are those in reorg pending state of the schemas of the tables
+ * recorded on the changelog connection, taken when the statement is executed,
+ * and of the given schema, so also tables altered by a previous interrupted
+ * run are reorganized. If the state could not be read all recorded tables are
+ * reorganized.
+ *
+ * @author Nikolas Falco
+ */
+public class ReorgTablesStatement extends AbstractSqlStatement implements ExecutablePreparedStatement {
+
+    private final Database database;
+    private final String schemaName;
+    private boolean inplace;
+    private int parallelism = 1;
+
+    public ReorgTablesStatement(Database database, String schemaName) {
+        this.database = database;
+        this.schemaName = schemaName;
+    }
+
+    /**
+     * Returns if the database has tables that could go in reorg pending
+     * state.
+     *
+     * @param database
+     *            the target database
+     * @return {@code true} if supported
+     */
+    public static boolean isSupported(Database database) {
+        return database instanceof DB2Database;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public boolean isInplace() {
+        return inplace;
+    }
+
+    public ReorgTablesStatement setInplace(boolean inplace) {
+        this.inplace = inplace;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public ReorgTablesStatement setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Returns the command that reorganizes the given table.
+     *
+     * @param table
+     *            the table to reorganize
+     * @return the SQL statement
+     */
+    public String getReorgSql(Table table) {
+        return "CALL SYSPROC.ADMIN_CMD ('REORG TABLE " + database.escapeTableName(null, table.getSchema().getName(), table.getName()) //
+                + (inplace ? " INPLACE ALLOW WRITE ACCESS" : "") + "')";
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        try {
+            List<Table> pending = findPending(connection, ReorgPendingTables.drain(database));
+            if (parallelism > 1 && pending.size() > 1) {
+                reorgParallel(pending);
+            } else {
+                for (Table table : pending) {
+                    reorg(connection, table);
+                }
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Returns the tables in reorg pending state.
+     *
+     * @param connection
+     *            the changelog connection
+     * @param tables
+     *            the tables recorded as altered
+     * @return the tables to reorganize
+     */
+    protected List<Table> findPending(Connection connection, List<Table> tables) {
+        Set<String> schemas = new LinkedHashSet<>();
+        schemas.add(database.correctObjectName(schemaName != null ? schemaName : database.getDefaultSchemaName(), Schema.class));
+        for (Table table : tables) {
+            schemas.add(table.getSchema().getName());
+        }
+
+        Map<String, Table> pending = new LinkedHashMap<>();
+        String sql = "SELECT TABSCHEMA, TABNAME FROM TABLE(SYSPROC.ADMIN_GET_TAB_INFO(?, NULL)) AS T WHERE REORG_PENDING = 'Y'";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (String schema : schemas) {
+                stmt.setString(1, schema);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Table table = new Table(null, rs.getString(1).trim(), rs.getString(2).trim());
+                        pending.put(getKey(table), table);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            Scope.getCurrentScope().getLog(getClass()).warning("Reorg pending state of tables could not be read, all recorded tables are reorganized: " + e.getMessage());
+            return tables;
+        }
+
+        for (Table table : tables) {
+            if (!pending.containsKey(getKey(table))) {
+                Scope.getCurrentScope().getLog(getClass()).info("Table " + getKey(table) + " is not in reorg pending state, REORG skipped");
+            }
+        }
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Reorganize a table and commit.
+     *
+     * @param connection
+     *            the connection where run the command
+     * @param table
+     *            the table to reorganize
+     * @throws SQLException
+     *             in case of failure
+     */
+    protected void reorg(Connection connection, Table table) throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(getReorgSql(table));
+        }
+        connection.commit();
+        Scope.getCurrentScope().getLog(getClass()).info("Table " + getKey(table) + (inplace ? " inplace reorg started in " : " reorganized in ") + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Reorganize distinct tables at the same time, each worker has its own
+     * connection.
+     *
+     * @param pending
+     *            the tables to reorganize
+     * @throws DatabaseException
+     *             if a worker connection could not be opened or any table
+     *             fails, the message reports all failed tables
+     */
+    protected void reorgParallel(List<Table> pending) throws DatabaseException {
+        int workerCount = Math.min(parallelism, pending.size());
+        Queue<Table> queue = new ConcurrentLinkedQueue<>(pending);
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+        List<Connection> workers = new ArrayList<>(workerCount);
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(openConnection());
+            }
+
+            List<Future<?>> results = new ArrayList<>(workerCount);
+            for (Connection worker : workers) {
+                results.add(executor.submit(() -> {
+                    Table table;
+                    while ((table = queue.poll()) != null) {
+                        try {
+                            reorg(worker, table);
+                        } catch (SQLException e) {
+                            String failure = getKey(table) + ": " + e.getMessage();
+                            Scope.getCurrentScope().getLog(getClass()).severe("REORG failed for " + failure, e);
+                            failures.add(failure);
+                            rollbackQuietly(worker);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+
+            if (!failures.isEmpty()) {
+                throw new DatabaseException("REORG failed for " + failures.size() + " of " + pending.size() + " tables, " + String.join("; ", failures));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } catch (ExecutionException e) {
+            throw new DatabaseException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (Connection worker : workers) {
+                closeQuietly(worker);
+            }
+        }
+    }
+
+    protected Connection openConnection() throws DatabaseException {
+        return CopyColumnChunkedStatement.openConnection(database);
+    }
+
+    private static String getKey(Table table) {
+        return table.getSchema().getName() + "." + table.getName();
+    }
+
+    private static void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) { // NOSONAR
+            // nothing to do
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) { // NOSONAR
+            // nothing to do
+        }
+    }
+}
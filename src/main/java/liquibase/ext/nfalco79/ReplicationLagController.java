@@ -0,0 +1,153 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+
+/**
+ * Adapts the chunk size of a data migration to the replication lag with an
+ * additive increase / multiplicative decrease controller.
+ * <p>
+ * After each chunk the lag (in seconds) is sampled with a SQL probe: while it
+ * stays under the ceiling the chunk size grows by a tenth of the maximum size,
+ * when it exceeds the ceiling the chunk size is halved and the migration waits
+ * until replicas catch up. The controller is shared by all workers of a copy.
+ *
+ * @author Nikolas Falco
+ */
+public class ReplicationLagController {
+
+    private static final String POSTGRES_LAG_QUERY = "SELECT COALESCE(MAX(EXTRACT(EPOCH FROM replay_lag)), 0) FROM pg_stat_replication";
+    private static final String ORACLE_LAG_QUERY = "SELECT NVL(MAX(EXTRACT(DAY FROM TO_DSINTERVAL(VALUE)) * 86400"
+            + " + EXTRACT(HOUR FROM TO_DSINTERVAL(VALUE)) * 3600"
+            + " + EXTRACT(MINUTE FROM TO_DSINTERVAL(VALUE)) * 60"
+            + " + EXTRACT(SECOND FROM TO_DSINTERVAL(VALUE))), 0)"
+            + " FROM V$DATAGUARD_STATS WHERE NAME IN ('transport lag', 'apply lag')";
+    private static final int MIN_SIZE_DIVISOR = 100;
+    private static final int INCREASE_DIVISOR = 10;
+    private static final long WAIT_INTERVAL = 1000;
+
+    private final String lagQuery;
+    private final double maxLag;
+    private final long maxSize;
+    private final long minSize;
+    private final long step;
+    private long size;
+    private double lastLag;
+
+    /**
+     * Default constructor.
+     *
+     * @param lagQuery
+     *            the query that returns the replication lag in seconds
+     * @param maxLag
+     *            the lag ceiling in seconds
+     * @param maxSize
+     *            the initial and maximum chunk size
+     */
+    public ReplicationLagController(String lagQuery, double maxLag, long maxSize) {
+        this.lagQuery = lagQuery;
+        this.maxLag = maxLag;
+        this.maxSize = maxSize;
+        this.minSize = Math.max(1, maxSize / MIN_SIZE_DIVISOR);
+        this.step = Math.max(1, maxSize / INCREASE_DIVISOR);
+        this.size = maxSize;
+    }
+
+    /**
+     * Returns the query that samples the replication lag of the given
+     * database.
+     *
+     * @param database
+     *            the database
+     * @return the lag query or {@code null} if the database has no default
+     *         probe
+     */
+    public static String getDefaultLagQuery(Database database) {
+        if (database instanceof PostgresDatabase) {
+            return POSTGRES_LAG_QUERY;
+        } else if (database instanceof OracleDatabase) {
+            return ORACLE_LAG_QUERY;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the size of the next chunk.
+     *
+     * @return the number of rows of the next chunk
+     */
+    public synchronized long getChunkSize() {
+        return size;
+    }
+
+    /**
+     * Samples the replication lag after a committed chunk and adapts the
+     * chunk size, waiting while the lag is over the ceiling.
+     *
+     * @param connection
+     *            the connection used to run the lag query
+     * @throws SQLException
+     *             if the lag query fails
+     */
+    public void afterChunk(Connection connection) throws SQLException {
+        double lag = sample(connection);
+        synchronized (this) {
+            lastLag = lag;
+            if (lag <= maxLag) {
+                size = Math.min(maxSize, size + step);
+                return;
+            }
+            size = Math.max(minSize, size / 2);
+        }
+
+        Scope.getCurrentScope().getLog(getClass()).info("Replication lag of " + lag + "s is over " + maxLag + "s, chunk size reduced to " + getChunkSize());
+        while (lag > maxLag) {
+            try {
+                sleep(WAIT_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            lag = sample(connection);
+        }
+        synchronized (this) {
+            lastLag = lag;
+        }
+    }
+
+    public synchronized double getLastLag() {
+        return lastLag;
+    }
+
+    protected double sample(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(lagQuery)) {
+            return rs.next() ? rs.getDouble(1) : 0;
+        }
+    }
+
+    protected void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+}
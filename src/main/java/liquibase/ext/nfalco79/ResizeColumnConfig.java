@@ -0,0 +1,71 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import liquibase.change.ColumnConfig;
+import liquibase.parser.core.ParsedNode;
+import liquibase.parser.core.ParsedNodeException;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * A column resized to a new data type.
+ *
+ * @author Nikolas Falco
+ */
+public class ResizeColumnConfig extends ColumnConfig {
+
+    private String oldDataType;
+    private String newDataType;
+
+    public ResizeColumnConfig() {
+    }
+
+    public ResizeColumnConfig(String name, String oldDataType, String newDataType) {
+        setName(name);
+        this.oldDataType = oldDataType;
+        this.newDataType = newDataType;
+    }
+
+    public String getOldDataType() {
+        return oldDataType;
+    }
+
+    public ResizeColumnConfig setOldDataType(String oldDataType) {
+        this.oldDataType = oldDataType;
+        return this;
+    }
+
+    public String getNewDataType() {
+        return newDataType;
+    }
+
+    public ResizeColumnConfig setNewDataType(String newDataType) {
+        this.newDataType = newDataType;
+        return this;
+    }
+
+    @Override
+    public void load(ParsedNode parsedNode, ResourceAccessor resourceAccessor) throws ParsedNodeException {
+        setName(parsedNode.getChildValue(null, "name", String.class));
+        oldDataType = parsedNode.getChildValue(null, "oldDataType", String.class);
+        newDataType = parsedNode.getChildValue(null, "newDataType", String.class);
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "(" + newDataType + ")";
+    }
+}
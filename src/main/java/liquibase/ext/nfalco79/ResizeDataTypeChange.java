@@ -15,20 +15,49 @@
  */
 package liquibase.ext.nfalco79;
 
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import liquibase.Scope;
 import liquibase.change.ChangeMetaData;
 import liquibase.change.DatabaseChange;
 import liquibase.change.DatabaseChangeProperty;
 import liquibase.change.core.ModifyDataTypeChange;
 import liquibase.database.Database;
+import liquibase.database.core.AbstractDb2Database;
+import liquibase.database.core.MSSQLDatabase;
 import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
 import liquibase.exception.ValidationErrors;
+import liquibase.exception.Warnings;
 import liquibase.ext.nfalco79.util.StringUtils;
+import liquibase.snapshot.InvalidExampleException;
+import liquibase.snapshot.SnapshotGeneratorFactory;
 import liquibase.statement.SqlStatement;
+import liquibase.structure.core.Column;
+import liquibase.structure.core.DataType;
+import liquibase.structure.core.Table;
 
 @DatabaseChange(name = "resizeDataType", description = "Resize data type", priority = ChangeMetaData.PRIORITY_DEFAULT, appliesTo = "column")
 public class ResizeDataTypeChange extends ModifyDataTypeChange {
 
+    public static final String REWRITE_FAIL = "fail";
+    public static final String REWRITE_WARN = "warn";
+
+    private static final List<String> CHAR_TYPES = Arrays.asList("CHAR", "NCHAR", "CHARACTER", "GRAPHIC");
+    private static final List<String> VARYING_TYPES = Arrays.asList("VARCHAR", "VARCHAR2", "NVARCHAR", "NVARCHAR2", "CHARACTER VARYING", "VARGRAPHIC", "VARBINARY", "VARBIT", "BIT VARYING");
+    private static final List<String> NUMERIC_TYPES = Arrays.asList("NUMERIC", "DECIMAL", "NUMBER");
+
     private String oldDataType;
+    private Boolean online;
+    private Boolean preScan;
+    private Integer parallelism;
 
     @Override
     public String getConfirmationMessage() {
@@ -37,13 +66,216 @@ public class ResizeDataTypeChange extends ModifyDataTypeChange {
 
     @Override
     public SqlStatement[] generateStatements(Database database) {
+        if (isSkipped(database)) {
+            return new SqlStatement[0];
+        }
+
+        List<SqlStatement> statements = new ArrayList<>();
+        if (Boolean.TRUE.equals(preScan) && ResizePreScanStatement.isSupported(getNewDataType())
+                && (!(database.getConnection() instanceof JdbcConnection) || isShrinking(getCurrentType(database)))) {
+            statements.add(new ResizePreScanStatement(database, getCatalogName(), getSchemaName(), getTableName(), getColumnName(), getNewDataType()) //
+                    .setParallelism(parallelism != null ? parallelism : 1));
+        }
+        if (Boolean.TRUE.equals(online)) {
+            statements.add(new ResizeOnlineStatement(database, getCatalogName(), getSchemaName(), getTableName(), getColumnName(), getNewDataType()));
+            return statements.toArray(new SqlStatement[0]);
+        }
+
+        statements.addAll(Arrays.asList(ReorgPendingTables.defer(database, super.generateStatements(database))));
+        SqlStatement[] result = statements.toArray(new SqlStatement[0]);
+        if (CostEstimate.isDryRun(database)) {
+            return estimateCost(database).prependTo(result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns if the resize does not need any statement. When connected the
+     * current type of the column is read and a table rewrite over the
+     * configured size is refused.
+     *
+     * @param database
+     *            the target database
+     * @return {@code true} if the column should not be altered
+     */
+    boolean isSkipped(Database database) {
         if (database instanceof OracleDatabase) {
             String type = StringUtils.removeParam(getNewDataType());
             if ("BLOB".equalsIgnoreCase(type) || "CLOB".equalsIgnoreCase(type) || "NCLOB".equalsIgnoreCase(type)) {
-                return new SqlStatement[0];
+                return true;
+            }
+        }
+        if (database.getConnection() instanceof JdbcConnection) {
+            DataType currentType = getCurrentType(database);
+            if (currentType != null && isUnchanged(currentType)) {
+                Scope.getCurrentScope().getLog(getClass()).info("Column " + getTableName() + "." + getColumnName() + " is already " + currentType + ", resize skipped");
+                return true;
+            }
+            if (!Boolean.TRUE.equals(online) && Boolean.TRUE.equals(isRewrite(database, currentType))) {
+                checkRewriteSize(database);
             }
         }
-        return super.generateStatements(database);
+        return false;
+    }
+
+    /*
+     * The statements depend on the current column type, they could not be
+     * generated before the previous changeSets are executed.
+     */
+    @Override
+    public boolean generateStatementsVolatile(Database database) {
+        return database.getConnection() instanceof JdbcConnection || super.generateStatementsVolatile(database);
+    }
+
+    /**
+     * Returns if the column has already the new type.
+     *
+     * @param currentType
+     *            the current type of the column
+     * @return {@code true} if the resize would not change the column
+     */
+    protected boolean isUnchanged(DataType currentType) {
+        String type = StringUtils.removeParam(getNewDataType()).trim();
+        if (!type.equalsIgnoreCase(currentType.getTypeName())) {
+            return false;
+        }
+        int[] params = StringUtils.getParams(getNewDataType());
+        if (params.length == 0) {
+            return true;
+        }
+        int scale = currentType.getDecimalDigits() != null ? currentType.getDecimalDigits() : 0;
+        boolean charSemantics = getNewDataType().toUpperCase(Locale.ROOT).matches(".*\\d\\s+CHAR\\s*\\).*");
+        return currentType.getColumnSize() != null && currentType.getColumnSize() == params[0] //
+                && (params.length > 1 ? params[1] : 0) == scale //
+                && charSemantics == (currentType.getColumnSizeUnit() == DataType.ColumnSizeUnit.CHAR);
+    }
+
+    /*
+     * A rewrite holds an exclusive lock for a time proportional to the table
+     * size, refuse it before the lock is taken.
+     */
+    private void checkRewriteSize(Database database) {
+        Long maxSize = ExtensionConfiguration.MAX_REWRITE_SIZE.getCurrentValue();
+        if (maxSize == null) {
+            return;
+        }
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        Long size = TableStatistics.estimateBytes(connection, database, getCatalogName(), getSchemaName(), getTableName());
+        if (size != null && size > maxSize) {
+            String message = "Resize of " + getTableName() + "." + getColumnName() + " to " + getNewDataType() + " rewrites the whole table of ~" + size + " bytes, over the limit of " + maxSize + " bytes";
+            if (REWRITE_WARN.equalsIgnoreCase(ExtensionConfiguration.REWRITE_POLICY.getCurrentValue())) {
+                Scope.getCurrentScope().getLog(getClass()).warning(message);
+            } else {
+                throw new UnexpectedLiquibaseException(message);
+            }
+        }
+    }
+
+    /**
+     * Returns if some value of the column could not fit the new type.
+     *
+     * @param currentType
+     *            the current type of the column
+     * @return {@code true} if the size or the integer digits are reduced or
+     *         unknown
+     */
+    protected boolean isShrinking(DataType currentType) {
+        if (currentType == null || currentType.getColumnSize() == null) {
+            return true;
+        }
+        int[] params = StringUtils.getParams(getNewDataType());
+        int size = currentType.getColumnSize();
+        int scale = currentType.getDecimalDigits() != null ? currentType.getDecimalDigits() : 0;
+        int newScale = params.length > 1 ? params[1] : 0;
+        return params.length > 0 && (params[0] < size || params[0] - newScale < size - scale);
+    }
+
+    /**
+     * Estimates the cost of the resize from the catalog statistics and the
+     * current column type without modify any data.
+     *
+     * @param database
+     *            the connected database
+     * @return the estimated cost
+     */
+    public CostEstimate estimateCost(Database database) {
+        return estimateCost(database, getSerializedObjectName(), isRewrite(database, getCurrentType(database)));
+    }
+
+    /*
+     * Estimates the cost of an ALTER on the table of this change classified
+     * as given.
+     */
+    CostEstimate estimateCost(Database database, String changeName, Boolean rewrite) {
+        CostEstimate estimate = new CostEstimate(changeName, getTableName()).setRewrite(rewrite);
+        if (Boolean.FALSE.equals(rewrite)) {
+            return estimate.setRows(0L).setBytes(0L).setLock("exclusive table lock for the catalog update");
+        }
+
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        return estimate.setRows(TableStatistics.estimateRows(connection, database, getCatalogName(), getSchemaName(), getTableName())) //
+                .setBytes(TableStatistics.estimateBytes(connection, database, getCatalogName(), getSchemaName(), getTableName())) //
+                .setLock("exclusive table lock for the whole rewrite");
+    }
+
+    /**
+     * Returns the type of the column in the database.
+     *
+     * @param database
+     *            the connected database
+     * @return the column type or {@code null} if the column does not exist
+     */
+    protected DataType getCurrentType(Database database) {
+        try {
+            Column example = new Column(Table.class, getCatalogName(), getSchemaName(), getTableName(), getColumnName());
+            Column column = SnapshotGeneratorFactory.getInstance().createSnapshot(example, database);
+            return column != null ? column.getType() : null;
+        } catch (DatabaseException | InvalidExampleException e) {
+            throw new UnexpectedLiquibaseException(e);
+        }
+    }
+
+    /**
+     * Classifies the resize from the current type to the new type as a
+     * catalog only change or a rewrite of all rows of the table.
+     *
+     * @param database
+     *            the database
+     * @param currentType
+     *            the current type of the column
+     * @return {@code true} if all rows are rewritten, {@code false} if only
+     *         the catalog is updated, {@code null} if unknown
+     */
+    protected Boolean isRewrite(Database database, DataType currentType) {
+        if (currentType == null) {
+            return null; // NOSONAR
+        }
+        String type = StringUtils.removeParam(getNewDataType()).toUpperCase();
+        if (CHAR_TYPES.contains(type)) {
+            // values are blank padded to the new length
+            return true;
+        }
+
+        int[] params = StringUtils.getParams(getNewDataType());
+        Integer size = currentType.getColumnSize();
+        int scale = currentType.getDecimalDigits() != null ? currentType.getDecimalDigits() : 0;
+        int newScale = params.length > 1 ? params[1] : 0;
+        boolean widening = params.length == 0 || (size != null && params[0] >= size && newScale == scale);
+
+        if (database instanceof OracleDatabase) {
+            // sizes are only in the dictionary, a narrowing validates existing rows
+            return false;
+        } else if (!widening) {
+            return true;
+        } else if (database instanceof PostgresDatabase) {
+            return VARYING_TYPES.contains(type) || NUMERIC_TYPES.contains(type) ? false : null;
+        } else if (database instanceof AbstractDb2Database) {
+            // DB2 puts the table in reorg pending state for numeric types
+            return VARYING_TYPES.contains(type) ? false : NUMERIC_TYPES.contains(type);
+        } else if (database instanceof MSSQLDatabase) {
+            return VARYING_TYPES.contains(type) ? false : null;
+        }
+        return null; // NOSONAR
     }
 
     @DatabaseChangeProperty()
@@ -55,9 +287,70 @@ public class ResizeDataTypeChange extends ModifyDataTypeChange {
         this.oldDataType = oldDataType;
     }
 
+    /**
+     * Returns if the column is resized while the application keeps using the
+     * table, see {@link ResizeOnlineStatement}.
+     *
+     * @return {@code true} to resize online
+     */
+    @DatabaseChangeProperty()
+    public Boolean getOnline() {
+        return online;
+    }
+
+    public void setOnline(Boolean online) {
+        this.online = online;
+    }
+
+    /**
+     * Returns if the rows that would not fit a shrunk column are counted
+     * before the ALTER, see {@link ResizePreScanStatement}.
+     *
+     * @return {@code true} to scan the column before the resize
+     */
+    @DatabaseChangeProperty()
+    public Boolean getPreScan() {
+        return preScan;
+    }
+
+    public void setPreScan(Boolean preScan) {
+        this.preScan = preScan;
+    }
+
+    @DatabaseChangeProperty()
+    public Integer getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(Integer parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public Warnings warn(Database database) {
+        Warnings warnings = super.warn(database);
+        if (ReorgPendingTables.isDeferred(database) && !ReorgPendingTables.isReorgFollowing(getChangeSet())) {
+            warnings.addWarning("deferReorg is enabled but no reorgTables change follows, table " + getTableName() + " could stay in reorg pending state");
+        }
+        return warnings;
+    }
+
     @Override
     public ValidationErrors validate(Database database) {
         ValidationErrors errors = super.validate(database);
+        if (Boolean.TRUE.equals(online) && !ResizeOnlineStatement.isSupported(database)) {
+            errors.addError("online is not supported on " + database.getShortName());
+        }
+        if (Boolean.TRUE.equals(preScan) && !ResizePreScanStatement.isSupported(getNewDataType())) {
+            errors.addError("preScan requires a character or numeric newDataType with size");
+        }
+        if (parallelism != null) {
+            if (parallelism < 1) {
+                errors.addError("parallelism must be greater than 0");
+            } else if (!Boolean.TRUE.equals(preScan)) {
+                errors.addError("parallelism requires preScan");
+            }
+        }
 
         String newType = StringUtils.removeParam(getNewDataType().trim().toUpperCase());
         if (!oldDataType.trim().equalsIgnoreCase(newType)) {
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import liquibase.change.AbstractChange;
+import liquibase.change.ChangeMetaData;
+import liquibase.change.ChangeWithColumns;
+import liquibase.change.DatabaseChange;
+import liquibase.database.Database;
+import liquibase.database.core.DB2Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.ValidationErrors;
+import liquibase.exception.Warnings;
+import liquibase.ext.nfalco79.util.StringUtils;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.ModifyDataTypeStatement;
+import liquibase.statement.core.ReorganizeTableStatement;
+
+/**
+ * Resize many columns of the same table with a single ALTER TABLE where the
+ * database allows it, so that the table is locked, scanned and put in reorg
+ * pending state once instead of once per column.
+ *
+ * @author Nikolas Falco
+ */
+@DatabaseChange(name = "resizeDataTypes", description = "Resize data types", priority = ChangeMetaData.PRIORITY_DEFAULT, appliesTo = "table")
+public class ResizeDataTypesChange extends AbstractChange implements ChangeWithColumns<ResizeColumnConfig> {
+
+    private String catalogName;
+    private String schemaName;
+    private String tableName;
+    private List<ResizeColumnConfig> columns = new ArrayList<>();
+
+    public String getCatalogName() {
+        return catalogName;
+    }
+
+    public void setCatalogName(String catalogName) {
+        this.catalogName = catalogName;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public void setSchemaName(String schemaName) {
+        this.schemaName = schemaName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    @Override
+    public List<ResizeColumnConfig> getColumns() {
+        return columns;
+    }
+
+    @Override
+    public void setColumns(List<ResizeColumnConfig> columns) {
+        this.columns = columns;
+    }
+
+    @Override
+    public void addColumn(ResizeColumnConfig column) {
+        columns.add(column);
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Columns " + columns + " of " + tableName + " were resized";
+    }
+
+    @Override
+    public Warnings warn(Database database) {
+        Warnings warnings = super.warn(database);
+        if (ReorgPendingTables.isDeferred(database) && !ReorgPendingTables.isReorgFollowing(getChangeSet())) {
+            warnings.addWarning("deferReorg is enabled but no reorgTables change follows, table " + tableName + " could stay in reorg pending state");
+        }
+        return warnings;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+
+        if (columns == null || columns.isEmpty()) {
+            errors.addError("resizeDataTypes requires at least one column");
+        } else {
+            Set<String> names = new HashSet<>();
+            for (ResizeColumnConfig column : columns) {
+                if (column.getName() != null && !names.add(column.getName().toUpperCase())) {
+                    errors.addError("column " + column.getName() + " is resized more than once");
+                }
+                if (column.getOldDataType() == null || column.getNewDataType() == null
+                        || !column.getOldDataType().trim().equalsIgnoreCase(StringUtils.removeParam(column.getNewDataType().trim()))) {
+                    errors.addError("oldDataType of column " + column.getName() + " must match newDataType");
+                }
+            }
+        }
+
+        return errors;
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        List<ResizeDataTypeChange> resizes = new ArrayList<>();
+        for (ResizeColumnConfig column : columns) {
+            ResizeDataTypeChange resize = toResize(column);
+            if (!resize.isSkipped(database)) {
+                resizes.add(resize);
+            }
+        }
+        if (resizes.isEmpty()) {
+            return new SqlStatement[0];
+        }
+
+        List<SqlStatement> statements = new ArrayList<>();
+        if (ResizeDataTypesGenerator.isSupported(database)) {
+            ResizeDataTypesStatement statement = new ResizeDataTypesStatement(catalogName, schemaName, tableName);
+            for (ResizeDataTypeChange resize : resizes) {
+                statement.addColumn(new ResizeColumnConfig(resize.getColumnName(), resize.getOldDataType(), resize.getNewDataType()));
+            }
+            statements.add(statement);
+        } else {
+            for (ResizeDataTypeChange resize : resizes) {
+                statements.add(new ModifyDataTypeStatement(catalogName, schemaName, tableName, resize.getColumnName(), resize.getNewDataType()));
+            }
+        }
+        if (database instanceof DB2Database) {
+            statements.add(new ReorganizeTableStatement(catalogName, schemaName, tableName));
+        }
+
+        SqlStatement[] result = ReorgPendingTables.defer(database, statements.toArray(new SqlStatement[0]));
+        if (CostEstimate.isDryRun(database)) {
+            return estimateCost(database, resizes).prependTo(result);
+        }
+        return result;
+    }
+
+    /*
+     * The statements depend on the current column types, they could not be
+     * generated before the previous changeSets are executed.
+     */
+    @Override
+    public boolean generateStatementsVolatile(Database database) {
+        return database.getConnection() instanceof JdbcConnection || super.generateStatementsVolatile(database);
+    }
+
+    /*
+     * The table is rewritten if any column requires it, the ALTER is catalog
+     * only if no column requires it.
+     */
+    private CostEstimate estimateCost(Database database, List<ResizeDataTypeChange> resizes) {
+        Boolean rewrite = false;
+        for (ResizeDataTypeChange resize : resizes) {
+            Boolean columnRewrite = resize.isRewrite(database, resize.getCurrentType(database));
+            if (Boolean.TRUE.equals(columnRewrite)) {
+                rewrite = true;
+                break;
+            } else if (columnRewrite == null) {
+                rewrite = null;
+            }
+        }
+        return resizes.get(0).estimateCost(database, getSerializedObjectName(), rewrite);
+    }
+
+    ResizeDataTypeChange toResize(ResizeColumnConfig column) {
+        ResizeDataTypeChange resize = new ResizeDataTypeChange();
+        resize.setCatalogName(catalogName);
+        resize.setSchemaName(schemaName);
+        resize.setTableName(tableName);
+        resize.setColumnName(column.getName());
+        resize.setOldDataType(column.getOldDataType());
+        resize.setNewDataType(column.getNewDataType());
+        return resize;
+    }
+}
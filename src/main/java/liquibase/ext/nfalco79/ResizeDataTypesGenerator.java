@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import liquibase.database.Database;
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.datatype.DataTypeFactory;
+import liquibase.exception.ValidationErrors;
+import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
+import liquibase.sqlgenerator.SqlGenerator;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.core.AbstractSqlGenerator;
+import liquibase.structure.core.Table;
+
+/**
+ * Generates one ALTER TABLE with a clause for each resized column.
+ *
+ * @author Nikolas Falco
+ */
+public class ResizeDataTypesGenerator extends AbstractSqlGenerator<ResizeDataTypesStatement> {
+
+    /**
+     * Returns if the database could alter the type of many columns in a
+     * single ALTER TABLE.
+     *
+     * @param database
+     *            the target database
+     * @return {@code true} if supported
+     */
+    public static boolean isSupported(Database database) {
+        return database instanceof PostgresDatabase || database instanceof OracleDatabase || database instanceof DB2Database
+                || database instanceof MySQLDatabase;
+    }
+
+    @Override
+    public int getPriority() {
+        return SqlGenerator.PRIORITY_DEFAULT;
+    }
+
+    @Override
+    public boolean supports(ResizeDataTypesStatement statement, Database database) {
+        return isSupported(database);
+    }
+
+    @Override
+    public ValidationErrors validate(ResizeDataTypesStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) {
+        ValidationErrors validationErrors = new ValidationErrors();
+        validationErrors.checkRequiredField("tableName", statement.getTableName());
+        for (ResizeColumnConfig column : statement.getColumns()) {
+            validationErrors.checkRequiredField("name", column.getName());
+            validationErrors.checkRequiredField("newDataType", column.getNewDataType());
+        }
+        return validationErrors;
+    }
+
+    @Override
+    public Sql[] generateSql(ResizeDataTypesStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) {
+        List<String> clauses = new ArrayList<>();
+        for (ResizeColumnConfig column : statement.getColumns()) {
+            String columnNameEscaped = database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), column.getName());
+            String dataType = DataTypeFactory.getInstance().fromDescription(column.getNewDataType(), database).toDatabaseDataType(database).toString();
+            if (database instanceof PostgresDatabase) {
+                clauses.add("ALTER COLUMN " + columnNameEscaped + " TYPE " + dataType + " USING (" + columnNameEscaped + "::" + dataType + ")");
+            } else if (database instanceof DB2Database) {
+                clauses.add("ALTER COLUMN " + columnNameEscaped + " SET DATA TYPE " + dataType);
+            } else if (database instanceof MySQLDatabase) {
+                clauses.add("MODIFY " + columnNameEscaped + " " + dataType);
+            } else {
+                clauses.add(columnNameEscaped + " " + dataType);
+            }
+        }
+
+        String sql = "ALTER TABLE " + database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName());
+        if (database instanceof OracleDatabase) {
+            sql += " MODIFY (" + String.join(", ", clauses) + ")";
+        } else if (database instanceof DB2Database) {
+            // DB2 separates the alterations by blanks
+            sql += " " + String.join(" ", clauses);
+        } else {
+            sql += " " + String.join(", ", clauses);
+        }
+        return new Sql[] { new UnparsedSql(sql, new Table(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName())) };
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import liquibase.statement.AbstractSqlStatement;
+
+/**
+ * Alters the data type of many columns of a table in a single statement.
+ *
+ * @author Nikolas Falco
+ */
+public class ResizeDataTypesStatement extends AbstractSqlStatement {
+
+    private final String catalogName;
+    private final String schemaName;
+    private final String tableName;
+    private final List<ResizeColumnConfig> columns = new ArrayList<>();
+
+    public ResizeDataTypesStatement(String catalogName, String schemaName, String tableName) {
+        this.catalogName = catalogName;
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+    }
+
+    public String getCatalogName() {
+        return catalogName;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public List<ResizeColumnConfig> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    public ResizeDataTypesStatement addColumn(ResizeColumnConfig column) {
+        columns.add(column);
+        return this;
+    }
+}
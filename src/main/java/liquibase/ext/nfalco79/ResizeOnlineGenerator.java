@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import liquibase.database.Database;
+import liquibase.database.core.OracleDatabase;
+import liquibase.exception.ValidationErrors;
+import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
+import liquibase.sqlgenerator.SqlGenerator;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.core.AbstractSqlGenerator;
+
+/**
+ * Generates the steps of an online resize, when executed each step is
+ * committed and on PostgreSQL the rows are copied by chunks.
+ *
+ * @author Nikolas Falco
+ */
+public class ResizeOnlineGenerator extends AbstractSqlGenerator<ResizeOnlineStatement> {
+
+    @Override
+    public int getPriority() {
+        return SqlGenerator.PRIORITY_DEFAULT;
+    }
+
+    @Override
+    public boolean supports(ResizeOnlineStatement statement, Database database) {
+        return ResizeOnlineStatement.isSupported(database);
+    }
+
+    @Override
+    public ValidationErrors validate(ResizeOnlineStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) {
+        ValidationErrors validationErrors = new ValidationErrors();
+        validationErrors.checkRequiredField("tableName", statement.getTableName());
+        validationErrors.checkRequiredField("columnName", statement.getColumnName());
+        validationErrors.checkRequiredField("newDataType", statement.getNewDataType());
+        return validationErrors;
+    }
+
+    @Override
+    public Sql[] generateSql(ResizeOnlineStatement statement, Database database, @SuppressWarnings("rawtypes") SqlGeneratorChain sqlGeneratorChain) {
+        List<Sql> sql = new ArrayList<>();
+        for (String prepare : statement.getPrepareSql()) {
+            sql.add(new UnparsedSql(prepare));
+        }
+        if (database instanceof OracleDatabase) {
+            sql.add(new UnparsedSql(statement.getCopySql(), "\n/"));
+        } else {
+            sql.add(new UnparsedSql(statement.getCopySql()));
+        }
+        for (String swap : statement.getSwapSql()) {
+            sql.add(new UnparsedSql(swap));
+        }
+        return sql.toArray(new Sql[0]);
+    }
+}
@@ -0,0 +1,560 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.PreparedStatementFactory;
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.datatype.DataTypeFactory;
+import liquibase.datatype.LiquibaseDataType;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.snapshot.InvalidExampleException;
+import liquibase.snapshot.SnapshotGeneratorFactory;
+import liquibase.statement.AbstractSqlStatement;
+import liquibase.statement.ExecutablePreparedStatement;
+import liquibase.structure.core.Column;
+import liquibase.structure.core.ForeignKey;
+import liquibase.structure.core.PrimaryKey;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
+
+/**
+ * Resize a column building the new layout of the table in an interim table
+ * while the application keeps reading and writing the original one, only the
+ * final swap locks the table for a short time.
+ * <p>
+ * Oracle uses {@code DBMS_REDEFINITION}, DB2 {@code SYSPROC.ADMIN_MOVE_TABLE}
+ * with a target table created with the new column type. On PostgreSQL a
+ * trigger replicates the writes on a shadow table while the rows are copied
+ * by chunks, then the original table is dropped and the shadow one takes its
+ * name. Indexes and constraints get back their original names, foreign keys,
+ * grants and serial sequences are moved on the shadow table. Tables referenced
+ * by foreign keys or views, with triggers or with column privileges and
+ * partitioned or inherited tables are refused. Each step is committed, so this statement could not be rolled back.
+ *
+ * @author Nikolas Falco
+ */
+public class ResizeOnlineStatement extends AbstractSqlStatement implements ExecutablePreparedStatement {
+
+    private static final String INTERIM_SUFFIX = "_redef";
+
+    private final Database database;
+    private final String catalogName;
+    private final String schemaName;
+    private final String tableName;
+    private final String columnName;
+    private final String newDataType;
+    private int chunkSize = 10000;
+    private Table table;
+
+    public ResizeOnlineStatement(Database database, String catalogName, String schemaName, String tableName, String columnName, String newDataType) { // NOSONAR
+        this.database = database;
+        this.catalogName = catalogName;
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+        this.columnName = columnName;
+        this.newDataType = newDataType;
+    }
+
+    /**
+     * Returns if the database has an online redefinition facility.
+     *
+     * @param database
+     *            the target database
+     * @return {@code true} if supported
+     */
+    public static boolean isSupported(Database database) {
+        return database instanceof OracleDatabase || database instanceof DB2Database || database instanceof PostgresDatabase;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public String getNewDataType() {
+        return newDataType;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public ResizeOnlineStatement setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Returns the statements that create the interim table with the new
+     * layout and, on PostgreSQL, the trigger that replicates the writes.
+     *
+     * @return the SQL statements
+     */
+    public List<String> getPrepareSql() {
+        String original = database.escapeTableName(catalogName, schemaName, tableName);
+        String interim = escapeTable(INTERIM_SUFFIX);
+        String column = database.escapeColumnName(catalogName, schemaName, tableName, columnName);
+        String dataType = DataTypeFactory.getInstance().fromDescription(newDataType, database).toDatabaseDataType(database).toString();
+
+        List<String> sql = new ArrayList<>();
+        if (database instanceof OracleDatabase) {
+            sql.add(getOracleInterimSql(interim, dataType));
+        } else if (database instanceof DB2Database) {
+            sql.add("CREATE TABLE " + interim + " LIKE " + original + " INCLUDING COLUMN DEFAULTS INCLUDING IDENTITY COLUMN ATTRIBUTES");
+            sql.add("ALTER TABLE " + interim + " ALTER COLUMN " + column + " SET DATA TYPE " + dataType);
+            // the empty target could be in reorg pending state
+            sql.add("CALL SYSPROC.ADMIN_CMD ('REORG TABLE " + interim + "')");
+        } else {
+            String function = escapeTable("_sync");
+            String key = "(" + String.join(", ", getPrimaryKeyColumns()) + ")";
+            sql.add("CREATE TABLE " + interim + " (LIKE " + original + " INCLUDING ALL)");
+            sql.add("ALTER TABLE " + interim + " ALTER COLUMN " + column + " TYPE " + dataType + " USING (" + column + "::" + dataType + ")");
+            sql.add("CREATE FUNCTION " + function + "() RETURNS trigger LANGUAGE plpgsql AS $$\n"
+                    + "BEGIN\n"
+                    + "  IF TG_OP <> 'INSERT' THEN\n"
+                    + "    DELETE FROM " + interim + " WHERE " + key + " = " + getRowKey("OLD") + ";\n"
+                    + "  END IF;\n"
+                    + "  IF TG_OP <> 'DELETE' THEN\n"
+                    + "    DELETE FROM " + interim + " WHERE " + key + " = " + getRowKey("NEW") + ";\n"
+                    + "    INSERT INTO " + interim + " SELECT (NEW).*;\n"
+                    + "  END IF;\n"
+                    + "  RETURN NULL;\n"
+                    + "END $$");
+            sql.add("CREATE TRIGGER " + database.escapeObjectName(tableName + "_sync", Table.class) + " AFTER INSERT OR UPDATE OR DELETE ON " + original
+                    + " FOR EACH ROW EXECUTE PROCEDURE " + function + "()");
+        }
+        return sql;
+    }
+
+    /*
+     * The interim table is declared from the snapshot: CREATE TABLE AS SELECT
+     * loses defaults and identity and copies NOT NULL constraints, that make
+     * COPY_TABLE_DEPENDENTS fail with ORA-01442 when it copies them again.
+     */
+    private String getOracleInterimSql(String interim, String dataType) {
+        List<Column> columns = new ArrayList<>(getTable().getColumns());
+        columns.sort(Comparator.comparing(Column::getOrder, Comparator.nullsLast(Comparator.naturalOrder())));
+        List<String> definitions = new ArrayList<>();
+        for (Column column : columns) {
+            LiquibaseDataType type = DataTypeFactory.getInstance().from(column.getType(), database);
+            StringBuilder definition = new StringBuilder(database.escapeColumnName(catalogName, schemaName, tableName, column.getName())) //
+                    .append(' ') //
+                    .append(column.getName().equalsIgnoreCase(columnName) ? dataType : type.toDatabaseDataType(database).toString());
+            if (column.getDefaultValue() != null) {
+                definition.append(" DEFAULT ").append(type.objectToSql(column.getDefaultValue(), database));
+            }
+            if (column.isAutoIncrement()) {
+                definition.append(" GENERATED ").append(getGenerationType(column.getAutoIncrementInformation())).append(" AS IDENTITY");
+            }
+            definitions.add(definition.toString());
+        }
+        String tablespace = getTable().getTablespace();
+        return "CREATE TABLE " + interim + " (" + String.join(", ", definitions) + ")" + (tablespace != null ? " TABLESPACE " + tablespace : "");
+    }
+
+    private static String getGenerationType(Column.AutoIncrementInformation identity) {
+        String generation = identity != null && identity.getGenerationType() != null && !identity.getGenerationType().isEmpty() ? identity.getGenerationType() : "BY DEFAULT";
+        return identity != null && Boolean.TRUE.equals(identity.getDefaultOnNull()) ? generation + " ON NULL" : generation;
+    }
+
+    /**
+     * Returns the statement that copies the rows in the interim table, on
+     * PostgreSQL it is executed by chunks of key.
+     *
+     * @return the SQL statement
+     */
+    public String getCopySql() {
+        String original = database.escapeTableName(catalogName, schemaName, tableName);
+        if (database instanceof OracleDatabase) {
+            String owner = schemaName != null ? "'" + database.correctObjectName(schemaName, Schema.class) + "'" : "USER";
+            String name = database.correctObjectName(tableName, Table.class);
+            String names = owner + ", '" + name + "', '" + database.correctObjectName(tableName + INTERIM_SUFFIX, Table.class) + "'";
+            // dependents that fail to copy would be lost at finish, the error aborts the redefinition
+            return "DECLARE\n"
+                    + "  l_errors PLS_INTEGER;\n"
+                    + "  l_message VARCHAR2(2000);\n"
+                    + "BEGIN\n"
+                    + "  DBMS_REDEFINITION.CAN_REDEF_TABLE(" + owner + ", '" + name + "', DBMS_REDEFINITION.CONS_USE_PK);\n"
+                    + "  DBMS_REDEFINITION.START_REDEF_TABLE(" + names + ", NULL, DBMS_REDEFINITION.CONS_USE_PK);\n"
+                    + "  BEGIN\n"
+                    + "    DBMS_REDEFINITION.COPY_TABLE_DEPENDENTS(" + names + ", DBMS_REDEFINITION.CONS_ORIG_PARAMS, TRUE, TRUE, TRUE, TRUE, l_errors);\n"
+                    + "    IF l_errors > 0 THEN\n"
+                    + "      SELECT LISTAGG(OBJECT_TYPE || ' ' || OBJECT_NAME || ': ' || SUBSTR(ERR_TXT, 1, 100), '; ') WITHIN GROUP (ORDER BY OBJECT_TYPE, OBJECT_NAME)\n"
+                    + "        INTO l_message FROM DBA_REDEFINITION_ERRORS\n"
+                    + "       WHERE BASE_TABLE_OWNER = " + owner + " AND BASE_TABLE_NAME = '" + name + "' AND ROWNUM <= 5;\n"
+                    + "      RAISE_APPLICATION_ERROR(-20000, l_errors || ' dependent objects of " + name + " not copied: ' || l_message);\n"
+                    + "    END IF;\n"
+                    + "    DBMS_REDEFINITION.SYNC_INTERIM_TABLE(" + names + ");\n"
+                    + "    DBMS_REDEFINITION.FINISH_REDEF_TABLE(" + names + ");\n"
+                    + "  EXCEPTION\n"
+                    + "    WHEN OTHERS THEN\n"
+                    + "      DBMS_REDEFINITION.ABORT_REDEF_TABLE(" + names + ");\n"
+                    + "      RAISE;\n"
+                    + "  END;\n"
+                    + "END;";
+        } else if (database instanceof DB2Database) {
+            return "CALL SYSPROC.ADMIN_MOVE_TABLE(" + getDb2Schema() + ", '" + database.correctObjectName(tableName, Table.class) + "', '"
+                    + database.correctObjectName(tableName + INTERIM_SUFFIX, Table.class) + "', '', 'MOVE')";
+        }
+        return "INSERT INTO " + escapeTable(INTERIM_SUFFIX) + " SELECT * FROM " + original + " ON CONFLICT DO NOTHING";
+    }
+
+    /**
+     * Returns the statement that copies a chunk of rows on PostgreSQL and
+     * returns the last copied key. Source rows are share locked until commit,
+     * so a concurrent delete waits that the chunk is visible to the trigger.
+     *
+     * @param first
+     *            if it is the first chunk
+     * @return the SQL statement, next chunks bind the last key columns, it
+     *         returns the last key columns followed by the chunk rows
+     */
+    public String getChunkSql(boolean first) {
+        List<String> key = getPrimaryKeyColumns();
+        String columns = String.join(", ", key);
+        List<String> descending = new ArrayList<>();
+        List<String> markers = new ArrayList<>();
+        for (String column : key) {
+            descending.add(column + " DESC");
+            markers.add("?");
+        }
+        return "WITH src AS (SELECT * FROM " + database.escapeTableName(catalogName, schemaName, tableName)
+                + (first ? "" : " WHERE (" + columns + ") > (" + String.join(", ", markers) + ")")
+                + " ORDER BY " + columns + " LIMIT " + chunkSize + " FOR SHARE),"
+                + " ins AS (INSERT INTO " + escapeTable(INTERIM_SUFFIX) + " SELECT * FROM src ON CONFLICT DO NOTHING)"
+                + " SELECT " + columns + ", (SELECT COUNT(*) FROM src) FROM src ORDER BY " + String.join(", ", descending) + " LIMIT 1";
+    }
+
+    /**
+     * Returns the statements executed in a single transaction that replace
+     * the original table with the interim one.
+     *
+     * @return the SQL statements
+     */
+    public List<String> getSwapSql() {
+        List<String> sql = new ArrayList<>();
+        if (database instanceof OracleDatabase) {
+            // after the redefinition the interim table has the old layout
+            sql.add("DROP TABLE " + escapeTable(INTERIM_SUFFIX) + " PURGE");
+            for (Column column : getTable().getColumns()) {
+                if (column.isAutoIncrement()) {
+                    // the identity of the interim table starts from its START WITH, not after the copied rows
+                    sql.add("ALTER TABLE " + database.escapeTableName(catalogName, schemaName, tableName) + " MODIFY ("
+                            + database.escapeColumnName(catalogName, schemaName, tableName, column.getName()) + " GENERATED "
+                            + getGenerationType(column.getAutoIncrementInformation()) + " AS IDENTITY (START WITH LIMIT VALUE))");
+                }
+            }
+        } else if (database instanceof PostgresDatabase) {
+            String original = database.escapeTableName(catalogName, schemaName, tableName);
+            sql.add("LOCK TABLE " + original + " IN ACCESS EXCLUSIVE MODE");
+            sql.add("DROP TRIGGER " + database.escapeObjectName(tableName + "_sync", Table.class) + " ON " + original);
+            sql.add("DROP FUNCTION " + escapeTable("_sync") + "()");
+            sql.add(getDependentsSql());
+            sql.add("DROP TABLE " + original);
+            sql.add("ALTER TABLE " + escapeTable(INTERIM_SUFFIX) + " RENAME TO " + database.escapeObjectName(tableName, Table.class));
+            for (Column column : getTable().getColumns()) {
+                if (column.isAutoIncrement()) {
+                    // identity columns of the shadow table have their own sequence
+                    String name = database.escapeColumnName(catalogName, schemaName, tableName, column.getName());
+                    sql.add("SELECT setval(pg_get_serial_sequence('" + original + "', '" + column.getName() + "'), MAX(" + name + ")) FROM " + original);
+                }
+            }
+        }
+        return sql;
+    }
+
+    /*
+     * LIKE does not copy foreign keys, grants, the table comment and the
+     * ownership of serial sequences, and names indexes after the shadow table.
+     * They are moved reading the catalog of the original table before it is
+     * dropped. Foreign keys are added not valid, so the swap does not scan the
+     * table holding the lock.
+     */
+    private String getDependentsSql() {
+        String original = toRegclass(database.escapeTableName(catalogName, schemaName, tableName));
+        String interim = toRegclass(escapeTable(INTERIM_SUFFIX));
+        return "DO $$\n"
+                + "DECLARE\n"
+                + "  r RECORD;\n"
+                + "BEGIN\n"
+                + "  FOR r IN SELECT d.objid::regclass AS seq, a.attname FROM pg_depend d JOIN pg_attribute a ON a.attrelid = d.refobjid AND a.attnum = d.refobjsubid\n"
+                + "      WHERE d.classid = 'pg_class'::regclass AND d.refobjid = " + original + " AND d.deptype = 'a' LOOP\n"
+                + "    EXECUTE format('ALTER SEQUENCE %s OWNED BY %s.%I', r.seq, " + interim + ", r.attname);\n"
+                + "  END LOOP;\n"
+                + "  FOR r IN SELECT conname, regexp_replace(pg_get_constraintdef(oid), ' NOT VALID$', '') AS def FROM pg_constraint\n"
+                + "      WHERE conrelid = " + original + " AND contype = 'f' LOOP\n"
+                + "    EXECUTE format('ALTER TABLE %s ADD CONSTRAINT %I %s NOT VALID', " + interim + ", r.conname, r.def);\n"
+                + "  END LOOP;\n"
+                + "  FOR r IN SELECT a.privilege_type, a.is_grantable, CASE WHEN a.grantee = 0 THEN 'PUBLIC' ELSE quote_ident(g.rolname) END AS grantee\n"
+                + "      FROM pg_class c CROSS JOIN LATERAL aclexplode(c.relacl) a LEFT JOIN pg_roles g ON g.oid = a.grantee\n"
+                + "      WHERE c.oid = " + original + " AND a.grantee <> c.relowner LOOP\n"
+                + "    EXECUTE format('GRANT %s ON %s TO %s', r.privilege_type, " + interim + ", r.grantee) || CASE WHEN r.is_grantable THEN ' WITH GRANT OPTION' ELSE '' END;\n"
+                + "  END LOOP;\n"
+                + "  EXECUTE format('COMMENT ON TABLE %s IS %L', " + interim + ", obj_description(" + original + ", 'pg_class'));\n"
+                + "  FOR r IN SELECT oi.indexrelid AS old_index, o.relname AS old_name, ni.indexrelid AS new_index\n"
+                + "      FROM pg_index oi JOIN pg_class o ON o.oid = oi.indexrelid JOIN pg_index ni ON ni.indrelid = " + interim + "\n"
+                + "      WHERE oi.indrelid = " + original + " AND oi.indisprimary = ni.indisprimary AND oi.indisunique = ni.indisunique\n"
+                + "        AND regexp_replace(pg_get_indexdef(oi.indexrelid), '^.*? USING ', '') = regexp_replace(pg_get_indexdef(ni.indexrelid), '^.*? USING ', '') LOOP\n"
+                + "    -- renaming the index also renames its primary key or unique constraint\n"
+                + "    EXECUTE format('ALTER INDEX %s RENAME TO %I', r.old_index::regclass, 'redef_' || r.old_index);\n"
+                + "    EXECUTE format('ALTER INDEX %s RENAME TO %I', r.new_index::regclass, r.old_name);\n"
+                + "  END LOOP;\n"
+                + "END $$";
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        boolean swapped = false;
+        try {
+            if (database instanceof PostgresDatabase) {
+                checkReferences(connection);
+            }
+            for (String sql : getPrepareSql()) {
+                execute(connection, sql);
+                connection.commit();
+            }
+            long rows = copy(connection);
+            List<String> foreignKeys = getForeignKeys(connection);
+            for (String sql : getSwapSql()) {
+                execute(connection, sql);
+            }
+            connection.commit();
+            swapped = true;
+            String original = database.escapeTableName(catalogName, schemaName, tableName);
+            for (String foreignKey : foreignKeys) {
+                // does not block writes, the swap has added it not valid
+                execute(connection, "ALTER TABLE " + original + " VALIDATE CONSTRAINT " + database.escapeObjectName(foreignKey, ForeignKey.class));
+                connection.commit();
+            }
+            Scope.getCurrentScope().getLog(getClass()).info("Column " + tableName + "." + columnName + " resized online to " + newDataType + (rows >= 0 ? ", " + rows + " rows copied" : ""));
+        } catch (SQLException e) {
+            rollbackQuietly(connection);
+            if (!swapped) {
+                abort(connection);
+            }
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Copy the rows of the original table in the interim table.
+     *
+     * @param connection
+     *            the changelog connection
+     * @return the number of copied rows, -1 if unknown
+     * @throws SQLException
+     *             in case of failure
+     */
+    protected long copy(Connection connection) throws SQLException {
+        if (!(database instanceof PostgresDatabase)) {
+            execute(connection, getCopySql());
+            connection.commit();
+            return -1;
+        }
+
+        long rows = 0;
+        Object[] last = null;
+        int keySize = getPrimaryKeyColumns().size();
+        while (true) {
+            try (PreparedStatement stmt = connection.prepareStatement(getChunkSql(last == null))) {
+                for (int i = 0; last != null && i < keySize; i++) {
+                    stmt.setObject(i + 1, last[i]);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        connection.commit();
+                        return rows;
+                    }
+                    last = new Object[keySize];
+                    for (int i = 0; i < keySize; i++) {
+                        last[i] = rs.getObject(i + 1);
+                    }
+                    rows += rs.getLong(keySize + 1);
+                }
+            }
+            connection.commit();
+        }
+    }
+
+    /*
+     * Foreign keys and views referencing the original table can not be moved
+     * on the shadow table, triggers and column privileges are not copied. The
+     * shadow table is neither partitioned nor part of an inheritance tree, so
+     * partitions and children would be dropped with the original table.
+     */
+    private void checkReferences(Connection connection) throws SQLException, DatabaseException {
+        String sql = "WITH t AS (SELECT CAST(? AS regclass) AS oid) SELECT"
+                + " (SELECT COUNT(*) FROM pg_constraint WHERE confrelid = t.oid AND contype = 'f')"
+                + " + (SELECT COUNT(*) FROM pg_depend d JOIN pg_rewrite r ON r.oid = d.objid WHERE d.refobjid = t.oid AND r.ev_class <> d.refobjid),"
+                + " (SELECT COUNT(*) FROM pg_trigger WHERE tgrelid = t.oid AND NOT tgisinternal),"
+                + " (SELECT COUNT(*) FROM pg_attribute WHERE attrelid = t.oid AND attacl IS NOT NULL),"
+                + " (SELECT COUNT(*) FROM pg_class WHERE oid = t.oid AND relkind = 'p')"
+                + " + (SELECT COUNT(*) FROM pg_inherits WHERE inhrelid = t.oid OR inhparent = t.oid)"
+                + " FROM t";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, database.escapeTableName(catalogName, schemaName, tableName));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                String reason = null;
+                if (rs.getLong(1) > 0) {
+                    reason = "is referenced by foreign keys or views";
+                } else if (rs.getLong(2) > 0) {
+                    reason = "has triggers";
+                } else if (rs.getLong(3) > 0) {
+                    reason = "has column privileges";
+                } else if (rs.getLong(4) > 0) {
+                    reason = "is partitioned or part of an inheritance tree";
+                }
+                if (reason != null) {
+                    throw new DatabaseException("Online resize of " + tableName + " is not supported because the table " + reason);
+                }
+            }
+        }
+    }
+
+    /*
+     * The validated foreign keys of the original table, the ones not valid
+     * on purpose are not validated after the swap.
+     */
+    private List<String> getForeignKeys(Connection connection) throws SQLException {
+        List<String> foreignKeys = new ArrayList<>();
+        if (!(database instanceof PostgresDatabase)) {
+            return foreignKeys;
+        }
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT conname FROM pg_constraint WHERE conrelid = CAST(? AS regclass) AND contype = 'f' AND convalidated")) {
+            stmt.setString(1, database.escapeTableName(catalogName, schemaName, tableName));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    foreignKeys.add(rs.getString(1));
+                }
+            }
+        }
+        return foreignKeys;
+    }
+
+    /*
+     * Removes the interim objects so the original table is left as before.
+     */
+    private void abort(Connection connection) {
+        List<String> sql = new ArrayList<>();
+        if (database instanceof PostgresDatabase) {
+            sql.add("DROP TRIGGER IF EXISTS " + database.escapeObjectName(tableName + "_sync", Table.class) + " ON " + database.escapeTableName(catalogName, schemaName, tableName));
+            sql.add("DROP FUNCTION IF EXISTS " + escapeTable("_sync") + "()");
+        } else if (database instanceof DB2Database) {
+            sql.add("CALL SYSPROC.ADMIN_MOVE_TABLE(" + getDb2Schema() + ", '" + database.correctObjectName(tableName, Table.class) + "', '"
+                    + database.correctObjectName(tableName + INTERIM_SUFFIX, Table.class) + "', '', 'CANCEL')");
+        }
+        sql.add("DROP TABLE " + escapeTable(INTERIM_SUFFIX) + (database instanceof OracleDatabase ? " PURGE" : ""));
+        for (String statement : sql) {
+            try {
+                execute(connection, statement);
+                connection.commit();
+            } catch (SQLException e) {
+                Scope.getCurrentScope().getLog(getClass()).fine("Cleanup of online resize of " + tableName + " failed: " + e.getMessage());
+                rollbackQuietly(connection);
+            }
+        }
+    }
+
+    /**
+     * Returns the table with its columns and primary key.
+     *
+     * @return the table snapshot
+     */
+    protected Table getTable() {
+        if (table == null) {
+            Table example = new Table().setName(database.correctObjectName(tableName, Table.class));
+            example.setSchema(new Schema(catalogName, schemaName));
+            try {
+                table = SnapshotGeneratorFactory.getInstance().createSnapshot(example, database);
+            } catch (DatabaseException | InvalidExampleException e) {
+                throw new UnexpectedLiquibaseException(e);
+            }
+            if (table == null) {
+                throw new UnexpectedLiquibaseException("Table " + example + " not found");
+            }
+        }
+        return table;
+    }
+
+    private List<String> getPrimaryKeyColumns() {
+        PrimaryKey primaryKey = getTable().getPrimaryKey();
+        if (primaryKey == null || primaryKey.getColumns().isEmpty()) {
+            throw new UnexpectedLiquibaseException("Online resize of " + tableName + " requires a primary key");
+        }
+        List<String> columns = new ArrayList<>();
+        for (Column column : primaryKey.getColumns()) {
+            columns.add(database.escapeColumnName(catalogName, schemaName, tableName, column.getName()));
+        }
+        return columns;
+    }
+
+    private String getRowKey(String record) {
+        List<String> columns = new ArrayList<>();
+        for (String column : getPrimaryKeyColumns()) {
+            columns.add(record + "." + column);
+        }
+        return "(" + String.join(", ", columns) + ")";
+    }
+
+    private String getDb2Schema() {
+        String schema = schemaName != null ? schemaName : database.getDefaultSchemaName();
+        return schema != null ? "'" + database.correctObjectName(schema, Schema.class) + "'" : "CURRENT SCHEMA";
+    }
+
+    private static String toRegclass(String table) {
+        return "'" + table.replace("'", "''") + "'::regclass";
+    }
+
+    private String escapeTable(String suffix) {
+        return database.escapeTableName(catalogName, schemaName, tableName + suffix);
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) { // NOSONAR
+            // nothing to do
+        }
+    }
+}
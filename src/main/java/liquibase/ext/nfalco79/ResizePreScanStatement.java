@@ -0,0 +1,332 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.PreparedStatementFactory;
+import liquibase.database.core.MSSQLDatabase;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.nfalco79.util.StringUtils;
+import liquibase.statement.AbstractSqlStatement;
+import liquibase.statement.ExecutablePreparedStatement;
+
+/**
+ * Counts the rows whose value of the column does not fit the new data type,
+ * so a shrinking resize fails in seconds before the ALTER takes any lock.
+ * <p>
+ * Character values are checked on their length, numeric values on their
+ * integer digits once rounded to the new scale. With a {@code parallelism} greater than one Oracle and
+ * PostgreSQL run a parallel query, the other databases split the key space
+ * in ranges counted concurrently on their own connections.
+ *
+ * @author Nikolas Falco
+ */
+public class ResizePreScanStatement extends AbstractSqlStatement implements ExecutablePreparedStatement {
+
+    private static final List<String> CHAR_TYPES = Arrays.asList("VARCHAR", "VARCHAR2", "NVARCHAR", "NVARCHAR2", "CHAR", "NCHAR", "CHARACTER", "CHARACTER VARYING");
+    private static final List<String> NUMERIC_TYPES = Arrays.asList("NUMERIC", "DECIMAL", "NUMBER");
+    private static final String PARALLEL_WORKERS = "max_parallel_workers_per_gather";
+
+    private final Database database;
+    private final String catalogName;
+    private final String schemaName;
+    private final String tableName;
+    private final String columnName;
+    private final String newDataType;
+    private int parallelism = 1;
+
+    public ResizePreScanStatement(Database database, String catalogName, String schemaName, String tableName, String columnName, String newDataType) { // NOSONAR
+        this.database = database;
+        this.catalogName = catalogName;
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+        this.columnName = columnName;
+        this.newDataType = newDataType;
+    }
+
+    /**
+     * Returns if values of the given type could be checked against its size.
+     *
+     * @param newDataType
+     *            the new data type of the column
+     * @return {@code true} if the data type has a size to check
+     */
+    public static boolean isSupported(String newDataType) {
+        String type = StringUtils.removeParam(newDataType).trim().toUpperCase(Locale.ROOT);
+        return (CHAR_TYPES.contains(type) || NUMERIC_TYPES.contains(type)) && StringUtils.getParams(newDataType).length > 0;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public String getNewDataType() {
+        return newDataType;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public ResizePreScanStatement setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Returns the condition of the rows whose value does not fit the new
+     * data type.
+     *
+     * @return the SQL predicate
+     */
+    public String getViolationPredicate() {
+        String column = database.escapeColumnName(catalogName, schemaName, tableName, columnName);
+        String type = StringUtils.removeParam(newDataType).trim().toUpperCase(Locale.ROOT);
+        int[] params = StringUtils.getParams(newDataType);
+        if (NUMERIC_TYPES.contains(type)) {
+            int scale = params.length > 1 ? params[1] : 0;
+            int integerDigits = Math.max(0, params[0] - scale);
+            // values are rounded to the scale, 999.995 does not fit NUMERIC(5,2)
+            BigDecimal limit = BigDecimal.TEN.pow(integerDigits).subtract(new BigDecimal("0.5").movePointLeft(scale));
+            return "ABS(" + column + ") >= " + limit.toPlainString();
+        }
+
+        String length;
+        if (database instanceof OracleDatabase) {
+            // sizes are in bytes unless declared in characters
+            boolean charSemantics = type.startsWith("N") || newDataType.toUpperCase(Locale.ROOT).matches(".*\\d\\s+CHAR\\s*\\).*");
+            length = charSemantics ? "LENGTH" : "LENGTHB";
+        } else if (database instanceof MSSQLDatabase) {
+            length = "LEN";
+        } else if (database instanceof MySQLDatabase) {
+            length = "CHAR_LENGTH";
+        } else {
+            length = "LENGTH";
+        }
+        return length + "(" + column + ") > " + params[0];
+    }
+
+    /**
+     * Returns the query that counts the rows that do not fit in a range of
+     * keys.
+     *
+     * @param key
+     *            the key of the ranges, {@code null} to count on the whole
+     *            table
+     * @param lowerBound
+     *            if the range has a lower bound
+     * @param upperBound
+     *            if the range has an upper bound
+     * @return the SQL query
+     */
+    public String getCountSql(RowKey key, boolean lowerBound, boolean upperBound) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (database instanceof OracleDatabase && parallelism > 1) {
+            sql.append("/*+ PARALLEL(").append(parallelism).append(") */ ");
+        }
+        sql.append("COUNT(*) FROM ").append(database.escapeTableName(catalogName, schemaName, tableName)).append(" WHERE ").append(getViolationPredicate());
+        if (lowerBound || upperBound) {
+            sql.append(" AND ").append(key.getRangePredicate(lowerBound, upperBound));
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        long start = System.currentTimeMillis();
+        long rows;
+        try {
+            if (parallelism > 1 && !(database instanceof OracleDatabase) && !(database instanceof PostgresDatabase)) {
+                RowKey key = RowKey.lookup(database, catalogName, schemaName, tableName);
+                Map<Integer, KeyRange> ranges = new KeySpace(database, catalogName, schemaName, tableName).split(connection, key, parallelism);
+                // an uncommitted DDL of the same changeSet on the table would block the readers
+                connection.commit();
+                rows = countParallel(key, ranges);
+            } else if (database instanceof PostgresDatabase && parallelism > 1) {
+                rows = countWithParallelWorkers(connection);
+            } else {
+                rows = count(connection, null, KeyRange.ALL);
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+
+        if (rows > 0) {
+            throw new DatabaseException("Resize of " + tableName + "." + columnName + " to " + newDataType + " is not possible, " + rows + " rows do not fit");
+        }
+        Scope.getCurrentScope().getLog(getClass()).info("All values of " + tableName + "." + columnName + " fit " + newDataType + ", checked in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /*
+     * Raises the parallel workers of PostgreSQL for the count only. SET LOCAL
+     * would last until the end of the changeSet transaction and a reset to
+     * DEFAULT would lose the value of the session, so the current value is
+     * restored also when the count fails.
+     */
+    private long countWithParallelWorkers(Connection connection) throws SQLException {
+        String workers;
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT current_setting('" + PARALLEL_WORKERS + "')");
+                ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            workers = rs.getString(1);
+        }
+        execute(connection, "SET LOCAL " + PARALLEL_WORKERS + " = " + parallelism);
+        SQLException failure = null;
+        try {
+            return count(connection, null, KeyRange.ALL);
+        } catch (SQLException e) {
+            failure = e;
+            throw e;
+        } finally {
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT set_config('" + PARALLEL_WORKERS + "', ?, true)")) {
+                stmt.setString(1, workers);
+                stmt.execute();
+            } catch (SQLException e) {
+                // an aborted transaction refuses the restore, its rollback restores the value
+                if (failure == null) {
+                    throw e; // NOSONAR
+                }
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Counts the rows that do not fit in a range of keys.
+     *
+     * @param connection
+     *            the connection where run the query
+     * @param key
+     *            the key of the range, {@code null} for the whole table
+     * @param range
+     *            the range to count
+     * @return the number of rows that do not fit
+     * @throws SQLException
+     *             in case of failure
+     */
+    protected long count(Connection connection, RowKey key, KeyRange range) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(getCountSql(key, range.getLower() != null, range.getUpper() != null))) {
+            if (key != null) {
+                key.bindRange(stmt, 1, range.getLower(), range.getUpper());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Counts the given ranges concurrently, each worker thread has a
+     * dedicated connection.
+     *
+     * @param key
+     *            the key used to split the table in ranges
+     * @param ranges
+     *            the ranges to count
+     * @return the number of rows that do not fit
+     * @throws DatabaseException
+     *             if a worker connection could not be opened or a query
+     *             fails
+     */
+    protected long countParallel(RowKey key, Map<Integer, KeyRange> ranges) throws DatabaseException {
+        int workerCount = Math.min(parallelism, ranges.size());
+        Queue<KeyRange> pending = new ConcurrentLinkedQueue<>(ranges.values());
+        AtomicLong rows = new AtomicLong();
+
+        List<Connection> workers = new ArrayList<>(workerCount);
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(openConnection());
+            }
+
+            List<Future<?>> results = new ArrayList<>(workerCount);
+            for (Connection worker : workers) {
+                results.add(executor.submit(() -> {
+                    KeyRange range;
+                    while ((range = pending.poll()) != null) {
+                        rows.addAndGet(count(worker, key, range));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            return rows.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } catch (ExecutionException e) {
+            throw new DatabaseException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (Connection worker : workers) {
+                closeQuietly(worker);
+            }
+        }
+    }
+
+    protected Connection openConnection() throws DatabaseException {
+        return CopyColumnChunkedStatement.openConnection(database);
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            // nothing was written
+            connection.rollback();
+            connection.close();
+        } catch (SQLException e) { // NOSONAR
+            // nothing to do
+        }
+    }
+}
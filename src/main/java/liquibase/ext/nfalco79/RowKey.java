@@ -0,0 +1,454 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.core.AbstractDb2Database;
+import liquibase.database.core.H2Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.snapshot.InvalidExampleException;
+import liquibase.snapshot.SnapshotGeneratorFactory;
+import liquibase.structure.core.Column;
+import liquibase.structure.core.PrimaryKey;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
+
+/**
+ * The ordered key used to walk a table by ranges.
+ * <p>
+ * It is the primary key, with all its columns, or, when the table has no
+ * primary key, the physical row address of the database (ROWID, RID). The row
+ * address is not indexed, so each lookup of a range boundary scans and sorts
+ * the rest of the table. PostgreSQL is not supported without a primary key
+ * because the ctid of a row changes on each update.
+ * <p>
+ * A key value is an array with a value for each column, as returned by the
+ * driver, so it is bound again with its own type. A composite key is compared
+ * as a row value where the database supports it, otherwise as the equivalent
+ * combination of comparisons of its columns.
+ *
+ * @author Nikolas Falco
+ */
+public final class RowKey {
+
+    private final List<String> columns;
+    private final List<Integer> sqlTypes;
+    private final boolean pseudoColumn;
+    private final boolean rowValues;
+
+    /**
+     * Constructor of a key of a single column.
+     *
+     * @param expression
+     *            the SQL expression that returns the key of a row
+     * @param pseudoColumn
+     *            if the expression is a physical row address, its values are
+     *            handled in their textual form
+     * @param sqlType
+     *            the JDBC type of the key, {@code null} if unknown
+     */
+    public RowKey(String expression, boolean pseudoColumn, Integer sqlType) {
+        this(Collections.singletonList(expression), Collections.singletonList(sqlType), pseudoColumn, false);
+    }
+
+    /**
+     * Constructor of a key of the given columns.
+     *
+     * @param columns
+     *            the escaped names of the columns, in the order of the key
+     * @param sqlTypes
+     *            the JDBC type of each column, {@code null} items if unknown
+     * @param rowValues
+     *            if the database compares row values like {@code (a, b) > (?, ?)}
+     */
+    public RowKey(List<String> columns, List<Integer> sqlTypes, boolean rowValues) {
+        this(columns, sqlTypes, false, rowValues);
+    }
+
+    private RowKey(List<String> columns, List<Integer> sqlTypes, boolean pseudoColumn, boolean rowValues) {
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        this.sqlTypes = Collections.unmodifiableList(new ArrayList<>(sqlTypes));
+        this.pseudoColumn = pseudoColumn;
+        this.rowValues = rowValues;
+    }
+
+    /**
+     * Lookup the key of the given table.
+     *
+     * @param database
+     *            the database to inspect
+     * @param catalogName
+     *            the catalog name of the table
+     * @param schemaName
+     *            the schema name of the table
+     * @param tableName
+     *            the table name
+     * @return the key to use to walk the table
+     * @throws DatabaseException
+     *             if the table does not exists or the table has no primary
+     *             key and the database does not expose a stable row address
+     */
+    public static RowKey lookup(Database database, String catalogName, String schemaName, String tableName) throws DatabaseException {
+        Table example = new Table().setName(database.correctObjectName(tableName, Table.class));
+        example.setSchema(new Schema(catalogName, schemaName));
+
+        Table table;
+        try {
+            table = SnapshotGeneratorFactory.getInstance().createSnapshot(example, database);
+        } catch (InvalidExampleException e) {
+            throw new DatabaseException(e);
+        }
+        if (table == null) {
+            throw new DatabaseException("Table " + example.toString() + " not found");
+        }
+
+        PrimaryKey primaryKey = table.getPrimaryKey();
+        if (primaryKey != null && !primaryKey.getColumns().isEmpty()) {
+            List<String> columns = new ArrayList<>();
+            List<Integer> sqlTypes = new ArrayList<>();
+            for (Column keyColumn : primaryKey.getColumns()) {
+                Column column = table.getColumn(keyColumn.getName());
+                columns.add(database.escapeColumnName(catalogName, schemaName, tableName, keyColumn.getName()));
+                sqlTypes.add(column != null && column.getType() != null ? column.getType().getDataTypeId() : null);
+            }
+            boolean rowValues = database instanceof PostgresDatabase || database instanceof MySQLDatabase || database instanceof H2Database;
+            return new RowKey(columns, sqlTypes, rowValues);
+        }
+
+        RowKey rowAddress = getRowAddress(database, catalogName, schemaName, tableName);
+        if (rowAddress == null) {
+            throw new DatabaseException("Table " + example.toString() + " has no primary key and " + database.getShortName() + " does not expose a stable row address");
+        }
+        Scope.getCurrentScope().getLog(RowKey.class).warning("Table " + example.toString() + " has no primary key, each range boundary is looked up by a full scan of " + rowAddress);
+        return rowAddress;
+    }
+
+    /*
+     * The ctid of PostgreSQL is not a valid key because an UPDATE moves the
+     * row to a new address, ahead of the range in progress.
+     */
+    static RowKey getRowAddress(Database database, String catalogName, String schemaName, String tableName) {
+        if (database instanceof OracleDatabase) {
+            // the textual form is implicitly converted to ROWID
+            return new RowKey("ROWID", true, Types.VARCHAR);
+        } else if (database instanceof AbstractDb2Database) {
+            return new RowKey("RID(" + database.escapeTableName(catalogName, schemaName, tableName) + ")", true, Types.BIGINT);
+        } else if (database instanceof H2Database) {
+            return new RowKey("_ROWID_", true, Types.BIGINT);
+        }
+        return null;
+    }
+
+    /**
+     * Returns this key with columns qualified by the given table alias.
+     *
+     * @param alias
+     *            the table alias
+     * @return the qualified key
+     */
+    public RowKey qualify(String alias) {
+        List<String> qualified = new ArrayList<>();
+        for (String column : columns) {
+            qualified.add(pseudoColumn && column.startsWith("RID(") ? "RID(" + alias + ")" : alias + "." + column);
+        }
+        return new RowKey(qualified, sqlTypes, pseudoColumn, rowValues);
+    }
+
+    /**
+     * Returns the condition of the rows of a range, lower bound excluded and
+     * upper bound included.
+     *
+     * @param lowerBound
+     *            if the range has a lower bound
+     * @param upperBound
+     *            if the range has an upper bound
+     * @return the SQL predicate, {@code null} if the range is unbounded
+     */
+    public String getRangePredicate(boolean lowerBound, boolean upperBound) {
+        if (lowerBound && upperBound) {
+            return getComparison(">", ">=") + " AND " + getComparison("<=", "<=");
+        } else if (lowerBound) {
+            return getComparison(">", ">=");
+        } else if (upperBound) {
+            return getComparison("<=", "<=");
+        }
+        return null;
+    }
+
+    /*
+     * (a, b) > (?, ?) is expanded as a >= ? AND (a > ? OR (a = ? AND b > ?)),
+     * the leading condition keeps the index range scan on the first column.
+     */
+    private String getComparison(String operator, String leading) {
+        if (columns.size() == 1) {
+            return columns.get(0) + " " + operator + " ?";
+        }
+        if (rowValues) {
+            return "(" + toString() + ") " + operator + " (" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        }
+        String strict = operator.substring(0, 1);
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            StringBuilder term = new StringBuilder();
+            for (int j = 0; j < i; j++) {
+                term.append(columns.get(j)).append(" = ? AND ");
+            }
+            term.append(columns.get(i)).append(' ').append(i == columns.size() - 1 ? operator : strict).append(" ?");
+            terms.add(i == 0 ? term.toString() : "(" + term + ")");
+        }
+        return "(" + columns.get(0) + " " + leading + " ? AND (" + String.join(" OR ", terms) + "))";
+    }
+
+    /**
+     * Binds the bounds of a range, in the order of
+     * {@link #getRangePredicate(boolean, boolean)}.
+     *
+     * @param stmt
+     *            the statement
+     * @param index
+     *            the index of the first parameter
+     * @param lower
+     *            the lower bound, {@code null} if unbounded
+     * @param upper
+     *            the upper bound, {@code null} if unbounded
+     * @return the index of the next parameter
+     * @throws SQLException
+     *             in case of failure
+     */
+    public int bindRange(PreparedStatement stmt, int index, Object[] lower, Object[] upper) throws SQLException {
+        if (lower != null) {
+            index = bindComparison(stmt, index, lower);
+        }
+        if (upper != null) {
+            index = bindComparison(stmt, index, upper);
+        }
+        return index;
+    }
+
+    private int bindComparison(PreparedStatement stmt, int index, Object[] value) throws SQLException {
+        if (columns.size() == 1 || rowValues) {
+            return bind(stmt, index, value);
+        }
+        bind(stmt, index++, 0, value[0]);
+        for (int i = 0; i < columns.size(); i++) {
+            for (int j = 0; j <= i; j++) {
+                bind(stmt, index++, j, value[j]);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the condition of the row with a given key.
+     *
+     * @return the SQL predicate
+     */
+    public String getEqualsPredicate() {
+        List<String> terms = new ArrayList<>();
+        for (String column : columns) {
+            terms.add(column + " = ?");
+        }
+        return String.join(" AND ", terms);
+    }
+
+    /**
+     * Binds a key value, a parameter for each column.
+     *
+     * @param stmt
+     *            the statement
+     * @param index
+     *            the index of the first parameter
+     * @param value
+     *            the key value
+     * @return the index of the next parameter
+     * @throws SQLException
+     *             in case of failure
+     */
+    public int bind(PreparedStatement stmt, int index, Object[] value) throws SQLException {
+        for (int i = 0; i < columns.size(); i++) {
+            bind(stmt, index++, i, value[i]);
+        }
+        return index;
+    }
+
+    private void bind(PreparedStatement stmt, int index, int column, Object value) throws SQLException {
+        Integer sqlType = sqlTypes.get(column);
+        if (value instanceof String && sqlType != null) {
+            // textual form of a row address or of a value of unknown type
+            stmt.setObject(index, value, sqlType);
+        } else {
+            stmt.setObject(index, value);
+        }
+    }
+
+    /**
+     * Reads a key value from the given result set.
+     *
+     * @param rs
+     *            the result set positioned on a row
+     * @param column
+     *            the column index of the first column of the key
+     * @return the key value
+     * @throws SQLException
+     *             in case of failure
+     */
+    public Object[] read(ResultSet rs, int column) throws SQLException {
+        Object[] value = new Object[columns.size()];
+        for (int i = 0; i < value.length; i++) {
+            if (pseudoColumn) {
+                value[i] = rs.getString(column + i);
+            } else if (Integer.valueOf(Types.TIMESTAMP).equals(sqlTypes.get(i))) {
+                // some drivers return their own timestamp class
+                value[i] = rs.getTimestamp(column + i);
+            } else {
+                value[i] = rs.getObject(column + i);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the textual form of a key value, to store it as text. Values of
+     * a composite key are prefixed by their length.
+     *
+     * @param value
+     *            the key value, could be {@code null}
+     * @return the textual form, {@code null} if the value is {@code null}
+     */
+    public String format(Object[] value) {
+        if (value == null) {
+            return null;
+        } else if (value.length == 1) {
+            return String.valueOf(value[0]);
+        }
+        StringBuilder text = new StringBuilder();
+        for (Object item : value) {
+            String itemText = String.valueOf(item);
+            text.append(itemText.length()).append(':').append(itemText);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the key value of the given textual form.
+     *
+     * @param text
+     *            the textual form returned by {@link #format(Object[])}
+     * @return the key value, {@code null} if the text is {@code null}
+     */
+    public Object[] parse(String text) {
+        if (text == null) {
+            return null; // NOSONAR
+        }
+        Object[] value = new Object[columns.size()];
+        if (value.length == 1) {
+            value[0] = parse(0, text);
+            return value;
+        }
+        int start = 0;
+        for (int i = 0; i < value.length; i++) {
+            int separator = text.indexOf(':', start);
+            int end = separator + 1 + Integer.parseInt(text.substring(start, separator));
+            value[i] = parse(i, text.substring(separator + 1, end));
+            start = end;
+        }
+        return value;
+    }
+
+    private Object parse(int column, String text) {
+        Integer sqlType = pseudoColumn ? null : sqlTypes.get(column);
+        if (sqlType == null) {
+            return text;
+        }
+        switch (sqlType) {
+        case Types.BIGINT:
+            return Long.valueOf(text);
+        case Types.INTEGER:
+        case Types.SMALLINT:
+        case Types.TINYINT:
+            return Integer.valueOf(text);
+        case Types.NUMERIC:
+        case Types.DECIMAL:
+            return new BigDecimal(text);
+        case Types.DATE:
+            // Oracle DATE is read as a timestamp
+            return text.length() > 10 ? Timestamp.valueOf(text) : Date.valueOf(text);
+        case Types.TIMESTAMP:
+            return Timestamp.valueOf(text);
+        default:
+            return text;
+        }
+    }
+
+    /**
+     * Returns the textual form of a key value to log it.
+     *
+     * @param value
+     *            the key value
+     * @return the value of a single column or the values of the columns in
+     *         parentheses
+     */
+    public static String toString(Object[] value) {
+        if (value.length == 1) {
+            return String.valueOf(value[0]);
+        }
+        List<String> items = new ArrayList<>();
+        for (Object item : value) {
+            items.add(String.valueOf(item));
+        }
+        return "(" + String.join(", ", items) + ")";
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public List<Integer> getSqlTypes() {
+        return sqlTypes;
+    }
+
+    public boolean isPseudoColumn() {
+        return pseudoColumn;
+    }
+
+    public boolean isRowValues() {
+        return rowValues;
+    }
+
+    /**
+     * Returns the columns of the key separated by comma, as in a select list
+     * or an order by clause.
+     */
+    @Override
+    public String toString() {
+        return String.join(", ", columns);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import liquibase.database.Database;
+import liquibase.database.core.AbstractDb2Database;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
+
+/**
+ * A data partition of a table discovered from the database catalog.
+ * <p>
+ * How a partition is addressed depends on the database: by name in the
+ * UPDATE on Oracle, as the leaf table that stores its rows on PostgreSQL and
+ * by the range of its partitioning key on DB2.
+ *
+ * @author Nikolas Falco
+ */
+public final class TablePartition {
+
+    private final String name;
+    private final String schemaName;
+    private final String tableName;
+    private final String predicate;
+
+    public TablePartition(String name, String schemaName, String tableName, String predicate) {
+        this.name = name;
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Returns if the partitions of a table could be discovered.
+     *
+     * @param database
+     *            the database
+     * @return {@code true} if the database is supported
+     */
+    public static boolean isSupported(Database database) {
+        return database instanceof OracleDatabase || database instanceof PostgresDatabase || database instanceof AbstractDb2Database;
+    }
+
+    /**
+     * Returns the partitions of a table in the order of their keys. On
+     * PostgreSQL they are ordered by the text of their bounds from the root
+     * table to the leaf, that follows the order of the keys for dates and
+     * strings, and the default partitions are the last.
+     *
+     * @param connection
+     *            the connection where run the query
+     * @param database
+     *            the database
+     * @param schemaName
+     *            the schema of the table, {@code null} for the default schema
+     * @param tableName
+     *            the table name
+     * @return the partitions, empty if the table is not partitioned
+     * @throws SQLException
+     *             in case of failure
+     */
+    public static List<TablePartition> list(Connection connection, Database database, String schemaName, String tableName) throws SQLException {
+        String schema = database.correctObjectName(schemaName != null ? schemaName : database.getDefaultSchemaName(), Schema.class);
+        String table = database.correctObjectName(tableName, Table.class);
+        List<TablePartition> partitions = new ArrayList<>();
+        if (database instanceof OracleDatabase) {
+            String sql = "SELECT PARTITION_NAME FROM ALL_TAB_PARTITIONS WHERE TABLE_OWNER = ? AND TABLE_NAME = ? ORDER BY PARTITION_POSITION";
+            for (String[] row : query(connection, sql, 1, schema, table)) {
+                partitions.add(new TablePartition(row[0], schemaName, tableName, null));
+            }
+        } else if (database instanceof PostgresDatabase) {
+            // only leaf partitions store rows, intermediate ones could be partitioned again
+            String bound = "NULLIF(pg_get_expr(c.relpartbound, c.oid), 'DEFAULT')";
+            String sql = "WITH RECURSIVE tree AS (SELECT i.inhrelid, ARRAY[" + bound + "] AS bounds FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)"
+                    + " UNION ALL SELECT i.inhrelid, t.bounds || " + bound + " FROM pg_inherits i JOIN tree t ON i.inhparent = t.inhrelid JOIN pg_class c ON c.oid = i.inhrelid)"
+                    + " SELECT n.nspname, c.relname FROM tree JOIN pg_class c ON c.oid = tree.inhrelid JOIN pg_namespace n ON n.oid = c.relnamespace"
+                    + " WHERE c.relkind = 'r' ORDER BY tree.bounds, c.relname";
+            for (String[] row : query(connection, sql, 2, database.escapeTableName(null, schemaName, tableName))) {
+                partitions.add(new TablePartition(row[1], row[0], row[1], null));
+            }
+        } else if (database instanceof AbstractDb2Database) {
+            List<String[]> keys = query(connection, "SELECT DATAPARTITIONEXPRESSION FROM SYSCAT.DATAPARTITIONEXPRESSION WHERE TABSCHEMA = ? AND TABNAME = ? ORDER BY DATAPARTITIONKEYSEQ", 1, schema, table);
+            String sql = "SELECT DATAPARTITIONNAME, SEQNO, LOWINCLUSIVE, LOWVALUE, HIGHINCLUSIVE, HIGHVALUE FROM SYSCAT.DATAPARTITIONS WHERE TABSCHEMA = ? AND TABNAME = ? ORDER BY SEQNO";
+            for (String[] row : query(connection, sql, 6, schema, table)) {
+                partitions.add(new TablePartition(row[0], schemaName, tableName, getRangePredicate(keys, row)));
+            }
+        }
+        return partitions;
+    }
+
+    /*
+     * The range of the partition key lets DB2 eliminate other partitions, with
+     * a multi column key the partition is filtered by its number.
+     */
+    private static String getRangePredicate(List<String[]> keys, String[] row) {
+        if (keys.isEmpty()) {
+            return null;
+        } else if (keys.size() > 1) {
+            return "DATAPARTITIONNUM(" + keys.get(0)[0] + ") = " + row[1];
+        }
+        String key = keys.get(0)[0];
+        List<String> bounds = new ArrayList<>();
+        if (!"MINVALUE".equals(row[3])) {
+            bounds.add(key + ("Y".equals(row[2]) ? " >= " : " > ") + row[3]);
+        }
+        if (!"MAXVALUE".equals(row[5])) {
+            bounds.add(key + ("Y".equals(row[4]) ? " <= " : " < ") + row[5]);
+        }
+        return bounds.isEmpty() ? null : String.join(" AND ", bounds);
+    }
+
+    private static List<String[]> query(Connection connection, String sql, int columns, String... params) throws SQLException {
+        List<String[]> rows = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setString(i + 1, params[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String[] row = new String[columns];
+                    for (int i = 0; i < columns; i++) {
+                        row[i] = rs.getString(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the schema of the table that stores the rows of this partition.
+     *
+     * @return the schema name
+     */
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    /**
+     * Returns the table that stores the rows of this partition.
+     *
+     * @return the table name
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Returns the predicate that selects the rows of this partition.
+     *
+     * @return the SQL predicate or {@code null} if not needed
+     */
+    public String getPredicate() {
+        return predicate;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.core.AbstractDb2Database;
+import liquibase.database.core.MSSQLDatabase;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
+
+/**
+ * Reads the statistics the optimizer collected about a table from the
+ * database catalog, values are estimates and could be stale or missing.
+ *
+ * @author Nikolas Falco
+ */
+public final class TableStatistics {
+
+    private TableStatistics() {
+    }
+
+    /**
+     * Returns the number of rows of the table according to the catalog
+     * statistics.
+     *
+     * @param connection
+     *            the connection where run the query
+     * @param database
+     *            the database
+     * @param catalogName
+     *            the catalog of the table
+     * @param schemaName
+     *            the schema of the table, {@code null} for the default schema
+     * @param tableName
+     *            the table name
+     * @return the estimated number of rows or {@code null} if the database
+     *         is not supported or the table has no statistics
+     */
+    public static Long estimateRows(Connection connection, Database database, String catalogName, String schemaName, String tableName) {
+        return query(connection, database, getRowsSql(database), catalogName, schemaName, tableName);
+    }
+
+    /**
+     * Returns the space used by the rows of the table according to the
+     * catalog statistics.
+     *
+     * @param connection
+     *            the connection where run the query
+     * @param database
+     *            the database
+     * @param catalogName
+     *            the catalog of the table
+     * @param schemaName
+     *            the schema of the table, {@code null} for the default schema
+     * @param tableName
+     *            the table name
+     * @return the estimated number of bytes or {@code null} if the database
+     *         is not supported or the table has no statistics
+     */
+    public static Long estimateBytes(Connection connection, Database database, String catalogName, String schemaName, String tableName) {
+        return query(connection, database, getBytesSql(database), catalogName, schemaName, tableName);
+    }
+
+    /**
+     * Returns the execution plan of the given statement without execute it.
+     *
+     * @param connection
+     *            the connection where run the query
+     * @param database
+     *            the database
+     * @param sql
+     *            the statement to explain
+     * @return the plan or {@code null} if the database could not explain
+     *         statements without side effects
+     */
+    public static String explain(Connection connection, Database database, String sql) {
+        // other databases write the plan in explain tables
+        if (!(database instanceof PostgresDatabase)) {
+            return null;
+        }
+        StringBuilder plan = new StringBuilder();
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("EXPLAIN " + sql)) {
+            while (rs.next()) {
+                if (plan.length() > 0) {
+                    plan.append('\n');
+                }
+                plan.append(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            Scope.getCurrentScope().getLog(TableStatistics.class).fine("Could not explain " + sql + ": " + e.getMessage());
+            return null;
+        }
+        return plan.toString();
+    }
+
+    private static Long query(Connection connection, Database database, String sql, String catalogName, String schemaName, String tableName) {
+        if (sql == null) {
+            return null;
+        }
+
+        String schema = database.correctObjectName(schemaName != null ? schemaName : database.getDefaultSchemaName(), Schema.class);
+        String table = database.correctObjectName(tableName, Table.class);
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            if (database instanceof PostgresDatabase || database instanceof MSSQLDatabase) {
+                stmt.setString(1, database.escapeTableName(catalogName, schemaName, tableName));
+            } else {
+                stmt.setString(1, schema);
+                stmt.setString(2, table);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    long value = rs.getLong(1);
+                    // no statistics are reported as NULL or -1
+                    return rs.wasNull() || value < 0 ? null : value;
+                }
+            }
+        } catch (SQLException e) {
+            Scope.getCurrentScope().getLog(TableStatistics.class).fine("Statistics of table " + tableName + " are not available: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static String getRowsSql(Database database) {
+        if (database instanceof PostgresDatabase) {
+            return "SELECT reltuples::bigint FROM pg_class WHERE oid = to_regclass(?)";
+        } else if (database instanceof OracleDatabase) {
+            return "SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = ? AND TABLE_NAME = ?";
+        } else if (database instanceof AbstractDb2Database) {
+            return "SELECT CARD FROM SYSCAT.TABLES WHERE TABSCHEMA = ? AND TABNAME = ?";
+        } else if (database instanceof MySQLDatabase) {
+            return "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?";
+        } else if (database instanceof MSSQLDatabase) {
+            return "SELECT SUM(row_count) FROM sys.dm_db_partition_stats WHERE object_id = OBJECT_ID(?) AND index_id IN (0, 1)";
+        }
+        return null;
+    }
+
+    private static String getBytesSql(Database database) {
+        if (database instanceof PostgresDatabase) {
+            return "SELECT pg_table_size(to_regclass(?))";
+        } else if (database instanceof OracleDatabase) {
+            return "SELECT NUM_ROWS * AVG_ROW_LEN FROM ALL_TABLES WHERE OWNER = ? AND TABLE_NAME = ?";
+        } else if (database instanceof AbstractDb2Database) {
+            return "SELECT T.FPAGES * S.PAGESIZE FROM SYSCAT.TABLES T JOIN SYSCAT.TABLESPACES S ON S.TBSPACE = T.TBSPACE WHERE T.TABSCHEMA = ? AND T.TABNAME = ?";
+        } else if (database instanceof MySQLDatabase) {
+            return "SELECT DATA_LENGTH FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?";
+        } else if (database instanceof MSSQLDatabase) {
+            return "SELECT SUM(used_page_count) * 8192 FROM sys.dm_db_partition_stats WHERE object_id = OBJECT_ID(?)";
+        }
+        return null;
+    }
+}
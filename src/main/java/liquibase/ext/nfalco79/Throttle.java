@@ -0,0 +1,108 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the throughput of a data migration to a budget of rows and/or
+ * batches per second.
+ * <p>
+ * The budget is shared by all threads of the migration: each completed batch
+ * is accounted and the calling thread waits until the elapsed time is
+ * enough for all the work done so far.
+ *
+ * @author Nikolas Falco
+ */
+public class Throttle {
+
+    private final Integer maxRowsPerSecond;
+    private final Integer maxBatchesPerSecond;
+    private boolean started;
+    private long start;
+    private long rows;
+    private long batches;
+
+    /**
+     * Default constructor.
+     *
+     * @param maxRowsPerSecond
+     *            the maximum number of rows per second, {@code null} for no
+     *            limit
+     * @param maxBatchesPerSecond
+     *            the maximum number of batches per second, {@code null} for
+     *            no limit
+     */
+    public Throttle(Integer maxRowsPerSecond, Integer maxBatchesPerSecond) {
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        this.maxBatchesPerSecond = maxBatchesPerSecond;
+    }
+
+    /**
+     * Starts to measure the throughput.
+     */
+    public synchronized void start() {
+        started = true;
+        start = now();
+        rows = 0;
+        batches = 0;
+    }
+
+    /**
+     * Accounts a completed batch and waits until the throughput is back under
+     * the budget.
+     *
+     * @param batchRows
+     *            the number of rows of the batch
+     */
+    public void acquire(long batchRows) {
+        long wait;
+        synchronized (this) {
+            long now = now();
+            if (!started) {
+                // not started, measure from the first batch
+                started = true;
+                start = now;
+            }
+            rows += batchRows;
+            batches++;
+
+            long expected = 0;
+            if (maxRowsPerSecond != null) {
+                expected = Math.max(expected, rows * 1000 / maxRowsPerSecond);
+            }
+            if (maxBatchesPerSecond != null) {
+                expected = Math.max(expected, batches * 1000 / maxBatchesPerSecond);
+            }
+            wait = expected - TimeUnit.NANOSECONDS.toMillis(now - start);
+        }
+        if (wait > 0) {
+            try {
+                sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    protected void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+}
@@ -15,6 +15,8 @@
  */
 package liquibase.ext.nfalco79.util;
 
+import java.util.Arrays;
+
 /**
  * Utility class to check and manipulate String.
  */
@@ -45,4 +47,40 @@ public final class StringUtils {
         }
     }
 
+    /**
+     * Returns the numeric params of a type.
+     *
+     * @param type
+     *            the type with params like {@code NUMBER(10,2)} or
+     *            {@code VARCHAR2(255 CHAR)}
+     * @return the params, the first not numeric param and the following
+     *         are omitted
+     */
+    public static int[] getParams(final String type) {
+        if (type == null) {
+            return new int[0];
+        }
+        int startIndex = type.indexOf('(');
+        int endIndex = type.indexOf(')');
+        if (startIndex == -1 || endIndex < startIndex) {
+            return new int[0];
+        }
+
+        String[] params = type.substring(startIndex + 1, endIndex).split(",");
+        int[] values = new int[params.length];
+        int count = 0;
+        for (String param : params) {
+            String value = param.trim();
+            int digits = 0;
+            while (digits < value.length() && Character.isDigit(value.charAt(digits))) {
+                digits++;
+            }
+            if (digits == 0) {
+                break;
+            }
+            values[count++] = Integer.parseInt(value.substring(0, digits));
+        }
+        return Arrays.copyOf(values, count);
+    }
+
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+
+import liquibase.database.DatabaseConnection;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.jvm.JdbcConnection;
+
+/**
+ * A PostgreSQL database connected through the given JDBC connection.
+ */
+class ConnectedPostgresDatabase extends PostgresDatabase {
+    private final JdbcConnection connection;
+
+    ConnectedPostgresDatabase(Connection connection) {
+        this.connection = mock(JdbcConnection.class);
+        when(this.connection.getUnderlyingConnection()).thenReturn(connection);
+    }
+
+    @Override
+    public DatabaseConnection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public String getDefaultSchemaName() {
+        return "public";
+    }
+}
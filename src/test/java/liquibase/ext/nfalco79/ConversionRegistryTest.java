@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+
+public class ConversionRegistryTest {
+
+    private final ConversionRegistry registry = new ConversionRegistry(ConversionRegistry.getBuiltinRules());
+
+    @Test
+    public void normalize_type() {
+        Assertions.assertThat(ConversionRegistry.normalize("varchar2(255 char)")).isEqualTo("VARCHAR2");
+        Assertions.assertThat(ConversionRegistry.normalize("varchar2(255 char)")).isSameAs(ConversionRegistry.normalize("varchar2(255 char)"));
+    }
+
+    @Test
+    public void builtin_conversions() {
+        Assertions.assertThat(registry.convert(new OracleDatabase(), "VARCHAR2", "CLOB", "c")).isEqualTo("TO_CLOB(c)");
+        Assertions.assertThat(registry.convert(new OracleDatabase(), "number", "blob", "c")).isEqualTo("UTL_RAW.CAST_FROM_NUMBER(c)");
+        Assertions.assertThat(registry.convert(new OracleDatabase(), "BLOB", "NVARCHAR2(100)", "c")).isEqualTo("UTL_RAW.CAST_TO_NVARCHAR2(c)");
+        Assertions.assertThat(registry.convert(new OracleDatabase(), "VARCHAR2(20)", "numeric(22,8)", "c")).isEqualTo("CAST(c AS NUMERIC(22,8))");
+        Assertions.assertThat(registry.convert(new PostgresDatabase(), "VARCHAR(20)", "NUMERIC(22,8)", "c")).isEqualTo("CAST(c AS DOUBLE PRECISION)");
+        Assertions.assertThat(registry.convert(new PostgresDatabase(), "VARCHAR(20)", "BIGINT", "c")).isEqualTo("CAST(c AS BIGINT)");
+        Assertions.assertThat(registry.convert(new PostgresDatabase(), "TEXT", "BLOB", "c")).isEqualTo("CAST(c AS BYTEA)");
+        Assertions.assertThat(registry.convert(new DB2Database(), "VARCHAR(20)", "CLOB", "c")).isEqualTo("c");
+    }
+
+    @Test
+    public void same_type_is_not_converted() {
+        Assertions.assertThat(registry.convert(new PostgresDatabase(), "blob", "BLOB", "c")).isEqualTo("c");
+    }
+
+    @Test
+    public void provided_rules_replace_builtin_and_specific_rules_win() {
+        List<ConversionRule> rules = new ArrayList<>(ConversionRegistry.getBuiltinRules());
+        rules.addAll(Arrays.asList( //
+                new ConversionRule("postgresql", "VARCHAR", "BIGINT", "${source}::${toBaseType}"), //
+                new ConversionRule("*", "VARCHAR", "JSON", "JSON_OBJECT('v' VALUE ${source})"), //
+                new ConversionRule("db2", "VARCHAR", "JSON", "SYSTOOLS.JSON2BSON(${source})")));
+        ConversionRegistry custom = new ConversionRegistry(rules);
+
+        Assertions.assertThat(custom.convert(new PostgresDatabase(), "VARCHAR(20)", "BIGINT", "c")).isEqualTo("c::BIGINT");
+        Assertions.assertThat(custom.convert(new OracleDatabase(), "VARCHAR(20)", "JSON", "c")).isEqualTo("JSON_OBJECT('v' VALUE c)");
+        Assertions.assertThat(custom.convert(new DB2Database(), "VARCHAR(20)", "JSON", "c")).isEqualTo("SYSTOOLS.JSON2BSON(c)");
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.database.core.PostgresDatabase;
+
+public class CopyColumnCheckpointTest {
+
+    @Test
+    public void load_pending_ranges_of_the_copy() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true, true, false);
+        when(rs.getInt(1)).thenReturn(2, 0);
+        when(rs.getString(2)).thenReturn("70", (String) null);
+        when(rs.getString(3)).thenReturn(null, "25");
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        when(stmt.executeQuery()).thenReturn(rs);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement("SELECT RANGE_NO, LAST_KEY, UPPER_KEY FROM COPYCOLUMNCHECKPOINT WHERE ID = ? AND AUTHOR = ? AND TABLE_NAME = ? AND COLUMN_NAME = ?")) //
+                .thenReturn(stmt);
+
+        CopyColumnCheckpoint checkpoint = new CopyColumnCheckpoint(new PostgresDatabase(), "1", "nfalco79", "mytable", "mytoname");
+        Map<Integer, KeyRange> ranges = checkpoint.load(connection, new RowKey("id", false, Types.BIGINT));
+
+        Assertions.assertThat(ranges).containsOnlyKeys(0, 2);
+        Assertions.assertThat(ranges.values()).extracting(KeyRange::toString).containsExactly("(*, 25]", "(70, *]");
+        verify(stmt).setString(1, "1");
+        verify(stmt).setString(2, "nfalco79");
+        verify(stmt).setString(3, "mytable");
+        verify(stmt).setString(4, "mytoname");
+    }
+
+    @Test
+    public void resumable_requires_a_changeset() {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("BIGINT");
+        change.setChunkSize(1000);
+        change.setResumable(true);
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).contains("resumable requires a changeSet");
+
+        change.setChangeSet(new ChangeSet("1", "nfalco79", false, false, "changelog.xml", null, null, null));
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).doesNotContain("resumable requires a changeSet");
+    }
+
+    @Test
+    public void update_last_key_of_a_range() throws Exception {
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement("UPDATE COPYCOLUMNCHECKPOINT SET LAST_KEY = ? WHERE ID = ? AND AUTHOR = ? AND TABLE_NAME = ? AND COLUMN_NAME = ? AND RANGE_NO = ?")) //
+                .thenReturn(stmt);
+
+        CopyColumnCheckpoint checkpoint = new CopyColumnCheckpoint(new PostgresDatabase(), "1", "nfalco79", "mytable", "mytoname");
+        checkpoint.update(connection, new RowKey("id", false, Types.BIGINT), 3, new Object[] { 100L });
+
+        verify(stmt).setString(1, "100");
+        verify(stmt).setInt(6, 3);
+        verify(stmt).executeUpdate();
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.Database;
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.ValidationErrors;
+import liquibase.statement.SqlStatement;
+
+public class CopyColumnChunkedStatementTest {
+
+    @Test
+    public void chunk_size_generates_chunked_statement() {
+        CopyColumnChange change = newCopyColumnChange(1000);
+        SqlStatement[] statements = change.generateStatements(new PostgresDatabase());
+        Assertions.assertThat(statements).hasSize(1);
+        Assertions.assertThat(statements[0]).isInstanceOf(CopyColumnChunkedStatement.class);
+    }
+
+    @Test
+    public void chunk_size_must_be_positive() {
+        CopyColumnChange change = newCopyColumnChange(0);
+        ValidationErrors errors = change.validate(new PostgresDatabase());
+        Assertions.assertThat(errors.getErrorMessages()).contains("chunkSize must be greater than 0");
+    }
+
+    @Test
+    public void row_address_without_primary_key() {
+        Assertions.assertThat(RowKey.getRowAddress(new OracleDatabase(), null, null, "mytable")).hasToString("ROWID");
+        Assertions.assertThat(RowKey.getRowAddress(new DB2Database(), null, null, "mytable")).hasToString("RID(mytable)");
+        // ctid changes on update
+        Assertions.assertThat(RowKey.getRowAddress(new PostgresDatabase(), null, null, "mytable")).isNull();
+    }
+
+    @Test
+    public void range_sql() {
+        CopyColumnChunkedStatement statement = newStatement(new PostgresDatabase(), 1000);
+        RowKey key = new RowKey("id", false, null);
+        Assertions.assertThat(statement.getRangeSql(key, false, false)).isEqualTo("UPDATE mytable SET mytoname = CAST(myfromname AS BIGINT)");
+        Assertions.assertThat(statement.getRangeSql(key, false, true)).endsWith(" WHERE id <= ?");
+        Assertions.assertThat(statement.getRangeSql(key, true, true)).endsWith(" WHERE id > ? AND id <= ?");
+        Assertions.assertThat(statement.getRangeSql(key, true, false)).endsWith(" WHERE id > ?");
+    }
+
+    @Test
+    public void range_sql_from_source_table() {
+        CopyColumnChunkedStatement statement = newStatement(new PostgresDatabase(), 1000);
+        statement.setSourceTableName("mysource").setJoinColumns("source_id=id");
+        Assertions.assertThat(statement.getRangeSql(new RowKey("id", false, null), true, true)) //
+                .isEqualTo("UPDATE mytable t SET mytoname = CAST(s.myfromname AS BIGINT) FROM mysource s WHERE t.source_id = s.id AND (t.id > ? AND t.id <= ?)");
+
+        CopyColumnChunkedStatement db2 = newStatement(new DB2Database(), 1000);
+        db2.setSourceTableName("mysource").setJoinColumns("source_id=id");
+        Assertions.assertThat(db2.getRangeSql(new RowKey("RID(mytable)", true, null), true, false)).contains(" ON t.source_id = s.id AND (RID(t) > ?) WHEN MATCHED");
+    }
+
+    @Test
+    public void boundary_sql() {
+        RowKey key = new RowKey("id", false, null);
+        Assertions.assertThat(newStatement(new PostgresDatabase(), 1000).getBoundarySql(key, true, false, 1000)) //
+                .isEqualTo("SELECT id FROM mytable WHERE id > ? ORDER BY id LIMIT 1 OFFSET 999");
+        Assertions.assertThat(newStatement(new OracleDatabase(), 1000).getBoundarySql(new RowKey("ROWID", true, Types.VARCHAR), false, false, 1000)) //
+                .contains("SELECT ROWID AS chunk_key FROM mytable ORDER BY ROWID") //
+                .contains("ROWNUM <= 1000") //
+                .endsWith("WHERE chunk_row = 1000");
+    }
+
+    @Test
+    public void copy_commits_each_range() throws Exception {
+        ResultSet boundary = mock(ResultSet.class);
+        when(boundary.next()).thenReturn(true, true, false);
+        when(boundary.getObject(1)).thenReturn(10L, 20L);
+
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        when(stmt.executeQuery()).thenReturn(boundary);
+        when(stmt.executeUpdate()).thenReturn(10, 10, 5);
+
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(stmt);
+
+        CopyColumnChunkedStatement statement = newStatement(new PostgresDatabase(), 10);
+        long rows = statement.copy(connection, new RowKey("id", false, null));
+
+        Assertions.assertThat(rows).isEqualTo(25);
+        verify(connection, times(3)).commit();
+        verify(connection).prepareStatement("UPDATE mytable SET mytoname = CAST(myfromname AS BIGINT) WHERE id <= ?");
+        verify(connection).prepareStatement("UPDATE mytable SET mytoname = CAST(myfromname AS BIGINT) WHERE id > ? AND id <= ?");
+        verify(connection).prepareStatement("UPDATE mytable SET mytoname = CAST(myfromname AS BIGINT) WHERE id > ?");
+    }
+
+    @Test
+    public void parallelism_requires_chunk_size() {
+        CopyColumnChange change = newCopyColumnChange(1000);
+        change.setChunkSize(null);
+        change.setParallelism(4);
+        ValidationErrors errors = change.validate(new PostgresDatabase());
+        Assertions.assertThat(errors.getErrorMessages()).contains("parallelism requires chunkSize");
+    }
+
+    @Test
+    public void split_key_space_in_ranges_of_same_size() throws Exception {
+        ResultSet count = mock(ResultSet.class);
+        when(count.next()).thenReturn(true);
+        when(count.getLong(1)).thenReturn(100L);
+        PreparedStatement countStmt = mock(PreparedStatement.class);
+        when(countStmt.executeQuery()).thenReturn(count);
+
+        ResultSet boundary = mock(ResultSet.class);
+        when(boundary.next()).thenReturn(true);
+        when(boundary.getObject(1)).thenReturn(25L, 50L, 75L);
+        PreparedStatement boundaryStmt = mock(PreparedStatement.class);
+        when(boundaryStmt.executeQuery()).thenReturn(boundary);
+
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement("SELECT COUNT(*) FROM mytable")).thenReturn(countStmt);
+        when(connection.prepareStatement("SELECT id FROM mytable ORDER BY id LIMIT 1 OFFSET 24")).thenReturn(boundaryStmt);
+        when(connection.prepareStatement("SELECT id FROM mytable WHERE id > ? ORDER BY id LIMIT 1 OFFSET 24")).thenReturn(boundaryStmt);
+
+        Map<Integer, KeyRange> ranges = newStatement(new PostgresDatabase(), 10).split(connection, new RowKey("id", false, null), 4);
+        Assertions.assertThat(ranges.values()).extracting(KeyRange::toString).containsExactly("(*, 25]", "(25, 50]", "(50, 75]", "(75, *]");
+    }
+
+    @Test
+    public void parallel_copy_reports_failed_ranges() throws Exception {
+        Connection worker = mock(Connection.class);
+        when(worker.prepareStatement(anyString())).thenThrow(new SQLException("deadlock"));
+
+        CopyColumnChunkedStatement statement = new CopyColumnChunkedStatement(new PostgresDatabase(), null, null, "mytable", "myfromname", "VARCHAR", "mytoname", "BIGINT", 10) {
+            @Override
+            protected Connection openConnection() {
+                return worker;
+            }
+        }.setParallelism(2);
+
+        Map<Integer, KeyRange> ranges = new TreeMap<>();
+        ranges.put(0, new KeyRange(null, new Object[] { 10L }));
+        ranges.put(1, new KeyRange(new Object[] { 10L }, null));
+        Assertions.assertThatThrownBy(() -> statement.copyParallel(new RowKey("id", false, null), ranges)) //
+                .isInstanceOf(DatabaseException.class) //
+                .hasMessageContaining("failed for 2 of 2 ranges") //
+                .hasMessageContaining("range (*, 10]: deadlock") //
+                .hasMessageContaining("range (10, *]: deadlock");
+        verify(worker, times(2)).rollback();
+        verify(worker, times(2)).close();
+    }
+
+    @Test
+    public void parallel_copy_commits_changeset_work_before_workers_start() throws Exception {
+        // the column added by the changeSet is not committed yet
+        Connection connection = mock(Connection.class);
+        List<String> events = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> events.add("commit")).when(connection).commit();
+        Connection worker = mock(Connection.class);
+        when(worker.prepareStatement(anyString())).thenThrow(new SQLException("lock timeout"));
+
+        Map<Integer, KeyRange> ranges = new TreeMap<>();
+        ranges.put(0, new KeyRange(null, new Object[] { 10L }));
+        ranges.put(1, new KeyRange(new Object[] { 10L }, null));
+        CopyColumnChunkedStatement statement = new CopyColumnChunkedStatement(new PostgresDatabase(), null, null, "mytable", "myfromname", "VARCHAR", "mytoname", "BIGINT", 10) {
+            @Override
+            protected Map<Integer, KeyRange> split(Connection connection, RowKey key, int parts) {
+                return ranges;
+            }
+
+            @Override
+            protected Connection openConnection() {
+                events.add("open");
+                return worker;
+            }
+        }.setParallelism(2);
+
+        Assertions.assertThatThrownBy(() -> statement.copy(connection, new RowKey("id", false, null))).isInstanceOf(DatabaseException.class);
+        Assertions.assertThat(events).containsExactly("commit", "open", "open");
+    }
+
+    @Test
+    public void resume_ranges_from_checkpoint() throws Exception {
+        Map<Integer, KeyRange> pending = new TreeMap<>();
+        pending.put(1, new KeyRange(new Object[] { 50L }, null));
+        CopyColumnCheckpoint checkpoint = mock(CopyColumnCheckpoint.class);
+        when(checkpoint.load(any(), any())).thenReturn(pending);
+
+        ResultSet boundary = mock(ResultSet.class);
+        when(boundary.next()).thenReturn(true, false);
+        when(boundary.getObject(1)).thenReturn(60L);
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        when(stmt.executeQuery()).thenReturn(boundary);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(stmt);
+
+        CopyColumnChunkedStatement statement = newStatement(new PostgresDatabase(), 10).setCheckpoint(checkpoint);
+        RowKey key = new RowKey("id", false, null);
+        statement.copy(connection, key);
+
+        verify(connection, never()).prepareStatement("SELECT COUNT(*) FROM mytable");
+        verify(connection, times(2)).prepareStatement("SELECT id FROM mytable WHERE id > ? ORDER BY id LIMIT 1 OFFSET 9");
+        verify(checkpoint, never()).save(any(), any(), any());
+        verify(checkpoint).update(connection, key, 1, new Object[] { 60L });
+        verify(checkpoint).complete(connection, 1);
+        verify(checkpoint).clear(connection);
+    }
+
+    private CopyColumnChunkedStatement newStatement(Database database, int chunkSize) {
+        return new CopyColumnChunkedStatement(database, null, null, "mytable", "myfromname", "VARCHAR", "mytoname", "BIGINT", chunkSize);
+    }
+
+    private CopyColumnChange newCopyColumnChange(Integer chunkSize) {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("BIGINT");
+        change.setChunkSize(chunkSize);
+        return change;
+    }
+}
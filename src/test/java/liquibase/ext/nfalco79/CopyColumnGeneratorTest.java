@@ -23,6 +23,8 @@ import org.junit.Test;
 
 import liquibase.database.Database;
 import liquibase.database.core.H2Database;
+import liquibase.database.core.MSSQLDatabase;
+import liquibase.database.core.MySQLDatabase;
 import liquibase.database.core.OracleDatabase;
 import liquibase.database.core.PostgresDatabase;
 import liquibase.sql.Sql;
@@ -120,6 +122,211 @@ public class CopyColumnGeneratorTest {
         Assertions.assertThat(sql[0].toSql()).contains("SET mytoname = CAST(myfromname AS " + numericType.toUpperCase() + ")");
     }
 
+    @Test
+    public void test_parallel_dml_on_oracle() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", clobType);
+        change.setParallelDegree(8);
+        Database database = new OracleDatabase();
+        SqlStatement[] sqlStatements = change.generateStatements(database);
+        Sql[] sql = getSql(sqlStatements, database);
+        Assertions.assertThat(sql).extracting(Sql::toSql).containsExactly("BEGIN\n" //
+                + "  EXECUTE IMMEDIATE 'ALTER SESSION ENABLE PARALLEL DML';\n" //
+                + "  UPDATE /*+ PARALLEL(8) */ mytable SET mytoname = TO_CLOB(myfromname);\n" //
+                + "  COMMIT;\n" //
+                + "  EXECUTE IMMEDIATE 'ALTER SESSION DISABLE PARALLEL DML';\n" //
+                + "EXCEPTION\n" //
+                + "  WHEN OTHERS THEN\n" //
+                + "    ROLLBACK;\n" //
+                + "    EXECUTE IMMEDIATE 'ALTER SESSION DISABLE PARALLEL DML';\n" //
+                + "    RAISE;\n" //
+                + "END;");
+    }
+
+    @Test
+    public void test_parallel_execute_on_oracle() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", clobType);
+        change.setParallelDegree(8);
+        change.setChunkSize(10000);
+        Database database = new OracleDatabase();
+        SqlStatement[] sqlStatements = change.generateStatements(database);
+        Assertions.assertThat(sqlStatements[0]).isNotInstanceOf(CopyColumnChunkedStatement.class);
+        Sql[] sql = getSql(sqlStatements, database);
+        Assertions.assertThat(sql).hasSize(1);
+        Assertions.assertThat(sql[0].toSql()) //
+                .contains("DBMS_PARALLEL_EXECUTE.CREATE_CHUNKS_BY_ROWID(l_task, SYS_CONTEXT('USERENV', 'CURRENT_SCHEMA'), 'MYTABLE', TRUE, 10000)") //
+                .contains("'UPDATE mytable SET mytoname = TO_CLOB(myfromname) WHERE ROWID BETWEEN :start_id AND :end_id', DBMS_SQL.NATIVE, parallel_level => 8");
+    }
+
+    @Test
+    public void test_parallel_degree_is_ignored_on_postgres() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", bigintType);
+        change.setParallelDegree(8);
+        Database database = new PostgresDatabase();
+        Assertions.assertThat(change.warn(database).getMessages()).isNotEmpty();
+        SqlStatement[] sqlStatements = change.generateStatements(database);
+        Sql[] sql = getSql(sqlStatements, database);
+        Assertions.assertThat(sql).extracting(Sql::toSql).containsExactly("UPDATE mytable SET mytoname = CAST(myfromname AS BIGINT)");
+    }
+
+    @Test
+    public void test_skip_unchanged_on_postgres() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", bigintType);
+        change.setSkipUnchanged(true);
+        Database database = new PostgresDatabase();
+        Sql[] sql = getSql(change.generateStatements(database), database);
+        Assertions.assertThat(sql[0].toSql()).isEqualTo("UPDATE mytable SET mytoname = CAST(myfromname AS BIGINT) WHERE mytoname IS DISTINCT FROM CAST(myfromname AS BIGINT)");
+    }
+
+    @Test
+    public void test_skip_unchanged_on_oracle() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", blobType, "mytoname", numberType);
+        change.setSkipUnchanged(true);
+        Database database = new OracleDatabase();
+        Sql[] sql = getSql(change.generateStatements(database), database);
+        Assertions.assertThat(sql[0].toSql()).endsWith(" WHERE DECODE(mytoname, UTL_RAW.CAST_TO_NUMBER(myfromname), 0, 1) = 1");
+    }
+
+    @Test
+    public void test_skip_unchanged_lob_on_oracle() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", clobType);
+        change.setSkipUnchanged(true);
+        Database database = new OracleDatabase();
+        Sql[] sql = getSql(change.generateStatements(database), database);
+        Assertions.assertThat(sql[0].toSql()).endsWith(" WHERE NVL(DBMS_LOB.COMPARE(mytoname, TO_CLOB(myfromname)), "
+                + "CASE WHEN mytoname IS NULL AND TO_CLOB(myfromname) IS NULL THEN 0 ELSE 1 END) != 0");
+    }
+
+    @Test
+    public void test_skip_unchanged_lob_with_size_on_oracle() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", "clob(1M)");
+        change.setSkipUnchanged(true);
+        Database database = new OracleDatabase();
+        Sql[] sql = getSql(change.generateStatements(database), database);
+        Assertions.assertThat(sql[0].toSql()).contains(" WHERE NVL(DBMS_LOB.COMPARE(mytoname, ");
+    }
+
+    @Test
+    public void test_skip_unchanged_in_chunk() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", bigintType);
+        change.setSkipUnchanged(true);
+        change.setChunkSize(1000);
+        CopyColumnChunkedStatement statement = (CopyColumnChunkedStatement) change.generateStatements(new PostgresDatabase())[0];
+        Assertions.assertThat(statement.getRangeSql(new RowKey("id", false, null), true, true)) //
+                .endsWith(" WHERE (id > ? AND id <= ?) AND mytoname IS DISTINCT FROM CAST(myfromname AS BIGINT)");
+    }
+
+    @Test
+    public void test_lob_streaming_clob_to_blob_on_oracle() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", clobType, "mytoname", blobType);
+        change.setLobStreaming(true);
+        Database database = new OracleDatabase();
+        Sql[] sql = getSql(change.generateStatements(database), database);
+        Assertions.assertThat(sql).hasSize(1);
+        Assertions.assertThat(sql[0].getEndDelimiter()).isEqualTo("\n/");
+        Assertions.assertThat(sql[0].toSql()) //
+                .contains("  l_lob1 BLOB;\n") //
+                .contains("FOR r IN (SELECT ROWID AS row_id, myfromname AS src1 FROM mytable) LOOP") //
+                .contains("UPDATE mytable SET mytoname = CASE WHEN myfromname IS NULL THEN NULL ELSE EMPTY_BLOB() END WHERE ROWID = r.row_id RETURNING mytoname INTO l_lob1;") //
+                .contains("DBMS_LOB.CONVERTTOBLOB(l_lob1, r.src1, DBMS_LOB.LOBMAXSIZE, l_dest_offset, l_src_offset, DBMS_LOB.DEFAULT_CSID, l_lang_context, l_warning);");
+    }
+
+    @Test
+    public void test_lob_streaming_varchar2_to_blob_on_oracle() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", blobType);
+        change.setLobStreaming(true);
+        Database database = new OracleDatabase();
+        Sql[] sql = getSql(change.generateStatements(database), database);
+        Assertions.assertThat(sql[0].toSql()).contains("SELECT ROWID AS row_id, TO_CLOB(myfromname) AS src1 FROM mytable");
+    }
+
+    @Test
+    public void test_lob_streaming_blob_to_clob_on_oracle() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", blobType, "mytoname", clobType);
+        change.setLobStreaming(true);
+        Database database = new OracleDatabase();
+        Sql[] sql = getSql(change.generateStatements(database), database);
+        Assertions.assertThat(sql[0].toSql()) //
+                .contains("  l_lob1 CLOB;\n") //
+                .contains("EMPTY_CLOB()") //
+                .contains("DBMS_LOB.CONVERTTOCLOB(l_lob1, r.src1");
+    }
+
+    @Test
+    public void test_lob_streaming_without_lob_conversion() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", clobType);
+        change.setLobStreaming(true);
+        Database database = new OracleDatabase();
+        Sql[] sql = getSql(change.generateStatements(database), database);
+        Assertions.assertThat(sql).extracting(Sql::toSql).containsExactly("UPDATE mytable SET mytoname = TO_CLOB(myfromname)");
+    }
+
+    @Test
+    public void test_lob_streaming_can_not_be_chunked() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", clobType, "mytoname", blobType);
+        change.setLobStreaming(true);
+        change.setChunkSize(1000);
+        Assertions.assertThat(change.validate(new OracleDatabase()).getErrorMessages()) //
+                .contains("lobStreaming can not be combined with chunkSize, parallelDegree, skipUnchanged or strategy rewrite");
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).isEmpty();
+    }
+
+    @Test
+    public void test_copy_from_source_table_on_postgres() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", varchar2Type);
+        change.setSourceTableName("mysource");
+        change.setJoinColumns("source_id=id, code");
+        change.setSkipUnchanged(true);
+        Database database = new PostgresDatabase();
+        Assertions.assertThat(getSql(change.generateStatements(database), database)).extracting(Sql::toSql).containsExactly( //
+                "UPDATE mytable t SET mytoname = s.myfromname FROM mysource s WHERE t.source_id = s.id AND t.code = s.code AND t.mytoname IS DISTINCT FROM s.myfromname");
+    }
+
+    @Test
+    public void test_copy_from_source_table_on_oracle() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", clobType);
+        change.setSourceTableName("mysource");
+        change.setJoinColumns("id");
+        Database database = new OracleDatabase();
+        Assertions.assertThat(getSql(change.generateStatements(database), database)).extracting(Sql::toSql).containsExactly( //
+                "MERGE INTO mytable t USING mysource s ON (t.id = s.id) WHEN MATCHED THEN UPDATE SET mytoname = TO_CLOB(s.myfromname)");
+    }
+
+    @Test
+    public void test_copy_from_source_table_on_mssql() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", varchar2Type);
+        change.setSourceTableName("mysource");
+        change.setJoinColumns("id");
+        Database database = new MSSQLDatabase();
+        Assertions.assertThat(getSql(change.generateStatements(database), database)[0].toSql()) //
+                .startsWith("MERGE INTO ") //
+                .contains(" WHEN MATCHED THEN UPDATE SET mytoname = s.myfromname") //
+                .endsWith(";");
+    }
+
+    @Test
+    public void test_copy_from_source_table_on_mysql() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", varchar2Type);
+        change.setSourceTableName("mysource");
+        change.setJoinColumns("id");
+        Database database = new MySQLDatabase();
+        Assertions.assertThat(getSql(change.generateStatements(database), database)).extracting(Sql::toSql).containsExactly( //
+                "UPDATE mytable t JOIN mysource s ON t.id = s.id SET t.mytoname = s.myfromname");
+    }
+
+    @Test
+    public void test_source_table_validation() {
+        CopyColumnChange change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", clobType);
+        change.setSourceTableName("mysource");
+        change.setStrategy(AbstractCopyColumnChange.STRATEGY_REWRITE);
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).contains( //
+                "sourceTableName requires joinColumns", //
+                "sourceTableName can not be combined with strategy rewrite, lobStreaming, parallelDegree or online");
+
+        change = newCopyColumnChange("mytable", "myfromname", varchar2Type, "mytoname", clobType);
+        change.setJoinColumns("id");
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).contains("joinColumns requires sourceTableName");
+    }
+
     private Sql[] getSql(SqlStatement[] statements, Database database) {
         CopyColumnGenerator generator = new CopyColumnGenerator();
         return generator.generateSql((CopyColumnStatement)statements[0], database, null);
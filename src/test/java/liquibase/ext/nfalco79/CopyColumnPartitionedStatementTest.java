@@ -0,0 +1,168 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.Database;
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.statement.SqlStatement;
+
+public class CopyColumnPartitionedStatementTest {
+
+    @Test
+    public void partition_sql() {
+        Assertions.assertThat(newStatement(new OracleDatabase()).getPartitionSql(new TablePartition("P2020", null, "mytable", null))) //
+                .isEqualTo("UPDATE mytable PARTITION (P2020) SET mytoname = CAST(myfromname AS BIGINT)");
+        Assertions.assertThat(newStatement(new PostgresDatabase()).getPartitionSql(new TablePartition("mytable_2020", "archive", "mytable_2020", null))) //
+                .isEqualTo("UPDATE archive.mytable_2020 SET mytoname = CAST(myfromname AS BIGINT)");
+        Assertions.assertThat(newStatement(new DB2Database()).getPartitionSql(new TablePartition("PART0", null, "mytable", "SALEDATE >= '2020-01-01'"))) //
+                .isEqualTo("UPDATE mytable SET mytoname = CAST(myfromname AS BIGINT) WHERE SALEDATE >= '2020-01-01'");
+        Assertions.assertThat(newStatement(new OracleDatabase()).getPartitionSql(null)) //
+                .isEqualTo("UPDATE mytable SET mytoname = CAST(myfromname AS BIGINT)");
+    }
+
+    @Test
+    public void db2_partitions_are_ranges_of_key() throws Exception {
+        ResultSet keys = mock(ResultSet.class);
+        when(keys.next()).thenReturn(true, false);
+        when(keys.getString(1)).thenReturn("SALEDATE");
+        PreparedStatement keysStmt = mock(PreparedStatement.class);
+        when(keysStmt.executeQuery()).thenReturn(keys);
+
+        ResultSet parts = mock(ResultSet.class);
+        when(parts.next()).thenReturn(true, true, false);
+        when(parts.getString(1)).thenReturn("PART0", "PART1");
+        when(parts.getString(2)).thenReturn("0", "1");
+        when(parts.getString(3)).thenReturn("Y", "Y");
+        when(parts.getString(4)).thenReturn("MINVALUE", "'2020-01-01'");
+        when(parts.getString(5)).thenReturn("N", "Y");
+        when(parts.getString(6)).thenReturn("'2020-01-01'", "MAXVALUE");
+        PreparedStatement partsStmt = mock(PreparedStatement.class);
+        when(partsStmt.executeQuery()).thenReturn(parts);
+
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> ((String) invocation.getArgument(0)).contains("DATAPARTITIONEXPRESSION ") ? keysStmt : partsStmt);
+
+        List<TablePartition> partitions = TablePartition.list(connection, new DB2Database(), "SALES", "MYTABLE");
+        Assertions.assertThat(partitions).extracting(TablePartition::getPredicate).containsExactly("SALEDATE < '2020-01-01'", "SALEDATE >= '2020-01-01'");
+        verify(partsStmt).setString(1, "SALES");
+        verify(partsStmt).setString(2, "MYTABLE");
+        // the first column of a multi column key identifies the partition
+        verify(connection).prepareStatement(endsWith("WHERE TABSCHEMA = ? AND TABNAME = ? ORDER BY DATAPARTITIONKEYSEQ"));
+    }
+
+    @Test
+    public void postgres_partitions_are_ordered_by_bound() throws Exception {
+        ResultSet parts = mock(ResultSet.class);
+        when(parts.next()).thenReturn(true, true, false);
+        when(parts.getString(1)).thenReturn("archive", "archive");
+        when(parts.getString(2)).thenReturn("mytable_2019", "mytable_2020");
+        PreparedStatement partsStmt = mock(PreparedStatement.class);
+        when(partsStmt.executeQuery()).thenReturn(parts);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(partsStmt);
+
+        List<TablePartition> partitions = TablePartition.list(connection, new PostgresDatabase(), "sales", "mytable");
+        Assertions.assertThat(partitions).extracting(TablePartition::getTableName).containsExactly("mytable_2019", "mytable_2020");
+        verify(connection).prepareStatement(contains("NULLIF(pg_get_expr(c.relpartbound, c.oid), 'DEFAULT')"));
+        verify(connection).prepareStatement(endsWith(" ORDER BY tree.bounds, c.relname"));
+        verify(partsStmt).setString(1, "sales.mytable");
+    }
+
+    @Test
+    public void copy_commits_each_partition() throws Exception {
+        Statement stmt = mock(Statement.class);
+        when(stmt.executeUpdate(anyString())).thenReturn(10, 5);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(stmt);
+
+        long rows = newStatement(new OracleDatabase()).copy(connection, Arrays.asList(new TablePartition("P1", null, "mytable", null), new TablePartition("P2", null, "mytable", null)));
+
+        Assertions.assertThat(rows).isEqualTo(15);
+        verify(stmt).executeUpdate("UPDATE mytable PARTITION (P1) SET mytoname = CAST(myfromname AS BIGINT)");
+        verify(stmt).executeUpdate("UPDATE mytable PARTITION (P2) SET mytoname = CAST(myfromname AS BIGINT)");
+        verify(connection, times(2)).commit();
+    }
+
+    @Test
+    public void copy_whole_table_when_not_partitioned() throws Exception {
+        Statement stmt = mock(Statement.class);
+        when(stmt.executeUpdate(anyString())).thenReturn(7);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(stmt);
+
+        Assertions.assertThat(newStatement(new PostgresDatabase()).copy(connection, Collections.emptyList())).isEqualTo(7);
+        verify(stmt).executeUpdate("UPDATE mytable SET mytoname = CAST(myfromname AS BIGINT)");
+        verify(connection).commit();
+    }
+
+    @Test
+    public void by_partition_statement() {
+        CopyColumnChange change = newCopyColumnChange();
+        change.setParallelism(4);
+        Assertions.assertThat(change.validate(new OracleDatabase()).getErrorMessages()).isEmpty();
+        SqlStatement[] statements = change.generateStatements(new OracleDatabase());
+        Assertions.assertThat(statements[0]).isInstanceOfSatisfying(CopyColumnPartitionedStatement.class, statement -> {
+            Assertions.assertThat(statement.getParallelism()).isEqualTo(4);
+            Assertions.assertThat(statement.getChunkSize()).isNull();
+        });
+    }
+
+    @Test
+    public void by_partition_validation() {
+        CopyColumnChange change = newCopyColumnChange();
+        change.setChunkSize(1000);
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()) //
+                .contains("byPartition can not be combined with chunkSize, strategy rewrite, lobStreaming, parallelDegree, sourceTableName or transformer");
+        Assertions.assertThat(change.validate(new MySQLDatabase()).getErrorMessages()).contains("byPartition is not supported on mysql");
+    }
+
+    private CopyColumnPartitionedStatement newStatement(Database database) {
+        return new CopyColumnPartitionedStatement(database, null, null, "mytable", "myfromname", "VARCHAR", "mytoname", "BIGINT");
+    }
+
+    private CopyColumnChange newCopyColumnChange() {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("BIGINT");
+        change.setByPartition(true);
+        return change;
+    }
+}
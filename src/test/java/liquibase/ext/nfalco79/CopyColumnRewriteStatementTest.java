@@ -0,0 +1,235 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.ValidationErrors;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+import liquibase.structure.core.Column;
+import liquibase.structure.core.DataType;
+import liquibase.structure.core.Index;
+import liquibase.structure.core.PrimaryKey;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
+
+public class CopyColumnRewriteStatementTest {
+
+    @Test
+    public void rewrite_strategy_generates_rewrite_statement() {
+        CopyColumnChange change = newCopyColumnChange();
+        SqlStatement[] statements = change.generateStatements(new PostgresDatabase());
+        Assertions.assertThat(statements).hasSize(1);
+        Assertions.assertThat(statements[0]).isInstanceOf(CopyColumnRewriteStatement.class);
+    }
+
+    @Test
+    public void rewrite_strategy_can_not_be_chunked() {
+        CopyColumnChange change = newCopyColumnChange();
+        change.setChunkSize(1000);
+        ValidationErrors errors = change.validate(new PostgresDatabase());
+        Assertions.assertThat(errors.getErrorMessages()).contains("strategy rewrite can not be combined with chunkSize, parallelism, resumable or parallelDegree");
+    }
+
+    @Test
+    public void unknown_strategy() {
+        CopyColumnChange change = newCopyColumnChange();
+        change.setStrategy("merge");
+        ValidationErrors errors = change.validate(new PostgresDatabase());
+        Assertions.assertThat(errors.getErrorMessages()).contains("strategy must be one of update, rewrite");
+    }
+
+    @Test
+    public void rewrite_on_postgres() throws Exception {
+        List<String> sqls = toSql(new PostgresDatabase(), newTable());
+
+        Assertions.assertThat(sqls).containsExactly( //
+                "CREATE TABLE mytable_rw (id INTEGER NOT NULL, myfromname VARCHAR(10), mytoname BIGINT)", //
+                "INSERT INTO mytable_rw (id, myfromname, mytoname) SELECT id, myfromname, CAST(myfromname AS BIGINT) FROM mytable", //
+                "ALTER TABLE mytable RENAME TO mytable_old", //
+                "ALTER TABLE mytable_rw RENAME TO mytable", //
+                "ALTER TABLE mytable_old DROP CONSTRAINT mytable_pkey", //
+                "DROP INDEX mytable_idx", //
+                "ALTER TABLE mytable ADD CONSTRAINT mytable_pkey PRIMARY KEY (id)", //
+                "CREATE INDEX mytable_idx ON mytable(myfromname)", //
+                "DROP TABLE mytable_old");
+    }
+
+    @Test
+    public void rewrite_on_mysql_swaps_tables_in_one_statement() throws Exception {
+        List<String> sqls = toSql(new MySQLDatabase(), newTable());
+
+        Assertions.assertThat(sqls.get(2)).isEqualTo("RENAME TABLE mytable TO mytable_old, mytable_rw TO mytable");
+        Assertions.assertThat(sqls).last().isEqualTo("DROP TABLE mytable_old");
+    }
+
+    @Test
+    public void rewrite_on_oracle() throws Exception {
+        List<String> sqls = toSql(new OracleDatabase(), newTable());
+
+        Assertions.assertThat(sqls.get(0)).startsWith("CREATE TABLE mytable_rw (").endsWith(" NOLOGGING");
+        Assertions.assertThat(sqls.get(1)).startsWith("INSERT /*+ APPEND */ INTO mytable_rw (");
+        Assertions.assertThat(sqls.get(2)).isEqualTo("ALTER TABLE mytable_rw LOGGING");
+        Assertions.assertThat(sqls.subList(3, 5)).containsExactly("ALTER TABLE mytable RENAME TO mytable_old", "ALTER TABLE mytable_rw RENAME TO mytable");
+        Assertions.assertThat(sqls).last().isEqualTo("DROP TABLE mytable_old");
+    }
+
+    @Test
+    public void partitioned_tables_are_refused() throws Exception {
+        ResultSet partitioned = mock(ResultSet.class);
+        when(partitioned.next()).thenReturn(true);
+        Connection connection = mockConnection(mock(ResultSet.class), mock(ResultSet.class));
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        when(stmt.executeQuery()).thenReturn(partitioned);
+        when(connection.prepareStatement(startsWith("SELECT 1 FROM pg_class"))).thenReturn(stmt);
+
+        Assertions.assertThatThrownBy(() -> newStatement(new PostgresDatabase()).checkReferences(connection, newTable())) //
+                .isInstanceOf(DatabaseException.class) //
+                .hasMessage("Table mytable can not be rewritten because it is partitioned");
+        verify(connection).prepareStatement(contains("c.relkind = 'p'"));
+    }
+
+    @Test
+    public void comments_are_created_again() throws Exception {
+        Table table = newTable();
+        table.setRemarks("my table");
+        table.getColumn("mytoname").setRemarks("the copy");
+
+        Assertions.assertThat(toSql(new PostgresDatabase(), table)).endsWith( //
+                "COMMENT ON TABLE mytable IS 'my table'", //
+                "COMMENT ON COLUMN mytable.mytoname IS 'the copy'", //
+                "DROP TABLE mytable_old");
+    }
+
+    @Test
+    public void grants_to_other_users_are_refused() throws Exception {
+        ResultSet privileges = mock(ResultSet.class);
+        when(privileges.next()).thenReturn(true, true, false);
+        when(privileges.getString("GRANTEE")).thenReturn("owner", "reporting");
+        when(privileges.getString("GRANTOR")).thenReturn("owner", "owner");
+        when(privileges.getString("PRIVILEGE")).thenReturn("SELECT");
+        Connection connection = mockConnection(privileges, mock(ResultSet.class));
+
+        Assertions.assertThatThrownBy(() -> newStatement(new PostgresDatabase()).checkReferences(connection, newTable())) //
+                .isInstanceOf(DatabaseException.class) //
+                .hasMessage("Table mytable can not be rewritten because it grants SELECT to reporting");
+    }
+
+    @Test
+    public void triggers_and_check_constraints_are_refused() throws Exception {
+        ResultSet dependents = mock(ResultSet.class);
+        when(dependents.next()).thenReturn(true);
+        when(dependents.getString(1)).thenReturn("trigger MYTABLE_AUDIT");
+        Connection connection = mockConnection(mock(ResultSet.class), dependents);
+
+        Table table = newTable();
+        table.setSchema(new Schema((String) null, "APP"));
+        Assertions.assertThatThrownBy(() -> newStatement(new OracleDatabase()).checkReferences(connection, table)) //
+                .isInstanceOf(DatabaseException.class) //
+                .hasMessage("Table mytable can not be rewritten because it has trigger MYTABLE_AUDIT");
+        verify(connection).prepareStatement(startsWith("SELECT 'trigger ' || TRIGGER_NAME FROM ALL_TRIGGERS WHERE TABLE_OWNER = ? AND TABLE_NAME = ?"));
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void auto_increment_columns_are_refused() throws Exception {
+        Table table = newTable();
+        table.getColumns().get(0).setAutoIncrementInformation(new Column.AutoIncrementInformation());
+        toSql(new PostgresDatabase(), table);
+    }
+
+    @Test
+    public void rewrite_table_name_fits_identifier_length() {
+        CopyColumnRewriteStatement statement = new CopyColumnRewriteStatement(new OracleDatabase(), null, null, "a_very_long_table_name_of_30_ch", "myfromname", "VARCHAR", "mytoname", "BIGINT");
+        Assertions.assertThat(statement.getRewriteTableName()).isEqualTo("a_very_long_table_name_of_3_rw").hasSize(30);
+    }
+
+    private Connection mockConnection(ResultSet privileges, ResultSet dependents) throws SQLException {
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(metaData.getUserName()).thenReturn("owner");
+        ResultSet exported = mock(ResultSet.class);
+        when(metaData.getExportedKeys(any(), any(), anyString())).thenReturn(exported);
+        when(metaData.getTablePrivileges(any(), any(), anyString())).thenReturn(privileges);
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        when(stmt.executeQuery()).thenReturn(dependents);
+        Connection connection = mock(Connection.class);
+        when(connection.getMetaData()).thenReturn(metaData);
+        when(connection.prepareStatement(anyString())).thenReturn(stmt);
+        return connection;
+    }
+
+    private CopyColumnRewriteStatement newStatement(Database database) {
+        return new CopyColumnRewriteStatement(database, null, null, "mytable", "myfromname", "VARCHAR", "mytoname", "BIGINT");
+    }
+
+    private List<String> toSql(Database database, Table table) throws DatabaseException {
+        return newStatement(database).getRewriteStatements(table).stream() //
+                .flatMap(stmt -> Arrays.stream(SqlGeneratorFactory.getInstance().generateSql(stmt, database))) //
+                .map(Sql::toSql) //
+                .collect(Collectors.toList());
+    }
+
+    private Table newTable() {
+        Table table = new Table(null, null, "mytable");
+        Column id = new Column("id").setType(new DataType("INTEGER")).setNullable(false).setOrder(1);
+        Column from = new Column("myfromname").setType(new DataType("VARCHAR(10)")).setNullable(true).setOrder(2);
+        Column to = new Column("mytoname").setType(new DataType("BIGINT")).setNullable(true).setOrder(3);
+        table.getColumns().addAll(Arrays.asList(to, id, from));
+
+        Index pkIndex = new Index("mytable_pkey", null, null, "mytable", id).setUnique(true);
+        pkIndex.getAssociatedWith().add(Index.MARK_PRIMARY_KEY);
+        PrimaryKey primaryKey = new PrimaryKey("mytable_pkey", null, null, "mytable", id).setBackingIndex(pkIndex);
+        table.setPrimaryKey(primaryKey);
+        table.getIndexes().add(pkIndex);
+        table.getIndexes().add(new Index("mytable_idx", null, null, "mytable", from));
+        return table;
+    }
+
+    private CopyColumnChange newCopyColumnChange() {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("BIGINT");
+        change.setStrategy(CopyColumnChange.STRATEGY_REWRITE);
+        return change;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+
+public class CopyColumnTransformStatementTest {
+
+    public static class UpperCaseTransformer implements CopyColumnTransformer {
+        @Override
+        public Object transform(CopyColumnConfig column, Object value) {
+            if ("fail".equals(value)) {
+                throw new IllegalArgumentException("unparsable value");
+            }
+            return value != null ? value.toString().toUpperCase(Locale.ROOT) : null;
+        }
+    }
+
+    @Test
+    public void pipeline_sql() {
+        CopyColumnTransformStatement statement = newStatement(2);
+        statement.addColumn(new CopyColumnConfig("otherfrom", "VARCHAR", "otherto", "CLOB"));
+        RowKey key = new RowKey("id", false, null);
+        Assertions.assertThat(statement.getSelectSql(key)).isEqualTo("SELECT id, myfromname, otherfrom FROM mytable");
+        Assertions.assertThat(statement.getUpdateSql(key)).isEqualTo("UPDATE mytable SET mytoname = ?, otherto = ? WHERE id = ?");
+    }
+
+    @Test
+    public void copy_transforms_rows_in_batches() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true, true, true, false);
+        when(rs.getObject(1)).thenReturn(1L, 2L, 3L);
+        when(rs.getObject(2)).thenReturn("a", null, "c");
+        PreparedStatement select = mock(PreparedStatement.class);
+        when(select.executeQuery()).thenReturn(rs);
+        Connection reader = mock(Connection.class);
+        when(reader.prepareStatement("SELECT id, myfromname FROM mytable")).thenReturn(select);
+
+        PreparedStatement update = mock(PreparedStatement.class);
+        Connection writer = mock(Connection.class);
+        when(writer.prepareStatement("UPDATE mytable SET mytoname = ? WHERE id = ?")).thenReturn(update);
+
+        CopyColumnTransformStatement statement = newStatement(2, writer).setFetchSize(500);
+        long rows = statement.copy(reader, new RowKey("id", false, null));
+
+        Assertions.assertThat(rows).isEqualTo(3);
+        verify(select).setFetchSize(500);
+        verify(update).setObject(1, "A");
+        verify(update).setNull(1, Types.NULL);
+        verify(update).setObject(1, "C");
+        verify(update, times(3)).addBatch();
+        verify(update, times(2)).executeBatch();
+        verify(writer, times(2)).commit();
+        verify(writer).close();
+        verify(reader).commit();
+    }
+
+    @Test
+    public void copy_updates_rows_by_the_whole_composite_key() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true, true, false);
+        when(rs.getObject(1)).thenReturn(7, 7);
+        when(rs.getObject(2)).thenReturn(1L, 2L);
+        when(rs.getObject(3)).thenReturn("a", "b");
+        PreparedStatement select = mock(PreparedStatement.class);
+        when(select.executeQuery()).thenReturn(rs);
+        Connection reader = mock(Connection.class);
+        when(reader.prepareStatement("SELECT tenant, id, myfromname FROM mytable")).thenReturn(select);
+
+        PreparedStatement update = mock(PreparedStatement.class);
+        Connection writer = mock(Connection.class);
+        when(writer.prepareStatement("UPDATE mytable SET mytoname = ? WHERE tenant = ? AND id = ?")).thenReturn(update);
+
+        RowKey key = new RowKey(Arrays.asList("tenant", "id"), Arrays.asList(Types.INTEGER, Types.BIGINT), true);
+        long rows = newStatement(10, writer).copy(reader, key);
+
+        Assertions.assertThat(rows).isEqualTo(2);
+        // rows of the same tenant are updated each one by its own key
+        InOrder order = inOrder(reader, writer, update);
+        order.verify(reader).commit();
+        order.verify(writer).prepareStatement(anyString());
+        order.verify(update).setObject(1, "A");
+        order.verify(update).setObject(2, 7);
+        order.verify(update).setObject(3, 1L);
+        order.verify(update).addBatch();
+        order.verify(update).setObject(1, "B");
+        order.verify(update).setObject(2, 7);
+        order.verify(update).setObject(3, 2L);
+        order.verify(update).addBatch();
+        order.verify(update).executeBatch();
+        order.verify(writer).commit();
+    }
+
+    public static class IdentityTransformer implements CopyColumnTransformer {
+        @Override
+        public Object transform(CopyColumnConfig column, Object value) {
+            return value;
+        }
+    }
+
+    @Test
+    public void source_lobs_are_read_by_the_reader() throws Exception {
+        Blob blob = mock(Blob.class);
+        when(blob.length()).thenReturn(3L);
+        when(blob.getBytes(1, 3)).thenReturn(new byte[] { 1, 2, 3 });
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getObject(1)).thenReturn(1L);
+        when(rs.getObject(2)).thenReturn(blob);
+        PreparedStatement select = mock(PreparedStatement.class);
+        when(select.executeQuery()).thenReturn(rs);
+        Connection reader = mock(Connection.class);
+        when(reader.prepareStatement("SELECT id, myfromname FROM mytable")).thenReturn(select);
+
+        PreparedStatement update = mock(PreparedStatement.class);
+        Connection writer = mock(Connection.class);
+        when(writer.prepareStatement("UPDATE mytable SET mytoname = ? WHERE id = ?")).thenReturn(update);
+        when(writer.createBlob()).thenThrow(new SQLFeatureNotSupportedException());
+
+        CopyColumnTransformStatement statement = new CopyColumnTransformStatement(new PostgresDatabase(), null, null, "mytable", "myfromname", "BLOB", "mytoname", "BLOB", 10, IdentityTransformer.class.getName()) {
+            @Override
+            protected Connection openConnection() {
+                return writer;
+            }
+        };
+        Assertions.assertThat(statement.copy(reader, new RowKey("id", false, null))).isEqualTo(1);
+
+        // the locator is read and freed before the row leaves the reader
+        verify(blob).free();
+        verify(blob, never()).getBinaryStream();
+        verify(update).setBinaryStream(eq(1), any(InputStream.class), eq(3L));
+    }
+
+    @Test
+    public void copy_fails_when_transformer_fails() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getObject(1)).thenReturn(1L);
+        when(rs.getObject(2)).thenReturn("fail");
+        PreparedStatement select = mock(PreparedStatement.class);
+        when(select.executeQuery()).thenReturn(rs);
+        Connection reader = mock(Connection.class);
+        when(reader.prepareStatement("SELECT id, myfromname FROM mytable")).thenReturn(select);
+        PreparedStatement update = mock(PreparedStatement.class);
+        Connection writer = mock(Connection.class);
+        when(writer.prepareStatement("UPDATE mytable SET mytoname = ? WHERE id = ?")).thenReturn(update);
+
+        CopyColumnTransformStatement statement = newStatement(10, writer);
+        Assertions.assertThatThrownBy(() -> statement.copy(reader, new RowKey("id", false, null))) //
+                .isInstanceOf(DatabaseException.class) //
+                .hasMessageContaining("unparsable value");
+        verify(update, never()).executeBatch();
+        verify(writer).rollback();
+        verify(writer).close();
+    }
+
+    @Test
+    public void transformer_validation() {
+        CopyColumnChange change = newCopyColumnChange();
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).isEmpty();
+
+        change.setChunkSize(null);
+        change.setSkipUnchanged(true);
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).contains( //
+                "transformer requires chunkSize", //
+                "transformer can not be combined with strategy rewrite, lobStreaming, parallelDegree, online, sourceTableName, resumable or skipUnchanged");
+
+        change = newCopyColumnChange();
+        change.setTransformer("com.acme.Missing");
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).contains("transformer com.acme.Missing not found");
+
+        change.setTransformer(String.class.getName());
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()) //
+                .contains("transformer java.lang.String does not implement liquibase.ext.nfalco79.CopyColumnTransformer");
+    }
+
+    @Test
+    public void generate_pipeline_statement() {
+        CopyColumnChange change = newCopyColumnChange();
+        change.setParallelism(3);
+        SqlStatement[] statements = change.generateStatements(new PostgresDatabase());
+        Assertions.assertThat(statements).hasSize(1);
+        Assertions.assertThat(statements[0]).isInstanceOfSatisfying(CopyColumnTransformStatement.class, statement -> {
+            Assertions.assertThat(statement.getParallelism()).isEqualTo(3);
+            Assertions.assertThat(statement.getFetchSize()).isEqualTo(10000);
+        });
+        Sql[] sql = SqlGeneratorFactory.getInstance().generateSql(statements[0], new PostgresDatabase());
+        Assertions.assertThat(sql[0].toSql()).isEqualTo("-- Copy [myfromname(BLOB) to mytoname(CLOB)] of mytable transformed by " + UpperCaseTransformer.class.getName());
+    }
+
+    private CopyColumnTransformStatement newStatement(int chunkSize) {
+        return newStatement(chunkSize, null);
+    }
+
+    private CopyColumnTransformStatement newStatement(int chunkSize, Connection writer) {
+        return new CopyColumnTransformStatement(new PostgresDatabase(), null, null, "mytable", "myfromname", "VARCHAR", "mytoname", "VARCHAR", chunkSize, UpperCaseTransformer.class.getName()) {
+            @Override
+            protected Connection openConnection() {
+                return writer;
+            }
+        };
+    }
+
+    private CopyColumnChange newCopyColumnChange() {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("BLOB");
+        change.setToName("mytoname");
+        change.setToType("CLOB");
+        change.setChunkSize(1000);
+        change.setTransformer(UpperCaseTransformer.class.getName());
+        return change;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.database.Database;
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.H2Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+
+public class CopyColumnTriggerGeneratorTest {
+
+    private static final List<CopyColumnConfig> COLUMNS = Collections.singletonList(new CopyColumnConfig("myfromname", "VARCHAR", "mytoname", "BIGINT"));
+
+    @Test
+    public void create_trigger_on_postgres() {
+        Assertions.assertThat(generate(new CopyColumnTriggerStatement(null, null, "mytable", COLUMNS, false), new PostgresDatabase())).containsExactly( //
+                "CREATE OR REPLACE FUNCTION mytable_cpy_fn() RETURNS trigger AS $$ BEGIN NEW.mytoname := CAST(NEW.myfromname AS BIGINT); RETURN NEW; END $$ LANGUAGE plpgsql", //
+                "DROP TRIGGER IF EXISTS mytable_cpy ON mytable", //
+                "CREATE TRIGGER mytable_cpy BEFORE INSERT OR UPDATE OF myfromname ON mytable FOR EACH ROW EXECUTE PROCEDURE mytable_cpy_fn()");
+    }
+
+    @Test
+    public void drop_trigger_on_postgres() {
+        Assertions.assertThat(generate(new CopyColumnTriggerStatement(null, null, "mytable", COLUMNS, true), new PostgresDatabase())).containsExactly( //
+                "DROP TRIGGER IF EXISTS mytable_cpy ON mytable", //
+                "DROP FUNCTION IF EXISTS mytable_cpy_fn()");
+    }
+
+    @Test
+    public void create_trigger_on_oracle() {
+        List<CopyColumnConfig> columns = Arrays.asList(new CopyColumnConfig("NOTETMP", "VARCHAR2", "NOTE", "CLOB"), new CopyColumnConfig("CODETMP", "VARCHAR2", "CODE", "NUMBER"));
+        Assertions.assertThat(generate(new CopyColumnTriggerStatement(null, null, "MYTABLE", columns, false), new OracleDatabase())).containsExactly( //
+                "CREATE OR REPLACE TRIGGER MYTABLE_CPY BEFORE INSERT OR UPDATE OF NOTETMP, CODETMP ON MYTABLE FOR EACH ROW BEGIN "
+                        + ":NEW.NOTE := TO_CLOB(:NEW.NOTETMP); :NEW.CODE := :NEW.CODETMP; END;");
+        Assertions.assertThat(generate(new CopyColumnTriggerStatement(null, null, "MYTABLE", columns, true), new OracleDatabase())).containsExactly("DROP TRIGGER MYTABLE_CPY");
+    }
+
+    @Test
+    public void create_trigger_per_event_on_db2_and_mysql() {
+        Assertions.assertThat(generate(new CopyColumnTriggerStatement(null, null, "MYTABLE", COLUMNS, false), new DB2Database())).containsExactly( //
+                "CREATE OR REPLACE TRIGGER MYTABLE_CPYI NO CASCADE BEFORE INSERT ON MYTABLE REFERENCING NEW AS N FOR EACH ROW SET N.mytoname = CAST(N.myfromname AS BIGINT)", //
+                "CREATE OR REPLACE TRIGGER MYTABLE_CPYU NO CASCADE BEFORE UPDATE OF myfromname ON MYTABLE REFERENCING NEW AS N FOR EACH ROW SET N.mytoname = CAST(N.myfromname AS BIGINT)");
+        Assertions.assertThat(generate(new CopyColumnTriggerStatement(null, null, "mytable", COLUMNS, false), new MySQLDatabase())).containsExactly( //
+                "DROP TRIGGER IF EXISTS mytable_cpyi", //
+                "DROP TRIGGER IF EXISTS mytable_cpyu", //
+                "CREATE TRIGGER mytable_cpyi BEFORE INSERT ON mytable FOR EACH ROW SET NEW.mytoname = CAST(NEW.myfromname AS BIGINT)", //
+                "CREATE TRIGGER mytable_cpyu BEFORE UPDATE ON mytable FOR EACH ROW SET NEW.mytoname = CAST(NEW.myfromname AS BIGINT)");
+    }
+
+    @Test
+    public void trigger_name_fits_identifier_length() {
+        CopyColumnTriggerStatement statement = new CopyColumnTriggerStatement(null, null, "A_VERY_LONG_TABLE_NAME_OF_30_C", COLUMNS, false);
+        Assertions.assertThat(statement.getTriggerName()).isEqualTo("A_VERY_LONG_TABLE_NAME_O_CPY");
+    }
+
+    @Test
+    public void online_copy_wraps_backfill_between_trigger_creation_and_drop() {
+        CopyColumnChange change = newOnlineChange();
+
+        SqlStatement[] statements = change.generateStatements(new PostgresDatabase());
+
+        Assertions.assertThat(statements).hasSize(3);
+        Assertions.assertThat(((CopyColumnTriggerStatement) statements[0]).isDrop()).isFalse();
+        Assertions.assertThat(statements[1]).isInstanceOf(CopyColumnChunkedStatement.class);
+        Assertions.assertThat(((CopyColumnTriggerStatement) statements[2]).isDrop()).isTrue();
+        Assertions.assertThat(((CopyColumnChunkedStatement) statements[1]).getDropTrigger()).isSameAs(statements[2]);
+    }
+
+    @Test
+    public void failed_online_copy_drops_the_trigger() throws Exception {
+        Statement stmt = mock(Statement.class);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(stmt);
+        CopyColumnChunkedStatement copy = new CopyColumnChunkedStatement(new PostgresDatabase(), null, null, "mytable", "myfromname", "VARCHAR", "mytoname", "BIGINT", 1000) //
+                .setDropTrigger(new CopyColumnTriggerStatement(null, null, "mytable", COLUMNS, true));
+
+        copy.dropTrigger(connection, new DatabaseException("copy failed"));
+
+        InOrder order = inOrder(connection, stmt);
+        order.verify(connection).rollback();
+        order.verify(stmt).execute("DROP TRIGGER IF EXISTS mytable_cpy ON mytable");
+        order.verify(stmt).execute("DROP FUNCTION IF EXISTS mytable_cpy_fn()");
+        order.verify(connection).commit();
+    }
+
+    @Test
+    public void resumable_online_copy_keeps_the_trigger() {
+        CopyColumnChange change = newOnlineChange();
+        change.setResumable(true);
+        change.setChangeSet(new ChangeSet("1", "nfalco79", false, false, "changelog.xml", null, null, null));
+
+        SqlStatement[] statements = change.generateStatements(new PostgresDatabase());
+
+        Assertions.assertThat(((CopyColumnChunkedStatement) statements[1]).getDropTrigger()).isNull();
+    }
+
+    @Test
+    public void online_copy_validation() {
+        CopyColumnChange change = newOnlineChange();
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).isEmpty();
+        Assertions.assertThat(change.validate(new H2Database()).getErrorMessages()).contains("online is not supported on h2");
+
+        change.setChunkSize(null);
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).contains("online requires chunkSize");
+
+        change.setStrategy(AbstractCopyColumnChange.STRATEGY_REWRITE);
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).contains("online can not be combined with strategy rewrite or lobStreaming");
+    }
+
+    private CopyColumnChange newOnlineChange() {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("BIGINT");
+        change.setChunkSize(1000);
+        change.setOnline(true);
+        return change;
+    }
+
+    private String[] generate(SqlStatement statement, Database database) {
+        return Arrays.stream(SqlGeneratorFactory.getInstance().generateSql(statement, database)).map(Sql::toSql).toArray(String[]::new);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.core.H2Database;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.core.SQLiteDatabase;
+import liquibase.statement.SqlStatement;
+
+public class CopyColumnVerifyStatementTest {
+
+    @Test
+    public void aggregate_sql_on_postgres() {
+        CopyColumnVerifyStatement statement = new CopyColumnVerifyStatement(new PostgresDatabase(), null, null, "mytable", "myfromname", "VARCHAR", "mytoname", "TEXT", 10);
+        Assertions.assertThat(statement.getAggregateSql(new RowKey("id", false, null), true, true)).isEqualTo("SELECT COUNT(*)" //
+                + ", COUNT(myfromname), SUM(('x' || substr(md5(CAST(CAST(myfromname AS TEXT) AS TEXT)), 1, 8))::bit(32)::int)" //
+                + ", COUNT(mytoname), SUM(('x' || substr(md5(CAST(CAST(mytoname AS TEXT) AS TEXT)), 1, 8))::bit(32)::int)" //
+                + " FROM mytable WHERE id > ? AND id <= ?");
+        Assertions.assertThat(statement.getDifferingSql(new RowKey("id", false, null), false, false)) //
+                .isEqualTo("SELECT COUNT(*) FROM mytable WHERE mytoname IS DISTINCT FROM myfromname");
+    }
+
+    @Test
+    public void hash_of_converted_source_on_postgres() {
+        CopyColumnVerifyStatement statement = new CopyColumnVerifyStatement(new PostgresDatabase(), null, null, "mytable", "myfromname", "VARCHAR", "mytoname", "NUMERIC(10,2)", 10);
+        // the converted source is 1.5 as text while the stored value is 1.50
+        Assertions.assertThat(statement.getAggregateSql(new RowKey("id", false, null), false, false)) //
+                .contains("md5(CAST(CAST(CAST(myfromname AS DOUBLE PRECISION) AS numeric(10, 2)) AS TEXT))") //
+                .contains("md5(CAST(CAST(mytoname AS numeric(10, 2)) AS TEXT))");
+    }
+
+    @Test
+    public void hash_of_lob_on_oracle() {
+        CopyColumnVerifyStatement statement = new CopyColumnVerifyStatement(new OracleDatabase(), null, null, "mytable", "myfromname", "VARCHAR2", "mytoname", "CLOB", 10);
+        Assertions.assertThat(statement.getHash("mytoname", "CLOB")).isEqualTo("ORA_HASH(DBMS_LOB.SUBSTR(mytoname, 2000, 1)) + DBMS_LOB.GETLENGTH(mytoname)");
+        Assertions.assertThat(statement.getHash("mytoname", "VARCHAR2(100)")).isEqualTo("ORA_HASH(mytoname)");
+    }
+
+    @Test
+    public void verify_drills_into_mismatching_ranges() throws Exception {
+        PreparedStatement aggregate = mock(PreparedStatement.class);
+        ResultSet all = aggregates(20L, 20L, 100L, 20L, 90L);
+        ResultSet upper = aggregates(10L, 10L, 50L, 10L, 40L);
+        ResultSet lower = aggregates(10L, 10L, 50L, 10L, 50L);
+        when(aggregate.executeQuery()).thenReturn(all, upper, lower);
+
+        ResultSet boundary = mock(ResultSet.class);
+        when(boundary.next()).thenReturn(true, false);
+        when(boundary.getObject(1)).thenReturn(10L);
+        PreparedStatement boundaryStmt = mock(PreparedStatement.class);
+        when(boundaryStmt.executeQuery()).thenReturn(boundary);
+
+        ResultSet differing = mock(ResultSet.class);
+        when(differing.next()).thenReturn(true);
+        when(differing.getLong(1)).thenReturn(3L);
+        PreparedStatement differingStmt = mock(PreparedStatement.class);
+        when(differingStmt.executeQuery()).thenReturn(differing);
+
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            if (sql.startsWith("SELECT COUNT(*), ")) {
+                return aggregate;
+            } else if (sql.startsWith("SELECT id ")) {
+                return boundaryStmt;
+            }
+            return differingStmt;
+        });
+
+        CopyColumnVerifyStatement statement = new CopyColumnVerifyStatement(new PostgresDatabase(), null, null, "mytable", "myfromname", "VARCHAR", "mytoname", "TEXT", 10);
+        Queue<String> mismatches = new ConcurrentLinkedQueue<>();
+        long rows = statement.verify(connection, new RowKey("id", false, null), KeyRange.ALL, mismatches);
+
+        Assertions.assertThat(rows).isEqualTo(3);
+        Assertions.assertThat(mismatches).containsExactly("range (10, *]: 3 rows");
+    }
+
+    @Test
+    public void verify_is_added_after_copy() {
+        CopyColumnChange change = newCopyColumnChange();
+        change.setParallelism(4);
+        SqlStatement[] statements = change.generateStatements(new PostgresDatabase());
+        Assertions.assertThat(statements).hasSize(2);
+        Assertions.assertThat(statements[0]).isExactlyInstanceOf(CopyColumnChunkedStatement.class);
+        Assertions.assertThat(statements[1]).isInstanceOfSatisfying(CopyColumnVerifyStatement.class, verify -> {
+            Assertions.assertThat(verify.getParallelism()).isEqualTo(4);
+            Assertions.assertThat(verify.getChunkSize()).isEqualTo(1000);
+        });
+    }
+
+    @Test
+    public void verify_validation() {
+        CopyColumnChange change = newCopyColumnChange();
+        Assertions.assertThat(change.validate(new H2Database()).getErrorMessages()).isEmpty();
+        Assertions.assertThat(change.validate(new SQLiteDatabase()).getErrorMessages()).contains("verify is not supported on sqlite");
+
+        change.setSourceTableName("mysource");
+        change.setJoinColumns("id");
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).contains("verify can not be combined with sourceTableName, transformer or lobStreaming");
+    }
+
+    private ResultSet aggregates(Object... values) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true);
+        for (int i = 0; i < values.length; i++) {
+            when(rs.getObject(i + 1)).thenReturn(values[i]);
+        }
+        return rs;
+    }
+
+    private CopyColumnChange newCopyColumnChange() {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("TEXT");
+        change.setChunkSize(1000);
+        change.setVerify(true);
+        return change;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.Database;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.ValidationErrors;
+import liquibase.parser.core.ParsedNode;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+
+public class CopyColumnsChangeTest {
+
+    @Test
+    public void copy_all_columns_in_one_update() {
+        CopyColumnsChange change = newCopyColumnsChange();
+        Database database = new OracleDatabase();
+        SqlStatement[] statements = change.generateStatements(database);
+        Sql[] sql = SqlGeneratorFactory.getInstance().generateSql(statements, database);
+        Assertions.assertThat(sql).extracting(Sql::toSql) //
+                .containsExactly("UPDATE mytable SET desc_new = TO_CLOB(desc_old), amount_new = CAST(amount_old AS NUMERIC)");
+    }
+
+    @Test
+    public void copy_all_columns_in_one_chunked_pass() {
+        CopyColumnsChange change = newCopyColumnsChange();
+        change.setChunkSize(1000);
+        change.setSkipUnchanged(true);
+        SqlStatement[] statements = change.generateStatements(new PostgresDatabase());
+        Assertions.assertThat(statements).hasSize(1);
+        CopyColumnChunkedStatement statement = (CopyColumnChunkedStatement) statements[0];
+        Assertions.assertThat(statement.getRangeSql(new RowKey("id", false, null), true, false)) //
+                .isEqualTo("UPDATE mytable SET desc_new = desc_old, amount_new = CAST(amount_old AS DOUBLE PRECISION)"
+                        + " WHERE (id > ?) AND (desc_new IS DISTINCT FROM desc_old OR amount_new IS DISTINCT FROM CAST(amount_old AS DOUBLE PRECISION))");
+    }
+
+    @Test
+    public void requires_at_least_one_column() {
+        CopyColumnsChange change = new CopyColumnsChange();
+        change.setTableName("mytable");
+        ValidationErrors errors = change.validate(new PostgresDatabase());
+        Assertions.assertThat(errors.getErrorMessages()).contains("copyColumns requires at least one column");
+    }
+
+    @Test
+    public void target_column_copied_twice() {
+        CopyColumnsChange change = newCopyColumnsChange();
+        change.addColumn(new CopyColumnConfig("other", "VARCHAR2", "DESC_NEW", "CLOB"));
+        ValidationErrors errors = change.validate(new OracleDatabase());
+        Assertions.assertThat(errors.getErrorMessages()).contains("column DESC_NEW is the target of more than one copy");
+    }
+
+    @Test
+    public void load_nested_columns() throws Exception {
+        ParsedNode node = new ParsedNode(null, "copyColumns").addChild(null, "tableName", "mytable");
+        node.addChild(new ParsedNode(null, "column").addChild(null, "fromName", "desc_old").addChild(null, "fromType", "VARCHAR2") //
+                .addChild(null, "toName", "desc_new").addChild(null, "toType", "CLOB"));
+        node.addChild(new ParsedNode(null, "column").addChild(null, "fromName", "amount_old").addChild(null, "fromType", "VARCHAR2") //
+                .addChild(null, "toName", "amount_new").addChild(null, "toType", "NUMERIC"));
+
+        CopyColumnsChange change = new CopyColumnsChange();
+        change.load(node, new ClassLoaderResourceAccessor());
+
+        Assertions.assertThat(change.getTableName()).isEqualTo("mytable");
+        Assertions.assertThat(change.getColumns()).extracting(CopyColumnConfig::toString) //
+                .containsExactly("desc_old(VARCHAR2) to desc_new(CLOB)", "amount_old(VARCHAR2) to amount_new(NUMERIC)");
+    }
+
+    private CopyColumnsChange newCopyColumnsChange() {
+        CopyColumnsChange change = new CopyColumnsChange();
+        change.setTableName("mytable");
+        change.addColumn(new CopyColumnConfig("desc_old", "VARCHAR2", "desc_new", "CLOB"));
+        change.addColumn(new CopyColumnConfig("amount_old", "VARCHAR2", "amount_new", "NUMERIC"));
+        return change;
+    }
+}
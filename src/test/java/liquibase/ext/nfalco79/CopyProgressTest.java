@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.core.H2Database;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+
+public class CopyProgressTest {
+
+    private static class FakeClockProgress extends CopyProgress {
+        private long now;
+
+        FakeClockProgress(List<CopyProgressListener> listeners) {
+            super("mytable", 0, listeners);
+        }
+
+        @Override
+        protected long now() {
+            return now;
+        }
+
+        void elapse(long seconds) {
+            now += TimeUnit.SECONDS.toNanos(seconds);
+        }
+    }
+
+    @Test
+    public void report_rate_and_eta() {
+        FakeClockProgress progress = new FakeClockProgress(Collections.emptyList());
+        progress.setEstimatedRows(10000L);
+        progress.start();
+        progress.add(1000);
+        progress.add(1000);
+        progress.elapse(10);
+
+        Assertions.assertThat(progress.getRowsPerSecond()).isEqualTo(200d);
+        Assertions.assertThat(progress.getEta()).isEqualTo(40);
+        Assertions.assertThat(progress).hasToString("mytable: 2000 of ~10000 rows (20%), 200 rows/s, ETA 40s");
+    }
+
+    @Test
+    public void eta_is_unknown_without_statistics() {
+        FakeClockProgress progress = new FakeClockProgress(Collections.emptyList());
+        progress.start();
+        progress.add(500);
+        progress.elapse(5);
+
+        Assertions.assertThat(progress.getEta()).isNull();
+        Assertions.assertThat(progress).hasToString("mytable: 500 rows, 100 rows/s");
+    }
+
+    @Test
+    public void eta_is_never_negative_with_stale_statistics() {
+        FakeClockProgress progress = new FakeClockProgress(Collections.emptyList());
+        progress.setEstimatedRows(100L);
+        progress.start();
+        progress.add(500);
+        progress.elapse(5);
+
+        Assertions.assertThat(progress.getEta()).isZero();
+        Assertions.assertThat(progress.toString()).contains("(100%)");
+    }
+
+    @Test
+    public void stop_notifies_listeners_also_if_one_fails() {
+        List<CopyProgress> reports = new ArrayList<>();
+        List<CopyProgressListener> listeners = new ArrayList<>();
+        listeners.add(p -> {
+            throw new IllegalStateException();
+        });
+        listeners.add(reports::add);
+        FakeClockProgress progress = new FakeClockProgress(listeners);
+        progress.start();
+
+        progress.stop();
+
+        Assertions.assertThat(reports).containsExactly(progress);
+    }
+
+    @Test
+    public void estimate_rows_from_catalog() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true);
+        when(rs.getLong(1)).thenReturn(12345L);
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        when(stmt.executeQuery()).thenReturn(rs);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(stmt);
+
+        Assertions.assertThat(TableStatistics.estimateRows(connection, new PostgresDatabase(), null, "public", "mytable")).isEqualTo(12345L);
+        verify(connection).prepareStatement("SELECT reltuples::bigint FROM pg_class WHERE oid = to_regclass(?)");
+        verify(stmt).setString(1, "public.mytable");
+
+        when(rs.getLong(1)).thenReturn(-1L);
+        Assertions.assertThat(TableStatistics.estimateRows(connection, new OracleDatabase(), null, "APP", "mytable")).isNull();
+        verify(stmt).setString(1, "APP");
+        verify(stmt).setString(2, "MYTABLE");
+
+        Assertions.assertThat(TableStatistics.estimateRows(connection, new H2Database(), null, null, "mytable")).isNull();
+    }
+
+    @Test
+    public void chunked_copy_reports_progress() {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("BIGINT");
+        change.setChunkSize(1000);
+
+        CopyColumnChunkedStatement statement = (CopyColumnChunkedStatement) change.generateStatements(new PostgresDatabase())[0];
+        Assertions.assertThat(statement.getProgress()).isNotNull();
+        Assertions.assertThat(statement.getProgress().getName()).isEqualTo("mytable [myfromname(VARCHAR) to mytoname(BIGINT)]");
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.CommentStatement;
+import liquibase.statement.core.RawSqlStatement;
+
+public class CostEstimateTest {
+
+    @Test
+    public void report() {
+        CostEstimate estimate = new CostEstimate("copyColumn", "mytable").setRows(1000L).setBytes(65536L).setRewrite(false).setLock("row locks on all rows until commit");
+        Assertions.assertThat(estimate).hasToString("Estimated cost of copyColumn on mytable: ~1000 rows touched, ~65536 bytes rewritten, no table rewrite, row locks on all rows until commit");
+
+        estimate = new CostEstimate("resizeDataType", "mytable");
+        Assertions.assertThat(estimate).hasToString("Estimated cost of resizeDataType on mytable: unknown rows touched, unknown bytes rewritten, table rewrite unknown");
+    }
+
+    @Test
+    public void report_is_prepended_as_comments() {
+        CostEstimate estimate = new CostEstimate("copyColumn", "mytable").setPlan("Update on mytable\n  ->  Seq Scan on mytable");
+        SqlStatement update = new RawSqlStatement("UPDATE mytable SET a = b");
+
+        SqlStatement[] statements = estimate.prependTo(new SqlStatement[] { update });
+
+        Assertions.assertThat(statements).hasSize(4).endsWith(update);
+        Assertions.assertThat(((CommentStatement) statements[0]).getText()).startsWith("Estimated cost of copyColumn on mytable");
+        Assertions.assertThat(((CommentStatement) statements[1]).getText()).isEqualTo("  Update on mytable");
+        Assertions.assertThat(((CommentStatement) statements[2]).getText()).isEqualTo("    ->  Seq Scan on mytable");
+    }
+
+    @Test
+    public void estimate_copy_column_on_postgres() throws Exception {
+        ResultSet stats = mock(ResultSet.class);
+        when(stats.next()).thenReturn(true);
+        when(stats.getLong(1)).thenReturn(5000L, 8192000L);
+        PreparedStatement statsStmt = mock(PreparedStatement.class);
+        when(statsStmt.executeQuery()).thenReturn(stats);
+
+        ResultSet plan = mock(ResultSet.class);
+        when(plan.next()).thenReturn(true, true, false);
+        when(plan.getString(1)).thenReturn("Update on mytable  (cost=0.00..155.00 rows=5000 width=14)", "  ->  Seq Scan on mytable");
+        Statement explainStmt = mock(Statement.class);
+        when(explainStmt.executeQuery(anyString())).thenReturn(plan);
+
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statsStmt);
+        when(connection.createStatement()).thenReturn(explainStmt);
+
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("BIGINT");
+        change.setChunkSize(1000);
+
+        CostEstimate estimate = change.estimateCost(new ConnectedPostgresDatabase(connection));
+
+        Assertions.assertThat(estimate.getRows()).isEqualTo(5000L);
+        Assertions.assertThat(estimate.getBytes()).isEqualTo(8192000L);
+        Assertions.assertThat(estimate.getRewrite()).isTrue();
+        Assertions.assertThat(estimate.getLock()).isEqualTo("row locks on 1000 rows per transaction");
+        Assertions.assertThat(estimate.getPlan()).startsWith("Update on mytable  (cost=0.00..155.00");
+        verify(explainStmt).executeQuery("EXPLAIN UPDATE public.mytable SET mytoname = CAST(myfromname AS BIGINT)");
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.OracleDatabase;
+
+public class KeySpaceTest {
+
+    @Test
+    public void boundary_of_composite_key_on_oracle() {
+        RowKey key = new RowKey(Arrays.asList("tenant", "id"), Arrays.asList(Types.VARCHAR, Types.BIGINT), false);
+        Assertions.assertThat(new KeySpace(new OracleDatabase(), null, null, "mytable").getBoundarySql(key, true, false, 100)) //
+                .isEqualTo("SELECT chunk_key1, chunk_key2 FROM (SELECT chunk_key1, chunk_key2, ROWNUM AS chunk_row FROM"
+                        + " (SELECT tenant AS chunk_key1, id AS chunk_key2 FROM mytable WHERE (tenant >= ? AND (tenant > ? OR (tenant = ? AND id > ?)))"
+                        + " ORDER BY tenant, id) WHERE ROWNUM <= 100) WHERE chunk_row = 100");
+    }
+
+    @Test
+    public void split_stops_when_rows_run_out() throws Exception {
+        ResultSet count = mock(ResultSet.class);
+        when(count.next()).thenReturn(true);
+        when(count.getLong(1)).thenReturn(10L);
+        PreparedStatement countStmt = mock(PreparedStatement.class);
+        when(countStmt.executeQuery()).thenReturn(count);
+
+        ResultSet boundary = mock(ResultSet.class);
+        when(boundary.next()).thenReturn(true, false);
+        when(boundary.getObject(1)).thenReturn(5L);
+        PreparedStatement boundaryStmt = mock(PreparedStatement.class);
+        when(boundaryStmt.executeQuery()).thenReturn(boundary);
+
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement("SELECT COUNT(*) FROM mytable")).thenReturn(countStmt);
+        when(connection.prepareStatement("SELECT id FROM mytable ORDER BY id OFFSET 4 ROWS FETCH NEXT 1 ROWS ONLY")).thenReturn(boundaryStmt);
+        when(connection.prepareStatement("SELECT id FROM mytable WHERE id > ? ORDER BY id OFFSET 4 ROWS FETCH NEXT 1 ROWS ONLY")).thenReturn(boundaryStmt);
+
+        RowKey key = new RowKey("id", false, Types.BIGINT);
+        Map<Integer, KeyRange> ranges = new KeySpace(new DB2Database(), null, null, "mytable").split(connection, key, 2);
+        Assertions.assertThat(ranges.values()).extracting(KeyRange::toString).containsExactly("(*, 5]", "(5, *]");
+        verify(connection).prepareStatement("SELECT id FROM mytable ORDER BY id OFFSET 4 ROWS FETCH NEXT 1 ROWS ONLY");
+    }
+}
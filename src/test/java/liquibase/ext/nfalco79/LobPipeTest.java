@@ -0,0 +1,159 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLFeatureNotSupportedException;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class LobPipeTest {
+
+    @Test
+    public void blob_is_copied_into_temporary_lob_in_pieces() throws Exception {
+        byte[] content = "a document larger than the buffer".getBytes(StandardCharsets.UTF_8);
+        Blob source = mock(Blob.class);
+        when(source.getBinaryStream()).thenReturn(new ByteArrayInputStream(content));
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        Blob target = mock(Blob.class);
+        when(target.setBinaryStream(1)).thenReturn(written);
+        Connection connection = mock(Connection.class);
+        when(connection.createBlob()).thenReturn(target);
+        PreparedStatement stmt = mock(PreparedStatement.class);
+
+        LobPipe pipe = new LobPipe(4);
+        Assertions.assertThat(pipe.bind(connection, stmt, 1, source)).isTrue();
+
+        Assertions.assertThat(written.toByteArray()).isEqualTo(content);
+        verify(stmt).setBlob(1, target);
+        pipe.release();
+        verify(source).free();
+        verify(target).free();
+    }
+
+    @Test
+    public void reader_is_copied_into_temporary_clob() throws Exception {
+        StringWriter written = new StringWriter();
+        Clob target = mock(Clob.class);
+        when(target.setCharacterStream(1)).thenReturn(written);
+        Connection connection = mock(Connection.class);
+        when(connection.createClob()).thenReturn(target);
+        PreparedStatement stmt = mock(PreparedStatement.class);
+
+        new LobPipe(3).bind(connection, stmt, 2, new StringReader("{\"key\": \"value\"}"));
+
+        Assertions.assertThat(written).hasToString("{\"key\": \"value\"}");
+        verify(stmt).setClob(2, target);
+    }
+
+    @Test
+    public void stream_is_given_to_driver_without_temporary_lobs() throws Exception {
+        Connection connection = mock(Connection.class);
+        when(connection.createBlob()).thenThrow(new SQLFeatureNotSupportedException());
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        InputStream first = new ByteArrayInputStream(new byte[10]);
+        InputStream second = new ByteArrayInputStream(new byte[10]);
+
+        LobPipe pipe = new LobPipe(4);
+        pipe.bind(connection, stmt, 1, first);
+        pipe.bind(connection, stmt, 1, second);
+
+        verify(stmt).setBinaryStream(1, first);
+        verify(stmt).setBinaryStream(1, second);
+        verify(connection, times(1)).createBlob();
+        verify(stmt, never()).setBlob(any(Integer.class), any(Blob.class));
+    }
+
+    @Test
+    public void blob_is_given_to_driver_with_its_length() throws Exception {
+        InputStream content = new ByteArrayInputStream(new byte[10]);
+        Blob source = mock(Blob.class);
+        when(source.getBinaryStream()).thenReturn(content);
+        when(source.length()).thenReturn(10L);
+        Connection connection = mock(Connection.class);
+        when(connection.createBlob()).thenThrow(new SQLFeatureNotSupportedException());
+        PreparedStatement stmt = mock(PreparedStatement.class);
+
+        new LobPipe(4).bind(connection, stmt, 1, source);
+
+        // without the length some drivers read the whole stream in memory
+        verify(stmt).setBinaryStream(1, content, 10L);
+    }
+
+    @Test
+    public void large_blob_is_detached_into_a_temporary_file() throws Exception {
+        byte[] content = "a document larger than the buffer".getBytes(StandardCharsets.UTF_8);
+        Blob source = mock(Blob.class);
+        when(source.length()).thenReturn((long) content.length);
+        when(source.getBinaryStream()).thenReturn(new ByteArrayInputStream(content));
+        Connection connection = mock(Connection.class);
+        when(connection.createBlob()).thenThrow(new SQLFeatureNotSupportedException());
+        PreparedStatement stmt = mock(PreparedStatement.class);
+
+        LobPipe pipe = new LobPipe(4);
+        Object detached = pipe.detach(source);
+        verify(source).free();
+        Assertions.assertThat(detached).isInstanceOf(InputStream.class);
+        pipe.bind(connection, stmt, 1, detached);
+
+        verify(stmt).setBinaryStream(1, (InputStream) detached, (long) content.length);
+        Assertions.assertThat((InputStream) detached).hasBinaryContent(content);
+        pipe.release();
+    }
+
+    @Test
+    public void small_clob_is_detached_in_memory() throws Exception {
+        Clob source = mock(Clob.class);
+        when(source.length()).thenReturn(3L);
+        when(source.getSubString(1, 3)).thenReturn("abc");
+        Connection connection = mock(Connection.class);
+        when(connection.createClob()).thenThrow(new SQLFeatureNotSupportedException());
+        PreparedStatement stmt = mock(PreparedStatement.class);
+
+        LobPipe pipe = new LobPipe(4);
+        Object detached = pipe.detach(source);
+        verify(source, never()).getCharacterStream();
+        pipe.bind(connection, stmt, 2, detached);
+
+        verify(stmt).setCharacterStream(2, (Reader) detached, 3L);
+        Assertions.assertThat(new LobPipe(4).detach("text")).isEqualTo("text");
+    }
+
+    @Test
+    public void other_values_are_not_bound() throws Exception {
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        Assertions.assertThat(new LobPipe(4).bind(mock(Connection.class), stmt, 1, "text")).isFalse();
+        Assertions.assertThat(new LobPipe(4).bind(mock(Connection.class), stmt, 1, new byte[1])).isFalse();
+    }
+}
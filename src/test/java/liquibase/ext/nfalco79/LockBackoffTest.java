@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.core.H2Database;
+import liquibase.database.core.PostgresDatabase;
+
+public class LockBackoffTest {
+
+    private static class FakeLockBackoff extends LockBackoff {
+        private final Deque<Integer> blocked;
+        private long slept;
+
+        FakeLockBackoff(int maxBlockedSessions, Integer... blocked) {
+            super("SELECT blocked", maxBlockedSessions, 500);
+            this.blocked = new ArrayDeque<>(Arrays.asList(blocked));
+        }
+
+        @Override
+        protected int countBlocked(Connection connection) {
+            return blocked.pop();
+        }
+
+        @Override
+        protected void sleep(long millis) {
+            slept += millis;
+        }
+    }
+
+    @Test
+    public void shrink_chunk_size_when_sessions_are_blocked() throws Exception {
+        FakeLockBackoff backoff = new FakeLockBackoff(1, 2, 3, 1, 0);
+
+        Assertions.assertThat(backoff.check(null)).isTrue();
+        Assertions.assertThat(backoff.adjust(1000)).isEqualTo(500);
+        Assertions.assertThat(backoff.check(null)).isTrue();
+        Assertions.assertThat(backoff.adjust(1000)).isEqualTo(250);
+        Assertions.assertThat(backoff.check(null)).isFalse();
+        Assertions.assertThat(backoff.adjust(1000)).isEqualTo(500);
+        Assertions.assertThat(backoff.check(null)).isFalse();
+        Assertions.assertThat(backoff.adjust(1000)).isEqualTo(1000);
+    }
+
+    @Test
+    public void count_pauses() {
+        FakeLockBackoff backoff = new FakeLockBackoff(0);
+
+        backoff.pause();
+        backoff.pause();
+
+        Assertions.assertThat(backoff.getPauses()).isEqualTo(2);
+        Assertions.assertThat(backoff.slept).isEqualTo(1000);
+    }
+
+    @Test
+    public void chunk_size_is_never_zero() throws Exception {
+        Integer[] blocked = new Integer[10];
+        Arrays.fill(blocked, 5);
+        FakeLockBackoff backoff = new FakeLockBackoff(0, blocked);
+
+        for (int i = 0; i < blocked.length; i++) {
+            backoff.check(null);
+        }
+        Assertions.assertThat(backoff.adjust(10)).isEqualTo(1);
+    }
+
+    @Test
+    public void lock_backoff_requires_chunk_size_and_supported_database() {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("BIGINT");
+        change.setLockBackoff(true);
+
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).contains("lockBackoff requires chunkSize without parallelDegree");
+
+        change.setChunkSize(1000);
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).isEmpty();
+        Assertions.assertThat(change.validate(new H2Database()).getErrorMessages()).contains("lockBackoff is not supported on h2");
+    }
+
+    @Test
+    public void confirmation_message_reports_pauses() {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("BIGINT");
+        change.setChunkSize(1000);
+        change.setLockBackoff(true);
+
+        Assertions.assertThat(change.getConfirmationMessage()).isEqualTo("Column myfromname(VARCHAR) copied to column mytoname(BIGINT)");
+
+        LockBackoff backoff = ((CopyColumnChunkedStatement) change.generateStatements(new PostgresDatabase())[0]).getLockBackoff();
+        Assertions.assertThat(((CopyColumnChunkedStatement) change.generateStatements(new PostgresDatabase())[0]).getLockBackoff()).isSameAs(backoff);
+        backoff.pause();
+
+        Assertions.assertThat(change.getConfirmationMessage()).isEqualTo("Column myfromname(VARCHAR) copied to column mytoname(BIGINT), paused 1 times to release blocked sessions");
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.Scope;
+import liquibase.change.Change;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.database.Database;
+import liquibase.database.DatabaseConnection;
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.ReorganizeTableStatement;
+import liquibase.structure.core.Table;
+
+public class ReorgTablesStatementTest {
+
+    @Test
+    public void reorg_sql() {
+        ReorgTablesStatement statement = new ReorgTablesStatement(new DB2Database(), null);
+        Assertions.assertThat(statement.getReorgSql(new Table(null, "SALES", "MYTABLE"))).isEqualTo("CALL SYSPROC.ADMIN_CMD ('REORG TABLE \"SALES\".MYTABLE')");
+        statement.setInplace(true);
+        Assertions.assertThat(statement.getReorgSql(new Table(null, "SALES", "MYTABLE"))).isEqualTo("CALL SYSPROC.ADMIN_CMD ('REORG TABLE \"SALES\".MYTABLE INPLACE ALLOW WRITE ACCESS')");
+    }
+
+    @Test
+    public void only_tables_in_reorg_pending_state_are_reorganized() throws Exception {
+        ResultSet pending = mock(ResultSet.class);
+        when(pending.next()).thenReturn(true, true, false);
+        when(pending.getString(1)).thenReturn("SALES ", "SALES ");
+        when(pending.getString(2)).thenReturn("ORDERS", "INVOICES");
+        PreparedStatement pendingStmt = mock(PreparedStatement.class);
+        when(pendingStmt.executeQuery()).thenReturn(pending);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(pendingStmt);
+
+        ReorgTablesStatement statement = new ReorgTablesStatement(new DB2Database(), "SALES");
+
+        Assertions.assertThat(statement.findPending(connection, Arrays.asList(new Table(null, "SALES", "ORDERS"), new Table(null, "SALES", "CUSTOMERS")))).extracting(Table::getName).containsExactly("ORDERS", "INVOICES");
+        verify(pendingStmt).setString(1, "SALES");
+    }
+
+    @Test
+    public void recorded_tables_are_reorganized_when_state_is_unknown() throws Exception {
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenThrow(new SQLException("SQL0551N"));
+
+        ReorgTablesStatement statement = new ReorgTablesStatement(new DB2Database(), "SALES");
+
+        Assertions.assertThat(statement.findPending(connection, Arrays.asList(new Table(null, "SALES", "ORDERS")))).extracting(Table::getName).containsExactly("ORDERS");
+    }
+
+    @Test
+    public void reorg_commits_each_table() throws Exception {
+        Statement stmt = mock(Statement.class);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(stmt);
+
+        new ReorgTablesStatement(new DB2Database(), "SALES").reorg(connection, new Table(null, "SALES", "ORDERS"));
+
+        verify(stmt).execute("CALL SYSPROC.ADMIN_CMD ('REORG TABLE \"SALES\".ORDERS')");
+        verify(connection).commit();
+    }
+
+    @Test
+    public void distinct_tables_are_reorganized_in_parallel() throws Exception {
+        Queue<String> executed = new ConcurrentLinkedQueue<>();
+        ReorgTablesStatement statement = new ReorgTablesStatement(new DB2Database(), "SALES") {
+            @Override
+            protected Connection openConnection() {
+                try {
+                    Statement stmt = mock(Statement.class);
+                    when(stmt.execute(anyString())).thenAnswer(invocation -> executed.add(invocation.getArgument(0)));
+                    Connection worker = mock(Connection.class);
+                    when(worker.createStatement()).thenReturn(stmt);
+                    return worker;
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }.setParallelism(2);
+
+        statement.reorgParallel(Arrays.asList(new Table(null, "SALES", "ORDERS"), new Table(null, "SALES", "INVOICES"), new Table(null, "SALES", "CUSTOMERS")));
+
+        Assertions.assertThat(executed).containsExactlyInAnyOrder("CALL SYSPROC.ADMIN_CMD ('REORG TABLE \"SALES\".ORDERS')", //
+                "CALL SYSPROC.ADMIN_CMD ('REORG TABLE \"SALES\".INVOICES')", "CALL SYSPROC.ADMIN_CMD ('REORG TABLE \"SALES\".CUSTOMERS')");
+    }
+
+    @Test
+    public void deferred_reorg_of_resized_tables_runs_once() throws Exception {
+        Database database = newConnectedDatabase();
+
+        Map<String, Object> values = new HashMap<>();
+        values.put(ExtensionConfiguration.DEFER_REORG.getKey(), true);
+        List<SqlStatement> deferred = new ArrayList<>();
+        Scope.child(values, () -> {
+            for (ResizeDataTypeChange change : Arrays.asList(newResize("ORDERS", "DESCRIPTION"), newResize("ORDERS", "CODE"), newResize("INVOICES", "CODE"))) {
+                SqlStatement[] statements = change.generateStatements(database);
+                Assertions.assertThat(statements).hasSize(2);
+                Assertions.assertThat(statements[1]).isInstanceOf(DeferredReorgStatement.class);
+                Assertions.assertThat(SqlGeneratorFactory.getInstance().generateSql(statements[1], database)[0].toSql()) //
+                        .isEqualTo("-- REORG of \"SALES\"." + change.getTableName() + " deferred to reorgTables");
+                deferred.add(statements[1]);
+            }
+        });
+        // tables are recorded only when the statement after the ALTER is executed
+        Assertions.assertThat(ReorgPendingTables.drain(database)).isEmpty();
+        for (SqlStatement statement : deferred) {
+            ((DeferredReorgStatement) statement).execute(null);
+        }
+
+        Assertions.assertThat(ReorgPendingTables.drain(database)).extracting(Table::getName).containsExactly("ORDERS", "INVOICES");
+        Assertions.assertThat(ReorgPendingTables.drain(database)).isEmpty();
+    }
+
+    @Test
+    public void deferred_tables_are_recorded_by_connection() throws Exception {
+        Database database = newConnectedDatabase();
+        Database other = newConnectedDatabase();
+
+        new DeferredReorgStatement(database, "SALES", "ORDERS").execute(null);
+
+        Assertions.assertThat(ReorgPendingTables.drain(other)).isEmpty();
+        Assertions.assertThat(ReorgPendingTables.drain(new DB2Database())).isEmpty();
+        Assertions.assertThat(ReorgPendingTables.drain(database)).extracting(Table::getName).containsExactly("ORDERS");
+    }
+
+    @Test
+    public void warn_when_no_reorg_follows_the_deferred_resize() throws Exception {
+        DatabaseChangeLog changeLog = new DatabaseChangeLog("changelog.xml");
+        ResizeDataTypeChange resize = newResize("ORDERS", "CODE");
+        addChangeSet(changeLog, "1", resize);
+
+        Map<String, Object> values = new HashMap<>();
+        values.put(ExtensionConfiguration.DEFER_REORG.getKey(), true);
+        Scope.child(values, () -> {
+            Assertions.assertThat(resize.warn(new DB2Database()).getMessages()) //
+                    .containsExactly("deferReorg is enabled but no reorgTables change follows, table ORDERS could stay in reorg pending state");
+
+            addChangeSet(changeLog, "2", new ReorgTablesChange());
+            Assertions.assertThat(resize.warn(new DB2Database()).getMessages()).isEmpty();
+        });
+    }
+
+    @Test
+    public void reorg_is_not_deferred_by_default() {
+        SqlStatement[] statements = newResize("ORDERS", "CODE").generateStatements(new DB2Database());
+        Assertions.assertThat(statements).hasSize(2);
+        Assertions.assertThat(statements[1]).isInstanceOf(ReorganizeTableStatement.class);
+        Assertions.assertThat(new ReorgTablesChange().generateStatements(new PostgresDatabase())).isEmpty();
+    }
+
+    private void addChangeSet(DatabaseChangeLog changeLog, String id, Change change) {
+        ChangeSet changeSet = new ChangeSet(id, "nfalco79", false, false, "changelog.xml", null, null, changeLog);
+        changeSet.addChange(change);
+        changeLog.addChangeSet(changeSet);
+    }
+
+    private Database newConnectedDatabase() {
+        DatabaseConnection connection = mock(DatabaseConnection.class);
+        return new DB2Database() {
+            @Override
+            public DatabaseConnection getConnection() {
+                return connection;
+            }
+        };
+    }
+
+    private ResizeDataTypeChange newResize(String tableName, String columnName) {
+        ResizeDataTypeChange change = new ResizeDataTypeChange();
+        change.setSchemaName("SALES");
+        change.setTableName(tableName);
+        change.setColumnName(columnName);
+        change.setOldDataType("VARCHAR");
+        change.setNewDataType("VARCHAR(100)");
+        return change;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.sql.Connection;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.ValidationErrors;
+
+public class ReplicationLagControllerTest {
+
+    private static class FakeLagController extends ReplicationLagController {
+        private final Deque<Double> lags;
+        private int sleeps;
+
+        FakeLagController(long maxSize, Double... lags) {
+            super("SELECT lag", 10, maxSize);
+            this.lags = new ArrayDeque<>(Arrays.asList(lags));
+        }
+
+        @Override
+        protected double sample(Connection connection) {
+            return lags.pop();
+        }
+
+        @Override
+        protected void sleep(long millis) {
+            sleeps++;
+        }
+    }
+
+    @Test
+    public void halve_chunk_size_and_wait_when_lag_is_over_the_ceiling() throws Exception {
+        FakeLagController controller = new FakeLagController(1000, 30d, 20d, 5d);
+
+        controller.afterChunk(null);
+
+        Assertions.assertThat(controller.getChunkSize()).isEqualTo(500);
+        Assertions.assertThat(controller.sleeps).isEqualTo(2);
+        Assertions.assertThat(controller.getLastLag()).isEqualTo(5d);
+    }
+
+    @Test
+    public void grow_chunk_size_up_to_the_maximum() throws Exception {
+        FakeLagController controller = new FakeLagController(1000, 30d, 1d, 1d, 1d, 1d, 1d, 1d, 1d);
+
+        controller.afterChunk(null);
+        Assertions.assertThat(controller.getChunkSize()).isEqualTo(500);
+        controller.afterChunk(null);
+        Assertions.assertThat(controller.getChunkSize()).isEqualTo(600);
+        for (int i = 0; i < 5; i++) {
+            controller.afterChunk(null);
+        }
+        Assertions.assertThat(controller.getChunkSize()).isEqualTo(1000);
+    }
+
+    @Test
+    public void chunk_size_does_not_shrink_under_the_minimum() throws Exception {
+        Double[] lags = new Double[16];
+        for (int i = 0; i < lags.length; i++) {
+            lags[i] = i % 2 == 0 ? 30d : 1d;
+        }
+        FakeLagController controller = new FakeLagController(200, lags);
+
+        for (int i = 0; i < 8; i++) {
+            controller.afterChunk(null);
+        }
+        Assertions.assertThat(controller.getChunkSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void lag_query_is_required_without_default_probe() {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("BIGINT");
+        change.setChunkSize(1000);
+        change.setMaxReplicationLag(30);
+
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).isEmpty();
+        ValidationErrors errors = change.validate(new DB2Database());
+        Assertions.assertThat(errors.getErrorMessages()).contains("maxReplicationLag requires lagQuery on db2");
+
+        change.setLagQuery("SELECT lag FROM replica_status");
+        Assertions.assertThat(change.validate(new DB2Database()).getErrorMessages()).isEmpty();
+        Assertions.assertThat(((CopyColumnChunkedStatement) change.generateStatements(new DB2Database())[0]).getLagController()).isNotNull();
+    }
+}
@@ -15,11 +15,33 @@
  */
 package liquibase.ext.nfalco79;
 
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.H2Database;
+import liquibase.database.core.MSSQLDatabase;
 import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.UnexpectedLiquibaseException;
 import liquibase.exception.ValidationErrors;
+import liquibase.ext.nfalco79.util.StringUtils;
+import liquibase.structure.core.DataType;
 
 public class ResizeDataTypeChangeTest {
 
@@ -47,4 +69,128 @@ public class ResizeDataTypeChangeTest {
         change.setNewDataType("BLOB(1048576)");
         Assertions.assertThat(change.generateStatements(new OracleDatabase())).isEmpty();
     }
+
+    @Test
+    public void widening_a_varchar_updates_only_the_catalog() {
+        ResizeDataTypeChange change = newResize("VARCHAR(255)");
+        Assertions.assertThat(change.isRewrite(new PostgresDatabase(), newType(100, null))).isFalse();
+        Assertions.assertThat(change.isRewrite(new DB2Database(), newType(100, null))).isFalse();
+        Assertions.assertThat(change.isRewrite(new MSSQLDatabase(), newType(100, null))).isFalse();
+        Assertions.assertThat(change.isRewrite(new H2Database(), newType(100, null))).isNull();
+    }
+
+    @Test
+    public void narrowing_rewrites_the_table_except_on_oracle() {
+        ResizeDataTypeChange change = newResize("VARCHAR(50)");
+        Assertions.assertThat(change.isRewrite(new PostgresDatabase(), newType(100, null))).isTrue();
+        Assertions.assertThat(change.isRewrite(new OracleDatabase(), newType(100, null))).isFalse();
+    }
+
+    @Test
+    public void resize_of_char_or_db2_decimal_rewrites_the_table() {
+        Assertions.assertThat(newResize("CHAR(20)").isRewrite(new OracleDatabase(), newType(10, null))).isTrue();
+        Assertions.assertThat(newResize("DECIMAL(12,2)").isRewrite(new DB2Database(), newType(10, 2))).isTrue();
+        Assertions.assertThat(newResize("NUMERIC(12,2)").isRewrite(new PostgresDatabase(), newType(10, 2))).isFalse();
+        Assertions.assertThat(newResize("NUMERIC(12,4)").isRewrite(new PostgresDatabase(), newType(10, 2))).isTrue();
+    }
+
+    @Test
+    public void resize_of_unknown_column_is_not_classified() {
+        Assertions.assertThat(newResize("VARCHAR(255)").isRewrite(new PostgresDatabase(), null)).isNull();
+    }
+
+    @Test
+    public void same_type_and_size_is_unchanged() {
+        DataType current = newType(100, null);
+        Assertions.assertThat(newResize("VARCHAR(100)").isUnchanged(current)).isTrue();
+        Assertions.assertThat(newResize("varchar(100)").isUnchanged(current)).isTrue();
+        Assertions.assertThat(newResize("VARCHAR").isUnchanged(current)).isTrue();
+        Assertions.assertThat(newResize("VARCHAR(255)").isUnchanged(current)).isFalse();
+        Assertions.assertThat(newResize("VARCHAR(50)").isUnchanged(current)).isFalse();
+        Assertions.assertThat(newResize("VARCHAR(100 CHAR)").isUnchanged(current)).isFalse();
+        Assertions.assertThat(newResize("CHAR(100)").isUnchanged(current)).isFalse();
+    }
+
+    @Test
+    public void resize_to_the_current_type_is_skipped() throws Exception {
+        ResizeDataTypeChange change = newConnectedResize("VARCHAR(100)", newType(100, null));
+        Assertions.assertThat(change.generateStatements(new ConnectedPostgresDatabase(mock(Connection.class)))).isEmpty();
+
+        change = newConnectedResize("VARCHAR(255)", newType(100, null));
+        Assertions.assertThat(change.generateStatements(new ConnectedPostgresDatabase(mock(Connection.class)))).hasSize(1);
+    }
+
+    @Test
+    public void statements_are_volatile_only_when_connected() {
+        ResizeDataTypeChange change = newResize("VARCHAR(255)");
+        Assertions.assertThat(change.generateStatementsVolatile(new PostgresDatabase())).isFalse();
+        Assertions.assertThat(change.generateStatementsVolatile(new ConnectedPostgresDatabase(mock(Connection.class)))).isTrue();
+    }
+
+    @Test
+    public void rewrite_of_a_table_over_the_size_limit_fails() throws Exception {
+        ResizeDataTypeChange change = newConnectedResize("VARCHAR(50)", newType(100, null));
+        Database database = new ConnectedPostgresDatabase(newTableSize(8192000L));
+
+        Map<String, Object> values = new HashMap<>();
+        values.put(ExtensionConfiguration.MAX_REWRITE_SIZE.getKey(), 1048576L);
+        Scope.child(values, () -> Assertions.assertThatThrownBy(() -> change.generateStatements(database)) //
+                .isInstanceOf(UnexpectedLiquibaseException.class) //
+                .hasMessage("Resize of mytable.mycolumn to VARCHAR(50) rewrites the whole table of ~8192000 bytes, over the limit of 1048576 bytes"));
+
+        values.put(ExtensionConfiguration.REWRITE_POLICY.getKey(), ResizeDataTypeChange.REWRITE_WARN);
+        Scope.child(values, () -> Assertions.assertThat(change.generateStatements(database)).hasSize(1));
+    }
+
+    @Test
+    public void catalog_only_resize_ignores_the_size_limit() throws Exception {
+        ResizeDataTypeChange change = newConnectedResize("VARCHAR(255)", newType(100, null));
+        Connection connection = newTableSize(8192000L);
+
+        Map<String, Object> values = new HashMap<>();
+        values.put(ExtensionConfiguration.MAX_REWRITE_SIZE.getKey(), 1048576L);
+        Scope.child(values, () -> Assertions.assertThat(change.generateStatements(new ConnectedPostgresDatabase(connection))).hasSize(1));
+        verify(connection, never()).prepareStatement(anyString());
+    }
+
+    private Connection newTableSize(long bytes) throws SQLException {
+        ResultSet stats = mock(ResultSet.class);
+        when(stats.next()).thenReturn(true);
+        when(stats.getLong(1)).thenReturn(bytes);
+        PreparedStatement statsStmt = mock(PreparedStatement.class);
+        when(statsStmt.executeQuery()).thenReturn(stats);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statsStmt);
+        return connection;
+    }
+
+    private ResizeDataTypeChange newConnectedResize(String newDataType, DataType currentType) {
+        ResizeDataTypeChange change = new ResizeDataTypeChange() {
+            @Override
+            protected DataType getCurrentType(Database database) {
+                return currentType;
+            }
+        };
+        change.setTableName("mytable");
+        change.setColumnName("mycolumn");
+        change.setOldDataType(StringUtils.removeParam(newDataType));
+        change.setNewDataType(newDataType);
+        return change;
+    }
+
+    private ResizeDataTypeChange newResize(String newDataType) {
+        ResizeDataTypeChange change = new ResizeDataTypeChange();
+        change.setTableName("mytable");
+        change.setColumnName("mycolumn");
+        change.setOldDataType(StringUtils.removeParam(newDataType));
+        change.setNewDataType(newDataType);
+        return change;
+    }
+
+    private DataType newType(Integer size, Integer scale) {
+        DataType type = new DataType("VARCHAR");
+        type.setColumnSize(size);
+        type.setDecimalDigits(scale);
+        return type;
+    }
 }
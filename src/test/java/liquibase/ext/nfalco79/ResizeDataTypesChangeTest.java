@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.Mockito.mock;
+
+import java.sql.Connection;
+import java.util.Arrays;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.Database;
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.MSSQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.ValidationErrors;
+import liquibase.parser.core.ParsedNode;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+import liquibase.structure.core.DataType;
+
+public class ResizeDataTypesChangeTest {
+
+    @Test
+    public void resize_all_columns_in_one_alter_on_oracle() {
+        Assertions.assertThat(generateSql(newResizeDataTypesChange(), new OracleDatabase())) //
+                .containsExactly("ALTER TABLE mytable MODIFY (description VARCHAR2(512), amount DECIMAL(12, 2))");
+    }
+
+    @Test
+    public void resize_all_columns_in_one_alter_on_postgres() {
+        Assertions.assertThat(generateSql(newResizeDataTypesChange(), new PostgresDatabase())) //
+                .containsExactly("ALTER TABLE mytable ALTER COLUMN description TYPE VARCHAR(512) USING (description::VARCHAR(512)),"
+                        + " ALTER COLUMN amount TYPE DECIMAL(12, 2) USING (amount::DECIMAL(12, 2))");
+    }
+
+    @Test
+    public void resize_all_columns_in_one_alter_and_one_reorg_on_db2() {
+        Assertions.assertThat(generateSql(newResizeDataTypesChange(), new DB2Database())) //
+                .containsExactly("ALTER TABLE mytable ALTER COLUMN description SET DATA TYPE VARCHAR(512) ALTER COLUMN amount SET DATA TYPE DECIMAL(12, 2)",
+                        "CALL SYSPROC.ADMIN_CMD ('REORG TABLE mytable')");
+    }
+
+    @Test
+    public void resize_each_column_when_multi_column_alter_is_not_supported() {
+        Assertions.assertThat(generateSql(newResizeDataTypesChange(), new MSSQLDatabase())) //
+                .containsExactly("ALTER TABLE mytable ALTER COLUMN description varchar(512)", "ALTER TABLE mytable ALTER COLUMN amount decimal(12, 2)");
+    }
+
+    @Test
+    public void columns_with_the_new_type_are_skipped() {
+        ResizeDataTypesChange change = new ResizeDataTypesChange() {
+            @Override
+            ResizeDataTypeChange toResize(ResizeColumnConfig column) {
+                ResizeDataTypeChange resize = new ResizeDataTypeChange() {
+                    @Override
+                    protected DataType getCurrentType(Database database) {
+                        DataType type = new DataType("VARCHAR");
+                        type.setColumnSize("description".equals(getColumnName()) ? 512 : 10);
+                        return type;
+                    }
+                };
+                resize.setTableName(getTableName());
+                resize.setColumnName(column.getName());
+                resize.setOldDataType(column.getOldDataType());
+                resize.setNewDataType(column.getNewDataType());
+                return resize;
+            }
+        };
+        change.setTableName("mytable");
+        change.addColumn(new ResizeColumnConfig("description", "VARCHAR", "VARCHAR(512)"));
+
+        Database database = new ConnectedPostgresDatabase(mock(Connection.class));
+        Assertions.assertThat(change.generateStatements(database)).isEmpty();
+
+        change.addColumn(new ResizeColumnConfig("code", "VARCHAR", "VARCHAR(20)"));
+        SqlStatement[] statements = change.generateStatements(database);
+        Assertions.assertThat(statements).hasSize(1);
+        Assertions.assertThat(((ResizeDataTypesStatement) statements[0]).getColumns()).extracting(ResizeColumnConfig::getName).containsExactly("code");
+    }
+
+    @Test
+    public void requires_at_least_one_column() {
+        ResizeDataTypesChange change = new ResizeDataTypesChange();
+        change.setTableName("mytable");
+        ValidationErrors errors = change.validate(new PostgresDatabase());
+        Assertions.assertThat(errors.getErrorMessages()).contains("resizeDataTypes requires at least one column");
+    }
+
+    @Test
+    public void column_resized_twice_or_with_another_type() {
+        ResizeDataTypesChange change = newResizeDataTypesChange();
+        change.addColumn(new ResizeColumnConfig("DESCRIPTION", "VARCHAR", "VARCHAR(1024)"));
+        change.addColumn(new ResizeColumnConfig("code", "VARCHAR", "CHAR(10)"));
+        ValidationErrors errors = change.validate(new OracleDatabase());
+        Assertions.assertThat(errors.getErrorMessages()).contains("column DESCRIPTION is resized more than once", //
+                "oldDataType of column code must match newDataType");
+    }
+
+    @Test
+    public void load_nested_columns() throws Exception {
+        ParsedNode node = new ParsedNode(null, "resizeDataTypes").addChild(null, "tableName", "mytable");
+        node.addChild(new ParsedNode(null, "column").addChild(null, "name", "description").addChild(null, "oldDataType", "VARCHAR") //
+                .addChild(null, "newDataType", "VARCHAR(512)"));
+        node.addChild(new ParsedNode(null, "column").addChild(null, "name", "amount").addChild(null, "oldDataType", "DECIMAL") //
+                .addChild(null, "newDataType", "DECIMAL(12,2)"));
+
+        ResizeDataTypesChange change = new ResizeDataTypesChange();
+        change.load(node, new ClassLoaderResourceAccessor());
+
+        Assertions.assertThat(change.getTableName()).isEqualTo("mytable");
+        Assertions.assertThat(change.getColumns()).extracting(ResizeColumnConfig::getName).containsExactly("description", "amount");
+        Assertions.assertThat(change.getColumns()).extracting(ResizeColumnConfig::getNewDataType).containsExactly("VARCHAR(512)", "DECIMAL(12,2)");
+    }
+
+    private String[] generateSql(ResizeDataTypesChange change, Database database) {
+        SqlStatement[] statements = change.generateStatements(database);
+        Sql[] sql = SqlGeneratorFactory.getInstance().generateSql(statements, database);
+        return Arrays.stream(sql).map(Sql::toSql).toArray(String[]::new);
+    }
+
+    private ResizeDataTypesChange newResizeDataTypesChange() {
+        ResizeDataTypesChange change = new ResizeDataTypesChange();
+        change.setTableName("mytable");
+        change.addColumn(new ResizeColumnConfig("description", "VARCHAR", "VARCHAR(512)"));
+        change.addColumn(new ResizeColumnConfig("amount", "DECIMAL", "DECIMAL(12,2)"));
+        return change;
+    }
+}
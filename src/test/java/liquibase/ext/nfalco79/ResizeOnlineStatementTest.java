@@ -0,0 +1,218 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.Database;
+import liquibase.database.DatabaseConnection;
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.MSSQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.statement.SqlStatement;
+import liquibase.structure.core.Column;
+import liquibase.structure.core.DataType;
+import liquibase.structure.core.PrimaryKey;
+import liquibase.structure.core.Table;
+
+public class ResizeOnlineStatementTest {
+
+    @Test
+    public void oracle_uses_dbms_redefinition() {
+        ResizeOnlineStatement statement = newStatement(new OracleDatabase());
+        statement.getTable().getColumn("id").setAutoIncrementInformation(new Column.AutoIncrementInformation());
+
+        // declared without NOT NULL, they are copied by COPY_TABLE_DEPENDENTS
+        Assertions.assertThat(statement.getPrepareSql()).containsExactly( //
+                "CREATE TABLE mytable_redef (id NUMBER(10, 0) GENERATED BY DEFAULT AS IDENTITY, code VARCHAR2(50) DEFAULT 'none')");
+        Assertions.assertThat(statement.getCopySql()) //
+                .contains("DBMS_REDEFINITION.START_REDEF_TABLE(USER, 'MYTABLE', 'MYTABLE_REDEF', NULL, DBMS_REDEFINITION.CONS_USE_PK);") //
+                .contains("DBMS_REDEFINITION.FINISH_REDEF_TABLE(USER, 'MYTABLE', 'MYTABLE_REDEF');") //
+                .contains("DBMS_REDEFINITION.ABORT_REDEF_TABLE(USER, 'MYTABLE', 'MYTABLE_REDEF');");
+        Assertions.assertThat(statement.getSwapSql()).containsExactly("DROP TABLE mytable_redef PURGE", //
+                "ALTER TABLE mytable MODIFY (id GENERATED BY DEFAULT AS IDENTITY (START WITH LIMIT VALUE))");
+    }
+
+    @Test
+    public void oracle_aborts_when_dependents_are_not_copied() {
+        String sql = newStatement(new OracleDatabase()).getCopySql();
+
+        Assertions.assertThat(sql).contains("    IF l_errors > 0 THEN\n") //
+                .contains("FROM DBA_REDEFINITION_ERRORS\n       WHERE BASE_TABLE_OWNER = USER AND BASE_TABLE_NAME = 'MYTABLE'") //
+                .contains("RAISE_APPLICATION_ERROR(-20000, l_errors || ' dependent objects of MYTABLE not copied: ' || l_message);");
+        // the error is raised before finish, so the handler aborts the redefinition
+        Assertions.assertThat(sql.indexOf("RAISE_APPLICATION_ERROR")).isLessThan(sql.indexOf("FINISH_REDEF_TABLE"));
+        Assertions.assertThat(sql.indexOf("ABORT_REDEF_TABLE")).isGreaterThan(sql.indexOf("FINISH_REDEF_TABLE"));
+    }
+
+    @Test
+    public void db2_uses_admin_move_table() {
+        ResizeOnlineStatement statement = new ResizeOnlineStatement(new DB2Database(), null, "SALES", "mytable", "code", "VARCHAR(50)");
+
+        Assertions.assertThat(statement.getPrepareSql()).containsExactly(
+                "CREATE TABLE \"SALES\".mytable_redef LIKE \"SALES\".mytable INCLUDING COLUMN DEFAULTS INCLUDING IDENTITY COLUMN ATTRIBUTES", //
+                "ALTER TABLE \"SALES\".mytable_redef ALTER COLUMN code SET DATA TYPE VARCHAR(50)", //
+                "CALL SYSPROC.ADMIN_CMD ('REORG TABLE \"SALES\".mytable_redef')");
+        Assertions.assertThat(statement.getCopySql()).isEqualTo("CALL SYSPROC.ADMIN_MOVE_TABLE('SALES', 'MYTABLE', 'MYTABLE_REDEF', '', 'MOVE')");
+        Assertions.assertThat(statement.getSwapSql()).isEmpty();
+    }
+
+    @Test
+    public void postgres_uses_a_shadow_table_and_a_trigger() {
+        ResizeOnlineStatement statement = newStatement(new PostgresDatabase());
+
+        Assertions.assertThat(statement.getPrepareSql()).hasSize(4) //
+                .startsWith("CREATE TABLE mytable_redef (LIKE mytable INCLUDING ALL)", //
+                        "ALTER TABLE mytable_redef ALTER COLUMN code TYPE VARCHAR(50) USING (code::VARCHAR(50))") //
+                .endsWith("CREATE TRIGGER mytable_sync AFTER INSERT OR UPDATE OR DELETE ON mytable FOR EACH ROW EXECUTE PROCEDURE mytable_sync()");
+        Assertions.assertThat(statement.getPrepareSql().get(2)) //
+                .contains("DELETE FROM mytable_redef WHERE (id) = (OLD.id);") //
+                .contains("INSERT INTO mytable_redef SELECT (NEW).*;");
+        Assertions.assertThat(statement.getChunkSql(false)).isEqualTo("WITH src AS (SELECT * FROM mytable WHERE (id) > (?) ORDER BY id LIMIT 1000 FOR SHARE),"
+                + " ins AS (INSERT INTO mytable_redef SELECT * FROM src ON CONFLICT DO NOTHING)"
+                + " SELECT id, (SELECT COUNT(*) FROM src) FROM src ORDER BY id DESC LIMIT 1");
+        Assertions.assertThat(statement.getSwapSql()).hasSize(6) //
+                .startsWith("LOCK TABLE mytable IN ACCESS EXCLUSIVE MODE", //
+                        "DROP TRIGGER mytable_sync ON mytable", //
+                        "DROP FUNCTION mytable_sync()") //
+                .endsWith("DROP TABLE mytable", //
+                        "ALTER TABLE mytable_redef RENAME TO mytable");
+    }
+
+    @Test
+    public void postgres_moves_dependents_on_the_shadow_table() {
+        String sql = newStatement(new PostgresDatabase()).getSwapSql().get(3);
+
+        Assertions.assertThat(sql).startsWith("DO $$") //
+                .contains("EXECUTE format('ALTER SEQUENCE %s OWNED BY %s.%I', r.seq, 'mytable_redef'::regclass, r.attname);") //
+                .contains("EXECUTE format('ALTER TABLE %s ADD CONSTRAINT %I %s NOT VALID', 'mytable_redef'::regclass, r.conname, r.def);") //
+                .contains("EXECUTE format('GRANT %s ON %s TO %s', r.privilege_type, 'mytable_redef'::regclass, r.grantee)") //
+                .contains("EXECUTE format('COMMENT ON TABLE %s IS %L', 'mytable_redef'::regclass, obj_description('mytable'::regclass, 'pg_class'));") //
+                .contains("EXECUTE format('ALTER INDEX %s RENAME TO %I', r.new_index::regclass, r.old_name);");
+    }
+
+    @Test
+    public void postgres_refuses_tables_with_triggers() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true);
+        when(rs.getLong(1)).thenReturn(0L);
+        when(rs.getLong(2)).thenReturn(1L);
+        Connection connection = mockConnection(rs);
+
+        Assertions.assertThatThrownBy(() -> newStatement(newPostgresDatabase(connection)).execute(null)) //
+                .isInstanceOf(DatabaseException.class) //
+                .hasMessageContaining("Online resize of mytable is not supported because the table has triggers");
+        verify(connection, never()).createStatement();
+    }
+
+    @Test
+    public void postgres_refuses_partitioned_tables() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true);
+        when(rs.getLong(4)).thenReturn(1L);
+        Connection connection = mockConnection(rs);
+
+        Assertions.assertThatThrownBy(() -> newStatement(newPostgresDatabase(connection)).execute(null)) //
+                .isInstanceOf(DatabaseException.class) //
+                .hasMessageContaining("Online resize of mytable is not supported because the table is partitioned or part of an inheritance tree");
+        verify(connection).prepareStatement(contains("relkind = 'p'"));
+        verify(connection, never()).createStatement();
+    }
+
+    private Connection mockConnection(ResultSet rs) throws SQLException {
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        when(stmt.executeQuery()).thenReturn(rs);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(stmt);
+        return connection;
+    }
+
+    private PostgresDatabase newPostgresDatabase(Connection connection) {
+        JdbcConnection jdbc = mock(JdbcConnection.class);
+        when(jdbc.getUnderlyingConnection()).thenReturn(connection);
+        return new PostgresDatabase() {
+            @Override
+            public DatabaseConnection getConnection() {
+                return jdbc;
+            }
+        };
+    }
+
+    @Test
+    public void postgres_copies_rows_by_chunks_of_key() throws Exception {
+        ResultSet chunk = mock(ResultSet.class);
+        when(chunk.next()).thenReturn(true, true, false);
+        when(chunk.getObject(1)).thenReturn(1000L, 1500L);
+        when(chunk.getLong(2)).thenReturn(1000L, 500L);
+        PreparedStatement chunkStmt = mock(PreparedStatement.class);
+        when(chunkStmt.executeQuery()).thenReturn(chunk);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(chunkStmt);
+
+        Assertions.assertThat(newStatement(new PostgresDatabase()).copy(connection)).isEqualTo(1500L);
+        verify(chunkStmt).setObject(1, 1000L);
+        verify(chunkStmt).setObject(1, 1500L);
+        verify(connection, times(3)).commit();
+    }
+
+    @Test
+    public void online_resize_statement() {
+        ResizeDataTypeChange change = new ResizeDataTypeChange();
+        change.setTableName("mytable");
+        change.setColumnName("code");
+        change.setOldDataType("VARCHAR");
+        change.setNewDataType("VARCHAR(50)");
+        change.setOnline(true);
+
+        SqlStatement[] statements = change.generateStatements(new DB2Database());
+        Assertions.assertThat(statements).hasSize(1);
+        Assertions.assertThat(statements[0]).isInstanceOf(ResizeOnlineStatement.class);
+        Assertions.assertThat(change.validate(new DB2Database()).getErrorMessages()).isEmpty();
+        Assertions.assertThat(change.validate(new MSSQLDatabase()).getErrorMessages()).contains("online is not supported on mssql");
+    }
+
+    private ResizeOnlineStatement newStatement(Database database) {
+        Table table = new Table(null, null, "mytable");
+        Column id = new Column("id").setType(new DataType("NUMBER(10,0)")).setNullable(false).setOrder(1);
+        Column code = new Column("code").setType(new DataType("VARCHAR2(20)")).setDefaultValue("none").setOrder(2);
+        table.addColumn(code);
+        table.addColumn(id);
+        table.setPrimaryKey(new PrimaryKey().addColumn(0, id));
+        return new ResizeOnlineStatement(database, null, null, "mytable", "code", "VARCHAR(50)") {
+            @Override
+            protected Table getTable() {
+                return table;
+            }
+        }.setChunkSize(1000);
+    }
+}
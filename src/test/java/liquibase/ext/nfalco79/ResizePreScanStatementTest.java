@@ -0,0 +1,208 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.Database;
+import liquibase.database.core.DB2Database;
+import liquibase.database.core.MSSQLDatabase;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.statement.SqlStatement;
+import liquibase.structure.core.DataType;
+
+public class ResizePreScanStatementTest {
+
+    @Test
+    public void violation_predicate() {
+        Assertions.assertThat(newStatement(new OracleDatabase(), "VARCHAR2(50)").getViolationPredicate()).isEqualTo("LENGTHB(code) > 50");
+        Assertions.assertThat(newStatement(new OracleDatabase(), "VARCHAR2(50 CHAR)").getViolationPredicate()).isEqualTo("LENGTH(code) > 50");
+        Assertions.assertThat(newStatement(new PostgresDatabase(), "VARCHAR(50)").getViolationPredicate()).isEqualTo("LENGTH(code) > 50");
+        Assertions.assertThat(newStatement(new MSSQLDatabase(), "NVARCHAR(50)").getViolationPredicate()).isEqualTo("LEN(code) > 50");
+        Assertions.assertThat(newStatement(new MySQLDatabase(), "VARCHAR(50)").getViolationPredicate()).isEqualTo("CHAR_LENGTH(code) > 50");
+        Assertions.assertThat(newStatement(new DB2Database(), "DECIMAL(5,2)").getViolationPredicate()).isEqualTo("ABS(code) >= 999.995");
+        Assertions.assertThat(newStatement(new OracleDatabase(), "NUMBER(3)").getViolationPredicate()).isEqualTo("ABS(code) >= 999.5");
+    }
+
+    @Test
+    public void only_sized_character_and_numeric_types_are_checked() {
+        Assertions.assertThat(ResizePreScanStatement.isSupported("varchar(50)")).isTrue();
+        Assertions.assertThat(ResizePreScanStatement.isSupported("NUMBER(10,2)")).isTrue();
+        Assertions.assertThat(ResizePreScanStatement.isSupported("CLOB(1024)")).isFalse();
+        Assertions.assertThat(ResizePreScanStatement.isSupported("VARCHAR")).isFalse();
+    }
+
+    @Test
+    public void count_sql() {
+        Assertions.assertThat(newStatement(new OracleDatabase(), "VARCHAR2(50)").setParallelism(8).getCountSql(null, false, false)) //
+                .isEqualTo("SELECT /*+ PARALLEL(8) */ COUNT(*) FROM mytable WHERE LENGTHB(code) > 50");
+        Assertions.assertThat(newStatement(new MySQLDatabase(), "VARCHAR(50)").getCountSql(new RowKey("id", false, null), true, true)) //
+                .isEqualTo("SELECT COUNT(*) FROM mytable WHERE CHAR_LENGTH(code) > 50 AND id > ? AND id <= ?");
+    }
+
+    @Test
+    public void rows_that_do_not_fit_fail_the_resize() throws Exception {
+        ResultSet count = mock(ResultSet.class);
+        when(count.next()).thenReturn(true);
+        when(count.getLong(1)).thenReturn(3L);
+        PreparedStatement countStmt = mock(PreparedStatement.class);
+        when(countStmt.executeQuery()).thenReturn(count);
+        ResultSet setting = mock(ResultSet.class);
+        when(setting.next()).thenReturn(true);
+        when(setting.getString(1)).thenReturn("2");
+        PreparedStatement settingStmt = mock(PreparedStatement.class);
+        when(settingStmt.executeQuery()).thenReturn(setting);
+        PreparedStatement restoreStmt = mock(PreparedStatement.class);
+        Statement stmt = mock(Statement.class);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(countStmt);
+        when(connection.prepareStatement("SELECT current_setting('max_parallel_workers_per_gather')")).thenReturn(settingStmt);
+        when(connection.prepareStatement("SELECT set_config('max_parallel_workers_per_gather', ?, true)")).thenReturn(restoreStmt);
+        when(connection.createStatement()).thenReturn(stmt);
+
+        ResizePreScanStatement statement = newStatement(new ConnectedPostgresDatabase(connection), "VARCHAR(50)").setParallelism(4);
+
+        Assertions.assertThatThrownBy(() -> statement.execute(null)) //
+                .isInstanceOf(DatabaseException.class) //
+                .hasMessage("Resize of mytable.code to VARCHAR(50) is not possible, 3 rows do not fit");
+        verify(stmt).execute("SET LOCAL max_parallel_workers_per_gather = 4");
+        // the value of the session is restored, not the server default
+        verify(restoreStmt).setString(1, "2");
+        verify(restoreStmt).execute();
+        verify(connection).prepareStatement("SELECT COUNT(*) FROM public.mytable WHERE LENGTH(code) > 50");
+    }
+
+    @Test
+    public void parallel_workers_are_restored_when_the_count_fails() throws Exception {
+        PreparedStatement countStmt = mock(PreparedStatement.class);
+        when(countStmt.executeQuery()).thenThrow(new SQLException("canceling statement due to statement timeout"));
+        ResultSet setting = mock(ResultSet.class);
+        when(setting.next()).thenReturn(true);
+        when(setting.getString(1)).thenReturn("0");
+        PreparedStatement settingStmt = mock(PreparedStatement.class);
+        when(settingStmt.executeQuery()).thenReturn(setting);
+        PreparedStatement restoreStmt = mock(PreparedStatement.class);
+        when(restoreStmt.execute()).thenThrow(new SQLException("current transaction is aborted"));
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(countStmt);
+        when(connection.prepareStatement("SELECT current_setting('max_parallel_workers_per_gather')")).thenReturn(settingStmt);
+        when(connection.prepareStatement("SELECT set_config('max_parallel_workers_per_gather', ?, true)")).thenReturn(restoreStmt);
+        when(connection.createStatement()).thenReturn(mock(Statement.class));
+
+        ResizePreScanStatement statement = newStatement(new ConnectedPostgresDatabase(connection), "VARCHAR(50)").setParallelism(4);
+
+        // the failure of the count is reported, not the one of the restore
+        Assertions.assertThatThrownBy(() -> statement.execute(null)) //
+                .isInstanceOf(DatabaseException.class) //
+                .hasMessageContaining("statement timeout");
+        verify(restoreStmt).setString(1, "0");
+    }
+
+    @Test
+    public void ranges_are_counted_on_own_connections() throws Exception {
+        ResizePreScanStatement statement = new ResizePreScanStatement(new DB2Database(), null, null, "mytable", "code", "VARCHAR(50)") {
+            @Override
+            protected Connection openConnection() {
+                try {
+                    ResultSet count = mock(ResultSet.class);
+                    when(count.next()).thenReturn(true);
+                    when(count.getLong(1)).thenReturn(2L);
+                    PreparedStatement countStmt = mock(PreparedStatement.class);
+                    when(countStmt.executeQuery()).thenReturn(count);
+                    Connection worker = mock(Connection.class);
+                    when(worker.prepareStatement(anyString())).thenReturn(countStmt);
+                    return worker;
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }.setParallelism(2);
+
+        Map<Integer, KeyRange> ranges = new TreeMap<>();
+        ranges.put(0, new KeyRange(null, new Object[] { 100L }));
+        ranges.put(1, new KeyRange(new Object[] { 100L }, new Object[] { 200L }));
+        ranges.put(2, new KeyRange(new Object[] { 200L }, null));
+
+        Assertions.assertThat(statement.countParallel(new RowKey("id", false, Types.BIGINT), ranges)).isEqualTo(6L);
+    }
+
+    @Test
+    public void pre_scan_runs_before_a_shrinking_resize() {
+        ResizeDataTypeChange change = newResize(new DataType("VARCHAR"), 100);
+        Database database = new ConnectedPostgresDatabase(mock(Connection.class));
+
+        change.setNewDataType("VARCHAR(50)");
+        SqlStatement[] statements = change.generateStatements(database);
+        Assertions.assertThat(statements).hasSize(2);
+        Assertions.assertThat(statements[0]).isInstanceOf(ResizePreScanStatement.class);
+
+        change.setNewDataType("VARCHAR(255)");
+        Assertions.assertThat(change.generateStatements(database)).hasSize(1);
+    }
+
+    @Test
+    public void pre_scan_validation() {
+        ResizeDataTypeChange change = newResize(null, 0);
+        change.setOldDataType("CLOB");
+        change.setNewDataType("CLOB");
+        change.setParallelism(0);
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()) //
+                .contains("preScan requires a character or numeric newDataType with size", "parallelism must be greater than 0");
+
+        change.setPreScan(false);
+        change.setParallelism(4);
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).contains("parallelism requires preScan");
+    }
+
+    private ResizeDataTypeChange newResize(DataType currentType, int currentSize) {
+        if (currentType != null) {
+            currentType.setColumnSize(currentSize);
+        }
+        ResizeDataTypeChange change = new ResizeDataTypeChange() {
+            @Override
+            protected DataType getCurrentType(Database database) {
+                return currentType;
+            }
+        };
+        change.setTableName("mytable");
+        change.setColumnName("code");
+        change.setOldDataType("VARCHAR");
+        change.setPreScan(true);
+        return change;
+    }
+
+    private ResizePreScanStatement newStatement(Database database, String newDataType) {
+        return new ResizePreScanStatement(database, null, null, "mytable", "code", newDataType);
+    }
+}
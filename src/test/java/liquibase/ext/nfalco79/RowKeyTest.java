@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class RowKeyTest {
+
+    @Test
+    public void composite_key_as_row_value() {
+        RowKey key = new RowKey(Arrays.asList("tenant", "id"), Arrays.asList(Types.VARCHAR, Types.BIGINT), true);
+
+        Assertions.assertThat(key.getRangePredicate(true, true)).isEqualTo("(tenant, id) > (?, ?) AND (tenant, id) <= (?, ?)");
+        Assertions.assertThat(key.getEqualsPredicate()).isEqualTo("tenant = ? AND id = ?");
+        Assertions.assertThat(key.qualify("t").getRangePredicate(false, true)).isEqualTo("(t.tenant, t.id) <= (?, ?)");
+    }
+
+    @Test
+    public void composite_key_expanded_where_row_values_are_not_supported() throws Exception {
+        RowKey key = new RowKey(Arrays.asList("tenant", "id"), Arrays.asList(Types.VARCHAR, Types.BIGINT), false);
+
+        Assertions.assertThat(key.getRangePredicate(true, false)).isEqualTo("(tenant >= ? AND (tenant > ? OR (tenant = ? AND id > ?)))");
+        Assertions.assertThat(key.getRangePredicate(false, true)).isEqualTo("(tenant <= ? AND (tenant < ? OR (tenant = ? AND id <= ?)))");
+
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        Assertions.assertThat(key.bindRange(stmt, 1, new Object[] { "acme", 10L }, null)).isEqualTo(5);
+        InOrder binds = inOrder(stmt);
+        binds.verify(stmt).setObject(1, "acme", Types.VARCHAR);
+        binds.verify(stmt).setObject(2, "acme", Types.VARCHAR);
+        binds.verify(stmt).setObject(3, "acme", Types.VARCHAR);
+        binds.verify(stmt).setObject(4, 10L);
+    }
+
+    @Test
+    public void typed_values_are_read_and_stored_as_text() throws Exception {
+        RowKey key = new RowKey(Arrays.asList("created", "amount"), Arrays.asList(Types.TIMESTAMP, Types.DECIMAL), false);
+        Timestamp created = Timestamp.valueOf("2022-03-01 10:15:30.5");
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getTimestamp(1)).thenReturn(created);
+        when(rs.getObject(2)).thenReturn(new BigDecimal("12.50"));
+
+        Object[] value = key.read(rs, 1);
+        Assertions.assertThat(value).containsExactly(created, new BigDecimal("12.50"));
+        Assertions.assertThat(key.format(value)).isEqualTo("21:2022-03-01 10:15:30.55:12.50");
+        Assertions.assertThat(key.parse(key.format(value))).containsExactly(created, new BigDecimal("12.50"));
+        Assertions.assertThat(RowKey.toString(value)).isEqualTo("(2022-03-01 10:15:30.5, 12.50)");
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2022 Falco Nikolas
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package liquibase.ext.nfalco79;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import liquibase.database.core.PostgresDatabase;
+import liquibase.exception.ValidationErrors;
+
+public class ThrottleTest {
+
+    private static class FakeClockThrottle extends Throttle {
+        private long now;
+        private final List<Long> sleeps = new ArrayList<>();
+
+        FakeClockThrottle(Integer maxRowsPerSecond, Integer maxBatchesPerSecond) {
+            super(maxRowsPerSecond, maxBatchesPerSecond);
+        }
+
+        void elapse(long millis) {
+            now += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        protected long now() {
+            return now;
+        }
+
+        @Override
+        protected void sleep(long millis) {
+            sleeps.add(millis);
+            elapse(millis);
+        }
+    }
+
+    @Test
+    public void wait_when_rows_exceed_the_budget() {
+        FakeClockThrottle throttle = new FakeClockThrottle(1000, null);
+        throttle.start();
+
+        throttle.elapse(200);
+        throttle.acquire(500);
+        throttle.elapse(100);
+        throttle.acquire(500);
+
+        Assertions.assertThat(throttle.sleeps).containsExactly(300L, 400L);
+    }
+
+    @Test
+    public void do_not_wait_under_the_budget() {
+        FakeClockThrottle throttle = new FakeClockThrottle(1000, null);
+        throttle.start();
+
+        throttle.elapse(600);
+        throttle.acquire(500);
+
+        Assertions.assertThat(throttle.sleeps).isEmpty();
+    }
+
+    @Test
+    public void the_most_restrictive_budget_wins() {
+        FakeClockThrottle throttle = new FakeClockThrottle(1000, 2);
+        throttle.start();
+
+        throttle.elapse(100);
+        throttle.acquire(100);
+
+        Assertions.assertThat(throttle.sleeps).containsExactly(400L);
+    }
+
+    @Test
+    public void throttle_requires_chunk_size() {
+        CopyColumnChange change = new CopyColumnChange();
+        change.setTableName("mytable");
+        change.setFromName("myfromname");
+        change.setFromType("VARCHAR");
+        change.setToName("mytoname");
+        change.setToType("BIGINT");
+        change.setMaxRowsPerSecond(1000);
+        ValidationErrors errors = change.validate(new PostgresDatabase());
+        Assertions.assertThat(errors.getErrorMessages()).contains("maxRowsPerSecond and maxBatchesPerSecond require chunkSize without parallelDegree");
+
+        change.setChunkSize(100);
+        Assertions.assertThat(change.validate(new PostgresDatabase()).getErrorMessages()).isEmpty();
+        Assertions.assertThat(((CopyColumnChunkedStatement) change.generateStatements(new PostgresDatabase())[0]).getThrottle()).isNotNull();
+    }
+}